@@ -0,0 +1,161 @@
+package com.GeekPaperAssistant.config;
+
+import com.GeekPaperAssistant.service.EmbeddingCacheService;
+import com.GeekPaperAssistant.utils.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.*;
+
+/**
+ * 带缓存的 EmbeddingModel 装饰器
+ *
+ * <p>所有向量化请求（VectorStore 写入/查询、重排序、检索）都经过 {@link #call(EmbeddingRequest)}，
+ * 先按文本查 {@link EmbeddingCacheService}，只把未命中的文本批量交给底层模型，结果回写缓存</p>
+ * <p>请求未显式指定模型/维度时，使用 spring.ai.openai.embedding.options 中的默认值作为缓存键</p>
+ * <p>未命中的文本按 {@link #MAX_BATCH_SIZE} 分批调用底层模型（DashScope 单次最多 10 条），
+ * 每批调用前从全局令牌桶取令牌，缓存命中不占用配额</p>
+ * <p>rag.embedding.api.calls.saved 记录缓存实际省去的批次数：不经缓存时需要 ceil(全部文本 / 10) 批，
+ * 经缓存后只需 ceil(未命中文本 / 10) 批，差值即为省去的调用。入库时复用已有块向量写入缓存，
+ * 随后的预计算请求按此口径计入；预计算之后 VectorStore 写入的回放请求命中的是预计算已付费的向量，
+ * 在 {@link #replay(Runnable)} 中执行，不计入</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    /**
+     * 单次调用底层模型的最大文本数（DashScope 嵌入接口上限）
+     */
+    public static final int MAX_BATCH_SIZE = 10;
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final TokenBucket rateLimiter;
+    private final String defaultModel;
+    private final Integer defaultDimensions;
+
+    /**
+     * 当前线程是否在回放预计算结果（见 {@link #replay(Runnable)}）
+     */
+    private static final ThreadLocal<Boolean> REPLAYING = ThreadLocal.withInitial(() -> false);
+
+    private final Counter savedCallCounter;
+    private final Counter remoteCallCounter;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate,
+                                 EmbeddingCacheService embeddingCacheService,
+                                 TokenBucket rateLimiter,
+                                 String defaultModel,
+                                 Integer defaultDimensions,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.embeddingCacheService = embeddingCacheService;
+        this.rateLimiter = rateLimiter;
+        this.defaultModel = defaultModel;
+        this.defaultDimensions = defaultDimensions;
+        this.savedCallCounter = Counter.builder("rag.embedding.api.calls.saved")
+                .description("缓存命中省去的嵌入模型调用批次数")
+                .register(meterRegistry);
+        this.remoteCallCounter = Counter.builder("rag.embedding.api.calls")
+                .description("实际调用嵌入模型的请求数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        EmbeddingOptions options = request.getOptions();
+        String model = options != null && options.getModel() != null ? options.getModel() : defaultModel;
+        Integer dimensions = options != null && options.getDimensions() != null ? options.getDimensions() : defaultDimensions;
+
+        Map<String, float[]> embeddings = new HashMap<>(embeddingCacheService.getAll(model, dimensions, texts));
+
+        // 只对未命中的文本（去重后）调用底层模型
+        List<String> missing = texts.stream()
+                .filter(text -> !embeddings.containsKey(text))
+                .distinct()
+                .toList();
+
+        int savedBatches = batchCount(texts.size()) - batchCount(missing.size());
+        if (savedBatches > 0 && !REPLAYING.get()) {
+            savedCallCounter.increment(savedBatches);
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missing.isEmpty()) {
+            Map<String, float[]> fresh = new HashMap<>(missing.size());
+            for (int start = 0; start < missing.size(); start += MAX_BATCH_SIZE) {
+                List<String> batch = missing.subList(start, Math.min(start + MAX_BATCH_SIZE, missing.size()));
+                EmbeddingResponse response = callDelegate(batch, options);
+                for (Embedding embedding : response.getResults()) {
+                    fresh.put(batch.get(embedding.getIndex()), embedding.getOutput());
+                }
+                metadata = response.getMetadata();
+            }
+            embeddingCacheService.putAll(model, dimensions, fresh);
+            embeddings.putAll(fresh);
+            log.debug("向量化: 共 {} 条, 缓存命中 {} 条, 调用模型 {} 条 ({} 批)",
+                    texts.size(), texts.size() - missing.size(), missing.size(),
+                    batchCount(missing.size()));
+        }
+
+        List<Embedding> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            results.add(new Embedding(embeddings.get(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(results, metadata);
+    }
+
+    /**
+     * 在当前线程回放预计算结果：预计算已把向量写入缓存后，VectorStore 写入时的向量化请求在此执行，
+     * 其缓存命中不计入省去的调用次数
+     */
+    public static void replay(Runnable action) {
+        boolean outer = REPLAYING.get();
+        REPLAYING.set(true);
+        try {
+            action.run();
+        } finally {
+            REPLAYING.set(outer);
+        }
+    }
+
+    private static int batchCount(int texts) {
+        return (texts + MAX_BATCH_SIZE - 1) / MAX_BATCH_SIZE;
+    }
+
+    /**
+     * 调用底层模型（限流）
+     */
+    private EmbeddingResponse callDelegate(List<String> texts, EmbeddingOptions options) {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待向量化限流令牌时被中断", e);
+        }
+        remoteCallCounter.increment();
+        return delegate.call(new EmbeddingRequest(texts, options));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return defaultDimensions != null ? defaultDimensions : delegate.dimensions();
+    }
+}
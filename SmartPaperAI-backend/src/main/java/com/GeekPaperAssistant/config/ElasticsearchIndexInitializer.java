@@ -6,21 +6,27 @@ import co.elastic.clients.elasticsearch._types.mapping.TextProperty;
 import co.elastic.clients.elasticsearch._types.mapping.KeywordProperty;
 import co.elastic.clients.elasticsearch._types.mapping.LongNumberProperty;
 import co.elastic.clients.elasticsearch._types.mapping.DateProperty;
+import co.elastic.clients.elasticsearch._types.mapping.DenseVectorProperty;
+import co.elastic.clients.elasticsearch._types.mapping.DenseVectorSimilarity;
+import co.elastic.clients.elasticsearch._types.mapping.IntegerNumberProperty;
 import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
 import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
 import co.elastic.clients.transport.endpoints.BooleanResponse;
+import com.GeekPaperAssistant.repository.DocumentChunkESRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Elasticsearch 索引初始化器
- * 应用启动时自动创建 ican_documents 索引(如果不存在)
+ * 应用启动时自动创建 ican_documents 文档级索引和 ican_document_chunks 块级索引(如果不存在)
  * 
  * @author 席崇援
  * @since 2025-10-15
@@ -33,34 +39,60 @@ public class ElasticsearchIndexInitializer implements CommandLineRunner {
     private final ElasticsearchClient elasticsearchClient;
     
     private static final String INDEX_NAME = "ican_documents";
+
+    @Value("${spring.ai.vectorstore.elasticsearch.dimensions:1536}")
+    private Integer embeddingDimensions;
     
     @Override
     public void run(String... args) throws Exception {
+        initIndex(INDEX_NAME, this::buildDocumentProperties);
+        initIndex(DocumentChunkESRepository.INDEX_NAME, this::buildChunkProperties);
+        ensureChunkEmbeddingMapping();
+    }
+
+    /**
+     * 早期创建的块级索引没有 embedding 字段，启动时补充映射（新增字段映射是幂等的）
+     */
+    private void ensureChunkEmbeddingMapping() {
+        try {
+            elasticsearchClient.indices().putMapping(m -> m
+                .index(DocumentChunkESRepository.INDEX_NAME)
+                .properties("embedding", buildEmbeddingProperty())
+            );
+        } catch (Exception e) {
+            log.warn("补充块级索引 embedding 映射失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 索引不存在时按映射创建
+     */
+    private void initIndex(String indexName, Supplier<Map<String, Property>> properties) {
         try {
             // 检查索引是否存在
             BooleanResponse exists = elasticsearchClient.indices().exists(
-                ExistsRequest.of(e -> e.index(INDEX_NAME))
+                ExistsRequest.of(e -> e.index(indexName))
             );
             
             if (exists.value()) {
-                log.info("Elasticsearch 索引已存在: {}", INDEX_NAME);
+                log.info("Elasticsearch 索引已存在: {}", indexName);
                 return;
             }
             
             // 创建索引
-            createIndex();
-            log.info("Elasticsearch 索引创建成功: {}", INDEX_NAME);
+            createIndex(indexName, properties.get());
+            log.info("Elasticsearch 索引创建成功: {}", indexName);
             
         } catch (Exception e) {
-            log.error("Elasticsearch 索引初始化失败: {}", INDEX_NAME, e);
+            log.error("Elasticsearch 索引初始化失败: {}", indexName, e);
             // 不抛出异常,允许应用继续启动
         }
     }
     
     /**
-     * 创建索引并设置映射
+     * 文档级索引字段映射
      */
-    private void createIndex() throws Exception {
+    private Map<String, Property> buildDocumentProperties() {
         // 构建字段映射
         Map<String, Property> properties = new HashMap<>();
         
@@ -92,9 +124,64 @@ public class ElasticsearchIndexInitializer implements CommandLineRunner {
         // updateTime: date
         properties.put("updateTime", Property.of(p -> p.date(DateProperty.of(d -> d))));
         
-        // 创建索引
+        return properties;
+    }
+
+    /**
+     * 块级索引字段映射
+     */
+    private Map<String, Property> buildChunkProperties() {
+        Map<String, Property> properties = new HashMap<>();
+
+        // vectorId: keyword (与 _id 一致)
+        properties.put("vectorId", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))));
+
+        // documentId / userId / kbId: long (过滤)
+        properties.put("documentId", Property.of(p -> p.long_(LongNumberProperty.of(l -> l))));
+        properties.put("userId", Property.of(p -> p.long_(LongNumberProperty.of(l -> l))));
+        properties.put("kbId", Property.of(p -> p.long_(LongNumberProperty.of(l -> l))));
+
+        // chunkIndex / parentIndex: integer (parentIndex 为父子分块时所属父块的索引)
+        properties.put("chunkIndex", Property.of(p -> p.integer(IntegerNumberProperty.of(i -> i))));
+        properties.put("parentIndex", Property.of(p -> p.integer(IntegerNumberProperty.of(i -> i))));
+
+        // sectionTitle / content: text (分词,用于全文搜索)
+        properties.put("sectionTitle", Property.of(p -> p.text(TextProperty.of(t -> t
+            .analyzer("standard")
+        ))));
+        properties.put("content", Property.of(p -> p.text(TextProperty.of(t -> t
+            .analyzer("standard")
+        ))));
+
+        // title: text / type: keyword (用于结果展示和引用)
+        properties.put("title", Property.of(p -> p.text(TextProperty.of(t -> t
+            .analyzer("standard")
+        ))));
+        properties.put("type", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))));
+
+        // embedding: dense_vector (kNN 检索)
+        properties.put("embedding", buildEmbeddingProperty());
+
+        return properties;
+    }
+
+    /**
+     * 块向量字段：维度与向量索引一致，余弦相似度
+     */
+    private Property buildEmbeddingProperty() {
+        return Property.of(p -> p.denseVector(DenseVectorProperty.of(d -> d
+            .dims(embeddingDimensions)
+            .index(true)
+            .similarity(DenseVectorSimilarity.Cosine)
+        )));
+    }
+    
+    /**
+     * 创建索引并设置映射
+     */
+    private void createIndex(String indexName, Map<String, Property> properties) throws Exception {
         elasticsearchClient.indices().create(CreateIndexRequest.of(c -> c
-            .index(INDEX_NAME)
+            .index(indexName)
             .settings(s -> s
                 .numberOfShards("1")
                 .numberOfReplicas("0")
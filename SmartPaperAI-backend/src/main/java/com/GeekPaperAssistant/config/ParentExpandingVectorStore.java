@@ -0,0 +1,60 @@
+package com.GeekPaperAssistant.config;
+
+import com.GeekPaperAssistant.service.ParentChunkService;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 父块展开的 VectorStore 视图
+ *
+ * <p>父子分块时向量库中只有小块：{@link #similaritySearch(SearchRequest)} 的命中经
+ * {@link ParentChunkService#expandToParents(List)} 展开为所属父块，写操作直接透传</p>
+ * <p>供 QuestionAnswerAdvisor 等只接受 VectorStore 的组件使用，使其拿到的上下文与问答链路一致</p>
+ *
+ * @author 席崇援
+ */
+public class ParentExpandingVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final ParentChunkService parentChunkService;
+
+    public ParentExpandingVectorStore(VectorStore delegate, ParentChunkService parentChunkService) {
+        this.delegate = delegate;
+        this.parentChunkService = parentChunkService;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return parentChunkService.expandToParents(delegate.similaritySearch(request));
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
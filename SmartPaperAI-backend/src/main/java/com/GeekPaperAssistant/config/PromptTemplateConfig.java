@@ -103,4 +103,9 @@ public class PromptTemplateConfig {
     public String literatureReviewPromptTemplate() {
         return loadPromptTemplate("literature-review.st");
     }
+
+    @Bean("listwiseRerankPromptTemplate")
+    public String listwiseRerankPromptTemplate() {
+        return loadPromptTemplate("rerank-listwise.st");
+    }
 }
@@ -1,8 +1,26 @@
 package com.GeekPaperAssistant.config;
 
 import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.service.EmbeddingCacheService;
+import com.GeekPaperAssistant.utils.BpeTokenCounter;
+import com.GeekPaperAssistant.utils.ContextPacker;
+import com.GeekPaperAssistant.utils.SentenceSplitter;
+import com.GeekPaperAssistant.utils.TokenBucket;
+import com.GeekPaperAssistant.utils.TokenCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RAG 配置类
@@ -16,6 +34,122 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 @EnableConfigurationProperties(RAGProperties.class)
 public class RAGConfiguration {
-    // 如需要定义额外的Bean，可在此添加
-    // 纯配置属性已移至 RAGProperties
+
+    /**
+     * LLM 重排序专用线程池
+     *
+     * <p>与 Web/MQ 线程隔离，单个请求的并发度由 rag.retrieval.rerank.concurrency 控制，
+     * 池大小为其 4 倍以支撑多个请求同时重排序；队列满时直接拒绝，由调用方降级为向量分数</p>
+     */
+    @Bean(name = "rerankExecutor", destroyMethod = "shutdown")
+    public ExecutorService rerankExecutor(RAGProperties ragProperties) {
+        int poolSize = Math.max(1, ragProperties.getRetrieval().getRerank().getConcurrency()) * 4;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(poolSize * 8),
+                new CustomizableThreadFactory("rerank-pool-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 文档入库向量化专用线程池
+     *
+     * <p>线程数即 rag.embedding.concurrency，所有文档共享，保证同时在途的向量化批次不超过配置值；
+     * 队列满时由提交线程自行执行，入库不会因拒绝而丢批次</p>
+     */
+    @Bean(name = "embeddingExecutor", destroyMethod = "shutdown")
+    public ExecutorService embeddingExecutor(RAGProperties ragProperties) {
+        int poolSize = Math.max(1, ragProperties.getEmbedding().getConcurrency());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(poolSize * 64),
+                new CustomizableThreadFactory("embedding-pool-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 流式入库解析线程池
+     *
+     * <p>流式入库时解析在此线程池执行、向量化与落库在消费者线程执行，两者经有界队列衔接；
+     * 线程占满时新的解析排队等待，不能由提交线程（即向量化消费端）自行执行，否则队列满时会互相等待</p>
+     */
+    @Bean(name = "ingestionParserExecutor", destroyMethod = "shutdown")
+    public ExecutorService ingestionParserExecutor(RAGProperties ragProperties) {
+        int poolSize = Math.max(1, ragProperties.getIngestion().getStreaming().getParserThreads());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("ingestion-parser-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 分块与上下文预算共用的 token 计数器（本地 BPE 词表，按安全系数放大）
+     */
+    @Bean
+    public TokenCounter tokenCounter(RAGProperties ragProperties) {
+        RAGProperties.TokenizerConfig config = ragProperties.getTokenizer();
+        return new BpeTokenCounter(config.getEncoding(), config.getCacheSize(), config.getCacheMaxChars(),
+                config.getSafetyMargin());
+    }
+
+    /**
+     * 句子感知的文本分割器（超长分块二次分割）
+     */
+    @Bean
+    public SentenceSplitter sentenceSplitter(TokenCounter tokenCounter) {
+        return new SentenceSplitter(tokenCounter);
+    }
+
+    /**
+     * 问答上下文装配器（按 token 预算放入检索片段）
+     */
+    @Bean
+    public ContextPacker contextPacker(TokenCounter tokenCounter, RAGProperties ragProperties) {
+        RAGProperties.ContextConfig config = ragProperties.getContext();
+        return new ContextPacker(tokenCounter, config.getDuplicateThreshold(), config.getMergeAdjacent());
+    }
+
+    /**
+     * 嵌入模型调用限流器（全局共享）
+     *
+     * <p>每次实际调用嵌入模型前取一个令牌，入库、检索、重排序的调用合计不超过 rag.embedding.rate-limit-qps；
+     * 桶容量取并发数，允许各入库线程同时发出首批请求</p>
+     */
+    @Bean
+    public TokenBucket embeddingRateLimiter(RAGProperties ragProperties) {
+        RAGProperties.EmbeddingConfig config = ragProperties.getEmbedding();
+        double qps = config.getRateLimitQps();
+        return new TokenBucket(qps, Math.max(1.0, Math.min(qps, config.getConcurrency())));
+    }
+
+    /**
+     * 带两级缓存的 EmbeddingModel
+     *
+     * <p>标记为 @Primary，VectorStore、重排序及各检索链路注入的 EmbeddingModel 均为此装饰器，
+     * 底层仍由 Spring AI 自动配置的 OpenAiEmbeddingModel 完成实际调用</p>
+     */
+    @Bean
+    @Primary
+    public EmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                EmbeddingCacheService embeddingCacheService,
+                                                TokenBucket embeddingRateLimiter,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${spring.ai.openai.embedding.options.model}") String model,
+                                                @Value("${spring.ai.openai.embedding.options.dimensions:#{null}}") Integer dimensions) {
+        return new CachingEmbeddingModel(openAiEmbeddingModel, embeddingCacheService, embeddingRateLimiter,
+                model, dimensions, meterRegistry);
+    }
 }
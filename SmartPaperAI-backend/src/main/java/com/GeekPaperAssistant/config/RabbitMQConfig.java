@@ -1,42 +1,218 @@
 package com.GeekPaperAssistant.config;
 
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.mq.IngestionLane;
+import com.GeekPaperAssistant.mq.IngestionStage;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * RabbitMQ 配置类
- * 
+ *
  * @author 席崇援
  * @since 2025-10-06
  */
 @Configuration
 @EnableRabbit
 public class RabbitMQConfig {
-    
+
     /**
-     * 文档处理队列
+     * 文档处理队列（入库流水线入口，即解析阶段）
      */
     public static final String DOCUMENT_PROCESSING_QUEUE = "ican.document.processing";
-    
+
+    /**
+     * 结构抽取阶段队列
+     */
+    public static final String DOCUMENT_STRUCTURE_QUEUE = "ican.document.structure";
+
+    /**
+     * 分块阶段队列
+     */
+    public static final String DOCUMENT_CHUNK_QUEUE = "ican.document.chunk";
+
+    /**
+     * 向量化阶段队列
+     */
+    public static final String DOCUMENT_EMBED_QUEUE = "ican.document.embed";
+
+    /**
+     * 大文件通道队列名后缀（各阶段队列 + 后缀）
+     */
+    public static final String LARGE_LANE_SUFFIX = ".large";
+
+    /**
+     * 延迟重试交换机（topic），路由键为 {重试级别}.{原阶段队列}
+     */
+    public static final String DOCUMENT_RETRY_EXCHANGE = "ican.document.retry";
+
     /**
-     * RAG 索引队列
+     * 延迟重试队列名前缀，后接重试级别（1 起）
+     */
+    public static final String DOCUMENT_RETRY_QUEUE_PREFIX = "ican.document.retry.";
+
+    /**
+     * 重新入队交换机（topic）：延迟队列中的消息过期后经此路由回原阶段队列
+     */
+    public static final String DOCUMENT_REQUEUE_EXCHANGE = "ican.document.requeue";
+
+    /**
+     * 死信交换机
+     */
+    public static final String DOCUMENT_DEAD_LETTER_EXCHANGE = "ican.document.dlx";
+
+    /**
+     * 死信队列：重试耗尽或无法消费的消息，人工排查后可批量重放
+     */
+    public static final String DOCUMENT_DEAD_LETTER_QUEUE = "ican.document.dlq";
+
+    /**
+     * 消息头：消息原本所在的阶段队列
+     */
+    public static final String HEADER_ORIGINAL_QUEUE = "x-original-queue";
+
+    /**
+     * 消息头：最后一次处理失败的原因
+     */
+    public static final String HEADER_ERROR = "x-error";
+
+    /**
+     * RAG 索引后处理交换机（fanout）：文档向量入库完成后发布一条消息，扇出到各后处理队列
+     */
+    public static final String RAG_INDEXING_EXCHANGE = "ican.rag.indexing";
+
+    /**
+     * 后处理队列：论文元数据抽取
+     */
+    public static final String RAG_INDEXING_METADATA_QUEUE = "ican.rag.indexing.metadata";
+
+    /**
+     * 后处理队列：知识图谱构建
+     */
+    public static final String RAG_INDEXING_GRAPH_QUEUE = "ican.rag.indexing.graph";
+
+    /**
+     * 后处理队列：块级全文索引写入与文档级全文索引状态同步
+     */
+    public static final String RAG_INDEXING_FULLTEXT_QUEUE = "ican.rag.indexing.fulltext";
+
+    /**
+     * 入库阶段监听容器工厂
+     */
+    public static final String INGESTION_CONTAINER_FACTORY = "ingestionListenerContainerFactory";
+
+    /**
+     * 入库阶段队列：每个阶段 × 每个通道一个持久化队列
+     *
+     * <p>阶段队列的死信指向死信队列（无法转换等被拒绝的消息）；同时绑定到重新入队交换机，
+     * 接收延迟重试到期的消息</p>
      */
-    public static final String RAG_INDEXING_QUEUE = "ican.rag.indexing";
-    
     @Bean
-    public Queue documentProcessingQueue() {
-        return new Queue(DOCUMENT_PROCESSING_QUEUE, true);
+    public Declarables ingestionQueues() {
+        TopicExchange requeueExchange = new TopicExchange(DOCUMENT_REQUEUE_EXCHANGE, true, false);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(requeueExchange);
+        for (IngestionStage stage : IngestionStage.values()) {
+            for (IngestionLane lane : IngestionLane.values()) {
+                Queue queue = QueueBuilder.durable(stage.queue(lane))
+                        .deadLetterExchange(DOCUMENT_DEAD_LETTER_EXCHANGE)
+                        .deadLetterRoutingKey(DOCUMENT_DEAD_LETTER_QUEUE)
+                        .build();
+                declarables.add(queue);
+                declarables.add(BindingBuilder.bind(queue).to(requeueExchange).with("*." + queue.getName()));
+            }
+        }
+        return new Declarables(declarables);
     }
-    
+
+    /**
+     * 延迟重试拓扑：每个重试级别一个带 TTL 的队列，无消费者，消息过期后死信到重新入队交换机回到原阶段队列
+     *
+     * <p>第 N 次重试进入第 N 级队列（超过配置级数时使用最后一级），延迟为 rag.ingestion.retry-delays[N-1]</p>
+     */
+    @Bean
+    public Declarables ingestionRetryTopology(RAGProperties ragConfig) {
+        TopicExchange retryExchange = new TopicExchange(DOCUMENT_RETRY_EXCHANGE, true, false);
+        DirectExchange deadLetterExchange = new DirectExchange(DOCUMENT_DEAD_LETTER_EXCHANGE, true, false);
+        Queue deadLetterQueue = QueueBuilder.durable(DOCUMENT_DEAD_LETTER_QUEUE).build();
+
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retryExchange);
+        declarables.add(deadLetterExchange);
+        declarables.add(deadLetterQueue);
+        declarables.add(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange).with(DOCUMENT_DEAD_LETTER_QUEUE));
+
+        List<Duration> delays = ragConfig.getIngestion().getRetryDelays();
+        for (int level = 1; level <= delays.size(); level++) {
+            Queue retryQueue = QueueBuilder.durable(DOCUMENT_RETRY_QUEUE_PREFIX + level)
+                    .ttl((int) delays.get(level - 1).toMillis())
+                    .deadLetterExchange(DOCUMENT_REQUEUE_EXCHANGE)
+                    .build();
+            declarables.add(retryQueue);
+            declarables.add(BindingBuilder.bind(retryQueue).to(retryExchange).with(level + ".#"));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * 索引后处理拓扑：fanout 交换机 + 元数据 / 知识图谱 / 全文索引三个队列，各自独立消费，互不阻塞
+     *
+     * <p>与入库阶段队列一样死信指向死信队列，并绑定到重新入队交换机接收延迟重试到期的消息
+     * （重新入队交换机由 {@link #ingestionQueues()} 声明）</p>
+     */
     @Bean
-    public Queue ragIndexingQueue() {
-        return new Queue(RAG_INDEXING_QUEUE, true);
+    public Declarables ragIndexingTopology() {
+        FanoutExchange indexingExchange = new FanoutExchange(RAG_INDEXING_EXCHANGE, true, false);
+        TopicExchange requeueExchange = new TopicExchange(DOCUMENT_REQUEUE_EXCHANGE, true, false);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(indexingExchange);
+        for (String name : List.of(RAG_INDEXING_METADATA_QUEUE, RAG_INDEXING_GRAPH_QUEUE, RAG_INDEXING_FULLTEXT_QUEUE)) {
+            Queue queue = QueueBuilder.durable(name)
+                    .deadLetterExchange(DOCUMENT_DEAD_LETTER_EXCHANGE)
+                    .deadLetterRoutingKey(DOCUMENT_DEAD_LETTER_QUEUE)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(indexingExchange));
+            declarables.add(BindingBuilder.bind(queue).to(requeueExchange).with("*." + name));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * 入库阶段监听容器工厂
+     *
+     * <p>在 spring.rabbitmq.listener.simple 的基础上设置预取数：单条消息处理耗时长(秒级到分钟级)，
+     * 预取过多会让消息积压在忙碌的消费者上，空闲消费者拿不到消息；并发数由各阶段监听器按通道单独配置</p>
+     */
+    @Bean(INGESTION_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory ingestionListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            RAGProperties ragConfig) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setPrefetchCount(ragConfig.getIngestion().getPrefetch());
+        return factory;
     }
-    
+
     /**
      * 消息转换器 - 使用JSON格式
      */
@@ -45,4 +221,3 @@ public class RabbitMQConfig {
         return new Jackson2JsonMessageConverter();
     }
 }
-
@@ -0,0 +1,67 @@
+package com.GeekPaperAssistant.config;
+
+import com.GeekPaperAssistant.service.RetrievalCacheService;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 带检索结果缓存的 VectorStore 视图
+ *
+ * <p>绑定单个用户：{@link #similaritySearch(SearchRequest)} 经 {@link RetrievalCacheService} 缓存，
+ * 写操作直接透传给底层 VectorStore 并使该用户的检索缓存失效</p>
+ * <p>按请求创建，供 QuestionAnswerAdvisor 等只接受 VectorStore 的组件复用检索缓存</p>
+ *
+ * @author 席崇援
+ */
+public class RetrievalCachingVectorStore implements VectorStore {
+
+    private static final String STAGE = "vector";
+
+    private final VectorStore delegate;
+    private final RetrievalCacheService retrievalCacheService;
+    private final Long userId;
+
+    public RetrievalCachingVectorStore(VectorStore delegate, RetrievalCacheService retrievalCacheService, Long userId) {
+        this.delegate = delegate;
+        this.retrievalCacheService = retrievalCacheService;
+        this.userId = userId;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        retrievalCacheService.invalidateUser(userId);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        retrievalCacheService.invalidateUser(userId);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        retrievalCacheService.invalidateUser(userId);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return retrievalCacheService.getOrLoad(userId, STAGE, request, () -> delegate.similaritySearch(request));
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
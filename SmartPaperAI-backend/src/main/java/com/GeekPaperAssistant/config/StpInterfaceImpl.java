@@ -0,0 +1,39 @@
+package com.GeekPaperAssistant.config;
+
+import cn.dev33.satoken.stp.StpInterface;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Sa-Token 角色与权限来源
+ *
+ * <p>系统暂无角色表：rag.ingestion.admin-user-ids 中的用户拥有 admin 角色，用于运维接口鉴权</p>
+ *
+ * @author 席崇援
+ */
+@Component
+@RequiredArgsConstructor
+public class StpInterfaceImpl implements StpInterface {
+
+    /**
+     * 管理员角色
+     */
+    public static final String ROLE_ADMIN = "admin";
+
+    private final RAGProperties ragConfig;
+
+    @Override
+    public List<String> getPermissionList(Object loginId, String loginType) {
+        return List.of();
+    }
+
+    @Override
+    public List<String> getRoleList(Object loginId, String loginType) {
+        boolean admin = ragConfig.getIngestion().getAdminUserIds().stream()
+                .anyMatch(id -> String.valueOf(id).equals(String.valueOf(loginId)));
+        return admin ? List.of(ROLE_ADMIN) : List.of();
+    }
+}
@@ -2,8 +2,13 @@ package com.GeekPaperAssistant.config.properties;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * RAG 配置属性类
@@ -48,6 +53,26 @@ public class RAGProperties {
      */
     private HybridSearchConfig hybridSearch = new HybridSearchConfig();
 
+    /**
+     * 语义答案缓存配置
+     */
+    private AnswerCacheConfig answerCache = new AnswerCacheConfig();
+
+    /**
+     * 分阶段入库配置
+     */
+    private IngestionConfig ingestion = new IngestionConfig();
+
+    /**
+     * 分词计数配置
+     */
+    private TokenizerConfig tokenizer = new TokenizerConfig();
+
+    /**
+     * 问答上下文装配配置
+     */
+    private ContextConfig context = new ContextConfig();
+
     @Data
     public static class RetrievalConfig {
         /**
@@ -74,6 +99,52 @@ public class RAGProperties {
          * 是否启用混合检索
          */
         private Boolean enableHybridSearch = true;
+
+        /**
+         * LLM 重排序配置
+         */
+        private RerankConfig rerank = new RerankConfig();
+
+        /**
+         * 检索结果缓存配置
+         */
+        private RetrievalCacheConfig cache = new RetrievalCacheConfig();
+    }
+
+    @Data
+    public static class RetrievalCacheConfig {
+        /**
+         * 是否启用检索结果缓存
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 缓存过期时间
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class RerankConfig {
+        /**
+         * 重排序模式：pointwise(逐条 LLM 评分) / listwise(单次 LLM 调用整体排序)
+         */
+        private String mode = "pointwise";
+
+        /**
+         * listwise 模式下每个候选片段送入提示词的最大字符数
+         */
+        private Integer listwiseSnippetLength = 400;
+
+        /**
+         * LLM 评分并发数（同一请求内同时在途的评分调用上限）
+         */
+        private Integer concurrency = 4;
+
+        /**
+         * 单次重排序的截止时间，超时未完成的候选使用向量/BM25 分数兜底
+         */
+        private Duration deadline = Duration.ofSeconds(8);
     }
 
     @Data
@@ -113,12 +184,52 @@ public class RAGProperties {
          */
         private Integer maxFileSize = 50;
 
+        /**
+         * 解析字符上限(按文件扩展名)，超出部分截断并记录警告；-1 不限制
+         */
+        private Map<String, Integer> parseCharLimits = new HashMap<>();
+
+        /**
+         * 未单独配置的扩展名使用的解析字符上限，-1 不限制
+         */
+        private Integer defaultParseCharLimit = 5_000_000;
+
+        /**
+         * 父子分块配置
+         */
+        private ParentChildConfig parentChild = new ParentChildConfig();
+
         /**
          * 获取允许的文件类型列表
          */
         public List<String> getAllowedTypesList() {
             return List.of(allowedTypes.split(","));
         }
+
+        /**
+         * 获取指定扩展名的解析字符上限
+         */
+        public int getParseCharLimit(String extension) {
+            return parseCharLimits.getOrDefault(extension, defaultParseCharLimit);
+        }
+    }
+
+    @Data
+    public static class ParentChildConfig {
+        /**
+         * 是否启用父子分块：按 chunk-size 分出的块作为父块，再细分为小块向量化；检索命中小块后展开为父块
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 子块大小(token)
+         */
+        private Integer childChunkSize = 128;
+
+        /**
+         * 子块间重叠(token)
+         */
+        private Integer childChunkOverlap = 16;
     }
 
     @Data
@@ -137,6 +248,54 @@ public class RAGProperties {
          * 向量维度
          */
         private Integer dimension = 1536;
+
+        /**
+         * 文档入库时同时在途的向量化批次数
+         */
+        private Integer concurrency = 4;
+
+        /**
+         * 向量化调用速率上限（次/秒），应与模型服务商的 QPS 配额一致
+         */
+        private Double rateLimitQps = 10.0;
+
+        /**
+         * 单个批次向量化失败后的重试次数（仅重试失败的批次）
+         */
+        private Integer maxRetries = 2;
+
+        /**
+         * 重试退避初始间隔，每次重试翻倍
+         */
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * 向量缓存配置
+         */
+        private EmbeddingCacheConfig cache = new EmbeddingCacheConfig();
+    }
+
+    @Data
+    public static class EmbeddingCacheConfig {
+        /**
+         * 是否启用向量缓存
+         */
+        private Boolean enabled = true;
+
+        /**
+         * L1 本地缓存最大条目数（1536 维向量约 6KB/条）
+         */
+        private Long localMaxSize = 10000L;
+
+        /**
+         * L1 本地缓存过期时间（按最后访问计算）
+         */
+        private Duration localTtl = Duration.ofMinutes(30);
+
+        /**
+         * L2 Redis 缓存过期时间
+         */
+        private Duration remoteTtl = Duration.ofDays(7);
     }
 
     @Data
@@ -168,5 +327,146 @@ public class RAGProperties {
          * 全文搜索权重
          */
         private Double textWeight = 0.4;
+
+        /**
+         * 是否使用块级索引的 ES kNN + BM25 混合检索，关闭或无结果时回退到多次请求的旧链路
+         */
+        private Boolean nativeEnabled = true;
+    }
+
+    @Data
+    public static class AnswerCacheConfig {
+        /**
+         * 是否启用语义答案缓存
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 问题向量余弦相似度阈值，达到该值视为同一问题
+         */
+        private Double similarityThreshold = 0.95;
+
+        /**
+         * 每个检索范围(用户/文档/知识库)最多缓存的问答条数
+         */
+        private Integer maxEntriesPerScope = 100;
+
+        /**
+         * 缓存过期时间（每次写入后按范围整体续期）
+         */
+        private Duration ttl = Duration.ofDays(1);
+    }
+
+    @Data
+    public static class IngestionConfig {
+        /**
+         * 普通通道各阶段消费者并发数（阶段编码 -> "最小-最大" 或固定值），由各阶段 @RabbitListener 的 concurrency 引用
+         */
+        private Map<String, String> concurrency = new HashMap<>();
+
+        /**
+         * 大文件通道各阶段消费者并发数
+         */
+        private Map<String, String> largeLaneConcurrency = new HashMap<>();
+
+        /**
+         * 大文件阈值，原始文件达到该大小时走大文件通道
+         */
+        private DataSize largeFileThreshold = DataSize.ofMegabytes(10);
+
+        /**
+         * 每个消费者的预取消息数
+         */
+        private Integer prefetch = 1;
+
+        /**
+         * 阶段失败后的自动重试延迟，第 N 次重试使用第 N 项（超出时使用最后一项）；
+         * 重试次数上限由 document_task.max_retries 决定，耗尽后进入死信队列
+         */
+        private List<Duration> retryDelays = List.of(Duration.ofSeconds(10), Duration.ofMinutes(1), Duration.ofMinutes(5));
+
+        /**
+         * 管理员用户ID（可调用死信重放等运维接口）
+         */
+        private List<Long> adminUserIds = new ArrayList<>();
+
+        /**
+         * 流式入库配置
+         */
+        private IngestionStreamingConfig streaming = new IngestionStreamingConfig();
+    }
+
+    @Data
+    public static class IngestionStreamingConfig {
+        /**
+         * 是否启用流式入库：无章节结构的文档在解析阶段边解析边分块、向量化、落库
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 解析文本分段长度(字符)，每段清理、分块后送入向量化队列
+         */
+        private Integer segmentChars = 20000;
+
+        /**
+         * 解析与向量化之间的队列容量(分块窗口数，每个窗口为一轮并行向量化的块数)，队列满时解析阻塞
+         */
+        private Integer queueCapacity = 4;
+
+        /**
+         * 解析线程数（所有流式入库共享）
+         */
+        private Integer parserThreads = 4;
+    }
+
+    @Data
+    public static class TokenizerConfig {
+        /**
+         * BPE 词表名称，与嵌入 / 对话模型的分词不一致时(如 Qwen 模型)计数为近似值，由 safety-margin 兜底
+         */
+        private String encoding = "cl100k_base";
+
+        /**
+         * 计数安全系数：本地计数乘以该系数后向上取整，吸收词表与模型分词的差异，词表与模型一致时取 1
+         */
+        private Double safetyMargin = 1.1;
+
+        /**
+         * 计数缓存条数
+         */
+        private Long cacheSize = 10_000L;
+
+        /**
+         * 参与缓存的文本最大长度(字符)，更长的文本每次直接计数
+         */
+        private Integer cacheMaxChars = 20_000;
+    }
+
+    @Data
+    public static class ContextConfig {
+        /**
+         * 用户提示词的 token 上限(模板 + 问题 + 检索上下文)
+         */
+        private Integer maxPromptTokens = 6000;
+
+        /**
+         * 为对话历史预留的 token 数，不计入检索上下文
+         */
+        private Integer reservedTokens = 1500;
+
+        /**
+         * 检索上下文的最小预算(token)，模板与问题过长时仍保证可放入的内容
+         */
+        private Integer minContextTokens = 1000;
+
+        /**
+         * 近似重复阈值(0-1)，片段间字符 shingle 的包含度达到该值时只保留排名更高者
+         */
+        private Double duplicateThreshold = 0.85;
+
+        /**
+         * 是否合并同一文档的相邻块
+         */
+        private Boolean mergeAdjacent = true;
     }
 }
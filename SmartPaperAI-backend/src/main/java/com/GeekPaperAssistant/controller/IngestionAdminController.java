@@ -0,0 +1,44 @@
+package com.GeekPaperAssistant.controller;
+
+import cn.dev33.satoken.annotation.SaCheckRole;
+import com.GeekPaperAssistant.config.StpInterfaceImpl;
+import com.GeekPaperAssistant.model.vo.DeadLetterReplayVO;
+import com.GeekPaperAssistant.service.DocumentTaskService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 文档入库运维控制器
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Tag(name = "入库运维", description = "文档入库死信重放等运维接口（仅管理员）")
+@RestController
+@RequestMapping("/api/admin/ingestion")
+@RequiredArgsConstructor
+@SaCheckRole(StpInterfaceImpl.ROLE_ADMIN)
+public class IngestionAdminController {
+
+    private final DocumentTaskService documentTaskService;
+
+    /**
+     * 批量重放死信消息
+     *
+     * @param limit 最多重放条数
+     * @return 重放结果
+     */
+    @Operation(summary = "重放死信消息", description = "从死信队列取出重试耗尽的入库消息，重置任务重试次数后投递回失败阶段的队列")
+    @PostMapping("/dead-letters/replay")
+    public DeadLetterReplayVO replayDeadLetters(
+            @Parameter(description = "最多重放条数") @RequestParam(defaultValue = "100") Integer limit) {
+        return documentTaskService.replayDeadLetters(Math.max(1, Math.min(limit, 1000)));
+    }
+}
@@ -40,8 +40,10 @@ public class RAGController {
     @PostMapping("/document-chat")
     public RagChatResultVO documentChat(
             @Parameter(description = "文档ID") @RequestParam Long documentId,
-            @Parameter(description = "用户问题") @RequestParam String query) {
-        return ragService.documentChat(documentId, query);
+            @Parameter(description = "用户问题") @RequestParam String query,
+            @Parameter(description = "重排序模式（可选）：pointwise 逐条评分 / listwise 单次整体排序，默认使用系统配置")
+            @RequestParam(required = false) String rerankMode) {
+        return ragService.documentChat(documentId, query, rerankMode);
     }
 
     /**
@@ -53,8 +55,10 @@ public class RAGController {
     @PostMapping("/knowledge-base-chat")
     public RagChatResultVO knowledgeBaseChat(
             @Parameter(description = "知识库ID") @RequestParam Long knowledgeBaseId,
-            @Parameter(description = "用户问题") @RequestParam String query) {
-        return ragService.knowledgeBaseChat(knowledgeBaseId, query);
+            @Parameter(description = "用户问题") @RequestParam String query,
+            @Parameter(description = "重排序模式（可选）：pointwise 逐条评分 / listwise 单次整体排序，不传时不重排序")
+            @RequestParam(required = false) String rerankMode) {
+        return ragService.knowledgeBaseChat(knowledgeBaseId, query, rerankMode);
     }
 
     /**
@@ -3,6 +3,9 @@ package com.GeekPaperAssistant.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.GeekPaperAssistant.model.entity.DocumentChunkDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 文档块Mapper
@@ -12,4 +15,12 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface DocumentChunkMapper extends BaseMapper<DocumentChunkDO> {
+
+    /**
+     * 多行插入文档块（单条 INSERT 语句，一次往返），ID 需由调用方预先分配
+     *
+     * @param list 文档块列表，不能为空
+     * @return 插入行数
+     */
+    int insertBatch(@Param("list") List<DocumentChunkDO> list);
 }
@@ -0,0 +1,25 @@
+package com.GeekPaperAssistant.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.GeekPaperAssistant.model.entity.DocumentChunkParentDO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 文档父块Mapper
+ * 
+ * @author 席崇援
+ */
+@Mapper
+public interface DocumentChunkParentMapper extends BaseMapper<DocumentChunkParentDO> {
+
+    /**
+     * 多行插入父块（单条 INSERT 语句，一次往返），ID 需由调用方预先分配
+     *
+     * @param list 父块列表，不能为空
+     * @return 插入行数
+     */
+    int insertBatch(@Param("list") List<DocumentChunkParentDO> list);
+}
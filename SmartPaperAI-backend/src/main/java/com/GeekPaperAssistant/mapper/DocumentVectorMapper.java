@@ -3,6 +3,9 @@ package com.GeekPaperAssistant.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.GeekPaperAssistant.model.entity.DocumentVectorDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 文档向量ID映射 Mapper
@@ -12,4 +15,12 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface DocumentVectorMapper extends BaseMapper<DocumentVectorDO> {
+
+    /**
+     * 多行插入向量ID映射（单条 INSERT 语句，一次往返）
+     *
+     * @param list 向量ID映射列表，不能为空
+     * @return 插入行数
+     */
+    int insertBatch(@Param("list") List<DocumentVectorDO> list);
 }
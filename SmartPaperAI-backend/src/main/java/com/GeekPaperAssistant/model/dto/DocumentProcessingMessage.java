@@ -37,10 +37,20 @@ public class DocumentProcessingMessage implements Serializable {
     private Long taskId;
     
     /**
-     * 处理类型: parse, vectorize, index
+     * 处理类型（入库阶段）: parse, structure, chunk, embed；索引后处理消息为 indexed
      */
     private String processingType;
     
+    /**
+     * 入库通道: standard, large
+     */
+    private String lane;
+    
+    /**
+     * 索引后处理已自动重试次数（入库阶段的重试次数记录在任务表中）
+     */
+    private Integer retryCount;
+    
     /**
      * 额外参数
      */
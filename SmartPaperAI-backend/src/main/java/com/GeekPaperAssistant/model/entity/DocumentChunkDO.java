@@ -54,6 +54,11 @@ public class DocumentChunkDO {
      */
     private Integer tokens;
     
+    /**
+     * 块文本 SHA-256（相同文本的块复用已有向量）
+     */
+    private String contentHash;
+    
     /**
      * 块元数据 (JSON格式)
      */
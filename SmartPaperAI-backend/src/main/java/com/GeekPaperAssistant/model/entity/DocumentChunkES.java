@@ -0,0 +1,110 @@
+package com.GeekPaperAssistant.model.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Elasticsearch 文档块实体
+ * 用于块级全文检索 (使用原生 Elasticsearch Java API)
+ *
+ * <p>索引名称: ican_document_chunks</p>
+ * <p>每个 DocumentChunkDO 对应一个 ES 文档，_id 与向量ID一致，便于与向量检索结果按块融合</p>
+ * <p>同时存储块向量，kNN 与 BM25 两路检索可在同一次 _msearch 请求中执行，结果在客户端融合</p>
+ *
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DocumentChunkES {
+
+    /**
+     * 向量ID（与 VectorStore 中的 Document ID 一致）
+     * 映射为 ES 的 _id
+     */
+    @JsonProperty("vectorId")
+    private String vectorId;
+
+    /**
+     * 文档ID
+     * ES 字段类型: long
+     */
+    @JsonProperty("documentId")
+    private Long documentId;
+
+    /**
+     * 用户ID
+     * ES 字段类型: long
+     */
+    @JsonProperty("userId")
+    private Long userId;
+
+    /**
+     * 知识库ID
+     * ES 字段类型: long
+     */
+    @JsonProperty("kbId")
+    private Long kbId;
+
+    /**
+     * 块索引
+     * ES 字段类型: integer
+     */
+    @JsonProperty("chunkIndex")
+    private Integer chunkIndex;
+
+    /**
+     * 所属父块索引（父子分块时有值）
+     * ES 字段类型: integer
+     */
+    @JsonProperty("parentIndex")
+    private Integer parentIndex;
+
+    /**
+     * 文档标题
+     * ES 字段类型: text (使用 standard 分词器)
+     */
+    @JsonProperty("title")
+    private String title;
+
+    /**
+     * 文档类型
+     * ES 字段类型: keyword (不分词)
+     */
+    @JsonProperty("type")
+    private String type;
+
+    /**
+     * 章节标题（章节分块时存在）
+     * ES 字段类型: text (使用 standard 分词器)
+     */
+    @JsonProperty("sectionTitle")
+    private String sectionTitle;
+
+    /**
+     * 块文本内容
+     * ES 字段类型: text (使用 standard 分词器)
+     */
+    @JsonProperty("content")
+    private String content;
+
+    /**
+     * 块向量（与向量索引中的 embedding 一致）
+     * ES 字段类型: dense_vector (cosine)，用于 kNN 检索，查询时不回传
+     */
+    @JsonProperty("embedding")
+    private float[] embedding;
+
+    /**
+     * 检索评分（仅查询结果使用，不写入 ES）
+     */
+    @JsonIgnore
+    private Double score;
+}
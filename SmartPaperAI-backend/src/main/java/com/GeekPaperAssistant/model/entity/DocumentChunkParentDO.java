@@ -0,0 +1,72 @@
+package com.GeekPaperAssistant.model.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文档父块实体
+ * 
+ * <p>父子分块时向量化的是小块({@link DocumentChunkDO})，小块元数据中的 parentIndex 指向所属父块，
+ * 检索命中小块后展开为父块文本作为问答上下文</p>
+ * 
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("document_chunk_parents")
+public class DocumentChunkParentDO {
+    
+    /**
+     * 父块ID
+     */
+    @TableId(value = "id", type = IdType.ASSIGN_ID)
+    private Long id;
+    
+    /**
+     * 文档ID
+     */
+    private Long documentId;
+    
+    /**
+     * 父块索引（等于其第一个子块的 chunkIndex）
+     */
+    private Integer parentIndex;
+    
+    /**
+     * 子块数量（父块覆盖的 chunkIndex 区间为 [parentIndex, parentIndex + childCount - 1]）
+     */
+    private Integer childCount;
+    
+    /**
+     * 父块文本
+     */
+    private String content;
+    
+    /**
+     * Token数量
+     */
+    private Integer tokens;
+    
+    /**
+     * 章节标题（章节分块时有值）
+     */
+    private String sectionTitle;
+    
+    /**
+     * 创建时间
+     */
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+    
+    /**
+     * 是否删除(0:否 1:是)
+     */
+    private Integer isDeleted;
+}
@@ -64,6 +64,11 @@ public class DocumentDO implements Serializable {
      */
     private String metadata;
     
+    /**
+     * 原始文件内容 SHA-256（内容相同的文件复用解析结果与向量）
+     */
+    private String contentHash;
+    
     /**
      * 创建时间
      */
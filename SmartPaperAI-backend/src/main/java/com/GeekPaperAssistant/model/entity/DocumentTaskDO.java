@@ -1,14 +1,17 @@
 package com.GeekPaperAssistant.model.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * 文档处理任务实体
@@ -19,7 +22,7 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@TableName("document_task")
+@TableName(value = "document_task", autoResultMap = true)
 public class DocumentTaskDO {
     
     @TableId(type = IdType.AUTO)
@@ -39,6 +42,13 @@ public class DocumentTaskDO {
     
     private Integer progress; // 0-100
     
+    private String currentStage; // 正在执行或失败的入库阶段: parse, structure, chunk, embed
+    
+    private String completedStage; // 最近完成的入库阶段，重试时从其下一阶段继续
+    
+    @TableField(typeHandler = JacksonTypeHandler.class)
+    private Map<String, Object> checkpoint; // 阶段检查点数据（章节结构、已向量化块数等）
+    
     private LocalDateTime startTime;
     
     private LocalDateTime endTime;
@@ -0,0 +1,32 @@
+package com.GeekPaperAssistant.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 死信重放结果 VO
+ *
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "死信重放结果")
+public class DeadLetterReplayVO {
+
+    /**
+     * 重新投递条数
+     */
+    @Schema(description = "重新投递条数")
+    private Integer replayed;
+
+    /**
+     * 丢弃条数（无法解析、文档或任务已不存在）
+     */
+    @Schema(description = "丢弃条数")
+    private Integer dropped;
+}
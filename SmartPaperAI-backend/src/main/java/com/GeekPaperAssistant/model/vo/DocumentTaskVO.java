@@ -44,6 +44,12 @@ public class DocumentTaskVO {
     @Schema(description = "进度(0-100)")
     private Integer progress;
     
+    @Schema(description = "当前入库阶段: parse, structure, chunk, embed")
+    private String currentStage;
+    
+    @Schema(description = "最近完成的入库阶段")
+    private String completedStage;
+    
     @Schema(description = "开始时间")
     private LocalDateTime startTime;
     
@@ -0,0 +1,160 @@
+package com.GeekPaperAssistant.mq;
+
+import cn.hutool.core.util.StrUtil;
+import com.GeekPaperAssistant.config.RabbitMQConfig;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.mapper.DocumentMapper;
+import com.GeekPaperAssistant.model.dto.DocumentProcessingMessage;
+import com.GeekPaperAssistant.model.entity.DocumentDO;
+import com.GeekPaperAssistant.model.vo.KnowledgeGraphBuildResultVO;
+import com.GeekPaperAssistant.service.DocumentESService;
+import com.GeekPaperAssistant.service.DocumentService;
+import com.GeekPaperAssistant.service.KnowledgeGraphBuilderService;
+import com.GeekPaperAssistant.service.PaperAnalysisService;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+import top.continew.starter.core.exception.BusinessException;
+
+/**
+ * 索引后处理消费者
+ *
+ * <p>文档向量入库完成后，{@link DocumentProcessingConsumer} 向 ican.rag.indexing 扇出交换机发布一条消息，
+ * 元数据抽取、知识图谱构建、块级全文索引写入各自监听独立队列、独立并发，互不阻塞，也不占用入库主流程</p>
+ * <p>后处理失败不影响文档的向量检索：与入库阶段一样按 rag.ingestion.retry-delays 逐级延迟重试
+ * （重试次数记录在消息中，最多重试配置的级数次），耗尽后进入死信队列，可经死信重放接口重新投递</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentIndexingConsumer {
+
+    private final DocumentMapper documentMapper;
+    private final DocumentService documentService;
+    private final DocumentESService documentESService;
+    private final PaperAnalysisService paperAnalysisService;
+    private final KnowledgeGraphBuilderService knowledgeGraphBuilderService;
+    private final DocumentProcessingProducer documentProcessingProducer;
+    private final IngestionMetrics ingestionMetrics;
+    private final RetrievalCacheService retrievalCacheService;
+    private final SemanticAnswerCacheService semanticAnswerCacheService;
+    private final RAGProperties ragConfig;
+
+    /**
+     * 后处理逻辑
+     */
+    @FunctionalInterface
+    private interface IndexingHandler {
+
+        void handle(DocumentDO document) throws Exception;
+    }
+
+    /**
+     * 抽取并缓存论文元数据，提前缓存以加速首次访问
+     */
+    @RabbitListener(queues = RabbitMQConfig.RAG_INDEXING_METADATA_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.metadata:1}")
+    public void extractMetadata(DocumentProcessingMessage message) {
+        run(message, RabbitMQConfig.RAG_INDEXING_METADATA_QUEUE, "metadata",
+                document -> paperAnalysisService.extractPaperMetadata(document.getId()));
+    }
+
+    /**
+     * 构建知识图谱：提取概念并构建图谱关系
+     */
+    @RabbitListener(queues = RabbitMQConfig.RAG_INDEXING_GRAPH_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.graph:1}")
+    public void buildKnowledgeGraph(DocumentProcessingMessage message) {
+        run(message, RabbitMQConfig.RAG_INDEXING_GRAPH_QUEUE, "graph", document -> {
+            String content = documentESService.getDocumentContent(document.getId());
+            if (StrUtil.isBlank(content)) {
+                log.warn("未找到解析结果，跳过知识图谱构建: documentId={}", document.getId());
+                return;
+            }
+
+            // 重试时先清除上次构建了一半的图谱
+            if (message.getRetryCount() != null && message.getRetryCount() > 0) {
+                knowledgeGraphBuilderService.deleteGraphForDocument(document.getId());
+            }
+            KnowledgeGraphBuildResultVO result = knowledgeGraphBuilderService.buildGraphForDocument(
+                document.getId(), document.getTitle(), content, document.getUserId(), document.getKbId()
+            );
+            if (result.getSuccess()) {
+                log.info("知识图谱构建成功: documentId={}, 概念数={}, 新增概念={}, 关系数={}",
+                    document.getId(), result.getConceptCount(), result.getNewConceptCount(),
+                    result.getRelationshipCount());
+            } else {
+                throw new BusinessException("知识图谱构建失败: " + result.getErrorMessage());
+            }
+        });
+    }
+
+    /**
+     * 全文索引：按块记录与已写入的向量写入块级全文索引，再将文档级全文索引标记为已完成
+     *
+     * <p>块级索引写入前混合检索召回不到该文档，期间缓存的检索结果和答案不完整，写入成功后再次失效相关缓存</p>
+     */
+    @RabbitListener(queues = RabbitMQConfig.RAG_INDEXING_FULLTEXT_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.fulltext:1}")
+    public void syncFulltextIndex(DocumentProcessingMessage message) {
+        run(message, RabbitMQConfig.RAG_INDEXING_FULLTEXT_QUEUE, "fulltext", document -> {
+            int chunks = documentService.indexChunkFulltext(document.getId());
+            log.info("块级全文索引写入完成: documentId={}, chunks={}", document.getId(), chunks);
+            retrievalCacheService.invalidateUser(document.getUserId());
+            semanticAnswerCacheService.evictDocument(document.getId(), document.getUserId(), document.getKbId());
+            documentESService.updateDocumentStatus(document.getId(), "completed");
+        });
+    }
+
+    private void run(DocumentProcessingMessage message, String queue, String task, IndexingHandler handler) {
+        Long documentId = message.getDocumentId();
+        long startTime = System.currentTimeMillis();
+        try {
+            // 文档在后处理前被删除时直接丢弃
+            DocumentDO document = documentMapper.selectById(documentId);
+            if (document == null) {
+                log.info("文档已删除，跳过索引后处理: documentId={}, task={}", documentId, task);
+                ingestionMetrics.recordPostProcess(task, "skipped", System.currentTimeMillis() - startTime);
+                return;
+            }
+
+            handler.handle(document);
+            long duration = System.currentTimeMillis() - startTime;
+            ingestionMetrics.recordPostProcess(task, "success", duration);
+            log.info("索引后处理完成: documentId={}, task={}, 耗时={}ms", documentId, task, duration);
+
+        } catch (Exception e) {
+            ingestionMetrics.recordPostProcess(task, "failed", System.currentTimeMillis() - startTime);
+            log.warn("索引后处理失败(不影响文档向量检索): documentId={}, task={}, error={}",
+                documentId, task, e.getMessage());
+            retryOrDeadLetter(message, queue, task, "[" + task + "] " + e.getMessage());
+        }
+    }
+
+    /**
+     * 未达到重试上限时进入延迟重试队列（到期后回到本队列），否则进入死信队列
+     */
+    private void retryOrDeadLetter(DocumentProcessingMessage message, String queue, String task, String error) {
+        int retried = message.getRetryCount() == null ? 0 : message.getRetryCount();
+        try {
+            if (retried < ragConfig.getIngestion().getRetryDelays().size()) {
+                message.setRetryCount(retried + 1);
+                documentProcessingProducer.sendRetryMessage(message, queue, retried + 1);
+                ingestionMetrics.recordPostProcessRetry(task);
+                return;
+            }
+            documentProcessingProducer.sendDeadLetter(message, queue, error);
+            ingestionMetrics.recordPostProcessDeadLetter(task);
+        } catch (Exception e) {
+            log.error("投递索引后处理重试/死信失败: documentId={}, task={}", message.getDocumentId(), task, e);
+        }
+    }
+}
@@ -1,23 +1,40 @@
 package com.GeekPaperAssistant.mq;
 
+import cn.hutool.core.util.StrUtil;
 import com.GeekPaperAssistant.config.RabbitMQConfig;
 import com.GeekPaperAssistant.model.dto.DocumentProcessingMessage;
 import com.GeekPaperAssistant.model.entity.DocumentDO;
 import com.GeekPaperAssistant.mapper.DocumentMapper;
+import com.GeekPaperAssistant.model.vo.DocumentMetadataVO;
+import com.GeekPaperAssistant.model.vo.DocumentTaskVO;
 import com.GeekPaperAssistant.service.DocumentService;
 import com.GeekPaperAssistant.service.DocumentESService;
 import com.GeekPaperAssistant.service.DocumentTaskService;
-import com.GeekPaperAssistant.service.PaperAnalysisService;
-import com.GeekPaperAssistant.service.KnowledgeGraphBuilderService;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * 文档处理消费者
  *
+ * <p>入库流程拆分为 解析 → 结构抽取 → 分块 → 向量化 四个阶段，每个阶段监听独立队列、
+ * 并发数可单独配置(rag.ingestion.concurrency)；阶段完成后在 document_task 记录检查点并投递下一阶段，
+ * 失败时任务停在失败阶段，重试从该阶段继续而不是从头处理</p>
+ * <p>每个阶段分普通与大文件两个通道(队列名 .large 后缀)，各自独立的消费者，大文件不阻塞小文件</p>
+ * <p>阶段失败时按任务的重试次数进入延迟重试队列(指数退避)后回到本阶段，达到最大重试次数后进入死信队列</p>
+ * <p>阶段间数据：解析文本写入文档级全文索引，章节结构与已向量化块数保存在任务检查点，分块保存在 document_chunks</p>
+ * <p>无章节结构的文档可走流式入库(rag.ingestion.streaming)：在解析阶段内边解析边分块、向量化、落库，完成后直接进入收尾</p>
+ * <p>向量入库后文档即置为已完成，元数据抽取、知识图谱构建与全文索引状态同步经 ican.rag.indexing 扇出，
+ * 由 {@link DocumentIndexingConsumer} 异步处理</p>
+ *
  * @author 席崇援
  */
 @Slf4j
@@ -25,26 +42,180 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class DocumentProcessingConsumer {
 
+    private static final String CHECKPOINT_STRUCTURE = "structure";
+    private static final String CHECKPOINT_CHUNK_COUNT = "chunkCount";
+    private static final String CHECKPOINT_EMBEDDED_CHUNKS = "embeddedChunks";
+
+    private static final String CHECKPOINT_STREAMED = "streamed";
+
+    /**
+     * 向量化阶段结束时的任务进度
+     */
+    private static final int EMBED_END_PROGRESS = 95;
+
+    /**
+     * 流式入库进度估算：已向量化该块数时进度走完一半
+     */
+    private static final int STREAMING_PROGRESS_HALF_CHUNKS = 100;
+
     private final DocumentMapper documentMapper;
     private final DocumentService documentService;
     private final DocumentESService documentESService;
     private final DocumentTaskService documentTaskService;
-    private final PaperAnalysisService paperAnalysisService;  // 用于自动抽取元数据
-    private final KnowledgeGraphBuilderService knowledgeGraphBuilderService;  // 用于构建知识图谱
-    
+    private final DocumentProcessingProducer documentProcessingProducer;
+    private final RetrievalCacheService retrievalCacheService;
+    private final SemanticAnswerCacheService semanticAnswerCacheService;
+    private final ObjectMapper objectMapper;
+    private final IngestionMetrics ingestionMetrics;
+
     /**
-     * 处理文档
-     * 流程: 解析 → 向量化 → ES索引 → 更新状态
+     * 阶段处理逻辑
      */
-    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_PROCESSING_QUEUE)
+    @FunctionalInterface
+    private interface StageHandler {
+
+        /**
+         * @return 需要合并到任务检查点的数据，可为空
+         */
+        Map<String, Object> handle(DocumentDO document, Long taskId) throws Exception;
+    }
+
+    /**
+     * 解析阶段（流水线入口）：解析原始文件，文本写入文档级全文索引供后续阶段读取
+     */
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_PROCESSING_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.parse:1}")
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_PROCESSING_QUEUE + RabbitMQConfig.LARGE_LANE_SUFFIX,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.large-lane-concurrency.parse:1}")
     public void processDocument(DocumentProcessingMessage message) {
-        log.info("收到文档处理消息: documentId={}, type={}", 
-            message.getDocumentId(), message.getProcessingType());
-        
+        runStage(message, IngestionStage.PARSE, (document, taskId) -> {
+            document.setStatus("processing");
+            documentMapper.updateById(document);
+
+            if (documentService.supportsStreamingIngest(document.getId())) {
+                return streamIngest(document, taskId);
+            }
+
+            String content = documentService.parseDocument(document.getId());
+            log.info("文档解析完成: documentId={}, contentLength={}", document.getId(), content.length());
+
+            documentESService.indexDocument(
+                document.getId(),
+                document.getUserId(),
+                document.getTitle(),
+                content,
+                document.getType(),
+                document.getFileSize(),
+                "processing"
+            );
+            return null;
+        });
+    }
+
+    /**
+     * 流式入库：解析、分块、向量化在解析阶段内经有界队列一次完成，完成后直接视为向量化阶段已完成
+     *
+     * <p>总块数在解析结束前未知，进度按已向量化块数逐步逼近向量化阶段的结束进度</p>
+     */
+    private Map<String, Object> streamIngest(DocumentDO document, Long taskId) {
+        int startProgress = IngestionStage.PARSE.getProgress();
+        int total = documentService.streamIngest(document.getId(), done -> {
+            int progress = startProgress + (EMBED_END_PROGRESS - startProgress) * done / (done + STREAMING_PROGRESS_HALF_CHUNKS);
+            documentTaskService.saveCheckpoint(taskId, Map.of(CHECKPOINT_EMBEDDED_CHUNKS, done), progress);
+        });
+        log.info("文档流式入库完成: documentId={}, chunks={}", document.getId(), total);
+
+        Map<String, Object> checkpoint = new HashMap<>();
+        checkpoint.put(CHECKPOINT_STREAMED, true);
+        checkpoint.put(CHECKPOINT_CHUNK_COUNT, total);
+        checkpoint.put(CHECKPOINT_EMBEDDED_CHUNKS, total);
+        return checkpoint;
+    }
+
+    /**
+     * 结构抽取阶段：GROBID 章节结构保存到任务检查点
+     */
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_STRUCTURE_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.structure:1}")
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_STRUCTURE_QUEUE + RabbitMQConfig.LARGE_LANE_SUFFIX,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.large-lane-concurrency.structure:1}")
+    public void extractStructure(DocumentProcessingMessage message) {
+        runStage(message, IngestionStage.STRUCTURE, (document, taskId) -> {
+            DocumentMetadataVO structure = documentService.extractStructure(document.getId());
+            Map<String, Object> checkpoint = new HashMap<>();
+            checkpoint.put(CHECKPOINT_STRUCTURE, structure == null ? null : objectMapper.convertValue(structure, Map.class));
+            return checkpoint;
+        });
+    }
+
+    /**
+     * 分块阶段：读取解析文本与章节结构，分块落库
+     */
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_CHUNK_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.chunk:1}")
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_CHUNK_QUEUE + RabbitMQConfig.LARGE_LANE_SUFFIX,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.large-lane-concurrency.chunk:1}")
+    public void chunkDocument(DocumentProcessingMessage message) {
+        runStage(message, IngestionStage.CHUNK, (document, taskId) -> {
+            String content = loadParsedContent(document.getId());
+            Object structure = documentTaskService.getCheckpoint(taskId).get(CHECKPOINT_STRUCTURE);
+            int chunkCount = documentService.chunkDocument(document.getId(), content,
+                structure == null ? null : objectMapper.convertValue(structure, DocumentMetadataVO.class));
+            log.info("文档分块完成: documentId={}, chunks={}", document.getId(), chunkCount);
+
+            Map<String, Object> checkpoint = new HashMap<>();
+            checkpoint.put(CHECKPOINT_CHUNK_COUNT, chunkCount);
+            checkpoint.put(CHECKPOINT_EMBEDDED_CHUNKS, 0);
+            return checkpoint;
+        });
+    }
+
+    /**
+     * 向量化阶段：从检查点记录的已向量化块数继续，每批完成后更新检查点与进度
+     */
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_EMBED_QUEUE,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.concurrency.embed:1}")
+    @RabbitListener(queues = RabbitMQConfig.DOCUMENT_EMBED_QUEUE + RabbitMQConfig.LARGE_LANE_SUFFIX,
+            containerFactory = RabbitMQConfig.INGESTION_CONTAINER_FACTORY,
+            concurrency = "${rag.ingestion.large-lane-concurrency.embed:1}")
+    public void embedDocument(DocumentProcessingMessage message) {
+        runStage(message, IngestionStage.EMBED, (document, taskId) -> {
+            Map<String, Object> checkpoint = documentTaskService.getCheckpoint(taskId);
+            int embedded = checkpoint.get(CHECKPOINT_EMBEDDED_CHUNKS) instanceof Number n ? n.intValue() : 0;
+            int chunkCount = checkpoint.get(CHECKPOINT_CHUNK_COUNT) instanceof Number n ? n.intValue() : 0;
+
+            int startProgress = IngestionStage.EMBED.getProgress();
+            int progressRange = EMBED_END_PROGRESS - startProgress;
+            int total = documentService.embedChunks(document.getId(), embedded, done -> {
+                int progress = chunkCount > 0
+                    ? startProgress + progressRange * Math.min(done, chunkCount) / chunkCount
+                    : startProgress;
+                documentTaskService.saveCheckpoint(taskId, Map.of(CHECKPOINT_EMBEDDED_CHUNKS, done), progress);
+            });
+            log.info("文档向量化完成: documentId={}, chunks={}", document.getId(), total);
+            return Map.of(CHECKPOINT_EMBEDDED_CHUNKS, total);
+        });
+    }
+
+    /**
+     * 执行单个入库阶段：更新阶段进度 → 处理 → 记录检查点 → 投递下一阶段；失败时任务停在当前阶段
+     */
+    private void runStage(DocumentProcessingMessage message, IngestionStage stage, StageHandler handler) {
         Long documentId = message.getDocumentId();
-        Long taskId = message.getTaskId(); // 从消息中获取taskId
+        Long taskId = message.getTaskId();
+        IngestionLane lane = IngestionLane.of(message.getLane());
+        log.info("收到文档处理消息: documentId={}, stage={}, lane={}, taskId={}",
+            documentId, stage.getCode(), lane.getCode(), taskId);
+
         DocumentDO document = null;
-        
+        long startTime = System.currentTimeMillis();
         try {
             // 1. 查询文档
             document = documentMapper.selectById(documentId);
@@ -55,72 +226,67 @@ public class DocumentProcessingConsumer {
                 }
                 return;
             }
-            
-            // 2. 更新状态为处理中（进度20%）
-            document.setStatus("processing");
-            documentMapper.updateById(document);
-            if (taskId != null) {
-                documentTaskService.updateTaskStatus(taskId, "processing", 20, null);
+
+            // 2. 无任务的旧消息补建任务，阶段检查点依赖任务记录
+            if (taskId == null) {
+                taskId = documentTaskService.createTask(documentId, "document_processing");
+                message.setTaskId(taskId);
             }
-            log.info("开始处理文档: documentId={}, title={}", documentId, document.getTitle());
-            
-            // 3. 解析文档内容（进度40%）
-            String content = documentService.parseDocument(documentId);
-            if (taskId != null) {
-                documentTaskService.updateTaskStatus(taskId, "processing", 40, null);
+
+            // 3. 重复投递的消息：该阶段已完成则跳过
+            DocumentTaskVO task = documentTaskService.getTaskStatus(taskId);
+            if (task.getCompletedStage() != null
+                    && IngestionStage.of(task.getCompletedStage()).ordinal() >= stage.ordinal()) {
+                log.info("阶段已完成，跳过重复消息: documentId={}, taskId={}, stage={}", documentId, taskId, stage.getCode());
+                ingestionMetrics.recordStage(stage, lane, "skipped", System.currentTimeMillis() - startTime);
+                return;
             }
-            log.info("文档解析完成: documentId={}, contentLength={}", documentId, content.length());
-            
-            // 4. 向量化并存储到向量数据库（进度70%）
-            documentService.vectorizeAndStore(documentId, content, document.getUserId());
-            if (taskId != null) {
-                documentTaskService.updateTaskStatus(taskId, "processing", 70, null);
+
+            // 4. 执行阶段并记录检查点
+            documentTaskService.startStage(taskId, stage.getCode(), stage.getProgress());
+            Map<String, Object> checkpoint = handler.handle(document, taskId);
+            // 流式入库在解析阶段内已完成分块与向量化，直接记为向量化阶段完成
+            IngestionStage completed = checkpoint != null && Boolean.TRUE.equals(checkpoint.get(CHECKPOINT_STREAMED))
+                    ? IngestionStage.EMBED : stage;
+            documentTaskService.completeStage(taskId, completed.getCode(), checkpoint);
+            long duration = System.currentTimeMillis() - startTime;
+            ingestionMetrics.recordStage(stage, lane, "success", duration);
+            log.info("入库阶段完成: documentId={}, stage={}, lane={}, 耗时={}ms",
+                documentId, stage.getCode(), lane.getCode(), duration);
+
+            // 5. 投递下一阶段，最后一个阶段完成时文档即可检索，后处理扇出异步执行
+            IngestionStage next = completed.next();
+            if (next != null) {
+                documentProcessingProducer.sendStageMessage(documentId, document.getUserId(), taskId, next, lane);
+            } else {
+                completeIngestion(document, taskId);
             }
-            log.info("文档向量化完成: documentId={}", documentId);
-            
-            // 5. 索引到Elasticsearch（进度90%）
+
+        } catch (Exception e) {
+            log.error("文档处理失败: documentId={}, stage={}", documentId, stage.getCode(), e);
+            ingestionMetrics.recordStage(stage, lane, "failed", System.currentTimeMillis() - startTime);
+            String error = "[" + stage.getCode() + "] " + e.getMessage();
+
+            // 未达到最大重试次数：进入延迟重试队列，到期后回到本阶段队列（文档保持处理中）
             try {
-                documentESService.indexDocument(
-                    documentId,
-                    document.getUserId(),
-                    document.getTitle(),
-                    content,
-                    document.getType(),
-                    document.getFileSize(),
-                    "completed"
-                );
-                if (taskId != null) {
-                    documentTaskService.updateTaskStatus(taskId, "processing", 90, null);
+                Integer attempt = taskId == null ? null : documentTaskService.scheduleAutoRetry(taskId, error);
+                if (attempt != null) {
+                    documentProcessingProducer.sendRetryMessage(message, stage.queue(lane), attempt);
+                    ingestionMetrics.recordRetry(stage, lane);
+                    return;
                 }
-                log.info("文档索引到ES完成: documentId={}", documentId);
-            } catch (Exception esError) {
-                log.error("ES索引失败，但不影响主流程: documentId={}", documentId, esError);
-                // ES失败影响主流程，不继续执行
-                //更新错误信息
-                if (taskId != null) {
-                    documentTaskService.updateTaskStatus(taskId, "failed", 90, "ES索引失败: " + esError.getMessage());
-                }
-                return;
-            }
-            
-            // 6. 更新状态为完成（进度100%）
-            document.setStatus("completed");
-            documentMapper.updateById(document);
-            if (taskId != null) {
-                documentTaskService.updateTaskStatus(taskId, "completed", 100, null);
+            } catch (Exception retryError) {
+                log.error("登记自动重试失败，按失败处理: documentId={}", documentId, retryError);
             }
-            
-            log.info("文档处理完成: documentId={}, title={}", documentId, document.getTitle());
 
-            // 7. 异步抽取论文元数据并缓存到Redis(不阻塞主流程)
-            asyncExtractAndCacheMetadata(documentId);
+            // 重试耗尽：标记失败并进入死信队列
+            try {
+                documentProcessingProducer.sendDeadLetter(message, stage.queue(lane), error);
+                ingestionMetrics.recordDeadLetter(stage, lane);
+            } catch (Exception dlqError) {
+                log.error("投递死信队列失败: documentId={}", documentId, dlqError);
+            }
 
-            // 8. 异步构建知识图谱（不阻塞主流程）
-            asyncBuildKnowledgeGraph(documentId, document.getTitle(), content, document.getUserId(), document.getKbId());
-            
-        } catch (Exception e) {
-            log.error("文档处理失败: documentId={}", documentId, e);
-            
             // 更新状态为失败
             try {
                 if (document == null) {
@@ -129,7 +295,7 @@ public class DocumentProcessingConsumer {
                 if (document != null) {
                     document.setStatus("failed");
                     documentMapper.updateById(document);
-                    
+
                     // 同步更新ES状态
                     try {
                         documentESService.updateDocumentStatus(documentId, "failed");
@@ -137,77 +303,46 @@ public class DocumentProcessingConsumer {
                         // 忽略ES更新失败
                     }
                 }
-                
-                // 更新任务状态为失败
+
+                // 更新任务状态为失败（current_stage 保持为失败阶段）
                 if (taskId != null) {
-                    documentTaskService.updateTaskStatus(taskId, "failed", 0, e.getMessage());
+                    documentTaskService.updateTaskStatus(taskId, "failed", stage.getProgress(), error);
                 }
             } catch (Exception updateError) {
                 log.error("更新失败状态异常: documentId={}", documentId, updateError);
             }
         }
     }
-    
+
     /**
-     * 异步抽取并缓存论文元数据
-     * 在文档处理完成后自动触发,提前缓存元数据以加速首次访问
-     *
-     * @param documentId 文档ID
+     * 向量入库完成：文档置为已完成、相关查询缓存失效，再发布索引后处理消息
+     * （元数据抽取、知识图谱、全文索引状态同步由 {@link DocumentIndexingConsumer} 各自消费）
      */
-    @Async
-    private void asyncExtractAndCacheMetadata(Long documentId) {
-        try {
-            log.info("开始异步抽取论文元数据: documentId={}", documentId);
-            long startTime = System.currentTimeMillis();
+    private void completeIngestion(DocumentDO document, Long taskId) {
+        document.setStatus("completed");
+        documentMapper.updateById(document);
+        documentTaskService.updateTaskStatus(taskId, "completed", 100, null);
 
-            // 调用元数据抽取服务(会自动缓存到Redis)
-            paperAnalysisService.extractPaperMetadata(documentId);
-
-            long duration = System.currentTimeMillis() - startTime;
-            log.info("论文元数据抽取并缓存成功: documentId={}, 耗时={}ms", documentId, duration);
+        retrievalCacheService.invalidateUser(document.getUserId());
+        semanticAnswerCacheService.evictDocument(document.getId(), document.getUserId(), document.getKbId());
+        log.info("文档处理完成: documentId={}, title={}", document.getId(), document.getTitle());
 
+        try {
+            documentProcessingProducer.publishIndexingMessage(document.getId(), document.getUserId(), taskId);
         } catch (Exception e) {
-            // 元数据抽取失败不影响主流程,只记录日志
-            log.warn("自动抽取论文元数据失败(不影响文档处理): documentId={}, error={}",
-                documentId, e.getMessage());
+            // 后处理不影响文档可用，发布失败只记录日志
+            log.warn("发布索引后处理消息失败: documentId={}, error={}", document.getId(), e.getMessage());
         }
     }
 
     /**
-     * 异步构建知识图谱
-     * 在文档处理完成后自动触发，提取概念并构建图谱关系
-     *
-     * @param documentId 文档ID
-     * @param title 文档标题
-     * @param content 文档内容
-     * @param userId 用户ID
-     * @param kbId 知识库ID
+     * 读取解析阶段写入全文索引的文本
      */
-    @Async
-    private void asyncBuildKnowledgeGraph(Long documentId, String title, String content, Long userId, Long kbId) {
-        try {
-            log.info("开始异步构建知识图谱: documentId={}", documentId);
-            long startTime = System.currentTimeMillis();
-
-            // 调用知识图谱构建服务
-            var result = knowledgeGraphBuilderService.buildGraphForDocument(
-                documentId, title, content, userId, kbId
-            );
-
-            long duration = System.currentTimeMillis() - startTime;
-
-            if (result.getSuccess()) {
-                log.info("知识图谱构建成功: documentId={}, 概念数={}, 新增概念={}, 关系数={}, 耗时={}ms",
-                    documentId, result.getConceptCount(), result.getNewConceptCount(),
-                    result.getRelationshipCount(), duration);
-            } else {
-                log.warn("知识图谱构建失败: documentId={}, error={}", documentId, result.getErrorMessage());
-            }
-
-        } catch (Exception e) {
-            // 知识图谱构建失败不影响主流程,只记录日志
-            log.warn("自动构建知识图谱失败(不影响文档处理): documentId={}, error={}",
-                documentId, e.getMessage());
+    private String loadParsedContent(Long documentId) {
+        String content = documentESService.getDocumentContent(documentId);
+        if (StrUtil.isBlank(content)) {
+            throw new BusinessException("未找到解析结果，需从解析阶段重新处理");
         }
+        return content;
     }
 }
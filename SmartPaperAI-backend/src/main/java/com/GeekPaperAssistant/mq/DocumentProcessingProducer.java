@@ -1,12 +1,18 @@
 package com.GeekPaperAssistant.mq;
 
 import com.GeekPaperAssistant.config.RabbitMQConfig;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
 import com.GeekPaperAssistant.model.dto.DocumentProcessingMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
 /**
  * 文档处理生产者
  * 
@@ -17,7 +23,22 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class DocumentProcessingProducer {
     
+    /**
+     * 索引后处理消息的处理类型
+     */
+    public static final String INDEXED = "indexed";
+
     private final RabbitTemplate rabbitTemplate;
+    private final RAGProperties ragConfig;
+
+    /**
+     * 死信重放结果
+     *
+     * @param replayed 重新投递条数
+     * @param dropped 丢弃条数（无法解析或文档已删除）
+     */
+    public record ReplayResult(int replayed, int dropped) {
+    }
 
     
     /**
@@ -38,16 +59,158 @@ public class DocumentProcessingProducer {
      * @param taskId 任务ID
      */
     public void sendDocumentProcessingMessage(Long documentId, Long userId, Long taskId) {
+        sendDocumentProcessingMessage(documentId, userId, taskId, null);
+    }
+    
+    /**
+     * 发送文档处理消息（按文件大小选择入库通道）
+     * 
+     * @param documentId 文档ID
+     * @param userId 用户ID
+     * @param taskId 任务ID
+     * @param fileSize 原始文件大小（字节），为空时走普通通道
+     */
+    public void sendDocumentProcessingMessage(Long documentId, Long userId, Long taskId, Long fileSize) {
+        sendStageMessage(documentId, userId, taskId, IngestionStage.PARSE, laneOf(fileSize));
+    }
+
+    /**
+     * 投递入库阶段消息（阶段完成后投递下一阶段，重试时投递失败阶段）
+     *
+     * @param documentId 文档ID
+     * @param userId 用户ID
+     * @param taskId 任务ID
+     * @param stage 入库阶段
+     * @param lane 入库通道
+     */
+    public void sendStageMessage(Long documentId, Long userId, Long taskId, IngestionStage stage, IngestionLane lane) {
         DocumentProcessingMessage message = DocumentProcessingMessage.builder()
             .documentId(documentId)
             .userId(userId)
             .taskId(taskId)
-            .processingType("full")
+            .processingType(stage.getCode())
+            .lane(lane.getCode())
             .build();
         
-        rabbitTemplate.convertAndSend(RabbitMQConfig.DOCUMENT_PROCESSING_QUEUE, message);
+        rabbitTemplate.convertAndSend(stage.queue(lane), message);
         
-        log.info("发送文档处理任务到队列: documentId={}, userId={}, taskId={}", documentId, userId, taskId);
+        log.info("发送文档处理任务到队列: documentId={}, userId={}, taskId={}, stage={}, lane={}",
+            documentId, userId, taskId, stage.getCode(), lane.getCode());
+    }
+
+    /**
+     * 发布索引后处理消息：向量入库完成后经 ican.rag.indexing 扇出到元数据抽取、知识图谱、全文索引队列
+     *
+     * @param documentId 文档ID
+     * @param userId 用户ID
+     * @param taskId 任务ID
+     */
+    public void publishIndexingMessage(Long documentId, Long userId, Long taskId) {
+        DocumentProcessingMessage message = DocumentProcessingMessage.builder()
+            .documentId(documentId)
+            .userId(userId)
+            .taskId(taskId)
+            .processingType(INDEXED)
+            .build();
+
+        rabbitTemplate.convertAndSend(RabbitMQConfig.RAG_INDEXING_EXCHANGE, "", message);
+
+        log.info("发布索引后处理消息: documentId={}, userId={}, taskId={}", documentId, userId, taskId);
+    }
+
+    /**
+     * 按文件大小选择入库通道
+     *
+     * @param fileSize 原始文件大小（字节）
+     */
+    public IngestionLane laneOf(Long fileSize) {
+        return IngestionLane.of(fileSize, ragConfig.getIngestion().getLargeFileThreshold().toBytes());
+    }
+
+    /**
+     * 投递延迟重试：按重试次数进入对应级别的延迟队列，到期后回到原阶段队列
+     *
+     * @param message 原消息
+     * @param queue 原阶段队列
+     * @param attempt 第几次重试（1 起）
+     */
+    public void sendRetryMessage(DocumentProcessingMessage message, String queue, int attempt) {
+        int level = Math.max(1, Math.min(attempt, ragConfig.getIngestion().getRetryDelays().size()));
+        rabbitTemplate.convertAndSend(RabbitMQConfig.DOCUMENT_RETRY_EXCHANGE, level + "." + queue, message);
+        
+        log.info("文档处理消息进入延迟重试: documentId={}, taskId={}, queue={}, attempt={}, delay={}",
+            message.getDocumentId(), message.getTaskId(), queue, attempt,
+            ragConfig.getIngestion().getRetryDelays().get(level - 1));
     }
-}
 
+    /**
+     * 投递到死信队列（重试耗尽），保留原阶段队列与失败原因供重放
+     *
+     * @param message 原消息
+     * @param queue 原阶段队列
+     * @param error 失败原因
+     */
+    public void sendDeadLetter(DocumentProcessingMessage message, String queue, String error) {
+        rabbitTemplate.convertAndSend(RabbitMQConfig.DOCUMENT_DEAD_LETTER_EXCHANGE,
+            RabbitMQConfig.DOCUMENT_DEAD_LETTER_QUEUE, message, msg -> {
+                msg.getMessageProperties().setHeader(RabbitMQConfig.HEADER_ORIGINAL_QUEUE, queue);
+                msg.getMessageProperties().setHeader(RabbitMQConfig.HEADER_ERROR, error);
+                return msg;
+            });
+        
+        log.warn("文档处理消息进入死信队列: documentId={}, taskId={}, queue={}, error={}",
+            message.getDocumentId(), message.getTaskId(), queue, error);
+    }
+
+    /**
+     * 从死信队列取出消息并重新投递到原阶段队列
+     *
+     * @param limit 最多重放条数
+     * @param beforeReplay 重放前回调（重置任务状态等），返回 false 时丢弃该消息
+     * @return 重放结果
+     */
+    public ReplayResult replayDeadLetters(int limit, Predicate<DocumentProcessingMessage> beforeReplay) {
+        int replayed = 0;
+        int dropped = 0;
+        for (int i = 0; i < limit; i++) {
+            Message deadLetter = rabbitTemplate.receive(RabbitMQConfig.DOCUMENT_DEAD_LETTER_QUEUE);
+            if (deadLetter == null) {
+                break;
+            }
+
+            String queue = originalQueueOf(deadLetter);
+            DocumentProcessingMessage message;
+            try {
+                message = (DocumentProcessingMessage) rabbitTemplate.getMessageConverter().fromMessage(deadLetter);
+            } catch (Exception e) {
+                log.warn("死信消息无法解析，丢弃: queue={}, error={}", queue, e.getMessage());
+                dropped++;
+                continue;
+            }
+
+            if (!beforeReplay.test(message)) {
+                dropped++;
+                continue;
+            }
+            rabbitTemplate.convertAndSend(queue, message);
+            replayed++;
+            log.info("死信消息已重放: documentId={}, taskId={}, queue={}", message.getDocumentId(), message.getTaskId(), queue);
+        }
+        return new ReplayResult(replayed, dropped);
+    }
+
+    /**
+     * 死信消息原本所在的阶段队列：优先取投递时写入的消息头，其次取 Broker 死信时记录的 x-death，均缺失时回到入口队列
+     */
+    private String originalQueueOf(Message deadLetter) {
+        Object queue = deadLetter.getMessageProperties().getHeader(RabbitMQConfig.HEADER_ORIGINAL_QUEUE);
+        if (queue != null) {
+            return queue.toString();
+        }
+        List<Map<String, ?>> xDeath = deadLetter.getMessageProperties().getXDeathHeader();
+        if (xDeath != null && !xDeath.isEmpty() && xDeath.get(0).get("queue") != null) {
+            return xDeath.get(0).get("queue").toString();
+        }
+        return RabbitMQConfig.DOCUMENT_PROCESSING_QUEUE;
+    }
+}
@@ -0,0 +1,54 @@
+package com.GeekPaperAssistant.mq;
+
+import com.GeekPaperAssistant.config.RabbitMQConfig;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 文档入库通道
+ *
+ * <p>按原始文件大小分流：大文件走独立队列和独立消费者，批量导入大文件时小文件不必排在其后</p>
+ *
+ * @author 席崇援
+ */
+@Getter
+@RequiredArgsConstructor
+public enum IngestionLane {
+
+    /**
+     * 普通通道（小文件）
+     */
+    STANDARD("standard", ""),
+
+    /**
+     * 大文件通道
+     */
+    LARGE("large", RabbitMQConfig.LARGE_LANE_SUFFIX);
+
+    /**
+     * 通道编码（消息 lane 字段与监控指标 lane 标签的取值）
+     */
+    private final String code;
+
+    /**
+     * 队列名后缀
+     */
+    private final String queueSuffix;
+
+    /**
+     * 按文件大小选择通道，大小未知时走普通通道
+     *
+     * @param fileSize 文件大小（字节）
+     * @param threshold 大文件阈值（字节）
+     */
+    public static IngestionLane of(Long fileSize, long threshold) {
+        return fileSize != null && fileSize >= threshold ? LARGE : STANDARD;
+    }
+
+    /**
+     * 按编码查找通道，未知编码（含旧版本消息）按普通通道处理
+     */
+    public static IngestionLane of(String code) {
+        return LARGE.code.equals(code) ? LARGE : STANDARD;
+    }
+}
@@ -0,0 +1,145 @@
+package com.GeekPaperAssistant.mq;
+
+import com.GeekPaperAssistant.config.RabbitMQConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文档入库监控指标
+ *
+ * <p>rag.ingestion.queue.depth{stage, lane}：各阶段各通道队列积压消息数（采集时向 Broker 查询）</p>
+ * <p>rag.ingestion.stage{stage, lane, outcome}：各阶段各通道单条消息处理耗时</p>
+ * <p>rag.ingestion.retry / rag.ingestion.dead.letter{stage, lane}：进入延迟重试、死信队列的消息数；
+ * rag.ingestion.dead.letter.depth：死信队列积压消息数</p>
+ * <p>rag.ingestion.post.process{task, outcome} / rag.ingestion.post.process.depth{task}：
+ * 索引后处理（元数据、知识图谱、全文索引）耗时与队列积压</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Component
+public class IngestionMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public IngestionMetrics(MeterRegistry meterRegistry, AmqpAdmin amqpAdmin) {
+        this.meterRegistry = meterRegistry;
+
+        for (IngestionStage stage : IngestionStage.values()) {
+            for (IngestionLane lane : IngestionLane.values()) {
+                String queue = stage.queue(lane);
+                Gauge.builder("rag.ingestion.queue.depth", () -> queueDepth(amqpAdmin, queue))
+                        .tag("stage", stage.getCode())
+                        .tag("lane", lane.getCode())
+                        .description("入库阶段队列积压消息数")
+                        .register(meterRegistry);
+            }
+        }
+        Gauge.builder("rag.ingestion.dead.letter.depth",
+                        () -> queueDepth(amqpAdmin, RabbitMQConfig.DOCUMENT_DEAD_LETTER_QUEUE))
+                .description("入库死信队列积压消息数")
+                .register(meterRegistry);
+        Map.of("metadata", RabbitMQConfig.RAG_INDEXING_METADATA_QUEUE,
+                "graph", RabbitMQConfig.RAG_INDEXING_GRAPH_QUEUE,
+                "fulltext", RabbitMQConfig.RAG_INDEXING_FULLTEXT_QUEUE)
+                .forEach((task, queue) -> Gauge.builder("rag.ingestion.post.process.depth", () -> queueDepth(amqpAdmin, queue))
+                        .tag("task", task)
+                        .description("索引后处理队列积压消息数")
+                        .register(meterRegistry));
+    }
+
+    /**
+     * 记录阶段处理耗时
+     *
+     * @param outcome success / failed / skipped
+     */
+    public void recordStage(IngestionStage stage, IngestionLane lane, String outcome, long durationMillis) {
+        Timer.builder("rag.ingestion.stage")
+                .tag("stage", stage.getCode())
+                .tag("lane", lane.getCode())
+                .tag("outcome", outcome)
+                .description("入库阶段处理耗时")
+                .register(meterRegistry)
+                .record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次自动重试
+     */
+    public void recordRetry(IngestionStage stage, IngestionLane lane) {
+        Counter.builder("rag.ingestion.retry")
+                .tag("stage", stage.getCode())
+                .tag("lane", lane.getCode())
+                .description("入库阶段失败后进入延迟重试的消息数")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录一次进入死信队列
+     */
+    public void recordDeadLetter(IngestionStage stage, IngestionLane lane) {
+        Counter.builder("rag.ingestion.dead.letter")
+                .tag("stage", stage.getCode())
+                .tag("lane", lane.getCode())
+                .description("重试耗尽进入死信队列的消息数")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录索引后处理耗时
+     *
+     * @param task metadata / graph / fulltext
+     * @param outcome success / failed / skipped
+     */
+    public void recordPostProcess(String task, String outcome, long durationMillis) {
+        Timer.builder("rag.ingestion.post.process")
+                .tag("task", task)
+                .tag("outcome", outcome)
+                .description("索引后处理耗时")
+                .register(meterRegistry)
+                .record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次索引后处理自动重试
+     */
+    public void recordPostProcessRetry(String task) {
+        Counter.builder("rag.ingestion.post.process.retry")
+                .tag("task", task)
+                .description("索引后处理失败后进入延迟重试的消息数")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录一次索引后处理进入死信队列
+     */
+    public void recordPostProcessDeadLetter(String task) {
+        Counter.builder("rag.ingestion.post.process.dead.letter")
+                .tag("task", task)
+                .description("索引后处理重试耗尽进入死信队列的消息数")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static double queueDepth(AmqpAdmin amqpAdmin, String queue) {
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            return info == null ? Double.NaN : info.getMessageCount();
+        } catch (Exception e) {
+            log.debug("查询队列积压失败: queue={}, error={}", queue, e.getMessage());
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.GeekPaperAssistant.mq;
+
+import com.GeekPaperAssistant.config.RabbitMQConfig;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 文档入库阶段
+ *
+ * <p>解析 → 结构抽取 → 分块 → 向量化，每个阶段一个队列，
+ * 阶段完成后在 document_task 记录检查点并投递下一阶段；失败重试时从失败阶段继续</p>
+ *
+ * @author 席崇援
+ */
+@Getter
+@RequiredArgsConstructor
+public enum IngestionStage {
+
+    /**
+     * 解析原始文件为纯文本，文本写入文档级全文索引作为检查点
+     */
+    PARSE("parse", RabbitMQConfig.DOCUMENT_PROCESSING_QUEUE, 20),
+
+    /**
+     * GROBID 抽取论文章节结构，结果保存在任务检查点中
+     */
+    STRUCTURE("structure", RabbitMQConfig.DOCUMENT_STRUCTURE_QUEUE, 35),
+
+    /**
+     * 分块并落库（预分配向量ID）
+     */
+    CHUNK("chunk", RabbitMQConfig.DOCUMENT_CHUNK_QUEUE, 45),
+
+    /**
+     * 按批次向量化写入向量库，每批完成后记录已向量化的块数；完成后文档可检索，
+     * 元数据抽取、知识图谱与全文索引状态同步经 ican.rag.indexing 扇出异步处理
+     */
+    EMBED("embed", RabbitMQConfig.DOCUMENT_EMBED_QUEUE, 55);
+
+    /**
+     * 阶段编码（消息 processingType 与 document_task.current_stage 的取值）
+     */
+    private final String code;
+
+    /**
+     * 阶段队列
+     */
+    private final String queue;
+
+    /**
+     * 阶段开始时的任务进度
+     */
+    private final int progress;
+
+    /**
+     * 指定通道的阶段队列
+     */
+    public String queue(IngestionLane lane) {
+        return queue + lane.getQueueSuffix();
+    }
+
+    /**
+     * 下一阶段，最后一个阶段返回 null
+     */
+    public IngestionStage next() {
+        IngestionStage[] stages = values();
+        return ordinal() + 1 < stages.length ? stages[ordinal() + 1] : null;
+    }
+
+    /**
+     * 按编码查找阶段，未知编码（含旧版本消息的 full）按解析阶段处理
+     */
+    public static IngestionStage of(String code) {
+        for (IngestionStage stage : values()) {
+            if (stage.code.equals(code)) {
+                return stage;
+            }
+        }
+        return PARSE;
+    }
+}
@@ -0,0 +1,243 @@
+package com.GeekPaperAssistant.repository;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.DeleteByQueryResponse;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.UpdateByQueryResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.json.JsonData;
+import com.GeekPaperAssistant.model.entity.DocumentChunkES;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Elasticsearch 文档块仓库
+ * 使用原生 Elasticsearch Java API
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class DocumentChunkESRepository {
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    public static final String INDEX_NAME = "ican_document_chunks";
+
+    private static final String EMBEDDING_FIELD = "embedding";
+
+    /**
+     * 批量保存文档块（单次 bulk 请求）
+     */
+    public void saveAll(List<DocumentChunkES> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        try {
+            BulkRequest.Builder bulk = new BulkRequest.Builder();
+            for (DocumentChunkES chunk : chunks) {
+                bulk.operations(op -> op.index(i -> i
+                    .index(INDEX_NAME)
+                    .id(chunk.getVectorId())
+                    .document(chunk)
+                ));
+            }
+
+            BulkResponse response = elasticsearchClient.bulk(bulk.build());
+            if (response.errors()) {
+                // 部分失败也抛出，由索引后处理整体重试（按向量ID覆盖写入，已成功的块重复写入无副作用）
+                long failed = response.items().stream().filter(item -> item.error() != null).count();
+                throw new RuntimeException("批量索引文档块部分失败: total=" + chunks.size() + ", failed=" + failed);
+            }
+            log.debug("批量索引文档块: count={}", chunks.size());
+        } catch (IOException e) {
+            log.error("批量索引文档块失败: count={}", chunks.size(), e);
+            throw new RuntimeException("批量索引文档块失败", e);
+        }
+    }
+
+    /**
+     * 删除文档的全部块
+     *
+     * @return 删除数量
+     */
+    public long deleteByDocumentId(Long documentId) {
+        try {
+            DeleteByQueryResponse response = elasticsearchClient.deleteByQuery(d -> d
+                .index(INDEX_NAME)
+                .query(q -> q.term(t -> t.field("documentId").value(documentId)))
+                .refresh(true)
+            );
+            Long deleted = response.deleted();
+            return deleted != null ? deleted : 0L;
+        } catch (IOException e) {
+            log.error("删除文档块索引失败: documentId={}", documentId, e);
+            throw new RuntimeException("删除文档块索引失败", e);
+        }
+    }
+
+    /**
+     * 更新一批文档全部块的知识库ID（文档移入 / 移出知识库）
+     *
+     * @return 更新数量
+     */
+    public long updateKbIdByDocumentIds(List<Long> documentIds, Long kbId) {
+        try {
+            List<FieldValue> ids = documentIds.stream().map(FieldValue::of).toList();
+            UpdateByQueryResponse response = elasticsearchClient.updateByQuery(u -> u
+                .index(INDEX_NAME)
+                .query(q -> q.terms(t -> t.field("documentId").terms(v -> v.value(ids))))
+                .script(s -> s.inline(i -> i
+                    .source("ctx._source.kbId = params.kbId")
+                    .params("kbId", JsonData.of(kbId))))
+                .conflicts(Conflicts.Proceed)
+                .refresh(true)
+            );
+            Long updated = response.updated();
+            return updated != null ? updated : 0L;
+        } catch (IOException e) {
+            log.error("更新文档块知识库ID失败: documentIds={}, kbId={}", documentIds, kbId, e);
+            throw new RuntimeException("更新文档块知识库ID失败", e);
+        }
+    }
+
+    /**
+     * 块级 BM25 检索
+     *
+     * @param filters 过滤条件（用户/文档范围），不参与评分
+     * @param query   搜索查询
+     * @param topK    返回数量
+     * @return 命中的文档块（score 为 BM25 评分）
+     */
+    public List<DocumentChunkES> search(List<Query> filters, String query, int topK) {
+        try {
+            SearchResponse<DocumentChunkES> response = elasticsearchClient.search(s -> s
+                .index(INDEX_NAME)
+                .source(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)))
+                .query(q -> q
+                    .bool(b -> b
+                        .filter(filters)
+                        .must(m -> m.multiMatch(mm -> mm
+                            .query(query)
+                            .fields("content", "sectionTitle^2")
+                        ))
+                    )
+                )
+                .size(topK),
+                DocumentChunkES.class
+            );
+            return toChunks(response);
+        } catch (IOException e) {
+            log.error("块级全文检索失败: query={}", query, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 块级混合检索：kNN 与 BM25 两路放在同一次 _msearch 请求中执行，一次往返取回两路结果
+     *
+     * <p>两路得分量纲不同(kNN 位于 0-1，BM25 无上界)，不在 ES 侧直接相加，由调用方归一化后融合</p>
+     *
+     * @param filters       过滤条件（用户/文档范围），同时作为 kNN 预过滤和 BM25 过滤，不参与评分
+     * @param query         搜索查询
+     * @param queryVector   查询向量
+     * @param topK          每路返回数量
+     * @param numCandidates kNN 每个分片的候选数
+     * @param similarity    kNN 最低余弦相似度(可为 null)
+     * @return 两路命中（kNN 得分为 (1 + cos) / 2，BM25 为原始评分）；某一路失败时该路为空列表
+     */
+    public HybridHits hybridSearch(List<Query> filters, String query, float[] queryVector, int topK,
+                                   int numCandidates, Float similarity) {
+        List<Float> vector = new ArrayList<>(queryVector.length);
+        for (float v : queryVector) {
+            vector.add(v);
+        }
+
+        try {
+            MsearchResponse<DocumentChunkES> response = elasticsearchClient.msearch(m -> m
+                .searches(s -> s
+                    .header(h -> h.index(INDEX_NAME))
+                    .body(b -> b
+                        .source(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)))
+                        .knn(k -> k
+                            .field(EMBEDDING_FIELD)
+                            .queryVector(vector)
+                            .k(topK)
+                            .numCandidates(numCandidates)
+                            .similarity(similarity)
+                            .filter(filters)
+                        )
+                        .size(topK)
+                    )
+                )
+                .searches(s -> s
+                    .header(h -> h.index(INDEX_NAME))
+                    .body(b -> b
+                        .source(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)))
+                        .query(q -> q
+                            .bool(bq -> bq
+                                .filter(filters)
+                                .must(mq -> mq.multiMatch(mm -> mm
+                                    .query(query)
+                                    .fields("content", "sectionTitle^2")
+                                ))
+                            )
+                        )
+                        .size(topK)
+                    )
+                ),
+                DocumentChunkES.class
+            );
+            List<MultiSearchResponseItem<DocumentChunkES>> items = response.responses();
+            return new HybridHits(toChunks(items.get(0), "kNN"), toChunks(items.get(1), "BM25"));
+        } catch (IOException e) {
+            log.error("块级混合检索失败: query={}, topK={}", query, topK, e);
+            return new HybridHits(new ArrayList<>(), new ArrayList<>());
+        }
+    }
+
+    /**
+     * 混合检索两路命中
+     *
+     * @param vectorHits kNN 命中
+     * @param textHits   BM25 命中
+     */
+    public record HybridHits(List<DocumentChunkES> vectorHits, List<DocumentChunkES> textHits) {
+    }
+
+    private List<DocumentChunkES> toChunks(MultiSearchResponseItem<DocumentChunkES> item, String leg) {
+        if (item.isFailure()) {
+            log.error("块级混合检索{}分支失败: {}", leg, item.failure().error().reason());
+            return new ArrayList<>();
+        }
+        return toChunks(item.result());
+    }
+
+    private List<DocumentChunkES> toChunks(ResponseBody<DocumentChunkES> response) {
+        List<DocumentChunkES> results = new ArrayList<>();
+        for (Hit<DocumentChunkES> hit : response.hits().hits()) {
+            DocumentChunkES chunk = hit.source();
+            if (chunk == null) {
+                continue;
+            }
+            chunk.setVectorId(hit.id());
+            chunk.setScore(hit.score() != null ? hit.score() : 0.0);
+            results.add(chunk);
+        }
+        return results;
+    }
+}
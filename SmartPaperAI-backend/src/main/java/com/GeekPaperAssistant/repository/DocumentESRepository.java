@@ -2,6 +2,7 @@ package com.GeekPaperAssistant.repository;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.core.*;
+import co.elastic.clients.json.JsonData;
 import com.GeekPaperAssistant.model.entity.DocumentES;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -169,6 +170,27 @@ public class DocumentESRepository {
         }
     }
     
+    /**
+     * 在文档内容末尾追加文本（脚本更新，不读取已有内容）
+     */
+    public void appendContent(Long id, String text) {
+        try {
+            UpdateResponse<DocumentES> response = elasticsearchClient.update(u -> u
+                .index(INDEX_NAME)
+                .id(id.toString())
+                .script(s -> s.inline(i -> i
+                    .source("ctx._source.content = (ctx._source.content == null ? '' : ctx._source.content) + params.text")
+                    .params("text", JsonData.of(text))))
+                .retryOnConflict(3),
+                DocumentES.class
+            );
+            log.debug("追加文档内容: id={}, length={}, result={}", id, text.length(), response.result());
+        } catch (IOException e) {
+            log.error("追加文档内容失败: id={}", id, e);
+            throw new RuntimeException("追加文档内容失败", e);
+        }
+    }
+    
     /**
      * 删除文档
      */
@@ -0,0 +1,72 @@
+package com.GeekPaperAssistant.repository;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+
+/**
+ * 向量索引只读仓库
+ *
+ * <p>直接读取 Spring AI VectorStore 索引(spring-ai-document-index)中已存储的 embedding，
+ * 供重排序等环节复用，避免对检索结果再次调用嵌入模型</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Repository
+public class VectorEmbeddingRepository {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final String indexName;
+
+    public VectorEmbeddingRepository(ElasticsearchClient elasticsearchClient,
+                                     @Value("${spring.ai.vectorstore.elasticsearch.index-name:spring-ai-document-index}") String indexName) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.indexName = indexName;
+    }
+
+    /**
+     * 按向量ID批量读取已存储的 embedding（单次 mget）
+     *
+     * @param vectorIds 向量ID（即 VectorStore 返回的 Document#getId）
+     * @return 向量ID -> embedding，读取失败或不存在的ID不在结果中
+     */
+    public Map<String, float[]> findEmbeddingsByIds(Collection<String> vectorIds) {
+        Map<String, float[]> result = new HashMap<>();
+        if (vectorIds == null || vectorIds.isEmpty()) {
+            return result;
+        }
+
+        try {
+            MgetResponse<StoredEmbedding> response = elasticsearchClient.mget(m -> m
+                    .index(indexName)
+                    .ids(new ArrayList<>(new LinkedHashSet<>(vectorIds)))
+                    .sourceIncludes("embedding"),
+                StoredEmbedding.class
+            );
+
+            for (MultiGetResponseItem<StoredEmbedding> item : response.docs()) {
+                if (item.isResult() && item.result().found()) {
+                    StoredEmbedding source = item.result().source();
+                    if (source != null && source.embedding() != null) {
+                        result.put(item.result().id(), source.embedding());
+                    }
+                }
+            }
+            log.debug("批量读取已存储向量: 请求 {} 个, 命中 {} 个", vectorIds.size(), result.size());
+        } catch (Exception e) {
+            log.warn("批量读取已存储向量失败: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record StoredEmbedding(float[] embedding) {
+    }
+}
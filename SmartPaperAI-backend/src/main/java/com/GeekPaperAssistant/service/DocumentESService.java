@@ -1,5 +1,6 @@
 package com.GeekPaperAssistant.service;
 
+import com.GeekPaperAssistant.model.entity.DocumentChunkES;
 import com.GeekPaperAssistant.model.entity.DocumentES;
 import com.GeekPaperAssistant.model.vo.DocumentSearchResultVO;
 
@@ -38,6 +39,14 @@ public interface DocumentESService {
      * @param status 状态
      */
     void updateDocumentStatus(Long documentId, String status);
+    
+    /**
+     * 在已索引文档的内容末尾追加文本（流式入库分段写入全文，不在内存中拼接全文）
+     * 
+     * @param documentId 文档ID
+     * @param text 追加的文本
+     */
+    void appendDocumentContent(Long documentId, String text);
      
     /**
      * 全文搜索文档 - 支持按文档ID过滤
@@ -52,6 +61,41 @@ public interface DocumentESService {
      */
     List<DocumentSearchResultVO> fullTextSearchWithHighlight(Long userId, Long documentId, String query, int topK);
     
+    /**
+     * 块级全文搜索（BM25）
+     *
+     * <p>在 ican_document_chunks 中按块检索，结果可与向量检索结果按向量ID直接融合</p>
+     *
+     * @param userId 用户ID(安全过滤)
+     * @param documentId 文档ID(可选,为null时搜索所有文档)
+     * @param query 搜索查询
+     * @param topK 返回数量
+     * @return 命中的文档块，score 为 BM25 评分
+     */
+    List<DocumentChunkES> fullTextSearchChunks(Long userId, Long documentId, String query, int topK);
+
+    /**
+     * 批量索引文档块到块级全文索引
+     *
+     * @param chunks 文档块（vectorId 作为 ES _id）
+     */
+    void indexChunks(List<DocumentChunkES> chunks);
+
+    /**
+     * 删除文档在块级全文索引中的全部块
+     *
+     * @param documentId 文档ID
+     */
+    void deleteChunks(Long documentId);
+
+    /**
+     * 文档移入 / 移出知识库后同步块级全文索引中的知识库ID
+     *
+     * @param documentIds 文档ID列表
+     * @param kbId 新的知识库ID(-1 表示不属于任何知识库)
+     */
+    void updateChunksKnowledgeBase(List<Long> documentIds, Long kbId);
+    
     /**
      * 删除文档
      * 
@@ -66,4 +110,14 @@ public interface DocumentESService {
      * @return 文档列表
      */
     List<DocumentES> getUserDocuments(Long userId);
+
+    /**
+     * 获取文档在全文索引中保存的解析文本
+     *
+     * <p>用于内容相同的文件重复上传时复用已有的解析结果</p>
+     *
+     * @param documentId 文档ID
+     * @return 解析文本，不存在时返回 null
+     */
+    String getDocumentContent(Long documentId);
 }
@@ -2,6 +2,9 @@ package com.GeekPaperAssistant.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.Writer;
+import java.nio.file.Path;
+
 /**
  * 文档解析服务接口
  * 
@@ -80,5 +83,33 @@ public interface DocumentParserService {
      * @return 文本内容
      */
     String parseMarkdownFromBytes(byte[] fileData);
+    
+    /**
+     * 流式解析本地文件：解析出的文本边解析边写出，不在内存中保留原始文件
+     * 
+     * <p>字符数达到该扩展名配置的上限(rag.document.parse-char-limits)时停止解析，已写出的文本保留</p>
+     * 
+     * @param path 文件路径
+     * @param extension 文件扩展名（小写，不含点）
+     * @param writer 文本输出（未清理的原始文本）
+     * @return 是否因达到字符上限而截断
+     */
+    boolean parseFile(Path path, String extension, Writer writer);
+    
+    /**
+     * 流式解析本地文件并清理文本
+     * 
+     * @param path 文件路径
+     * @param extension 文件扩展名（小写，不含点）
+     * @return 文本内容
+     */
+    String parseFile(Path path, String extension);
+    
+    /**
+     * 清理解析文本：移除控制字符、多余空白与空行
+     * 
+     * @param text 原始文本
+     * @return 清理后的文本
+     */
+    String cleanText(String text);
 }
-
@@ -3,6 +3,7 @@ package com.GeekPaperAssistant.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.GeekPaperAssistant.model.dto.DocumentQueryDTO;
 import com.GeekPaperAssistant.model.vo.DocumentFileVO;
+import com.GeekPaperAssistant.model.vo.DocumentMetadataVO;
 import com.GeekPaperAssistant.model.vo.DocumentSearchResultVO;
 import com.GeekPaperAssistant.model.vo.DocumentUploadVO;
 import com.GeekPaperAssistant.model.vo.DocumentVO;
@@ -10,6 +11,7 @@ import org.springframework.ai.document.Document;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.function.IntConsumer;
 
 /**
  * 文档服务接口
@@ -62,6 +64,63 @@ public interface DocumentService {
      */
     void vectorizeAndStore(Long documentId, String content, Long userId);
     
+    /**
+     * 入库结构抽取阶段：GROBID 抽取论文章节结构（仅 PDF 且 GROBID 可用时）
+     * 
+     * @param documentId 文档ID
+     * @return 章节结构，不适用或抽取失败时返回 null
+     */
+    DocumentMetadataVO extractStructure(Long documentId);
+    
+    /**
+     * 入库分块阶段：分块并落库，预分配每个块的向量ID（会先清除该文档已有的块）
+     * 
+     * @param documentId 文档ID
+     * @param content 文档内容
+     * @param structure 章节结构，可为空
+     * @return 块数
+     */
+    int chunkDocument(Long documentId, String content, DocumentMetadataVO structure);
+    
+    /**
+     * 入库向量化阶段：按块顺序分批向量化写入向量库（块级全文索引由索引后处理写入）
+     * 
+     * @param documentId 文档ID
+     * @param skipChunks 已向量化的块数（从检查点继续时跳过）
+     * @param onBatchEmbedded 每批完成后的回调，参数为累计已向量化块数，可为空
+     * @return 文档总块数
+     */
+    int embedChunks(Long documentId, int skipChunks, IntConsumer onBatchEmbedded);
+    
+    /**
+     * 是否适用流式入库：已启用流式入库，且文档不需要 GROBID 章节结构、没有可复用的同内容解析结果
+     * 
+     * @param documentId 文档ID
+     * @return 是否适用
+     */
+    boolean supportsStreamingIngest(Long documentId);
+    
+    /**
+     * 流式入库：解析文本经有界队列依次流过 清理 → 分块 → 向量化批次 → 落库，合并解析、分块、向量化三个阶段
+     * 
+     * <p>队列满时解析阻塞，内存中只保留少量批次；每批写入后即可检索。每段末尾的块与下一段拼接后重新分块，
+     * 块可以跨越分段边界；解析文本分段追加写入文档级全文索引，内存中不保留全文。
+     * 会先清除该文档已有的块，中途失败时从头重新处理</p>
+     * 
+     * @param documentId 文档ID
+     * @param onBatchEmbedded 每批完成后的回调，参数为累计已向量化块数，可为空
+     * @return 文档总块数
+     */
+    int streamIngest(Long documentId, IntConsumer onBatchEmbedded);
+    
+    /**
+     * 按块记录与向量库中已写入的向量写入块级全文索引（索引后处理执行，按向量ID覆盖写入，可重复执行）
+     * 
+     * @param documentId 文档ID
+     * @return 写入的块数
+     */
+    int indexChunkFulltext(Long documentId);
+    
     /**
      * 检索相关文档 (向量检索)
      * 
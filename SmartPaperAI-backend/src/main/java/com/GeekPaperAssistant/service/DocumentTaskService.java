@@ -1,8 +1,10 @@
 package com.GeekPaperAssistant.service;
 
+import com.GeekPaperAssistant.model.vo.DeadLetterReplayVO;
 import com.GeekPaperAssistant.model.vo.DocumentTaskVO;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 文档任务服务接口
@@ -30,6 +32,41 @@ public interface DocumentTaskService {
      */
     void updateTaskStatus(Long taskId, String status, Integer progress, String errorMessage);
     
+    /**
+     * 标记入库阶段开始
+     * 
+     * @param taskId 任务ID
+     * @param stage 阶段编码
+     * @param progress 阶段开始时的进度
+     */
+    void startStage(Long taskId, String stage, Integer progress);
+    
+    /**
+     * 标记入库阶段完成并合并检查点数据
+     * 
+     * @param taskId 任务ID
+     * @param stage 阶段编码
+     * @param checkpoint 检查点数据，可为空
+     */
+    void completeStage(Long taskId, String stage, Map<String, Object> checkpoint);
+    
+    /**
+     * 阶段内保存检查点（如向量化阶段每批完成后记录已处理块数）
+     * 
+     * @param taskId 任务ID
+     * @param checkpoint 检查点数据
+     * @param progress 进度，可为空
+     */
+    void saveCheckpoint(Long taskId, Map<String, Object> checkpoint, Integer progress);
+    
+    /**
+     * 获取任务检查点数据
+     * 
+     * @param taskId 任务ID
+     * @return 检查点数据，无则返回空 Map
+     */
+    Map<String, Object> getCheckpoint(Long taskId);
+    
     /**
      * 获取任务状态
      * 
@@ -47,13 +84,30 @@ public interface DocumentTaskService {
     List<DocumentTaskVO> getDocumentTasks(Long documentId);
     
     /**
-     * 重试失败的任务
+     * 手动重试失败的任务（从最近完成阶段的下一阶段继续，重新计算自动重试次数）
      * 
      * @param taskId 任务ID
      * @return 是否成功
      */
     boolean retryTask(Long taskId);
     
+    /**
+     * 阶段失败后登记一次自动重试（重试次数 +1，任务回到 pending）
+     * 
+     * @param taskId 任务ID
+     * @param errorMessage 失败原因
+     * @return 本次是第几次重试；已达到最大重试次数时返回 null
+     */
+    Integer scheduleAutoRetry(Long taskId, String errorMessage);
+    
+    /**
+     * 批量重放死信队列中的消息（重置任务重试次数后投递回原阶段队列）
+     * 
+     * @param limit 最多重放条数
+     * @return 重放结果
+     */
+    DeadLetterReplayVO replayDeadLetters(int limit);
+    
     /**
      * 获取待重试的任务列表
      * 
@@ -0,0 +1,34 @@
+package com.GeekPaperAssistant.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 向量缓存服务接口
+ *
+ * <p>两级缓存：进程内 LRU(L1) + Redis(L2)</p>
+ * <p>缓存键：embedding:{model}:{dimensions}:{sha256(text)}，同一文本在不同模型/维度下互不干扰</p>
+ *
+ * @author 席崇援
+ */
+public interface EmbeddingCacheService {
+
+    /**
+     * 批量读取缓存向量
+     *
+     * @param model 嵌入模型名称
+     * @param dimensions 向量维度
+     * @param texts 待查询文本
+     * @return 命中的 文本 -> 向量，未命中的文本不在结果中
+     */
+    Map<String, float[]> getAll(String model, Integer dimensions, Collection<String> texts);
+
+    /**
+     * 批量写入缓存向量（同时写入 L1 和 L2）
+     *
+     * @param model 嵌入模型名称
+     * @param dimensions 向量维度
+     * @param embeddings 文本 -> 向量
+     */
+    void putAll(String model, Integer dimensions, Map<String, float[]> embeddings);
+}
@@ -0,0 +1,23 @@
+package com.GeekPaperAssistant.service;
+
+import java.util.List;
+
+/**
+ * 向量化流水线服务接口
+ *
+ * <p>文档入库时将分块文本按批次并行向量化（并发数与调用速率受配置限制），结果写入向量缓存；
+ * 随后 VectorStore 写入时的向量化全部命中缓存，不再串行调用模型。向量缓存关闭时不做预计算</p>
+ *
+ * @author 席崇援
+ */
+public interface EmbeddingPipelineService {
+
+    /**
+     * 并行预计算文本向量
+     *
+     * @param texts 待向量化文本（按原顺序分批）
+     * @param batchSize 单次调用的最大文本数
+     * @return 成功向量化的文本数(向量缓存关闭时为 0)，未预计算的文本在 VectorStore 写入时按原流程向量化
+     */
+    int prefetch(List<String> texts, int batchSize);
+}
@@ -2,6 +2,9 @@ package com.GeekPaperAssistant.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
 /**
  * 文件存储服务接口
  * 
@@ -12,12 +15,24 @@ public interface FileStorageService {
     /**
      * 上传文件
      * 
+     * <p>文件按内容 SHA-256 命名（内容寻址），内容相同的文件只保存一份，返回相同的 URL</p>
+     * <p>文件锁从复用/写入文件起持有到当前事务结束，调用方应在同一事务内写入引用该文件的记录，
+     * 与 {@link #deleteFileIfUnreferenced} 互斥，避免复用的文件在记录提交前被删除</p>
+     * 
      * @param file 文件
      * @param bucket 存储桶名称
      * @return 文件URL
      */
     String uploadFile(MultipartFile file, String bucket);
     
+    /**
+     * 获取文件内容哈希
+     * 
+     * @param fileUrl 文件URL
+     * @return 文件内容 SHA-256，非内容寻址存储的旧文件返回 null
+     */
+    String getContentHash(String fileUrl);
+    
     /**
      * 下载文件
      * 
@@ -26,11 +41,30 @@ public interface FileStorageService {
      */
     byte[] downloadFile(String fileUrl);
     
+    /**
+     * 定位已存储文件的本地路径（不读取文件内容）
+     * 
+     * @param fileUrl 文件URL
+     * @return 文件路径
+     */
+    Path resolveFile(String fileUrl);
+    
     /**
      * 删除文件
      * 
      * @param fileUrl 文件URL
      */
     void deleteFile(String fileUrl);
+    
+    /**
+     * 文件不再被引用时删除
+     * 
+     * <p>内容寻址存储下同一文件可能被多个文档引用：在文件锁内检查引用并删除，与上传互斥</p>
+     * 
+     * @param fileUrl 文件URL
+     * @param referenced 引用检查（在文件锁内执行），返回 true 时保留文件
+     * @return 是否已删除
+     */
+    boolean deleteFileIfUnreferenced(String fileUrl, BooleanSupplier referenced);
 }
 
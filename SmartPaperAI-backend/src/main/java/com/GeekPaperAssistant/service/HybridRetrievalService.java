@@ -0,0 +1,29 @@
+package com.GeekPaperAssistant.service;
+
+import org.springframework.ai.document.Document;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 混合检索引擎接口
+ *
+ * <p>基于块级索引 ican_document_chunks 在一次 _msearch 请求中执行 kNN 向量检索和 BM25 全文检索，
+ * 用户/文档过滤条件同时下推到两路检索，两路结果按得分归一化后加权融合</p>
+ *
+ * @author 席崇援
+ */
+public interface HybridRetrievalService {
+
+    /**
+     * 块级混合检索
+     *
+     * @param userId 用户ID(安全过滤)
+     * @param documentIds 文档ID范围(可选,为空时检索用户全部文档)
+     * @param query 查询文本
+     * @param topK 返回数量
+     * @param similarityThreshold kNN 最低相似度(可选)
+     * @return 与 VectorStore 检索结果结构一致的 Document 列表(id 为向量ID，metadata 含 documentId/chunkIndex/title 等)
+     */
+    List<Document> search(Long userId, Collection<Long> documentIds, String query, int topK, Double similarityThreshold);
+}
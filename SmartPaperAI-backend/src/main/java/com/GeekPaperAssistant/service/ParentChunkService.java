@@ -0,0 +1,37 @@
+package com.GeekPaperAssistant.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+
+/**
+ * 父块展开服务接口（父子分块 small-to-big 检索）
+ *
+ * <p>检索在小块上进行以获得更精确的召回，构建问答上下文时将命中的小块展开为所属父块，
+ * 同一父块的多个命中合并为一段，减少重复上下文</p>
+ *
+ * @author 席崇援
+ */
+public interface ParentChunkService {
+
+    /**
+     * 将检索命中的小块展开为所属父块
+     *
+     * <p>保持命中顺序，同一父块只保留排名最高的一次；未关联父块的片段(旧数据或未启用父子分块)原样保留。
+     * 展开后的片段沿用命中小块的元数据与分数，chunkIndex / chunkEndIndex 改为父块首尾小块的序号，
+     * 并记录该父块命中的小块数(matchedChunks)与小块ID(matchedChunkIds)</p>
+     *
+     * @param hits 检索结果（已排序）
+     * @return 展开后的上下文片段
+     */
+    List<Document> expandToParents(List<Document> hits);
+
+    /**
+     * 获取检索结果自动展开为父块的 VectorStore 视图（供 QuestionAnswerAdvisor 等直接依赖 VectorStore 的组件使用）
+     *
+     * @param vectorStore 底层 VectorStore（可为检索缓存视图）
+     * @return 相似度检索结果展开为父块、写操作透传的 VectorStore
+     */
+    VectorStore expandingView(VectorStore vectorStore);
+}
@@ -19,9 +19,10 @@ public interface RAGService {
      * 
      * @param conversationId 会话ID
      * @param query 用户问题
+     * @param rerankMode 重排序模式(pointwise/listwise)，为空时使用配置
      * @return AI 回答和引用列表
      */
-    RagChatResultVO ragChat(String conversationId, String query);
+    RagChatResultVO ragChat(String conversationId, String query, String rerankMode);
     
     /**
      * 基于文档的问答（带引用）
@@ -29,9 +30,10 @@ public interface RAGService {
      * 
      * @param documentId 文档ID
      * @param query 用户问题
+     * @param rerankMode 重排序模式(pointwise/listwise)，为空时使用配置
      * @return AI 回答和引用列表
      */
-    RagChatResultVO documentChat(Long documentId, String query);
+    RagChatResultVO documentChat(Long documentId, String query, String rerankMode);
     
     /**
      * 基于知识库的问答（带引用）
@@ -39,8 +41,9 @@ public interface RAGService {
      * 
      * @param knowledgeBaseId 知识库ID
      * @param query 用户问题
+     * @param rerankMode 重排序模式(pointwise/listwise)，为空时不重排序
      * @return AI 回答和引用列表
      */
-    RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query);
+    RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query, String rerankMode);
 }
 
@@ -9,9 +9,28 @@ import java.util.Map;
  * @author 席崇援
  */
 public interface RerankService {
+
+    /**
+     * 逐条评分模式：每个候选单独调用一次 LLM
+     */
+    String MODE_POINTWISE = "pointwise";
+
+    /**
+     * 列表排序模式：所有候选编号后放入同一个提示词，单次 LLM 调用返回整体排序
+     */
+    String MODE_LISTWISE = "listwise";
+    
+    /**
+     * 重排序结果
+     *
+     * @param rankedIds 排序后的文档ID列表
+     * @param degraded 是否降级：LLM 调用失败、超过截止时间或输出无法解析，部分或全部候选按兜底分数/原顺序排列
+     */
+    record RerankResult(List<Long> rankedIds, boolean degraded) {
+    }
     
     /**
-     * 对候选文档进行重排序
+     * 对候选文档进行重排序（使用配置的重排序模式）
      * 
      * @param query 查询问题
      * @param candidates 候选文档列表(chunkId -> content)
@@ -19,6 +38,43 @@ public interface RerankService {
      * @return 排序后的文档ID列表
      */
     List<Long> rerank(String query, Map<Long, String> candidates, int topK);
+
+    /**
+     * 对候选文档进行重排序（指定重排序模式）
+     *
+     * @param query 查询问题
+     * @param candidates 候选文档列表(chunkId -> content)，迭代顺序视为向量检索顺序，用于 listwise 兜底
+     * @param topK 返回前K个结果
+     * @param mode 重排序模式 {@link #MODE_POINTWISE} / {@link #MODE_LISTWISE}，为空时使用配置
+     * @return 排序后的文档ID列表
+     */
+    List<Long> rerank(String query, Map<Long, String> candidates, int topK, String mode);
+
+    /**
+     * 对候选文档进行重排序（复用检索阶段已存储的候选向量）
+     *
+     * @param query 查询问题
+     * @param candidates 候选文档列表(chunkId -> content)
+     * @param topK 返回前K个结果
+     * @param mode 重排序模式，为空时使用配置
+     * @param candidateEmbeddings 候选已存储的向量(chunkId -> embedding)，缺失的候选才会重新向量化
+     * @return 排序后的文档ID列表
+     */
+    List<Long> rerank(String query, Map<Long, String> candidates, int topK, String mode,
+                      Map<Long, float[]> candidateEmbeddings);
+
+    /**
+     * 对候选文档进行重排序并返回是否降级（降级结果不应长期缓存）
+     *
+     * @param query 查询问题
+     * @param candidates 候选文档列表(chunkId -> content)
+     * @param topK 返回前K个结果
+     * @param mode 重排序模式，为空时使用配置
+     * @param candidateEmbeddings 候选已存储的向量(chunkId -> embedding)，缺失的候选才会重新向量化
+     * @return 排序结果及是否降级
+     */
+    RerankResult rerankWithStatus(String query, Map<Long, String> candidates, int topK, String mode,
+                                  Map<Long, float[]> candidateEmbeddings);
     
     /**
      * 计算查询和文档的相关性分数
@@ -0,0 +1,60 @@
+package com.GeekPaperAssistant.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存服务接口
+ *
+ * <p>缓存检索阶段（向量检索 / ES 召回 / 重排序）输出的有序片段列表，
+ * 键为 (检索阶段, 归一化查询, 规范化过滤器, topK, 相似度阈值)</p>
+ * <p>键中带有用户级版本号，用户任一文档向量化、清除向量或删除时版本号递增，旧片段不会再被读到</p>
+ *
+ * @author 席崇援
+ */
+public interface RetrievalCacheService {
+
+    /**
+     * 读取缓存的检索结果，未命中时执行 loader 并写入缓存
+     *
+     * @param userId 检索所属用户ID（决定失效范围）
+     * @param stage 检索阶段标识，不同检索链路/重排序模式使用不同标识
+     * @param request 检索请求（query、filterExpression、topK、similarityThreshold 参与缓存键）
+     * @param loader 实际检索
+     * @return 有序的文档片段列表
+     */
+    List<Document> getOrLoad(Long userId, String stage, SearchRequest request, Supplier<List<Document>> loader);
+
+    /**
+     * 读取缓存的检索结果，未命中时执行 loader，仅当本次结果可缓存时写入缓存
+     *
+     * @param userId 检索所属用户ID（决定失效范围）
+     * @param stage 检索阶段标识，不同检索链路/重排序模式使用不同标识
+     * @param request 检索请求（query、filterExpression、topK、similarityThreshold 参与缓存键）
+     * @param loader 实际检索
+     * @param cacheable loader 执行后判断本次结果是否可缓存（如重排序降级的结果不缓存，下次请求重新精排）
+     * @return 有序的文档片段列表
+     */
+    List<Document> getOrLoad(Long userId, String stage, SearchRequest request, Supplier<List<Document>> loader,
+                             BooleanSupplier cacheable);
+
+    /**
+     * 获取绑定到指定用户的缓存 VectorStore 视图（供 QuestionAnswerAdvisor 等直接依赖 VectorStore 的组件使用）
+     *
+     * @param userId 用户ID
+     * @return 相似度检索走缓存、写操作透传并使缓存失效的 VectorStore
+     */
+    VectorStore vectorStoreFor(Long userId);
+
+    /**
+     * 使指定用户的全部检索缓存失效
+     *
+     * @param userId 用户ID
+     */
+    void invalidateUser(Long userId);
+}
@@ -0,0 +1,72 @@
+package com.GeekPaperAssistant.service;
+
+import com.GeekPaperAssistant.model.vo.RagChatResultVO;
+
+/**
+ * 语义答案缓存服务接口
+ *
+ * <p>按检索范围（用户全部文档 / 单个文档 / 知识库）缓存 RAG 问答结果，
+ * 新问题与范围内已缓存问题的向量余弦相似度达到阈值时直接复用答案和引用</p>
+ * <p>范围内任一文档重建索引或删除时，相关范围整体失效；文档移入 / 移出知识库时，涉及的知识库范围失效</p>
+ *
+ * @author 席崇援
+ */
+public interface SemanticAnswerCacheService {
+
+    /**
+     * 用户全部文档范围（RAG 问答）
+     */
+    static String userScope(Long userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * 单个文档范围（文档问答）
+     */
+    static String documentScope(Long documentId) {
+        return "doc:" + documentId;
+    }
+
+    /**
+     * 知识库范围（知识库问答）
+     */
+    static String knowledgeBaseScope(Long knowledgeBaseId) {
+        return "kb:" + knowledgeBaseId;
+    }
+
+    /**
+     * 查找相似问题的缓存答案
+     *
+     * @param scope 检索范围
+     * @param mode 重排序模式(不同模式的答案互不复用)，可为空
+     * @param query 用户问题
+     * @return 命中的答案，未命中返回 null
+     */
+    RagChatResultVO get(String scope, String mode, String query);
+
+    /**
+     * 缓存问答结果
+     *
+     * @param scope 检索范围
+     * @param mode 重排序模式，可为空
+     * @param query 用户问题
+     * @param result 问答结果
+     */
+    void put(String scope, String mode, String query, RagChatResultVO result);
+
+    /**
+     * 文档内容变化（向量化完成、清除向量、删除）时，使包含该文档的所有范围失效
+     *
+     * @param documentId 文档ID
+     * @param userId 文档所属用户ID
+     * @param knowledgeBaseId 文档所属知识库ID，可为空
+     */
+    void evictDocument(Long documentId, Long userId, Long knowledgeBaseId);
+
+    /**
+     * 知识库文档集合变化（文档移入 / 移出）时，使该知识库范围失效
+     *
+     * @param knowledgeBaseId 知识库ID
+     */
+    void evictKnowledgeBase(Long knowledgeBaseId);
+}
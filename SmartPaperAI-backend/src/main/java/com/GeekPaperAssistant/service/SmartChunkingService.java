@@ -40,16 +40,17 @@ public interface SmartChunkingService {
      * 
      * <p>优势:</p>
      * <ul>
-     *   <li>保留文档结构(标题-内容关系)</li>
-     *   <li>每个块都是语义完整的章节</li>
-     *   <li>添加 overlap 确保跨章节检索</li>
+     *   <li>保留文档结构(标题-内容关系)，块不跨章节</li>
+     *   <li>未超过 chunkSize 的章节整体成块，超长章节按句子边界细分并带 overlap</li>
+     *   <li>每块以章节标题开头，章节标题、层级与块在章节内的序号记入分块结果</li>
      * </ul>
      * 
      * @param metadata 文档元数据(必须包含章节信息)
-     * @param overlapSize 章节间重叠大小(token数)
+     * @param chunkSize 目标块大小(token数)
+     * @param overlapSize 同一章节内相邻块的重叠大小(token数)
      * @return 分块结果列表
      */
-    List<ChunkResult> chunkBySections(DocumentMetadataVO metadata, int overlapSize);
+    List<ChunkResult> chunkBySections(DocumentMetadataVO metadata, int chunkSize, int overlapSize);
     
     /**
      * 语义分块 - 基于句子相似度
@@ -92,6 +93,16 @@ public interface SmartChunkingService {
          */
         private Integer sectionLevel;
         
+        /**
+         * 章节序号(章节分块时有值)
+         */
+        private Integer sectionIndex;
+        
+        /**
+         * 块在章节内的序号，从 0 开始(章节分块时有值)
+         */
+        private Integer sectionPart;
+        
         /**
          * 在原文档中的起始位置
          */
@@ -103,7 +114,7 @@ public interface SmartChunkingService {
         private int endPosition;
         
         /**
-         * Token 数量(估算)
+         * Token 数量(由分块服务按 TokenCounter 计数)
          */
         private int tokenCount;
         
@@ -115,15 +126,11 @@ public interface SmartChunkingService {
             this.type = type;
             this.startPosition = startPosition;
             this.endPosition = endPosition;
-            this.tokenCount = estimateTokenCount(content);
         }
         
         // Getters & Setters
         public String getContent() { return content; }
-        public void setContent(String content) { 
-            this.content = content;
-            this.tokenCount = estimateTokenCount(content);
-        }
+        public void setContent(String content) { this.content = content; }
         
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
@@ -134,6 +141,12 @@ public interface SmartChunkingService {
         public Integer getSectionLevel() { return sectionLevel; }
         public void setSectionLevel(Integer sectionLevel) { this.sectionLevel = sectionLevel; }
         
+        public Integer getSectionIndex() { return sectionIndex; }
+        public void setSectionIndex(Integer sectionIndex) { this.sectionIndex = sectionIndex; }
+        
+        public Integer getSectionPart() { return sectionPart; }
+        public void setSectionPart(Integer sectionPart) { this.sectionPart = sectionPart; }
+        
         public int getStartPosition() { return startPosition; }
         public void setStartPosition(int startPosition) { this.startPosition = startPosition; }
         
@@ -142,17 +155,5 @@ public interface SmartChunkingService {
         
         public int getTokenCount() { return tokenCount; }
         public void setTokenCount(int tokenCount) { this.tokenCount = tokenCount; }
-        
-        /**
-         * 估算 Token 数量(简化版: 字符数 / 4)
-         * 中文: ~1.5字符/token
-         * 英文: ~4字符/token
-         */
-        private int estimateTokenCount(String text) {
-            if (text == null) return 0;
-            // 检测是否包含中文
-            boolean hasChinese = text.chars().anyMatch(c -> c >= 0x4E00 && c <= 0x9FA5);
-            return hasChinese ? (int)(text.length() / 1.5) : (int)(text.length() / 4.0);
-        }
     }
 }
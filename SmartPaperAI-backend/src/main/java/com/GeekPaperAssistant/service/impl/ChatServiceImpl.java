@@ -32,6 +32,8 @@ import com.GeekPaperAssistant.model.vo.ChatSessionVO;
 import com.GeekPaperAssistant.service.ChatService;
 import com.GeekPaperAssistant.service.ConceptExtractionService;
 import com.GeekPaperAssistant.service.GraphEnhancedRAGService;
+import com.GeekPaperAssistant.service.ParentChunkService;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
 import com.GeekPaperAssistant.model.entity.ChatMessageDO;
 import com.GeekPaperAssistant.model.entity.ChatSessionDO;
 import com.GeekPaperAssistant.mapper.ChatMessageMapper;
@@ -58,6 +60,8 @@ public class ChatServiceImpl implements ChatService {
     private final ChatSessionMapper chatSessionMapper;
     private final ChatMessageMapper chatMessageMapper;
     private final VectorStore vectorStore;
+    private final RetrievalCacheService retrievalCacheService;
+    private final ParentChunkService parentChunkService;
 
     private final ConceptExtractionService conceptExtractionService;
     private final GraphEnhancedRAGService graphEnhancedRAGService;
@@ -202,7 +206,8 @@ public class ChatServiceImpl implements ChatService {
         SearchRequest customSearchRequest = buildCustomSearchRequest(request, userId, userMessage);
 
         // 创建针对当前查询的 QuestionAnswerAdvisor
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
+        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(
+                        parentChunkService.expandingView(retrievalCacheService.vectorStoreFor(userId)))
                 .searchRequest(customSearchRequest)
                 .build();
 
@@ -446,7 +451,8 @@ public class ChatServiceImpl implements ChatService {
         SearchRequest customSearchRequest = buildCustomSearchRequest(request, userId, userMessage);
 
         // 使用 QuestionAnswerAdvisor 自动处理 RAG
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
+        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(
+                        parentChunkService.expandingView(retrievalCacheService.vectorStoreFor(userId)))
                 .searchRequest(customSearchRequest)
                 .build();
 
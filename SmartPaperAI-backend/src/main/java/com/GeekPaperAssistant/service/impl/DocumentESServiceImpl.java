@@ -4,8 +4,11 @@ import cn.hutool.core.util.StrUtil;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.GeekPaperAssistant.model.entity.DocumentChunkES;
 import com.GeekPaperAssistant.model.entity.DocumentES;
 import com.GeekPaperAssistant.model.vo.DocumentSearchResultVO;
+import com.GeekPaperAssistant.repository.DocumentChunkESRepository;
 import com.GeekPaperAssistant.repository.DocumentESRepository;
 import com.GeekPaperAssistant.service.DocumentESService;
 import lombok.RequiredArgsConstructor;
@@ -32,6 +35,8 @@ import java.util.stream.Collectors;
 public class DocumentESServiceImpl implements DocumentESService {
     
     private final DocumentESRepository documentESRepository;
+
+    private final DocumentChunkESRepository documentChunkESRepository;
     
     private final ElasticsearchClient elasticsearchClient;
     
@@ -60,6 +65,16 @@ public class DocumentESServiceImpl implements DocumentESService {
         }
     }
     
+    @Override
+    public void appendDocumentContent(Long documentId, String text) {
+        try {
+            documentESRepository.appendContent(documentId, text);
+        } catch (Exception e) {
+            log.error("追加ES文档内容失败: documentId={}", documentId, e);
+            throw new BusinessException("追加文档内容失败: " + e.getMessage());
+        }
+    }
+    
     @Override
     public void updateDocumentStatus(Long documentId, String status) {
         try {
@@ -86,6 +101,8 @@ public class DocumentESServiceImpl implements DocumentESService {
             // 1. 使用原生 Elasticsearch Java API 构建查询
             SearchResponse<DocumentES> response = elasticsearchClient.search(s -> s
                 .index("ican_documents")
+                // 全文只用于检索和高亮，不回传 _source 中的完整内容
+                .source(src -> src.filter(f -> f.excludes("content")))
                 .query(q -> q
                     .bool(b -> {
                         // 必须匹配用户ID
@@ -205,6 +222,51 @@ public class DocumentESServiceImpl implements DocumentESService {
             .collect(Collectors.toList());
     }
     
+    @Override
+    public List<DocumentChunkES> fullTextSearchChunks(Long userId, Long documentId, String query, int topK) {
+        if (StrUtil.isBlank(query)) {
+            return new ArrayList<>();
+        }
+
+        List<Query> filters = new ArrayList<>();
+        filters.add(Query.of(q -> q.term(t -> t.field("userId").value(userId))));
+        if (documentId != null) {
+            filters.add(Query.of(q -> q.term(t -> t.field("documentId").value(documentId))));
+        }
+
+        List<DocumentChunkES> results = documentChunkESRepository.search(filters, query, topK);
+        log.info("ES块级全文搜索完成: userId={}, documentId={}, topK={}, results={}",
+            userId, documentId, topK, results.size());
+        return results;
+    }
+
+    @Override
+    public void indexChunks(List<DocumentChunkES> chunks) {
+        documentChunkESRepository.saveAll(chunks);
+    }
+
+    @Override
+    public void deleteChunks(Long documentId) {
+        try {
+            long deleted = documentChunkESRepository.deleteByDocumentId(documentId);
+            log.info("从ES删除文档块: documentId={}, count={}", documentId, deleted);
+        } catch (Exception e) {
+            log.error("从ES删除文档块失败: documentId={}", documentId, e);
+            // 不抛出异常
+        }
+    }
+    
+    @Override
+    public void updateChunksKnowledgeBase(List<Long> documentIds, Long kbId) {
+        try {
+            long updated = documentChunkESRepository.updateKbIdByDocumentIds(documentIds, kbId);
+            log.info("更新ES文档块知识库: documentIds={}, kbId={}, count={}", documentIds, kbId, updated);
+        } catch (Exception e) {
+            log.error("更新ES文档块知识库失败: documentIds={}, kbId={}", documentIds, kbId, e);
+            // 不抛出异常
+        }
+    }
+    
     @Override
     public void deleteDocument(Long documentId) {
         try {
@@ -225,4 +287,11 @@ public class DocumentESServiceImpl implements DocumentESService {
             return new ArrayList<>();
         }
     }
+
+    @Override
+    public String getDocumentContent(Long documentId) {
+        return documentESRepository.findById(documentId)
+                .map(DocumentES::getContent)
+                .orElse(null);
+    }
 }
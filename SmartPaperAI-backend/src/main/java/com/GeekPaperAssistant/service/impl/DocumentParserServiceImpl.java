@@ -1,26 +1,58 @@
 package com.GeekPaperAssistant.service.impl;
 
+import cn.hutool.core.io.FileUtil;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
 import com.GeekPaperAssistant.service.DocumentParserService;
+import com.GeekPaperAssistant.utils.TextNormalizer;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.Tika;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.SAXException;
 import top.continew.starter.core.exception.BusinessException;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Map;
 
 /**
  * 文档解析服务实现
  * 使用 Apache Tika 自动检测和解析多种文档格式
  * 
+ * <p>解析结果经 ContentHandler 边解析边写出，字符上限按文件类型显式配置(rag.document.parse-char-limits)，
+ * 不使用 Tika 默认的 10 万字符静默截断</p>
+ * 
  * @author 席崇援
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class DocumentParserServiceImpl implements DocumentParserService {
 
-    private final Tika tika = new Tika();
+    /**
+     * 扩展名 → MIME 类型（作为 Tika 类型检测的提示）
+     */
+    private static final Map<String, String> MIME_TYPES = Map.of(
+        "pdf", "application/pdf",
+        "docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+        "doc", "application/msword",
+        "txt", "text/plain",
+        "md", "text/markdown",
+        "markdown", "text/markdown"
+    );
+
+    private final Parser parser = new AutoDetectParser();
+
+    private final RAGProperties ragConfig;
     
     /**
      * 解析文档（自动检测格式）
@@ -41,10 +73,14 @@ public class DocumentParserServiceImpl implements DocumentParserService {
             log.info("开始解析文档: {}", filename);
             
             // 使用 Tika 自动检测并解析
-            String text = tika.parseToString(file.getInputStream());
+            String extension = FileUtil.extName(filename).toLowerCase();
+            StringWriter writer = new StringWriter();
+            try (TikaInputStream inputStream = TikaInputStream.get(file.getInputStream())) {
+                parse(inputStream, MIME_TYPES.get(extension), ragConfig.getDocument().getParseCharLimit(extension), writer);
+            }
             
             // 清理文本
-            text = cleanText(text);
+            String text = cleanText(writer.toString());
             
             log.info("文档解析完成: {}, 字符数={}", filename, text.length());
             return text;
@@ -96,25 +132,12 @@ public class DocumentParserServiceImpl implements DocumentParserService {
      * - 移除多余空白
      * - 标准化换行
      * - 移除特殊字符
+     * 
+     * <p>单遍扫描实现，输出与原正则链一致，见 {@link TextNormalizer}</p>
      */
-    private String cleanText(String text) {
-        if (text == null) {
-            return "";
-        }
-        
-        return text
-            // 移除特殊控制字符（保留换行符和制表符）
-            .replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F\\x7F]", "")
-            // 移除多余的空行（保留最多两个连续换行）
-            .replaceAll("\\n{3,}", "\n\n")
-            // 移除行首行尾空格和制表符
-            .replaceAll("(?m)^[\\s\\t]+|[\\s\\t]+$", "")
-            // 标准化多个空格为单个空格
-            .replaceAll("[\\s\\t]{2,}", " ")
-            // 移除多余的制表符
-            .replaceAll("\\t+", " ")
-            // 最终trim
-            .trim();
+    @Override
+    public String cleanText(String text) {
+        return TextNormalizer.normalize(text);
     }
     
     /**
@@ -123,7 +146,7 @@ public class DocumentParserServiceImpl implements DocumentParserService {
      */
     @Override
     public String parsePDFFromBytes(byte[] fileData) {
-        return parseFromBytes(fileData, "application/pdf");
+        return parseFromBytes(fileData, "pdf");
     }
     
     /**
@@ -132,7 +155,7 @@ public class DocumentParserServiceImpl implements DocumentParserService {
      */
     @Override
     public String parseWordFromBytes(byte[] fileData) {
-        return parseFromBytes(fileData, "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        return parseFromBytes(fileData, "docx");
     }
     
     /**
@@ -141,7 +164,7 @@ public class DocumentParserServiceImpl implements DocumentParserService {
      */
     @Override
     public String parseTextFromBytes(byte[] fileData) {
-        return parseFromBytes(fileData, "text/plain");
+        return parseFromBytes(fileData, "txt");
     }
     
     /**
@@ -150,7 +173,7 @@ public class DocumentParserServiceImpl implements DocumentParserService {
      */
     @Override
     public String parseMarkdownFromBytes(byte[] fileData) {
-        return parseFromBytes(fileData, "text/markdown");
+        return parseFromBytes(fileData, "md");
     }
 
     /**
@@ -158,24 +181,81 @@ public class DocumentParserServiceImpl implements DocumentParserService {
      * 使用 Tika 自动检测并解析
      *
      * @param fileData 文件字节数组
-     * @param mimeType 文件 MIME 类型（可选，用于提示）
+     * @param extension 文件扩展名（决定 MIME 类型提示和字符上限）
      * @return 解析后的文本
      */
-    private String parseFromBytes(byte[] fileData, String mimeType) {
+    private String parseFromBytes(byte[] fileData, String extension) {
         try {
-            log.info("开始从字节数组解析文档, 大小={} bytes, MIME={}", fileData.length, mimeType);
+            log.info("开始从字节数组解析文档, 大小={} bytes, type={}", fileData.length, extension);
             
-            try (InputStream inputStream = new ByteArrayInputStream(fileData)) {
-                String text = tika.parseToString(inputStream);
-                text = cleanText(text);
-                
-                log.info("文档解析完成, 字符数={}", text.length());
-                return text;
+            StringWriter writer = new StringWriter();
+            try (TikaInputStream inputStream = TikaInputStream.get(fileData)) {
+                parse(inputStream, MIME_TYPES.get(extension), ragConfig.getDocument().getParseCharLimit(extension), writer);
             }
+            String text = cleanText(writer.toString());
+            
+            log.info("文档解析完成, 字符数={}", text.length());
+            return text;
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("文档字节数组解析失败", e);
             throw new BusinessException("文档解析失败: " + e.getMessage());
         }
     }
-}
 
+    @Override
+    public boolean parseFile(Path path, String extension, Writer writer) {
+        String mimeType = MIME_TYPES.get(extension);
+        if (mimeType == null) {
+            throw new BusinessException("不支持的文件格式: " + extension);
+        }
+        // 基于文件的 TikaInputStream，PDF 等需要随机访问的格式直接读取原文件，无需再落盘临时文件
+        try (TikaInputStream inputStream = TikaInputStream.get(path)) {
+            return parse(inputStream, mimeType, ragConfig.getDocument().getParseCharLimit(extension), writer);
+        } catch (IOException e) {
+            throw new BusinessException("文档解析失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String parseFile(Path path, String extension) {
+        StringWriter writer = new StringWriter();
+        parseFile(path, extension, writer);
+        String text = cleanText(writer.toString());
+        log.info("文档流式解析完成: type={}, 字符数={}", extension, text.length());
+        return text;
+    }
+
+    /**
+     * Tika 流式解析：文本经 WriteOutContentHandler 直接写出，达到字符上限时停止解析
+     *
+     * @param inputStream Tika 输入流（由调用方关闭）
+     * @param mimeType MIME 类型提示，可为空（完全自动检测）
+     * @param charLimit 字符上限，-1 不限制
+     * @param writer 文本输出
+     * @return 是否因达到字符上限而截断
+     */
+    private boolean parse(TikaInputStream inputStream, String mimeType, int charLimit, Writer writer) {
+        WriteOutContentHandler handler = new WriteOutContentHandler(writer, charLimit);
+        Metadata metadata = new Metadata();
+        if (mimeType != null) {
+            metadata.set(Metadata.CONTENT_TYPE, mimeType);
+        }
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, parser);
+
+        try {
+            parser.parse(inputStream, new BodyContentHandler(handler), metadata, context);
+            return false;
+        } catch (SAXException e) {
+            if (handler.isWriteLimitReached(e)) {
+                log.warn("文档解析达到字符上限，后续内容已截断: MIME={}, limit={}", mimeType, charLimit);
+                return true;
+            }
+            throw new BusinessException("文档解析失败: " + e.getMessage());
+        } catch (Exception e) {
+            throw new BusinessException("文档解析失败: " + e.getMessage());
+        }
+    }
+}
@@ -3,13 +3,18 @@ package com.GeekPaperAssistant.service.impl;
 import cn.dev33.satoken.stp.StpUtil;
 import cn.hutool.core.codec.Base62;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.GeekPaperAssistant.config.CachingEmbeddingModel;
 import com.GeekPaperAssistant.config.properties.RAGProperties;
 import com.GeekPaperAssistant.model.dto.DocumentQueryDTO;
 import com.GeekPaperAssistant.model.entity.DocumentChunkDO;
+import com.GeekPaperAssistant.model.entity.DocumentChunkParentDO;
+import com.GeekPaperAssistant.model.entity.DocumentChunkES;
 import com.GeekPaperAssistant.model.entity.DocumentDO;
 import com.GeekPaperAssistant.model.entity.DocumentVectorDO;
 import com.GeekPaperAssistant.model.entity.KnowledgeBaseDO;
@@ -19,18 +24,30 @@ import com.GeekPaperAssistant.model.vo.DocumentSearchResultVO;
 import com.GeekPaperAssistant.model.vo.DocumentUploadVO;
 import com.GeekPaperAssistant.model.vo.DocumentVO;
 import com.GeekPaperAssistant.mapper.DocumentChunkMapper;
+import com.GeekPaperAssistant.mapper.DocumentChunkParentMapper;
 import com.GeekPaperAssistant.mapper.DocumentMapper;
 import com.GeekPaperAssistant.mapper.DocumentVectorMapper;
 import com.GeekPaperAssistant.mapper.KnowledgeBaseMapper;
 import com.GeekPaperAssistant.service.DocumentService;
 import com.GeekPaperAssistant.service.DocumentESService;
 import com.GeekPaperAssistant.service.DocumentParserService;
+import com.GeekPaperAssistant.service.EmbeddingCacheService;
+import com.GeekPaperAssistant.service.EmbeddingPipelineService;
 import com.GeekPaperAssistant.service.FileStorageService;
 import com.GeekPaperAssistant.service.DocumentTaskService;
 import com.GeekPaperAssistant.service.GrobidMetadataService;
 import com.GeekPaperAssistant.service.SmartChunkingService;
 import com.GeekPaperAssistant.service.KnowledgeGraphBuilderService;
 import com.GeekPaperAssistant.mq.DocumentProcessingProducer;
+import com.GeekPaperAssistant.repository.VectorEmbeddingRepository;
+import com.GeekPaperAssistant.service.HybridRetrievalService;
+import com.GeekPaperAssistant.service.ParentChunkService;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
+import com.GeekPaperAssistant.utils.RankFusion;
+import com.GeekPaperAssistant.utils.SentenceSplitter;
+import com.GeekPaperAssistant.utils.TextSegmentWriter;
+import com.GeekPaperAssistant.utils.TokenCounter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -38,6 +55,8 @@ import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -46,12 +65,24 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 import org.springframework.web.multipart.MultipartFile;
 import top.continew.starter.core.exception.BusinessException;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -71,6 +102,7 @@ public class DocumentServiceImpl implements DocumentService {
     private final FileStorageService fileStorageService;
     private final DocumentVectorMapper documentVectorMapper;
     private final DocumentChunkMapper documentChunkMapper;
+    private final DocumentChunkParentMapper documentChunkParentMapper;
     private final DocumentProcessingProducer documentProcessingProducer;
     private final KnowledgeBaseMapper knowledgeBaseMapper;
     private final DocumentTaskService documentTaskService;
@@ -78,10 +110,54 @@ public class DocumentServiceImpl implements DocumentService {
     private final GrobidMetadataService grobidMetadataService;
     private final SmartChunkingService smartChunkingService;
     private final KnowledgeGraphBuilderService knowledgeGraphBuilderService;
+    private final VectorEmbeddingRepository vectorEmbeddingRepository;
+    private final HybridRetrievalService hybridRetrievalService;
+    private final SemanticAnswerCacheService semanticAnswerCacheService;
+    private final RetrievalCacheService retrievalCacheService;
+    private final EmbeddingPipelineService embeddingPipelineService;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final TokenCounter tokenCounter;
+    private final SentenceSplitter sentenceSplitter;
+    private final ParentChunkService parentChunkService;
     
+    /**
+     * 单个分块的 token 安全上限，超过的分块直接丢弃，避免整个向量化批次失败
+     */
+    private static final int SAFE_MAX_TOKENS = 6000;
+
+    /**
+     * 分块落库时每条多行 INSERT 的行数
+     */
+    private static final int CHUNK_INSERT_BATCH_SIZE = 200;
+
+    /**
+     * 单次向量化调用的最大文本数(阿里云 text-embedding-v4 限制)
+     */
+    private static final int EMBEDDING_BATCH_SIZE = CachingEmbeddingModel.MAX_BATCH_SIZE;
+
+    /**
+     * 写入块级全文索引时每次 bulk 的块数
+     */
+    private static final int CHUNK_INDEX_BATCH_SIZE = 200;
+
+    /**
+     * 流式入库时文档级全文索引每次追加的字符数（解析文本累积到该长度后追加写入，内存中不保留全文）
+     */
+    private static final int FULLTEXT_APPEND_CHARS = 1_000_000;
+
     @Value("${spring.ai.openai.chat.options.max-tokens}")
     private Integer maxTokens;
 
+    @Value("${spring.ai.openai.embedding.options.model}")
+    private String embeddingModelName;
+
+    @Value("${spring.ai.openai.embedding.options.dimensions:#{null}}")
+    private Integer embeddingDimensions;
+
+    @Autowired
+    @Qualifier("ingestionParserExecutor")
+    private ExecutorService ingestionParserExecutor;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public DocumentUploadVO uploadDocument(MultipartFile file, String type, Long userId) {
@@ -99,6 +175,7 @@ public class DocumentServiceImpl implements DocumentService {
         document.setType(type);
         document.setFileSize(file.getSize());
         document.setFileUrl(fileUrl);
+        document.setContentHash(fileStorageService.getContentHash(fileUrl));
         document.setStatus("pending");
         document.setCreateTime(LocalDateTime.now());
         document.setUpdateTime(LocalDateTime.now());
@@ -128,7 +205,7 @@ public class DocumentServiceImpl implements DocumentService {
                     public void afterCommit() {
                         try {
                             // 事务已提交，现在可以安全地发送消息了
-                            documentProcessingProducer.sendDocumentProcessingMessage(documentId, userId, taskId);
+                            documentProcessingProducer.sendDocumentProcessingMessage(documentId, userId, taskId, document.getFileSize());
                             log.info("文档已提交异步处理队列（事务已提交）: id={}", documentId);
                         } catch (Exception e) {
                             log.error("提交文档处理消息失败: id={}", documentId, e);
@@ -252,36 +329,120 @@ public class DocumentServiceImpl implements DocumentService {
             throw new BusinessException("文档不存在");
         }
 
+        // 内容相同的文件已解析过时直接复用解析结果
+        String reusedContent = findParsedContentByHash(document);
+        if (reusedContent != null) {
+            return reusedContent;
+        }
+
+        // 根据文件类型解析
+        String extension = fileExtension(document);
+
+        // 直接从存储路径读取文件，解析文本边解析边写出，不把原始文件整体读入内存
         try {
-            // 从存储服务下载文件
-            byte[] fileData = fileStorageService.downloadFile(document.getFileUrl());
+            String content = documentParserService.parseFile(fileStorageService.resolveFile(document.getFileUrl()), extension);
 
-            // 根据文件类型解析
-            String filename = document.getTitle();
-            int dot = filename.lastIndexOf('.');
-            if (dot < 0 || dot == filename.length() - 1) {
-                throw new BusinessException("无法识别的文件类型");
-            }
-            String extension = filename.substring(dot + 1).toLowerCase();
-
-            String content;
-            // 根据文件扩展名选择解析器
-            content = switch (extension) {
-                case "pdf" -> documentParserService.parsePDFFromBytes(fileData);
-                case "docx", "doc" -> documentParserService.parseWordFromBytes(fileData);
-                case "txt" -> documentParserService.parseTextFromBytes(fileData);
-                case "md", "markdown" -> documentParserService.parseMarkdownFromBytes(fileData);
-                default -> throw new BusinessException("不支持的文件格式: " + extension);
-            };
-
-            log.info("文档解析成功: id={}, contentLength={}, fileSize={}", documentId, content.length(), fileData.length);
+            log.info("文档解析成功: id={}, contentLength={}, fileSize={}", documentId, content.length(), document.getFileSize());
             return content;
+        } catch (BusinessException e) {
+            log.error("文档解析失败: id={}", documentId, e);
+            throw e;
         } catch (Exception e) {
             log.error("文档解析失败: id={}", documentId, e);
             throw new BusinessException("文档解析失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 文档文件扩展名（小写，取自原始文件名）
+     */
+    private String fileExtension(DocumentDO document) {
+        String filename = document.getTitle();
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0 || dot == filename.length() - 1) {
+            throw new BusinessException("无法识别的文件类型");
+        }
+        return filename.substring(dot + 1).toLowerCase();
+    }
+
+    /**
+     * 按文件内容哈希查找已完成处理的同内容文档，复用其全文索引中的解析文本
+     *
+     * @return 解析文本，无可复用结果时返回 null
+     */
+    private String findParsedContentByHash(DocumentDO document) {
+        if (StrUtil.isBlank(document.getContentHash())) {
+            return null;
+        }
+        try {
+            DocumentDO source = documentMapper.selectOne(new LambdaQueryWrapper<DocumentDO>()
+                    .eq(DocumentDO::getContentHash, document.getContentHash())
+                    .eq(DocumentDO::getStatus, "completed")
+                    .ne(DocumentDO::getId, document.getId())
+                    .orderByDesc(DocumentDO::getUpdateTime)
+                    .last("limit 1"));
+            if (source == null) {
+                return null;
+            }
+            String content = documentESService.getDocumentContent(source.getId());
+            if (StrUtil.isBlank(content)) {
+                return null;
+            }
+            log.info("复用同内容文档的解析结果: documentId={}, sourceDocumentId={}, contentLength={}",
+                    document.getId(), source.getId(), content.length());
+            return content;
+        } catch (Exception e) {
+            log.warn("查找可复用的解析结果失败，按原流程解析: documentId={}, error={}", document.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 按块文本哈希查找已有块的向量，写入向量缓存
+     *
+     * <p>相同文本的块（重复上传、不同文档间的共同段落）在随后的向量化中直接命中缓存，不再调用嵌入模型；
+     * 同一哈希可能对应多个已删除向量的旧块，逐个尝试直到读到向量</p>
+     *
+     * @param textsByHash 块文本哈希 -> 块文本
+     * @return 复用的向量数
+     */
+    private int reuseEmbeddingsByHash(Map<String, String> textsByHash) {
+        if (textsByHash.isEmpty()) {
+            return 0;
+        }
+        try {
+            Map<String, List<String>> vectorIdsByHash = new HashMap<>();
+            List<String> hashes = new ArrayList<>(textsByHash.keySet());
+            for (int i = 0; i < hashes.size(); i += 500) {
+                documentChunkMapper.selectList(new LambdaQueryWrapper<DocumentChunkDO>()
+                                .select(DocumentChunkDO::getVectorId, DocumentChunkDO::getContentHash)
+                                .in(DocumentChunkDO::getContentHash, hashes.subList(i, Math.min(i + 500, hashes.size())))
+                                .isNotNull(DocumentChunkDO::getVectorId))
+                        .forEach(chunk -> vectorIdsByHash
+                                .computeIfAbsent(chunk.getContentHash(), k -> new ArrayList<>())
+                                .add(chunk.getVectorId()));
+            }
+            if (vectorIdsByHash.isEmpty()) {
+                return 0;
+            }
+
+            Map<String, float[]> embeddingsByVectorId = vectorEmbeddingRepository.findEmbeddingsByIds(
+                    vectorIdsByHash.values().stream().flatMap(List::stream).toList());
+            Map<String, float[]> reused = new HashMap<>();
+            vectorIdsByHash.forEach((hash, vectorIds) -> vectorIds.stream()
+                    .map(embeddingsByVectorId::get)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .ifPresent(embedding -> reused.put(textsByHash.get(hash), embedding)));
+
+            embeddingCacheService.putAll(embeddingModelName, embeddingDimensions, reused);
+            return reused.size();
+        } catch (Exception e) {
+            log.warn("复用已有块向量失败，按原流程向量化: error={}", e.getMessage());
+            return 0;
+        }
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void vectorizeAndStore(Long documentId, String content, Long userId) {
@@ -296,201 +457,627 @@ public class DocumentServiceImpl implements DocumentService {
         }
 
         try {
-            // 🆕 1. GROBID 元数据提取(仅针对 PDF 学术论文)
-            DocumentMetadataVO grobidMetadata = null;
-            if ("pdf".equalsIgnoreCase(document.getType()) && grobidMetadataService.isAvailable()) {
-                try {
-                    log.info("尝试使用 GROBID 提取文档结构: documentId={}", documentId);
+            // 1. 结构抽取 → 2. 分块落库 → 3. 向量化（与分阶段入库流水线共用各阶段实现）
+            DocumentMetadataVO structure = extractStructure(documentId);
+            chunkDocument(documentId, content, structure);
+            int vectors = embedChunks(documentId, 0, null);
+
+            log.info("文档向量化完成: id={}, vectors={}", documentId, vectors);
 
-                    // 从存储服务下载 PDF 文件
-                    byte[] pdfData = fileStorageService.downloadFile(document.getFileUrl());
+            // 🆕 同步到 Elasticsearch 全文索引 (用于混合搜索)
+            try {
+                indexChunkFulltext(documentId);
+                documentESService.indexDocument(
+                        documentId,
+                        userId,
+                        document.getTitle(),
+                        content, // 完整内容用于全文搜索
+                        document.getType(),
+                        document.getFileSize(),
+                        "completed");
+                log.info("文档已同步到ES全文索引: documentId={}", documentId);
+            } catch (Exception esError) {
+                log.warn("同步ES索引失败(不影响主流程): documentId={}, error={}",
+                        documentId, esError.getMessage());
+                // 不抛异常,避免影响向量存储主流程
+            }
 
-                    // 调用 GROBID 提取元数据
-                    grobidMetadata = grobidMetadataService.extractMetadata(pdfData, document.getTitle());
+            // 文档内容已更新，包含该文档的检索缓存与问答缓存失效
+            evictQueryCaches(document);
 
-                    if (grobidMetadata != null && grobidMetadata.getSections() != null) {
-                        log.info("GROBID 提取成功: documentId={}, sections={}",
-                                documentId, grobidMetadata.getSections().size());
-                    }
+        } catch (Exception e) {
+            log.error("文档向量化失败: id={}", documentId, e);
+            throw new BusinessException("文档向量化失败: " + e.getMessage());
+        }
+    }
 
-                } catch (Exception e) {
-                    log.warn("GROBID 提取失败,继续使用普通分块: documentId={}", documentId, e);
-                }
+    @Override
+    public DocumentMetadataVO extractStructure(Long documentId) {
+        DocumentDO document = documentMapper.selectById(documentId);
+        if (document == null) {
+            throw new BusinessException("文档不存在");
+        }
+
+        // GROBID 元数据提取(仅针对 PDF 学术论文)
+        if (!"pdf".equalsIgnoreCase(document.getType()) || !grobidMetadataService.isAvailable()) {
+            return null;
+        }
+        try {
+            log.info("尝试使用 GROBID 提取文档结构: documentId={}", documentId);
+
+            // 从存储服务下载 PDF 文件
+            byte[] pdfData = fileStorageService.downloadFile(document.getFileUrl());
+
+            // 调用 GROBID 提取元数据
+            DocumentMetadataVO grobidMetadata = grobidMetadataService.extractMetadata(pdfData, document.getTitle());
+
+            if (grobidMetadata != null && grobidMetadata.getSections() != null) {
+                log.info("GROBID 提取成功: documentId={}, sections={}",
+                        documentId, grobidMetadata.getSections().size());
             }
+            return grobidMetadata;
+        } catch (Exception e) {
+            log.warn("GROBID 提取失败,继续使用普通分块: documentId={}", documentId, e);
+            return null;
+        }
+    }
 
-            // 🆕 2. 智能分块(替代 TokenTextSplitter)
-            List<SmartChunkingService.ChunkResult> smartChunks = smartChunkingService.smartChunk(
-                    content,
-                    grobidMetadata, // 有章节信息时使用章节分块
-                    ragConfig.getDocument().getChunkSize(),
-                    ragConfig.getDocument().getChunkOverlap());
-            log.info("智能分块完成: documentId={}, chunks={}, strategy={}",
-                    documentId, smartChunks.size(),
-                    smartChunks.isEmpty() ? "none" : smartChunks.get(0).getType());
-
-            List<Document> documents = new ArrayList<>();
-            int globalChunkIndex = 0;
-
-            for (int i = 0; i < smartChunks.size(); i++) {
-                SmartChunkingService.ChunkResult chunk = smartChunks.get(i);
-
-                // 估算 token 数 (保守估计,留足余量)
-                int estimatedTokens = estimateTokenCount(chunk.getContent());
-
-                List<String> subChunks;
-                if (estimatedTokens > maxTokens) {
-                    // 分块过长，需要二次分割
-                    log.warn("检测到超长分块: chunkIndex={}, estimatedTokens={}, 进行二次分割",
-                            i, estimatedTokens);
-                    subChunks = splitLongText(chunk.getContent(), maxTokens);
-                    log.info("二次分割完成: 原始1块 -> {}块", subChunks.size());
-                } else {
-                    subChunks = List.of(chunk.getContent());
-                }
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int chunkDocument(Long documentId, String content, DocumentMetadataVO structure) {
+        DocumentDO document = documentMapper.selectById(documentId);
+        if (document == null) {
+            throw new BusinessException("文档不存在");
+        }
 
-                // 为每个子分块创建 Document
-                for (int j = 0; j < subChunks.size(); j++) {
-                    String subContent = subChunks.get(j);
-                    Map<String, Object> metadata = new HashMap<>();
-
-                    // 基础元数据
-                    metadata.put("documentId", Base62.encode(String.valueOf(documentId)));
-                    metadata.put("userId", Base62.encode(String.valueOf(userId)));
-                    metadata.put("title", document.getTitle());
-                    metadata.put("type", document.getType());
-                    metadata.put("chunkIndex", globalChunkIndex++);
-                    metadata.put("timestamp", System.currentTimeMillis());
-
-                    // 🆕 智能分块元数据
-                    metadata.put("chunkType", chunk.getType());
-                    metadata.put("tokenCount", estimateTokenCount(subContent));
-
-                    // 如果是二次分割的子块，标记原始分块索引
-                    if (subChunks.size() > 1) {
-                        metadata.put("originalChunkIndex", i);
-                        metadata.put("subChunkIndex", j);
-                    }
+        // 清除上一次分块留下的块、向量映射和向量，保证阶段重试幂等
+        int cleared = clearChunks(documentId);
+        if (cleared > 0) {
+            log.info("清除上次分块结果: documentId={}, count={}", documentId, cleared);
+        }
 
-                    // 🆕 章节信息(如果是章节分块)
-                    if ("section".equals(chunk.getType())) {
-                        metadata.put("sectionTitle", chunk.getSectionTitle());
-                        metadata.put("sectionLevel", chunk.getSectionLevel());
-                    }
+        // 🆕 智能分块(替代 TokenTextSplitter)
+        List<SmartChunkingService.ChunkResult> smartChunks = smartChunkingService.smartChunk(
+                content,
+                structure, // 有章节信息时使用章节分块
+                ragConfig.getDocument().getChunkSize(),
+                ragConfig.getDocument().getChunkOverlap());
+        log.info("智能分块完成: documentId={}, chunks={}, strategy={}",
+                documentId, smartChunks.size(),
+                smartChunks.isEmpty() ? "none" : smartChunks.get(0).getType());
+
+        ChunkSet chunkSet = buildChunkDocuments(document, smartChunks, 0);
+        insertParentRows(chunkSet.parents());
+        return insertChunkRows(documentId, chunkSet.chunks()).size();
+    }
 
-                    documents.add(new Document(subContent, metadata));
-                }
+    /**
+     * 一组待落库的块：待向量化的块，以及父子分块时这些块所属的父块（未启用时为空）
+     */
+    private record ChunkSet(List<Document> chunks, List<DocumentChunkParentDO> parents) {
+    }
+
+    /**
+     * 分块结果转为待向量化的 Document：超长分块二次分割、填充元数据并过滤仍然超限的分块；
+     * 启用父子分块时这些块作为父块，再细分为小块
+     *
+     * @param startIndex 第一个分块的 chunkIndex（流式入库时接续上一段）
+     */
+    private ChunkSet buildChunkDocuments(DocumentDO document,
+                                         List<SmartChunkingService.ChunkResult> smartChunks,
+                                         int startIndex) {
+        Long documentId = document.getId();
+        Long userId = document.getUserId();
+        List<Document> documents = new ArrayList<>();
+        int globalChunkIndex = startIndex;
+
+        for (int i = 0; i < smartChunks.size(); i++) {
+            SmartChunkingService.ChunkResult chunk = smartChunks.get(i);
+
+            // 分块服务已按 TokenCounter 计数
+            int chunkTokens = chunk.getTokenCount();
+
+            List<String> subChunks;
+            if (chunkTokens > maxTokens) {
+                // 分块过长，需要二次分割
+                log.warn("检测到超长分块: chunkIndex={}, tokens={}, 进行二次分割",
+                        i, chunkTokens);
+                subChunks = splitLongText(chunk.getContent(), maxTokens);
+                log.info("二次分割完成: 原始1块 -> {}块", subChunks.size());
+            } else {
+                subChunks = List.of(chunk.getContent());
             }
 
-            log.info("文档分块处理完成: 原始分块={}, 最终分块={}", smartChunks.size(), documents.size());
-
-            // 🔒 最终安全检查: 确保所有分块都不超过限制
-            int safeMaxTokens = 6000;
-            List<Document> safeDocuments = new ArrayList<>();
-            for (Document doc : documents) {
-                int tokens = estimateTokenCount(doc.getText());
-                if (tokens > safeMaxTokens) {
-                    log.error("发现超限分块! tokens={}, 内容预览: {}",
-                            tokens, doc.getText().substring(0, Math.min(100, doc.getText().length())));
-                    // 跳过此分块,避免导致整个批次失败
-                    continue;
+            // 为每个子分块创建 Document
+            for (int j = 0; j < subChunks.size(); j++) {
+                String subContent = subChunks.get(j);
+                Map<String, Object> metadata = new HashMap<>();
+
+                // 基础元数据
+                metadata.put("documentId", Base62.encode(String.valueOf(documentId)));
+                metadata.put("userId", Base62.encode(String.valueOf(userId)));
+                metadata.put("title", document.getTitle());
+                metadata.put("type", document.getType());
+                metadata.put("chunkIndex", globalChunkIndex++);
+                metadata.put("timestamp", System.currentTimeMillis());
+
+                // 🆕 智能分块元数据
+                metadata.put("chunkType", chunk.getType());
+                metadata.put("tokenCount", chunkTokens > maxTokens ? tokenCounter.count(subContent) : chunkTokens);
+
+                // 如果是二次分割的子块，标记原始分块索引
+                if (subChunks.size() > 1) {
+                    metadata.put("originalChunkIndex", i);
+                    metadata.put("subChunkIndex", j);
+                }
+
+                // 🆕 章节信息(如果是章节分块)
+                if ("section".equals(chunk.getType())) {
+                    metadata.put("sectionTitle", chunk.getSectionTitle());
+                    metadata.put("sectionLevel", chunk.getSectionLevel());
+                    metadata.put("sectionIndex", chunk.getSectionIndex());
+                    metadata.put("sectionPart", chunk.getSectionPart());
                 }
-                safeDocuments.add(doc);
+
+                documents.add(new Document(subContent, metadata));
             }
+        }
+
+        log.info("文档分块处理完成: 原始分块={}, 最终分块={}", smartChunks.size(), documents.size());
 
-            if (safeDocuments.size() < documents.size()) {
-                log.warn("过滤了 {} 个超限分块,剩余 {} 个安全分块",
-                        documents.size() - safeDocuments.size(), safeDocuments.size());
+        // 🔒 最终安全检查: 确保所有分块都不超过限制
+        List<Document> safeDocuments = new ArrayList<>();
+        for (Document doc : documents) {
+            int tokens = (Integer) doc.getMetadata().get("tokenCount");
+            if (tokens > SAFE_MAX_TOKENS) {
+                log.error("发现超限分块! tokens={}, 内容预览: {}",
+                        tokens, doc.getText().substring(0, Math.min(100, doc.getText().length())));
+                // 跳过此分块,避免导致整个批次失败
+                continue;
             }
+            safeDocuments.add(doc);
+        }
 
-            // 3. 向量化并存储 - 分批处理以符合阿里云嵌入模型的批量大小限制(最多10个)
-            // 优化：记录每个向量的ID和分块内容到数据库
-            int batchSize = 10; // 阿里云 text-embedding-v4 限制
-            int totalBatches = (int) Math.ceil((double) safeDocuments.size() / batchSize);
-
-            for (int i = 0; i < safeDocuments.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, safeDocuments.size());
-                List<Document> batch = safeDocuments.subList(i, end);
-                int currentBatch = (i / batchSize) + 1;
-
-                log.info("向量化批次 {}/{}: 处理 {} 个文档块", currentBatch, totalBatches, batch.size());
-
-                // 最后再检查一次批次中的每个文档
-                boolean batchSafe = true;
-                for (Document doc : batch) {
-                    int tokens = estimateTokenCount(doc.getText());
-                    if (tokens > safeMaxTokens) {
-                        log.error("批次检查失败! 发现超限文档: tokens={}", tokens);
-                        batchSafe = false;
-                        break;
-                    }
-                }
+        if (safeDocuments.size() < documents.size()) {
+            log.warn("过滤了 {} 个超限分块,剩余 {} 个安全分块",
+                    documents.size() - safeDocuments.size(), safeDocuments.size());
+        }
 
-                if (!batchSafe) {
-                    log.warn("跳过不安全的批次 {}/{}", currentBatch, totalBatches);
-                    continue;
-                }
+        if (!Boolean.TRUE.equals(ragConfig.getDocument().getParentChild().getEnabled())) {
+            return new ChunkSet(safeDocuments, List.of());
+        }
+        return splitIntoChildren(documentId, safeDocuments, startIndex);
+    }
+
+    /**
+     * 父子分块：每个块作为父块保存原文，按句子边界细分为小块用于向量化
+     *
+     * <p>小块继承父块元数据，chunkIndex 按小块重新连续编号，parentIndex 取父块第一个小块的 chunkIndex</p>
+     */
+    private ChunkSet splitIntoChildren(Long documentId, List<Document> parentDocuments, int startIndex) {
+        RAGProperties.ParentChildConfig config = ragConfig.getDocument().getParentChild();
+        LocalDateTime now = LocalDateTime.now();
+        List<Document> children = new ArrayList<>();
+        List<DocumentChunkParentDO> parents = new ArrayList<>(parentDocuments.size());
+        int chunkIndex = startIndex;
+
+        for (Document parent : parentDocuments) {
+            int parentTokens = (Integer) parent.getMetadata().get("tokenCount");
+            List<String> pieces = parentTokens <= config.getChildChunkSize()
+                    ? List.of(parent.getText())
+                    : sentenceSplitter.split(parent.getText(), config.getChildChunkSize(), config.getChildChunkOverlap());
+            if (pieces.isEmpty()) {
+                continue;
+            }
 
-                // 添加到向量库（向量库会为每个Document生成ID）
-                vectorStore.add(batch);
+            int parentIndex = chunkIndex;
+            parents.add(DocumentChunkParentDO.builder()
+                    .id(IdWorker.getId())
+                    .documentId(documentId)
+                    .parentIndex(parentIndex)
+                    .childCount(pieces.size())
+                    .content(parent.getText())
+                    .tokens(parentTokens)
+                    .sectionTitle((String) parent.getMetadata().get("sectionTitle"))
+                    .createTime(now)
+                    .isDeleted(0)
+                    .build());
+
+            for (String piece : pieces) {
+                Map<String, Object> metadata = new HashMap<>(parent.getMetadata());
+                metadata.put("chunkIndex", chunkIndex++);
+                metadata.put("parentIndex", parentIndex);
+                metadata.put("tokenCount", pieces.size() == 1 ? parentTokens : tokenCounter.count(piece));
+                children.add(new Document(piece, metadata));
+            }
+        }
 
-                // 保存向量ID映射和分块内容到数据库
-                for (Document doc : batch) {
-                    try {
-                        Integer chunkIndex = (Integer) doc.getMetadata().get("chunkIndex");
-                        String vectorId = doc.getId();
-
-                        // 保存向量ID映射（用于后续删除）
-                        DocumentVectorDO vectorMapping = DocumentVectorDO.builder()
-                                .documentId(documentId)
-                                .vectorId(vectorId)
-                                .chunkIndex(chunkIndex)
-                                .createTime(LocalDateTime.now())
-                                .build();
-                        documentVectorMapper.insert(vectorMapping);
-
-                        // 保存分块内容到document_chunks表
-                        DocumentChunkDO chunk = DocumentChunkDO.builder()
-                                .documentId(documentId)
-                                .chunkIndex(chunkIndex)
-                                .content(doc.getText())
-                                .vectorId(vectorId)
-                                .tokens(doc.getText().length() / 4) // 粗略估算token数
-                                .metadata(doc.getMetadata())
-                                .createTime(LocalDateTime.now())
-                                .isDeleted(0)
-                                .build();
-                        documentChunkMapper.insert(chunk);
+        log.info("父子分块完成: documentId={}, 父块={}, 子块={}", documentId, parents.size(), children.size());
+        return new ChunkSet(children, parents);
+    }
 
-                    } catch (Exception e) {
-                        log.warn("保存文档块数据失败: documentId={}, vectorId={}", documentId, doc.getId(), e);
-                        // 不影响主流程，向量已经存储
+    /**
+     * 父块落库
+     */
+    private void insertParentRows(List<DocumentChunkParentDO> parents) {
+        for (int i = 0; i < parents.size(); i += CHUNK_INSERT_BATCH_SIZE) {
+            documentChunkParentMapper.insertBatch(parents.subList(i, Math.min(i + CHUNK_INSERT_BATCH_SIZE, parents.size())));
+        }
+    }
+
+    /**
+     * 分块与向量ID映射落库
+     *
+     * @return 落库的块记录
+     */
+    private List<DocumentChunkDO> insertChunkRows(Long documentId, List<Document> safeDocuments) {
+        // 分块与向量ID映射先落库：向量ID在此预分配，向量化阶段按该ID写入向量库（重复写入为覆盖，可安全重试）
+        // 多行插入不经过 MyBatis-Plus 主键填充，需预先分配块ID
+        LocalDateTime now = LocalDateTime.now();
+        List<DocumentVectorDO> vectorMappings = new ArrayList<>(safeDocuments.size());
+        List<DocumentChunkDO> chunkRows = new ArrayList<>(safeDocuments.size());
+        for (Document doc : safeDocuments) {
+            Integer chunkIndex = (Integer) doc.getMetadata().get("chunkIndex");
+            String vectorId = doc.getId();
+
+            // 向量ID映射（用于后续删除）
+            vectorMappings.add(DocumentVectorDO.builder()
+                    .documentId(documentId)
+                    .vectorId(vectorId)
+                    .chunkIndex(chunkIndex)
+                    .createTime(now)
+                    .build());
+
+            chunkRows.add(DocumentChunkDO.builder()
+                    .id(IdWorker.getId())
+                    .documentId(documentId)
+                    .chunkIndex(chunkIndex)
+                    .content(doc.getText())
+                    .vectorId(vectorId)
+                    .tokens((Integer) doc.getMetadata().get("tokenCount"))
+                    .contentHash(DigestUtil.sha256Hex(doc.getText()))
+                    .metadata(doc.getMetadata())
+                    .createTime(now)
+                    .isDeleted(0)
+                    .build());
+        }
+
+        for (int i = 0; i < chunkRows.size(); i += CHUNK_INSERT_BATCH_SIZE) {
+            int end = Math.min(i + CHUNK_INSERT_BATCH_SIZE, chunkRows.size());
+            documentVectorMapper.insertBatch(vectorMappings.subList(i, end));
+            documentChunkMapper.insertBatch(chunkRows.subList(i, end));
+        }
+
+        return chunkRows;
+    }
+
+    @Override
+    public int embedChunks(Long documentId, int skipChunks, IntConsumer onBatchEmbedded) {
+        DocumentDO document = documentMapper.selectById(documentId);
+        if (document == null) {
+            throw new BusinessException("文档不存在");
+        }
+
+        List<DocumentChunkDO> chunks = documentChunkMapper.selectList(new LambdaQueryWrapper<DocumentChunkDO>()
+                .eq(DocumentChunkDO::getDocumentId, documentId)
+                .orderByAsc(DocumentChunkDO::getChunkIndex));
+        List<DocumentChunkDO> pending = chunks.subList(Math.min(skipChunks, chunks.size()), chunks.size());
+        if (pending.isEmpty()) {
+            return chunks.size();
+        }
+        if (skipChunks > 0) {
+            log.info("从检查点继续向量化: documentId={}, embedded={}, remaining={}",
+                    documentId, skipChunks, pending.size());
+        }
+
+        // 向量化并存储 - 分批处理以符合阿里云嵌入模型的批量大小限制(最多10个)
+        int batchSize = EMBEDDING_BATCH_SIZE;
+        int totalBatches = (int) Math.ceil((double) pending.size() / batchSize);
+
+        // 并行预计算全部批次的向量（受并发数与 QPS 限制，结果写入向量缓存），
+        // 下方逐批写入向量库时的向量化直接命中缓存，不再串行等待模型调用
+        prefetchEmbeddings(documentId, pending);
+
+        int embedded = skipChunks;
+        for (int i = 0; i < pending.size(); i += batchSize) {
+            List<DocumentChunkDO> batch = pending.subList(i, Math.min(i + batchSize, pending.size()));
+            int currentBatch = (i / batchSize) + 1;
+
+            log.info("向量化批次 {}/{}: 处理 {} 个文档块", currentBatch, totalBatches, batch.size());
+            storeChunkBatch(document, batch);
+
+            embedded += batch.size();
+            if (onBatchEmbedded != null) {
+                onBatchEmbedded.accept(embedded);
+            }
+        }
+
+        return chunks.size();
+    }
+
+    @Override
+    public boolean supportsStreamingIngest(Long documentId) {
+        if (!Boolean.TRUE.equals(ragConfig.getIngestion().getStreaming().getEnabled())) {
+            return false;
+        }
+        DocumentDO document = documentMapper.selectById(documentId);
+        if (document == null) {
+            return false;
+        }
+        // PDF 论文按 GROBID 章节结构分块，章节结构依赖完整文件，走分阶段流程
+        if ("pdf".equalsIgnoreCase(document.getType()) && grobidMetadataService.isAvailable()) {
+            return false;
+        }
+        // 同内容文档已解析过时直接复用其解析结果与向量，走分阶段流程
+        return findParsedContentByHash(document) == null;
+    }
+
+    @Override
+    public int streamIngest(Long documentId, IntConsumer onBatchEmbedded) {
+        DocumentDO document = documentMapper.selectById(documentId);
+        if (document == null || (document.getIsDeleted() != null && document.getIsDeleted() == 1)) {
+            throw new BusinessException("文档不存在");
+        }
+        String extension = fileExtension(document);
+
+        // 清除上一次处理留下的块、向量映射和向量，中途失败后重新处理时幂等
+        int cleared = clearChunks(documentId);
+        if (cleared > 0) {
+            log.info("清除上次分块结果: documentId={}, count={}", documentId, cleared);
+        }
+
+        RAGProperties.IngestionStreamingConfig streamingConfig = ragConfig.getIngestion().getStreaming();
+        // 一个窗口为一轮并行向量化的块数
+        int windowSize = EMBEDDING_BATCH_SIZE * Math.max(1, ragConfig.getEmbedding().getConcurrency());
+        BlockingQueue<List<Document>> queue = new ArrayBlockingQueue<>(Math.max(1, streamingConfig.getQueueCapacity()));
+        AtomicLong contentLength = new AtomicLong();
+        long startTime = System.currentTimeMillis();
+
+        // 文档级全文索引（全文检索、知识图谱与同内容复用使用）先以空内容建立，解析文本分段追加写入
+        documentESService.indexDocument(
+                documentId,
+                document.getUserId(),
+                document.getTitle(),
+                "",
+                document.getType(),
+                document.getFileSize(),
+                "processing");
+
+        // 解析端（解析线程池）：解析 → 分段清理 → 分块 → 按窗口放入队列，队列满时阻塞，解析随之暂停
+        Future<Boolean> parser = ingestionParserExecutor.submit(() -> {
+            AtomicInteger nextChunkIndex = new AtomicInteger();
+            List<Document> window = new ArrayList<>(windowSize);
+            StringBuilder pendingText = new StringBuilder();
+            // 上一段末尾的块：可能被分段边界截断，与下一段拼接后重新分块
+            StringBuilder tail = new StringBuilder();
+            try {
+                boolean limitReached;
+                Path filePath = fileStorageService.resolveFile(document.getFileUrl());
+                try (TextSegmentWriter writer = new TextSegmentWriter(streamingConfig.getSegmentChars(), segment -> {
+                    String cleaned = documentParserService.cleanText(segment);
+                    if (cleaned.isEmpty()) {
+                        return;
                     }
+                    contentLength.addAndGet(cleaned.length() + 2);
+                    pendingText.append(cleaned).append("\n\n");
+                    if (pendingText.length() >= FULLTEXT_APPEND_CHARS) {
+                        documentESService.appendDocumentContent(documentId, pendingText.toString());
+                        pendingText.setLength(0);
+                    }
+
+                    String text = tail.isEmpty() ? cleaned : tail + "\n" + cleaned;
+                    tail.setLength(0);
+                    List<SmartChunkingService.ChunkResult> chunks = smartChunkingService.smartChunk(text, null,
+                            ragConfig.getDocument().getChunkSize(), ragConfig.getDocument().getChunkOverlap());
+                    // 最后一块留到下一段开头（超过一段长度的块直接输出，保证留存的文本有界）
+                    if (!chunks.isEmpty()) {
+                        String last = chunks.get(chunks.size() - 1).getContent();
+                        if (last.length() <= streamingConfig.getSegmentChars()) {
+                            tail.append(last);
+                            chunks = chunks.subList(0, chunks.size() - 1);
+                        }
+                    }
+                    enqueueChunks(document, chunks, nextChunkIndex, window, windowSize, queue);
+                })) {
+                    limitReached = documentParserService.parseFile(filePath, extension, writer);
+                }
+                if (!tail.isEmpty()) {
+                    enqueueChunks(document, smartChunkingService.smartChunk(tail.toString(), null,
+                                    ragConfig.getDocument().getChunkSize(), ragConfig.getDocument().getChunkOverlap()),
+                            nextChunkIndex, window, windowSize, queue);
+                }
+                if (pendingText.length() > 0) {
+                    documentESService.appendDocumentContent(documentId, pendingText.toString());
+                }
+                if (!window.isEmpty()) {
+                    putWindow(queue, new ArrayList<>(window));
+                }
+                return limitReached;
+            } finally {
+                // 结束标记（空窗口），解析失败时同样发送，向量化端据此退出后从 Future 取得异常
+                try {
+                    queue.put(List.of());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
             }
+        });
 
-            log.info("文档向量化完成: id={}, vectors={}", documentId, documents.size());
+        // 向量化端（当前线程）：逐窗口落库 → 并行向量化 → 分批写入向量库
+        int embedded = 0;
+        boolean truncated;
+        try {
+            for (List<Document> chunkWindow = queue.take(); !chunkWindow.isEmpty(); chunkWindow = queue.take()) {
+                List<DocumentChunkDO> rows = insertChunkRows(documentId, chunkWindow);
+                prefetchEmbeddings(documentId, rows);
+                for (int i = 0; i < rows.size(); i += EMBEDDING_BATCH_SIZE) {
+                    List<DocumentChunkDO> batch = rows.subList(i, Math.min(i + EMBEDDING_BATCH_SIZE, rows.size()));
+                    storeChunkBatch(document, batch);
+                    embedded += batch.size();
+                    if (onBatchEmbedded != null) {
+                        onBatchEmbedded.accept(embedded);
+                    }
+                }
+            }
+            truncated = parser.get();
+        } catch (InterruptedException e) {
+            parser.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusinessException("流式入库被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            log.error("流式解析失败: documentId={}", documentId, cause);
+            throw cause instanceof BusinessException be ? be : new BusinessException("文档解析失败: " + cause.getMessage());
+        } catch (RuntimeException e) {
+            parser.cancel(true);
+            throw e;
+        }
 
-            // 🆕 同步到 Elasticsearch 全文索引 (用于混合搜索)
-            try {
-                documentESService.indexDocument(
-                        documentId,
-                        userId,
-                        document.getTitle(),
-                        content, // 完整内容用于全文搜索
-                        document.getType(),
-                        document.getFileSize(),
-                        "completed");
-                log.info("文档已同步到ES全文索引: documentId={}", documentId);
-            } catch (Exception esError) {
-                log.warn("同步ES索引失败(不影响主流程): documentId={}, error={}",
-                        documentId, esError.getMessage());
-                // 不抛异常,避免影响向量存储主流程
+        log.info("流式入库完成: documentId={}, chunks={}, contentLength={}, truncated={}, 耗时={}ms",
+                documentId, embedded, contentLength.get(), truncated, System.currentTimeMillis() - startTime);
+        return embedded;
+    }
+
+    /**
+     * 一段分块结果转为块与父块：父块直接落库，块按窗口放入流式入库队列（窗口满时放入，队列满时阻塞）
+     */
+    private void enqueueChunks(DocumentDO document, List<SmartChunkingService.ChunkResult> chunks,
+                               AtomicInteger nextChunkIndex, List<Document> window, int windowSize,
+                               BlockingQueue<List<Document>> queue) throws IOException {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        ChunkSet chunkSet = buildChunkDocuments(document, chunks, nextChunkIndex.get());
+        insertParentRows(chunkSet.parents());
+        for (Document chunk : chunkSet.chunks()) {
+            nextChunkIndex.set((Integer) chunk.getMetadata().get("chunkIndex") + 1);
+            window.add(chunk);
+            if (window.size() >= windowSize) {
+                putWindow(queue, new ArrayList<>(window));
+                window.clear();
             }
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("文档向量化失败: id={}", documentId, e);
-            throw new BusinessException("文档向量化失败: " + e.getMessage());
+    /**
+     * 分块窗口放入流式入库队列，队列满时阻塞
+     */
+    private static void putWindow(BlockingQueue<List<Document>> queue, List<Document> window) throws IOException {
+        try {
+            queue.put(window);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("流式入库已取消");
+        }
+    }
+
+    /**
+     * 预计算一组块的向量：相同文本的块先复用已有向量，其余按批次并行向量化，结果均写入向量缓存
+     */
+    private void prefetchEmbeddings(Long documentId, List<DocumentChunkDO> chunks) {
+        // 相同文本的块复用已有向量（写入向量缓存）
+        Map<String, String> textsByHash = new HashMap<>();
+        for (DocumentChunkDO chunk : chunks) {
+            textsByHash.putIfAbsent(chunk.getContentHash() != null
+                    ? chunk.getContentHash() : DigestUtil.sha256Hex(chunk.getContent()), chunk.getContent());
         }
+        int reusedEmbeddings = reuseEmbeddingsByHash(textsByHash);
+        if (reusedEmbeddings > 0) {
+            log.info("复用已有块向量: documentId={}, reused={}/{}", documentId, reusedEmbeddings, textsByHash.size());
+        }
+
+        embeddingPipelineService.prefetch(chunks.stream().map(DocumentChunkDO::getContent).toList(), EMBEDDING_BATCH_SIZE);
+    }
+
+    /**
+     * 一个批次的块写入向量库（按分块阶段预分配的向量ID），块级全文索引由索引后处理写入
+     *
+     * <p>调用前已预计算该批次向量，写入时的向量化作为回放执行，缓存命中不重复计入省去的调用</p>
+     */
+    private void storeChunkBatch(DocumentDO document, List<DocumentChunkDO> batch) {
+        List<Document> documents = batch.stream()
+                .map(chunk -> new Document(chunk.getVectorId(), chunk.getContent(),
+                        chunk.getMetadata() == null ? new HashMap<>() : chunk.getMetadata()))
+                .toList();
+        CachingEmbeddingModel.replay(() -> vectorStore.add(documents));
+    }
+
+    @Override
+    public int indexChunkFulltext(Long documentId) {
+        DocumentDO document = documentMapper.selectById(documentId);
+        if (document == null) {
+            throw new BusinessException("文档不存在");
+        }
+
+        List<DocumentChunkDO> chunks = documentChunkMapper.selectList(new LambdaQueryWrapper<DocumentChunkDO>()
+                .eq(DocumentChunkDO::getDocumentId, documentId)
+                .orderByAsc(DocumentChunkDO::getChunkIndex));
+        for (int i = 0; i < chunks.size(); i += CHUNK_INDEX_BATCH_SIZE) {
+            List<DocumentChunkDO> batch = chunks.subList(i, Math.min(i + CHUNK_INDEX_BATCH_SIZE, chunks.size()));
+
+            // 读取已写入向量库的块向量（mget），供块级索引的 kNN 字段复用
+            Map<String, float[]> batchEmbeddings = vectorEmbeddingRepository.findEmbeddingsByIds(
+                    batch.stream().map(DocumentChunkDO::getVectorId).toList());
+
+            documentESService.indexChunks(batch.stream()
+                    .map(chunk -> DocumentChunkES.builder()
+                            .vectorId(chunk.getVectorId())
+                            .documentId(documentId)
+                            .userId(document.getUserId())
+                            .kbId(document.getKbId())
+                            .chunkIndex(chunk.getChunkIndex())
+                            .parentIndex(chunk.getMetadata() == null
+                                    ? null : (Integer) chunk.getMetadata().get("parentIndex"))
+                            .title(document.getTitle())
+                            .type(document.getType())
+                            .sectionTitle(chunk.getMetadata() == null
+                                    ? null : (String) chunk.getMetadata().get("sectionTitle"))
+                            .content(chunk.getContent())
+                            .embedding(batchEmbeddings.get(chunk.getVectorId()))
+                            .build())
+                    .toList());
+        }
+        return chunks.size();
+    }
+
+    /**
+     * 清除文档已有的块、父块、向量映射、向量和块级全文索引
+     *
+     * @return 清除的向量数
+     */
+    private int clearChunks(Long documentId) {
+        // 父块先于块落库（流式入库时），中途失败可能只留下父块，不依赖向量映射是否存在
+        documentChunkParentMapper.delete(
+                new LambdaQueryWrapper<DocumentChunkParentDO>()
+                        .eq(DocumentChunkParentDO::getDocumentId, documentId));
+
+        List<String> vectorIds = documentVectorMapper.selectList(
+                        new LambdaQueryWrapper<DocumentVectorDO>()
+                                .eq(DocumentVectorDO::getDocumentId, documentId))
+                .stream()
+                .map(DocumentVectorDO::getVectorId)
+                .toList();
+        if (vectorIds.isEmpty()) {
+            return 0;
+        }
+
+        // 从向量库删除
+        vectorStore.delete(vectorIds);
+
+        // 删除映射记录
+        documentVectorMapper.delete(
+                new LambdaQueryWrapper<DocumentVectorDO>()
+                        .eq(DocumentVectorDO::getDocumentId, documentId));
+
+        // 删除块记录
+        documentChunkMapper.delete(
+                new LambdaQueryWrapper<DocumentChunkDO>()
+                        .eq(DocumentChunkDO::getDocumentId, documentId));
+
+        // 删除块级全文索引
+        documentESService.deleteChunks(documentId);
+
+        return vectorIds.size();
     }
 
     @Override
@@ -517,8 +1104,8 @@ public class DocumentServiceImpl implements DocumentService {
                     .filterExpression(userFilter) // 添加用户过滤
                     .build();
 
-            // 执行向量检索
-            List<Document> results = vectorStore.similaritySearch(request);
+            // 执行向量检索，父子分块时命中的小块展开为所属父块
+            List<Document> results = parentChunkService.expandToParents(vectorStore.similaritySearch(request));
 
             if (results.isEmpty()) {
                 log.warn("未找到相似文档: query={}, threshold={}, 建议降低相似度阈值或检查向量库中是否有数据",
@@ -580,9 +1167,10 @@ public class DocumentServiceImpl implements DocumentService {
                     documentVectorMapper.delete(new LambdaQueryWrapper<DocumentVectorDO>()
                             .eq(DocumentVectorDO::getDocumentId, documentId));
 
-                    // 同步删除 ES 全文索引
+                    // 同步删除 ES 全文索引（文档级 + 块级）
                     try {
                         documentESService.deleteDocument(documentId);
+                        documentESService.deleteChunks(documentId);
                         log.info("从ES删除文档索引: documentId={}", documentId);
                     } catch (Exception esError) {
                         log.warn("删除ES索引失败: documentId={}, error={}", documentId, esError.getMessage());
@@ -621,6 +1209,7 @@ public class DocumentServiceImpl implements DocumentService {
             }
             documentMapper.deleteById(documentId);
             log.info("逻辑删除文档: documentId={}", documentId);
+            evictQueryCaches(document);
 
             // 3. 更新知识库文档数量(递减)
             if (document.getKbId() != null) {
@@ -636,14 +1225,28 @@ public class DocumentServiceImpl implements DocumentService {
                 }
             }
             
-            // 4. 从文件存储删除
-            try {
-                fileStorageService.deleteFile(document.getFileUrl());
-                log.info("从文件存储删除文件: documentId={}, fileUrl={}", documentId, document.getFileUrl());
-            } catch (Exception e) {
-                log.warn("删除文件失败: fileUrl={}", document.getFileUrl(), e);
-                // 文件删除失败不影响整体流程
-            }
+            // 4. 事务提交后从文件存储删除（内容寻址存储下同一文件可能被其他文档引用，仍有引用时保留；
+            // 引用检查与删除在文件锁内执行，与复用该文件的上传互斥，且只看已提交的文档记录）
+            String fileUrl = document.getFileUrl();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        boolean deleted = fileStorageService.deleteFileIfUnreferenced(fileUrl,
+                                () -> documentMapper.selectCount(new LambdaQueryWrapper<DocumentDO>()
+                                        .eq(DocumentDO::getFileUrl, fileUrl)
+                                        .ne(DocumentDO::getId, documentId)) > 0);
+                        if (deleted) {
+                            log.info("从文件存储删除文件: documentId={}, fileUrl={}", documentId, fileUrl);
+                        } else {
+                            log.info("文件仍被其他文档引用，保留文件: documentId={}, fileUrl={}", documentId, fileUrl);
+                        }
+                    } catch (Exception e) {
+                        log.warn("删除文件失败: fileUrl={}", fileUrl, e);
+                        // 文件删除失败不影响整体流程
+                    }
+                }
+            });
 
             log.info("文档删除成功: id={}", documentId);
         } catch (Exception e) {
@@ -652,6 +1255,14 @@ public class DocumentServiceImpl implements DocumentService {
         }
     }
 
+    /**
+     * 文档内容变化后，使该用户的检索结果缓存和包含该文档的答案缓存失效
+     */
+    private void evictQueryCaches(DocumentDO document) {
+        retrievalCacheService.invalidateUser(document.getUserId());
+        semanticAnswerCacheService.evictDocument(document.getId(), document.getUserId(), document.getKbId());
+    }
+
     /**
      * 验证文件
      */
@@ -815,30 +1426,10 @@ public class DocumentServiceImpl implements DocumentService {
         int deletedCount = 0;
 
         try {
-            // 从映射表查询向量ID
-            List<DocumentVectorDO> vectorMappings = documentVectorMapper.selectList(
-                    new LambdaQueryWrapper<DocumentVectorDO>()
-                            .eq(DocumentVectorDO::getDocumentId, documentId));
-
-            if (!vectorMappings.isEmpty()) {
-                // 提取向量ID
-                List<String> vectorIds = vectorMappings.stream()
-                        .map(DocumentVectorDO::getVectorId)
-                        .toList();
-
-                // 从向量库删除
-                vectorStore.delete(vectorIds);
-                deletedCount = vectorIds.size();
-
-                // 删除映射记录
-                documentVectorMapper.delete(
-                        new LambdaQueryWrapper<DocumentVectorDO>()
-                                .eq(DocumentVectorDO::getDocumentId, documentId));
+            deletedCount = clearChunks(documentId);
 
-                // 删除块记录
-                documentChunkMapper.delete(
-                        new LambdaQueryWrapper<DocumentChunkDO>()
-                                .eq(DocumentChunkDO::getDocumentId, documentId));
+            if (deletedCount > 0) {
+                evictQueryCaches(document);
 
                 log.info("文档向量清除成功: documentId={}, count={}", documentId, deletedCount);
             } else {
@@ -986,6 +1577,29 @@ public class DocumentServiceImpl implements DocumentService {
         try {
             Long userId = StpUtil.getLoginIdAsLong();
 
+            // 0. 优先使用块级 kNN + BM25 混合检索，每个文档取得分最高的块
+            if (ragConfig.getHybridSearch().getNativeEnabled()) {
+                List<Document> chunkResults = hybridRetrievalService.search(userId, null, query, topK * 3, null);
+                if (!chunkResults.isEmpty()) {
+                    Map<Long, Document> bestChunkPerDoc = new java.util.LinkedHashMap<>();
+                    for (Document doc : chunkResults) {
+                        Long docId = extractDocumentId(doc);
+                        if (docId != null) {
+                            bestChunkPerDoc.putIfAbsent(docId, doc);
+                        }
+                    }
+                    List<DocumentSearchResultVO> results = bestChunkPerDoc.values().stream()
+                            .limit(topK)
+                            .map(doc -> buildResultFromVectorDoc(doc, query, doc.getScore()))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
+                    log.info("混合搜索完成(块级): query={}, chunks={}, documents={}",
+                            query, chunkResults.size(), results.size());
+                    return results;
+                }
+                log.info("块级混合检索无结果，回退到向量 + 全文两路检索: query={}", query);
+            }
+
             // 1. 向量检索 (召回 topK*2 个候选)
             List<Document> vectorResults = searchSimilarDocuments(query, topK * 2);
             log.info("向量检索完成: results={}", vectorResults.size());
@@ -995,61 +1609,26 @@ public class DocumentServiceImpl implements DocumentService {
                     topK * 2);
             log.info("全文检索完成: results={}", fulltextResults.size());
 
-            // 3. RRF 融合算法
-            final int K = 60; // RRF 常数
-            var rrfScores = new java.util.HashMap<Long, Double>();
-
-            // 3.1 向量检索结果加权
-            for (int i = 0; i < vectorResults.size(); i++) {
-                Document doc = vectorResults.get(i);
-                Long docId = extractDocumentId(doc);
-                if (docId != null) {
-                    double rrfScore = 1.0 / (K + i + 1); // rank从0开始,+1转为从1开始
-                    rrfScores.merge(docId, rrfScore, Double::sum);
+            // 3. RRF 融合: 两路各遍历一次按文档ID聚合,融合结果直接携带各路原始条目
+            List<RankFusion.Fused<Long>> fused = RankFusion.rrf(topK,
+                    RankFusion.RankedList.of(fulltextResults, DocumentSearchResultVO::getDocumentId),
+                    RankFusion.RankedList.of(vectorResults, this::extractDocumentId));
+
+            // 4. 构建最终结果(优先使用全文检索结果,因为它有高亮信息)
+            List<DocumentSearchResultVO> finalResults = new ArrayList<>(fused.size());
+            for (RankFusion.Fused<Long> f : fused) {
+                DocumentSearchResultVO fulltextHit = f.item(0);
+                if (fulltextHit != null) {
+                    fulltextHit.setScore(f.score()); // 更新为 RRF 分数
+                    fulltextHit.setSource("hybrid"); // 标记为混合搜索
+                    finalResults.add(fulltextHit);
+                    continue;
+                }
+                // 如果全文检索中没有,从向量检索中提取
+                DocumentSearchResultVO result = buildResultFromVectorDoc(f.item(1), query, f.score());
+                if (result != null) {
+                    finalResults.add(result);
                 }
-            }
-
-            // 3.2 全文检索结果加权
-            for (int i = 0; i < fulltextResults.size(); i++) {
-                Long docId = fulltextResults.get(i).getDocumentId();
-                double rrfScore = 1.0 / (K + i + 1);
-                rrfScores.merge(docId, rrfScore, Double::sum);
-            }
-
-            // 4. 按 RRF 分数排序,取 topK
-            List<Long> rankedDocIds = rrfScores.entrySet().stream()
-                    .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue())) // 降序
-                    .limit(topK)
-                    .map(java.util.Map.Entry::getKey)
-                    .collect(java.util.stream.Collectors.toList());
-
-            // 5. 构建最终结果(优先使用全文检索结果,因为它有高亮信息)
-            List<DocumentSearchResultVO> finalResults = new ArrayList<>();
-            for (Long docId : rankedDocIds) {
-                // 优先从全文检索结果中查找
-                fulltextResults.stream()
-                        .filter(r -> r.getDocumentId().equals(docId))
-                        .findFirst()
-                        .ifPresentOrElse(
-                                result -> {
-                                    result.setScore(rrfScores.get(docId)); // 更新为 RRF 分数
-                                    result.setSource("hybrid"); // 标记为混合搜索
-                                    finalResults.add(result);
-                                },
-                                () -> {
-                                    // 如果全文检索中没有,从向量检索中提取
-                                    vectorResults.stream()
-                                            .filter(doc -> docId.equals(extractDocumentId(doc)))
-                                            .findFirst()
-                                            .ifPresent(doc -> {
-                                                DocumentSearchResultVO result = buildResultFromVectorDoc(doc, query,
-                                                        rrfScores.get(docId));
-                                                // 只有成功构建结果才添加
-                                                if (result != null) {
-                                                    finalResults.add(result);
-                                                }
-                                            });
-                                });
             }
 
             log.info("混合搜索完成: query={}, vectorResults={}, fulltextResults={}, fusedResults={}",
@@ -1063,161 +1642,19 @@ public class DocumentServiceImpl implements DocumentService {
         }
     }
 
-    /**
-     * 估算文本的 token 数量
-     * 保守估算策略:
-     * - 中文字符: 1.2 tokens/字 (考虑标点和特殊字符)
-     * - 英文单词: 1.5 tokens/词 (考虑长单词会被分割)
-     * - 数字和符号: 1.5 tokens/字符
-     * - 总是向上取整并添加 20% 安全边际
-     */
-    private int estimateTokenCount(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-
-        int totalTokens = 0;
-        int chineseChars = 0;
-        int otherChars = 0;
-        int englishWords = 0;
-
-        // 统计不同类型的字符
-        for (char c : text.toCharArray()) {
-            if (c >= 0x4E00 && c <= 0x9FFF) {
-                // 中文字符
-                chineseChars++;
-            } else if (!Character.isWhitespace(c)) {
-                // 非空白字符(英文、数字、符号等)
-                otherChars++;
-            }
-        }
-
-        // 估算英文单词数
-        String[] words = text.split("\\s+");
-        for (String word : words) {
-            if (word.matches(".*[a-zA-Z].*")) {
-                englishWords++;
-            }
-        }
-
-        // 保守估算 (向上取整)
-        totalTokens += (int) Math.ceil(chineseChars * 1.2); // 中文: 1.2 tokens/字
-        totalTokens += (int) Math.ceil(englishWords * 1.5); // 英文: 1.5 tokens/词
-        totalTokens += (int) Math.ceil(otherChars * 0.5); // 其他字符
-
-        // 添加 20% 安全边际
-        totalTokens = (int) Math.ceil(totalTokens * 1.2);
-
-        return totalTokens;
-    }
-
     /**
      * 分割过长的文本为多个子块
-     * 按句子边界分割,尽量保持语义完整性
+     * 按句子边界分割,尽量保持语义完整性,块间按整句重叠
      * 使用更保守的阈值确保不会超限
      */
     private List<String> splitLongText(String text, int maxTokens) {
-        List<String> chunks = new ArrayList<>();
-
         // 使用更保守的分割阈值 (70% 而不是 90%)
         int safeMaxTokens = (int) (maxTokens * 0.7);
-
-        // 按句子分割(支持中英文句子)
-        String[] sentences = text.split("(?<=[。！？\\.!?])\\s*");
-
-        StringBuilder currentChunk = new StringBuilder();
-        int currentTokens = 0;
-
-        for (String sentence : sentences) {
-            if (sentence.trim().isEmpty()) {
-                continue;
-            }
-
-            int sentenceTokens = estimateTokenCount(sentence);
-
-            // 单个句子超过限制,强制按字符分割
-            if (sentenceTokens > safeMaxTokens) {
-                // 先保存当前累积的分块
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
-                    currentTokens = 0;
-                }
-
-                // 按更小的单位分割超长句子
-                // 每次取 500 个字符(约 600 tokens)
-                int charLimit = 500;
-                for (int i = 0; i < sentence.length(); i += charLimit) {
-                    int end = Math.min(i + charLimit, sentence.length());
-                    String subSentence = sentence.substring(i, end);
-
-                    // 确保子句不超过限制
-                    if (estimateTokenCount(subSentence) > safeMaxTokens) {
-                        // 继续减半
-                        int halfLimit = charLimit / 2;
-                        for (int j = i; j < end; j += halfLimit) {
-                            int halfEnd = Math.min(j + halfLimit, end);
-                            chunks.add(sentence.substring(j, halfEnd).trim());
-                        }
-                    } else {
-                        chunks.add(subSentence.trim());
-                    }
-                }
-                continue;
-            }
-
-            // 检查添加当前句子是否会超过限制
-            if (currentTokens + sentenceTokens > safeMaxTokens) {
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
-                    currentTokens = 0;
-                }
-            }
-
-            // 添加句子到当前分块
-            if (currentChunk.length() > 0) {
-                currentChunk.append(" ");
-            }
-            currentChunk.append(sentence);
-            currentTokens += sentenceTokens;
+        List<String> chunks = sentenceSplitter.split(text, safeMaxTokens, ragConfig.getDocument().getChunkOverlap());
+        if (chunks.isEmpty()) {
+            log.warn("文本分割结果为空: length={}", text.length());
         }
-
-        // 添加最后一个分块
-        if (currentChunk.length() > 0) {
-            String lastChunk = currentChunk.toString().trim();
-            if (!lastChunk.isEmpty()) {
-                chunks.add(lastChunk);
-            }
-        }
-
-        // 安全检查: 确保所有分块都不超过限制
-        List<String> safeChunks = new ArrayList<>();
-        for (String chunk : chunks) {
-            if (estimateTokenCount(chunk) > safeMaxTokens) {
-                // 如果还是超限,按字符强制截断
-                log.warn("分块仍然超限,强制截断: estimatedTokens={}", estimateTokenCount(chunk));
-                int charLimit = 400; // 更保守的限制
-                for (int i = 0; i < chunk.length(); i += charLimit) {
-                    int end = Math.min(i + charLimit, chunk.length());
-                    safeChunks.add(chunk.substring(i, end).trim());
-                }
-            } else {
-                safeChunks.add(chunk);
-            }
-        }
-
-        // 如果最终还是没有分块(不应该发生),返回截断的文本
-        if (safeChunks.isEmpty()) {
-            log.error("文本分割失败,使用截断策略");
-            int charLimit = 400;
-            for (int i = 0; i < text.length(); i += charLimit) {
-                int end = Math.min(i + charLimit, text.length());
-                safeChunks.add(text.substring(i, end).trim());
-            }
-        }
-
-        return safeChunks;
+        return chunks;
     }
 
     /**
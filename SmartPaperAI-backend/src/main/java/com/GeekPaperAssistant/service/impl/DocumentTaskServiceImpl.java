@@ -10,7 +10,10 @@ import com.GeekPaperAssistant.model.entity.DocumentDO;
 import com.GeekPaperAssistant.model.entity.DocumentVectorDO;
 import com.GeekPaperAssistant.model.entity.DocumentChunkDO;
 import com.GeekPaperAssistant.mq.DocumentProcessingProducer;
+import com.GeekPaperAssistant.mq.IngestionStage;
+import com.GeekPaperAssistant.model.vo.DeadLetterReplayVO;
 import com.GeekPaperAssistant.model.vo.DocumentTaskVO;
+import com.GeekPaperAssistant.service.DocumentESService;
 import com.GeekPaperAssistant.service.DocumentTaskService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,7 +25,9 @@ import top.continew.starter.core.exception.BusinessException;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -51,6 +56,7 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
     private final DocumentVectorMapper documentVectorMapper;
     private final DocumentChunkMapper documentChunkMapper;
     private final VectorStore vectorStore;
+    private final DocumentESService documentESService;
     
     // Redis 可选依赖（未配置时为 null）
     private final RedisTemplate<String, Object> redisTemplate;
@@ -124,6 +130,83 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
         log.info("任务状态更新: taskId={}, status={}, progress={}", taskId, status, progress);
     }
     
+    @Override
+    public void startStage(Long taskId, String stage, Integer progress) {
+        DocumentTaskDO task = documentTaskMapper.selectById(taskId);
+        if (task == null) {
+            throw new BusinessException("任务不存在");
+        }
+        
+        task.setStatus("processing");
+        task.setCurrentStage(stage);
+        task.setProgress(progress);
+        task.setUpdateTime(LocalDateTime.now());
+        if (task.getStartTime() == null) {
+            task.setStartTime(LocalDateTime.now());
+        }
+        documentTaskMapper.updateById(task);
+        updateCache(taskId, "processing", progress);
+        
+        log.info("入库阶段开始: taskId={}, stage={}, progress={}", taskId, stage, progress);
+    }
+    
+    @Override
+    public void completeStage(Long taskId, String stage, Map<String, Object> checkpoint) {
+        DocumentTaskDO task = documentTaskMapper.selectById(taskId);
+        if (task == null) {
+            throw new BusinessException("任务不存在");
+        }
+        
+        task.setCompletedStage(stage);
+        task.setCheckpoint(mergeCheckpoint(task.getCheckpoint(), checkpoint));
+        task.setUpdateTime(LocalDateTime.now());
+        documentTaskMapper.updateById(task);
+        
+        log.info("入库阶段完成: taskId={}, stage={}", taskId, stage);
+    }
+    
+    @Override
+    public void saveCheckpoint(Long taskId, Map<String, Object> checkpoint, Integer progress) {
+        DocumentTaskDO task = documentTaskMapper.selectById(taskId);
+        if (task == null) {
+            throw new BusinessException("任务不存在");
+        }
+        
+        task.setCheckpoint(mergeCheckpoint(task.getCheckpoint(), checkpoint));
+        if (progress != null) {
+            task.setProgress(progress);
+        }
+        task.setUpdateTime(LocalDateTime.now());
+        documentTaskMapper.updateById(task);
+        updateCache(taskId, null, progress);
+    }
+    
+    @Override
+    public Map<String, Object> getCheckpoint(Long taskId) {
+        DocumentTaskDO task = documentTaskMapper.selectById(taskId);
+        if (task == null || task.getCheckpoint() == null) {
+            return new HashMap<>();
+        }
+        return task.getCheckpoint();
+    }
+    
+    /**
+     * 合并检查点数据，值为 null 的键表示清除
+     */
+    private Map<String, Object> mergeCheckpoint(Map<String, Object> current, Map<String, Object> updates) {
+        Map<String, Object> merged = current == null ? new HashMap<>() : new HashMap<>(current);
+        if (updates != null) {
+            updates.forEach((key, value) -> {
+                if (value == null) {
+                    merged.remove(key);
+                } else {
+                    merged.put(key, value);
+                }
+            });
+        }
+        return merged;
+    }
+    
     @Override
     public DocumentTaskVO getTaskStatus(Long taskId) {
         // 尝试从 Redis 读取进度（热数据加速）
@@ -167,23 +250,29 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
             throw new BusinessException("只能重试失败的任务");
         }
         
-        if (task.getRetryCount() >= task.getMaxRetries()) {
-            throw new BusinessException("已达到最大重试次数");
-        }
-        
         // 校验文档未被逻辑删除
         DocumentDO document = documentMapper.selectById(task.getDocumentId());
         if (document == null || (document.getIsDeleted()!=null && document.getIsDeleted()==1)) {
             throw new BusinessException("文档已删除，无法重试");
         }
 
-        // 清理旧的向量数据（重新处理前必须清空）
-        cleanupDocumentVectors(task.getDocumentId());
+        // 从最近完成阶段的下一阶段继续；尚未完成分块时清理旧的向量数据（分块需重新生成）
+        IngestionStage resumeStage = task.getCompletedStage() == null
+                ? IngestionStage.PARSE
+                : IngestionStage.of(task.getCompletedStage()).next();
+        if (resumeStage == null) {
+            // 所有阶段已完成但收尾失败：回到向量化阶段（检查点中块已全部向量化，只重新执行收尾）
+            resumeStage = IngestionStage.EMBED;
+            task.setCompletedStage(IngestionStage.CHUNK.getCode());
+        }
+        if (resumeStage.ordinal() <= IngestionStage.CHUNK.ordinal()) {
+            cleanupDocumentVectors(task.getDocumentId());
+        }
         
         // 重置任务状态
         task.setStatus("pending");
-        task.setRetryCount(task.getRetryCount() + 1);
-        task.setProgress(0);
+        task.setRetryCount(0); // 自动重试已耗尽才会进入 failed，手动重试重新计算自动重试次数
+        task.setProgress(resumeStage.getProgress());
         task.setErrorMessage(null);
         task.setStartTime(null);
         task.setEndTime(null);
@@ -193,9 +282,10 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
         
         // 投递到队列重新处理
         try {
-            documentProcessingProducer.sendDocumentProcessingMessage(task.getDocumentId(), document.getUserId(), task.getId());
-            log.info("任务重试已重新投递: taskId={}, retryCount={}, documentId={}", 
-                    taskId, task.getRetryCount(), task.getDocumentId());
+            documentProcessingProducer.sendStageMessage(task.getDocumentId(), document.getUserId(), task.getId(),
+                    resumeStage, documentProcessingProducer.laneOf(document.getFileSize()));
+            log.info("任务重试已重新投递: taskId={}, retryCount={}, documentId={}, resumeStage={}", 
+                    taskId, task.getRetryCount(), task.getDocumentId(), resumeStage.getCode());
         } catch (Exception e) {
             log.error("任务重试重新投递失败: taskId={}", taskId, e);
             throw new BusinessException("重试任务队列投递失败");
@@ -235,6 +325,9 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
                     new LambdaQueryWrapper<DocumentChunkDO>()
                         .eq(DocumentChunkDO::getDocumentId, documentId)
                 );
+
+                // 5. 删除块级全文索引
+                documentESService.deleteChunks(documentId);
             } else {
                 log.info("文档无向量数据，跳过清理: documentId={}", documentId);
             }
@@ -244,6 +337,66 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
         }
     }
     
+    @Override
+    public Integer scheduleAutoRetry(Long taskId, String errorMessage) {
+        DocumentTaskDO task = documentTaskMapper.selectById(taskId);
+        if (task == null || task.getRetryCount() >= task.getMaxRetries()) {
+            return null;
+        }
+        
+        task.setStatus("pending");
+        task.setRetryCount(task.getRetryCount() + 1);
+        task.setErrorMessage(errorMessage);
+        task.setUpdateTime(LocalDateTime.now());
+        documentTaskMapper.updateById(task);
+        updateCache(taskId, "pending", null);
+        
+        return task.getRetryCount();
+    }
+    
+    @Override
+    public DeadLetterReplayVO replayDeadLetters(int limit) {
+        DocumentProcessingProducer.ReplayResult result = documentProcessingProducer.replayDeadLetters(limit, message -> {
+            // 索引后处理消息：文档已可用，只重置消息中的重试次数，不改动任务与文档状态
+            if (DocumentProcessingProducer.INDEXED.equals(message.getProcessingType())) {
+                if (documentMapper.selectById(message.getDocumentId()) == null) {
+                    log.info("死信对应的文档已不存在，丢弃: documentId={}", message.getDocumentId());
+                    return false;
+                }
+                message.setRetryCount(0);
+                return true;
+            }
+            if (message.getTaskId() == null) {
+                return true;
+            }
+            DocumentTaskDO task = documentTaskMapper.selectById(message.getTaskId());
+            DocumentDO document = documentMapper.selectById(message.getDocumentId());
+            if (task == null || document == null) {
+                log.info("死信对应的任务或文档已不存在，丢弃: taskId={}, documentId={}",
+                        message.getTaskId(), message.getDocumentId());
+                return false;
+            }
+            
+            // 重新计算自动重试次数，失败阶段的检查点保持不变
+            task.setStatus("pending");
+            task.setRetryCount(0);
+            task.setErrorMessage(null);
+            task.setEndTime(null);
+            task.setUpdateTime(LocalDateTime.now());
+            documentTaskMapper.updateById(task);
+            
+            document.setStatus("processing");
+            documentMapper.updateById(document);
+            return true;
+        });
+        
+        log.info("死信重放完成: replayed={}, dropped={}", result.replayed(), result.dropped());
+        return DeadLetterReplayVO.builder()
+            .replayed(result.replayed())
+            .dropped(result.dropped())
+            .build();
+    }
+    
     @Override
     public List<DocumentTaskVO> getPendingRetryTasks() {
         // 查询失败且未达到最大重试次数的任务
@@ -278,6 +431,8 @@ public class DocumentTaskServiceImpl implements DocumentTaskService {
             .maxRetries(task.getMaxRetries())
             .errorMessage(task.getErrorMessage())
             .progress(task.getProgress())
+            .currentStage(task.getCurrentStage())
+            .completedStage(task.getCompletedStage())
             .startTime(task.getStartTime())
             .endTime(task.getEndTime())
             .duration(duration)
@@ -0,0 +1,181 @@
+package com.GeekPaperAssistant.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.service.EmbeddingCacheService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 向量缓存服务实现
+ *
+ * <p>L1：Caffeine 进程内 LRU，命中时无网络开销</p>
+ * <p>L2：Redis，多实例共享；向量以 float 小端字节序 Base64 存储（RedisTemplate 的 value 使用 String 序列化）</p>
+ * <p>L2 命中时回填 L1；批量读写分别使用 MGET 与 pipeline，避免逐条往返</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+public class EmbeddingCacheServiceImpl implements EmbeddingCacheService {
+
+    private static final String CACHE_KEY_PREFIX = "embedding:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RAGProperties.EmbeddingCacheConfig cacheConfig;
+    private final Cache<String, float[]> localCache;
+
+    private final Counter l1HitCounter;
+    private final Counter l2HitCounter;
+    private final Counter missCounter;
+
+    public EmbeddingCacheServiceImpl(RedisTemplate<String, Object> redisTemplate,
+                                     RAGProperties ragConfig,
+                                     MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.cacheConfig = ragConfig.getEmbedding().getCache();
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getLocalMaxSize())
+                .expireAfterAccess(cacheConfig.getLocalTtl())
+                .recordStats()
+                .build();
+
+        this.l1HitCounter = Counter.builder("rag.embedding.cache.hit")
+                .tag("level", "l1")
+                .description("向量缓存命中数")
+                .register(meterRegistry);
+        this.l2HitCounter = Counter.builder("rag.embedding.cache.hit")
+                .tag("level", "l2")
+                .description("向量缓存命中数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("rag.embedding.cache.miss")
+                .description("向量缓存未命中数(需调用嵌入模型)")
+                .register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.hit.ratio", this, EmbeddingCacheServiceImpl::hitRatio)
+                .description("向量缓存总命中率(L1+L2)")
+                .register(meterRegistry);
+        FunctionCounter.builder("rag.embedding.cache.l1.evictions", localCache, c -> c.stats().evictionCount())
+                .description("L1 缓存淘汰数")
+                .register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.l1.size", localCache, Cache::estimatedSize)
+                .description("L1 缓存条目数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Map<String, float[]> getAll(String model, Integer dimensions, Collection<String> texts) {
+        Map<String, float[]> result = new HashMap<>();
+        if (!cacheConfig.getEnabled() || texts.isEmpty()) {
+            return result;
+        }
+
+        // 1. L1 查询
+        Map<String, String> remoteKeys = new LinkedHashMap<>();
+        for (String text : new LinkedHashSet<>(texts)) {
+            String key = buildKey(model, dimensions, text);
+            float[] cached = localCache.getIfPresent(key);
+            if (cached != null) {
+                result.put(text, cached);
+                l1HitCounter.increment();
+            } else {
+                remoteKeys.put(key, text);
+            }
+        }
+
+        if (remoteKeys.isEmpty()) {
+            return result;
+        }
+
+        // 2. L2 批量查询，命中后回填 L1
+        int remoteHits = 0;
+        try {
+            List<String> keys = new ArrayList<>(remoteKeys.keySet());
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                Object value = values == null ? null : values.get(i);
+                if (value == null) {
+                    continue;
+                }
+                float[] embedding = decode(value.toString());
+                if (dimensions != null && embedding.length != dimensions) {
+                    continue;
+                }
+                localCache.put(keys.get(i), embedding);
+                result.put(remoteKeys.get(keys.get(i)), embedding);
+                remoteHits++;
+            }
+        } catch (Exception e) {
+            log.warn("读取 Redis 向量缓存失败，按未命中处理: {}", e.getMessage());
+        }
+
+        l2HitCounter.increment(remoteHits);
+        missCounter.increment(remoteKeys.size() - remoteHits);
+        return result;
+    }
+
+    @Override
+    public void putAll(String model, Integer dimensions, Map<String, float[]> embeddings) {
+        if (!cacheConfig.getEnabled() || embeddings.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> encoded = new HashMap<>(embeddings.size());
+        embeddings.forEach((text, embedding) -> {
+            String key = buildKey(model, dimensions, text);
+            localCache.put(key, embedding);
+            encoded.put(key, encode(embedding));
+        });
+
+        try {
+            Duration ttl = cacheConfig.getRemoteTtl();
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    encoded.forEach((key, value) -> operations.opsForValue().set(key, value, ttl));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("写入 Redis 向量缓存失败，仅保留本地缓存: {}", e.getMessage());
+        }
+    }
+
+    private String buildKey(String model, Integer dimensions, String text) {
+        return CACHE_KEY_PREFIX + model + ":" + dimensions + ":" + DigestUtil.sha256Hex(text);
+    }
+
+    private double hitRatio() {
+        double hits = l1HitCounter.count() + l2HitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0.0 : hits / total;
+    }
+
+    private static String encode(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static float[] decode(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] embedding = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+}
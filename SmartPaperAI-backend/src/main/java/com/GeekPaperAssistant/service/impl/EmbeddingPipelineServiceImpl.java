@@ -0,0 +1,125 @@
+package com.GeekPaperAssistant.service.impl;
+
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.service.EmbeddingPipelineService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 向量化流水线服务实现
+ *
+ * <p>批次提交到 embeddingExecutor 并行执行；向量化经由 @Primary 的缓存 EmbeddingModel，结果写入向量缓存，
+ * 实际的模型调用(含随后 VectorStore 写入时的调用)由其全局令牌桶限流，多个文档同时入库时总调用速率不超过
+ * rag.embedding.rate-limit-qps</p>
+ * <p>预计算的结果只经由向量缓存交给 VectorStore 写入，向量缓存关闭时预计算无处存放，直接跳过，
+ * 由 VectorStore 写入时向量化，避免同一文本调用两次模型</p>
+ * <p>单个批次失败时按指数退避仅重试该批次，重试耗尽后放弃预计算，由 VectorStore 写入时按原流程向量化</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+public class EmbeddingPipelineServiceImpl implements EmbeddingPipelineService {
+
+    private final EmbeddingModel embeddingModel;
+    private final ExecutorService embeddingExecutor;
+    private final RAGProperties.EmbeddingConfig embeddingConfig;
+
+    private final Timer batchTimer;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+
+    public EmbeddingPipelineServiceImpl(EmbeddingModel embeddingModel,
+                                        @Qualifier("embeddingExecutor") ExecutorService embeddingExecutor,
+                                        RAGProperties ragConfig,
+                                        MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingExecutor = embeddingExecutor;
+        this.embeddingConfig = ragConfig.getEmbedding();
+
+        this.batchTimer = Timer.builder("rag.embedding.batch")
+                .description("文档入库单批次向量化耗时(含限流等待与重试)")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("rag.embedding.batch.retry")
+                .description("向量化批次重试次数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("rag.embedding.batch.failed")
+                .description("重试耗尽仍失败的向量化批次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public int prefetch(List<String> texts, int batchSize) {
+        if (texts.isEmpty()) {
+            return 0;
+        }
+        if (!Boolean.TRUE.equals(embeddingConfig.getCache().getEnabled())) {
+            log.debug("向量缓存未启用，跳过并行预计算: texts={}", texts.size());
+            return 0;
+        }
+
+        long startTime = System.currentTimeMillis();
+        int totalBatches = (texts.size() + batchSize - 1) / batchSize;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(totalBatches);
+        for (int i = 0; i < texts.size(); i += batchSize) {
+            List<String> batch = texts.subList(i, Math.min(i + batchSize, texts.size()));
+            int batchNo = i / batchSize + 1;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> batchTimer.record(() -> embedWithRetry(batch, batchNo, totalBatches)),
+                    embeddingExecutor));
+        }
+
+        int embedded = futures.stream().mapToInt(CompletableFuture::join).sum();
+        log.info("并行向量化完成: texts={}, batches={}, embedded={}, concurrency={}, 耗时 {} ms",
+                texts.size(), totalBatches, embedded, embeddingConfig.getConcurrency(),
+                System.currentTimeMillis() - startTime);
+        return embedded;
+    }
+
+    /**
+     * 向量化单个批次，失败时指数退避重试
+     *
+     * @return 成功时为批次大小，重试耗尽时为 0
+     */
+    private int embedWithRetry(List<String> batch, int batchNo, int totalBatches) {
+        long backoffMillis = embeddingConfig.getRetryBackoff().toMillis();
+        int maxAttempts = embeddingConfig.getMaxRetries() + 1;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                embeddingModel.embed(batch);
+                return batch.size();
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return 0;
+                }
+                if (attempt == maxAttempts) {
+                    failedCounter.increment();
+                    log.warn("向量化批次 {}/{} 重试 {} 次后仍失败，写入时重新向量化: {}",
+                            batchNo, totalBatches, embeddingConfig.getMaxRetries(), e.getMessage());
+                    return 0;
+                }
+                retryCounter.increment();
+                log.warn("向量化批次 {}/{} 第 {} 次失败，{} ms 后重试: {}",
+                        batchNo, totalBatches, attempt, backoffMillis, e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return 0;
+                }
+                backoffMillis *= 2;
+            }
+        }
+        return 0;
+    }
+}
@@ -1,30 +1,61 @@
 package com.GeekPaperAssistant.service.impl;
 
-import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.HexUtil;
 import cn.hutool.core.util.StrUtil;
 import com.GeekPaperAssistant.service.FileStorageService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 import top.continew.starter.core.exception.BusinessException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
 
 /**
  * 文件存储服务实现 - 本地存储版本
  * 后续可替换为 MinIO 实现
  * 
+ * <p>内容寻址文件可能被多个文档引用：上传复用/写入文件与删除前的引用检查按文件 URL 加 Redisson 锁互斥，
+ * 上传持有锁直到引用该文件的文档记录所在事务结束</p>
+ * 
  * @author 席崇援
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class FileStorageServiceImpl implements FileStorageService {
     
+    /**
+     * 内容寻址文件名(SHA-256 十六进制)
+     */
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+    
+    private static final String FILE_LOCK_PREFIX = "file:lock:";
+    
+    /**
+     * 文件锁等待时间与租期(秒)，租期兜底持锁节点宕机的情况
+     */
+    private static final long FILE_LOCK_WAIT_SECONDS = 30;
+    private static final long FILE_LOCK_LEASE_SECONDS = 300;
+    
+    private final RedissonClient redissonClient;
+    
     @Value("${file.storage.base-path:./uploads}")
     private String basePath;
     
@@ -47,7 +78,7 @@ public class FileStorageServiceImpl implements FileStorageService {
                 Files.createDirectories(bucketPath);
             }
             
-            // 4. 生成唯一文件名
+            // 4. 校验原始文件名
             String originalFilename = file.getOriginalFilename();
             if (StrUtil.isBlank(originalFilename)) {
                 throw new BusinessException("文件名不能为空");
@@ -65,11 +96,27 @@ public class FileStorageServiceImpl implements FileStorageService {
                 throw new BusinessException("无效的文件扩展名");
             }
             
-            String filename = IdUtil.fastSimpleUUID() + extension;
-            
-            // 5. 保存文件
-            Path filePath = bucketPath.resolve(filename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            // 5. 边写入临时文件边计算 SHA-256，按内容哈希命名保存（内容寻址），相同内容只保存一份
+            Path tempFile = Files.createTempFile(bucketPath, "upload-", ".tmp");
+            String filename;
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                    Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                filename = HexUtil.encodeHexStr(digest.digest()) + extension.toLowerCase();
+                Path filePath = bucketPath.resolve(filename);
+                lockUntilTransactionEnd(bucket + "/" + filename);
+                if (Files.exists(filePath)) {
+                    log.info("文件内容已存在，复用已有文件: originalName={}, filename={}", originalFilename, filename);
+                } else {
+                    Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 不可用", e);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
             
             // 6. 返回相对路径
             String fileUrl = bucket + "/" + filename;
@@ -82,35 +129,21 @@ public class FileStorageServiceImpl implements FileStorageService {
         }
     }
     
+    @Override
+    public String getContentHash(String fileUrl) {
+        if (StrUtil.isBlank(fileUrl)) {
+            return null;
+        }
+        String filename = fileUrl.substring(fileUrl.lastIndexOf('/') + 1);
+        int dot = filename.lastIndexOf('.');
+        String name = dot < 0 ? filename : filename.substring(0, dot);
+        return CONTENT_HASH_PATTERN.matcher(name).matches() ? name : null;
+    }
+    
     @Override
     public byte[] downloadFile(String fileUrl) {
         try {
-            // 验证文件路径安全性
-            if (StrUtil.isBlank(fileUrl)) {
-                throw new BusinessException("文件路径不能为空");
-            }
-            
-            // 防止路径遍历攻击
-            if (fileUrl.contains("..") || fileUrl.contains("\\") || fileUrl.startsWith("/")) {
-                throw new BusinessException("无效的文件路径");
-            }
-            
-            Path filePath = Paths.get(basePath, fileUrl).normalize();
-            
-            // 确保文件路径在基础目录内
-            Path basePathNormalized = Paths.get(basePath).normalize();
-            if (!filePath.startsWith(basePathNormalized)) {
-                throw new BusinessException("文件路径超出允许范围");
-            }
-            
-            if (!Files.exists(filePath)) {
-                throw new BusinessException("文件不存在: " + fileUrl);
-            }
-            
-            if (!Files.isRegularFile(filePath)) {
-                throw new BusinessException("路径不是文件: " + fileUrl);
-            }
-            
+            Path filePath = resolveExistingFile(fileUrl);
             byte[] data = Files.readAllBytes(filePath);
             
             log.debug("文件下载成功: fileUrl={}, size={}", fileUrl, data.length);
@@ -121,6 +154,93 @@ public class FileStorageServiceImpl implements FileStorageService {
         }
     }
     
+    @Override
+    public Path resolveFile(String fileUrl) {
+        return resolveExistingFile(fileUrl);
+    }
+    
+    /**
+     * 校验文件路径并定位已存在的文件
+     */
+    private Path resolveExistingFile(String fileUrl) {
+        // 验证文件路径安全性
+        if (StrUtil.isBlank(fileUrl)) {
+            throw new BusinessException("文件路径不能为空");
+        }
+        
+        // 防止路径遍历攻击
+        if (fileUrl.contains("..") || fileUrl.contains("\\") || fileUrl.startsWith("/")) {
+            throw new BusinessException("无效的文件路径");
+        }
+        
+        Path filePath = Paths.get(basePath, fileUrl).normalize();
+        
+        // 确保文件路径在基础目录内
+        Path basePathNormalized = Paths.get(basePath).normalize();
+        if (!filePath.startsWith(basePathNormalized)) {
+            throw new BusinessException("文件路径超出允许范围");
+        }
+        
+        if (!Files.exists(filePath)) {
+            throw new BusinessException("文件不存在: " + fileUrl);
+        }
+        
+        if (!Files.isRegularFile(filePath)) {
+            throw new BusinessException("路径不是文件: " + fileUrl);
+        }
+        return filePath;
+    }
+    
+    @Override
+    public boolean deleteFileIfUnreferenced(String fileUrl, BooleanSupplier referenced) {
+        RLock lock = acquireFileLock(fileUrl);
+        try {
+            if (referenced.getAsBoolean()) {
+                return false;
+            }
+            deleteFile(fileUrl);
+            return true;
+        } finally {
+            unlock(lock);
+        }
+    }
+    
+    /**
+     * 加文件锁，在当前事务结束后释放；不在事务中时立即释放
+     */
+    private void lockUntilTransactionEnd(String fileUrl) {
+        RLock lock = acquireFileLock(fileUrl);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            unlock(lock);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(lock);
+            }
+        });
+    }
+    
+    private RLock acquireFileLock(String fileUrl) {
+        RLock lock = redissonClient.getLock(FILE_LOCK_PREFIX + fileUrl);
+        try {
+            if (!lock.tryLock(FILE_LOCK_WAIT_SECONDS, FILE_LOCK_LEASE_SECONDS, TimeUnit.SECONDS)) {
+                throw new BusinessException("文件正在被其他操作占用，请稍后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("等待文件锁时被中断");
+        }
+        return lock;
+    }
+    
+    private static void unlock(RLock lock) {
+        if (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+    
     @Override
     public void deleteFile(String fileUrl) {
         try {
@@ -0,0 +1,111 @@
+package com.GeekPaperAssistant.service.impl;
+
+import cn.hutool.core.codec.Base62;
+import cn.hutool.core.util.StrUtil;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.model.entity.DocumentChunkES;
+import com.GeekPaperAssistant.repository.DocumentChunkESRepository;
+import com.GeekPaperAssistant.service.HybridRetrievalService;
+import com.GeekPaperAssistant.utils.RankFusion;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 混合检索引擎实现
+ *
+ * <p>查询向量通过带缓存的 EmbeddingModel 生成，kNN 与 BM25 两路通过一次 _msearch 请求同时召回，在客户端用 {@link RankFusion}
+ * 加权融合，权重使用 rag.hybrid-search.vector-weight / text-weight。BM25 得分无上界，按本路最高分归一化到 0-1
+ * 后再参与加权，避免在同一个 bool 查询中直接相加时 BM25 压过 kNN 余弦得分</p>
+ * <p>返回的 Document 元数据与向量库保持一致（documentId/userId 为 Base62 编码），
+ * 下游的重排序、上下文构建和引用生成无需区分来源</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HybridRetrievalServiceImpl implements HybridRetrievalService {
+
+    private final DocumentChunkESRepository documentChunkESRepository;
+    private final EmbeddingModel embeddingModel;
+    private final RAGProperties ragConfig;
+
+    // kNN 候选数放大倍数（numCandidates = topK * 该值）
+    private static final int NUM_CANDIDATES_FACTOR = 10;
+
+    @Override
+    public List<Document> search(Long userId, Collection<Long> documentIds, String query, int topK,
+                                 Double similarityThreshold) {
+        if (StrUtil.isBlank(query)) {
+            return new ArrayList<>();
+        }
+
+        List<Query> filters = new ArrayList<>();
+        filters.add(Query.of(q -> q.term(t -> t.field("userId").value(userId))));
+        if (documentIds != null && !documentIds.isEmpty()) {
+            List<FieldValue> values = documentIds.stream().map(id -> FieldValue.of(id.longValue())).toList();
+            filters.add(Query.of(q -> q.terms(t -> t.field("documentId").terms(v -> v.value(values)))));
+        }
+
+        float[] queryVector = embeddingModel.embed(query);
+        RAGProperties.HybridSearchConfig hybridConfig = ragConfig.getHybridSearch();
+
+        DocumentChunkESRepository.HybridHits legs = documentChunkESRepository.hybridSearch(
+                filters,
+                query,
+                queryVector,
+                topK,
+                Math.max(topK * NUM_CANDIDATES_FACTOR, 100),
+                similarityThreshold != null ? similarityThreshold.floatValue() : null);
+        List<DocumentChunkES> vectorHits = legs.vectorHits();
+        List<DocumentChunkES> textHits = legs.textHits();
+
+        // kNN 得分已在 0-1 区间，直接加权；BM25 按本路最高分归一化
+        List<RankFusion.RankedList<String, DocumentChunkES>> lists = List.of(
+                RankFusion.RankedList.raw(vectorHits, DocumentChunkES::getVectorId,
+                        DocumentChunkES::getScore, hybridConfig.getVectorWeight()),
+                RankFusion.RankedList.of(textHits, DocumentChunkES::getVectorId,
+                        DocumentChunkES::getScore, hybridConfig.getTextWeight()));
+        List<DocumentChunkES> hits = new ArrayList<>();
+        for (RankFusion.Fused<String> fused : RankFusion.fuse(RankFusion.Method.WEIGHTED_SUM, lists, topK,
+                RankFusion.DEFAULT_RRF_K)) {
+            DocumentChunkES chunk = fused.firstItem();
+            chunk.setScore(fused.score());
+            hits.add(chunk);
+        }
+
+        log.info("块级混合检索完成: userId={}, documentScope={}, topK={}, vectorHits={}, textHits={}, results={}",
+                userId, documentIds == null ? "all" : documentIds.size(), topK,
+                vectorHits.size(), textHits.size(), hits.size());
+
+        return hits.stream().map(this::toDocument).toList();
+    }
+
+    private Document toDocument(DocumentChunkES chunk) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("documentId", Base62.encode(String.valueOf(chunk.getDocumentId())));
+        metadata.put("userId", Base62.encode(String.valueOf(chunk.getUserId())));
+        metadata.put("chunkIndex", chunk.getChunkIndex());
+        if (chunk.getParentIndex() != null) {
+            metadata.put("parentIndex", chunk.getParentIndex());
+        }
+        metadata.put("title", chunk.getTitle() != null ? chunk.getTitle() : "未知文档");
+        metadata.put("type", chunk.getType() != null ? chunk.getType() : "unknown");
+        if (chunk.getSectionTitle() != null) {
+            metadata.put("sectionTitle", chunk.getSectionTitle());
+        }
+        return Document.builder()
+                .id(chunk.getVectorId())
+                .text(chunk.getContent())
+                .metadata(metadata)
+                .score(chunk.getScore())
+                .build();
+    }
+}
@@ -11,16 +11,22 @@ import com.GeekPaperAssistant.model.dto.KnowledgeBaseQueryDTO;
 import com.GeekPaperAssistant.model.dto.TagQueryDTO;
 import com.GeekPaperAssistant.model.entity.*;
 import com.GeekPaperAssistant.model.vo.TagVO;
+import com.GeekPaperAssistant.service.DocumentESService;
 import com.GeekPaperAssistant.service.KnowledgeBaseService;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import top.continew.starter.core.exception.BusinessException;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +43,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
     private final TagMapper tagMapper;
     private final DocumentTagMapper documentTagMapper;
     private final DocumentMapper documentMapper;
+    private final SemanticAnswerCacheService semanticAnswerCacheService;
+    private final DocumentESService documentESService;
     
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -190,6 +198,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         
         int successCount = 0;
         List<String> errors = new ArrayList<>();
+        List<Long> movedDocumentIds = new ArrayList<>();
+        Set<Long> previousKbIds = new LinkedHashSet<>();
         
         // 批量处理文档
         for (Long documentId : documentIds) {
@@ -210,11 +220,14 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
                 }
                 
                 // 关联文档到知识库
+                Long previousKbId = document.getKbId();
                 document.setKbId(kbId);
                 document.setUpdateTime(LocalDateTime.now());
                 documentMapper.updateById(document);
                 
                 successCount++;
+                movedDocumentIds.add(documentId);
+                previousKbIds.add(previousKbId);
                 log.info("文档归档成功: documentId={}, kbId={}", documentId, kbId);
                 
             } catch (Exception e) {
@@ -230,6 +243,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
             knowledgeBaseMapper.updateById(kb);
         }
         
+        onDocumentsMoved(movedDocumentIds, previousKbIds, kbId);
+
         log.info("批量归档完成: total={}, success={}, failed={}", 
             documentIds.size(), successCount, documentIds.size() - successCount);
         
@@ -261,6 +276,7 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
         int successCount = 0;
         List<String> errors = new ArrayList<>();
+        List<Long> movedDocumentIds = new ArrayList<>();
 
         // 批量处理文档
         for (Long documentId : documentIds) {
@@ -287,6 +303,7 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
                 knowledgeBaseMapper.updateById(kb);
 
                 successCount++;
+                movedDocumentIds.add(documentId);
                 log.info("文档移除成功: documentId={}, kbId={}", documentId, kbId);
 
             } catch (Exception e) {
@@ -302,6 +319,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
             knowledgeBaseMapper.updateById(kb);
         }
 
+        onDocumentsMoved(movedDocumentIds, Set.of(kbId), -1L);
+
         log.info("批量移除完成: total={}, success={}, failed={}",
             documentIds.size(), successCount, documentIds.size() - successCount);
 
@@ -312,6 +331,43 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         }
     }
 
+    /**
+     * 文档移入 / 移出知识库后的处理：事务提交后同步块级全文索引中的知识库ID，并使涉及的知识库答案缓存失效
+     *
+     * @param documentIds 移动成功的文档ID
+     * @param previousKbIds 文档原所属知识库ID
+     * @param targetKbId 目标知识库ID(-1 表示移出知识库)
+     */
+    private void onDocumentsMoved(List<Long> documentIds, Set<Long> previousKbIds, Long targetKbId) {
+        if (documentIds.isEmpty()) {
+            return;
+        }
+        Set<Long> affectedKbIds = new LinkedHashSet<>(previousKbIds);
+        affectedKbIds.add(targetKbId);
+        affectedKbIds.removeIf(id -> id == null || id <= 0);
+
+        runAfterCommit(() -> {
+            documentESService.updateChunksKnowledgeBase(documentIds, targetKbId);
+            affectedKbIds.forEach(semanticAnswerCacheService::evictKnowledgeBase);
+        });
+    }
+
+    /**
+     * 在当前事务提交后执行，不在事务中时立即执行
+     */
+    private static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Long createTag(String name, String color) {
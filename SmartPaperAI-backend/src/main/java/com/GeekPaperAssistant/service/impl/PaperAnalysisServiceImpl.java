@@ -12,6 +12,7 @@ import com.GeekPaperAssistant.model.vo.*;
 import com.GeekPaperAssistant.service.CitationBuilderService;
 import com.GeekPaperAssistant.service.FileStorageService;
 import com.GeekPaperAssistant.service.GrobidMetadataService;
+import com.GeekPaperAssistant.service.ParentChunkService;
 import com.GeekPaperAssistant.service.PaperAnalysisService;
 import com.GeekPaperAssistant.utils.LLMJsonUtils;
 import lombok.Builder;
@@ -52,6 +53,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
     private final RedisTemplate<String, Object> redisTemplate;
     private final RAGProperties ragConfig;
     private final CitationBuilderService citationBuilderService;
+    private final ParentChunkService parentChunkService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // 🆕 GROBID 元数据解析服务
@@ -118,7 +120,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
                     .build();
             
             // 构建 QuestionAnswerAdvisor
-            QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
+            QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(parentChunkService.expandingView(vectorStore))
                     .searchRequest(searchRequest)
                     .build();
 
@@ -0,0 +1,124 @@
+package com.GeekPaperAssistant.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.GeekPaperAssistant.config.ParentExpandingVectorStore;
+import com.GeekPaperAssistant.mapper.DocumentChunkParentMapper;
+import com.GeekPaperAssistant.model.entity.DocumentChunkParentDO;
+import com.GeekPaperAssistant.service.ParentChunkService;
+import com.GeekPaperAssistant.utils.NumberConversionUtils;
+import com.GeekPaperAssistant.utils.RAGUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 父块展开服务实现
+ *
+ * <p>一次查询取回所有命中涉及的父块，查询失败时退回命中的小块本身，不影响问答</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParentChunkServiceImpl implements ParentChunkService {
+
+    private final DocumentChunkParentMapper documentChunkParentMapper;
+
+    @Override
+    public List<Document> expandToParents(List<Document> hits) {
+        if (hits == null || hits.isEmpty()) {
+            return hits;
+        }
+
+        // 按命中顺序记录 (documentId, parentIndex)，无父块关联的命中以自身为键
+        Map<String, Document> firstHits = new LinkedHashMap<>();
+        Map<String, List<String>> matchedIds = new HashMap<>();
+        Set<Long> documentIds = new HashSet<>();
+        Set<Integer> parentIndexes = new HashSet<>();
+        for (Document hit : hits) {
+            Long documentId = RAGUtils.extractDocumentId(hit.getMetadata());
+            Integer parentIndex = parentIndex(hit);
+            String key;
+            if (documentId == null || parentIndex == null) {
+                key = "chunk:" + hit.getId();
+            } else {
+                key = parentKey(documentId, parentIndex);
+                documentIds.add(documentId);
+                parentIndexes.add(parentIndex);
+            }
+            firstHits.putIfAbsent(key, hit);
+            matchedIds.computeIfAbsent(key, k -> new ArrayList<>()).add(hit.getId());
+        }
+        if (documentIds.isEmpty()) {
+            return hits;
+        }
+
+        Map<String, DocumentChunkParentDO> parents = new HashMap<>();
+        try {
+            documentChunkParentMapper.selectList(new LambdaQueryWrapper<DocumentChunkParentDO>()
+                            .in(DocumentChunkParentDO::getDocumentId, documentIds)
+                            .in(DocumentChunkParentDO::getParentIndex, parentIndexes))
+                    .forEach(parent -> parents.put(parentKey(parent.getDocumentId(), parent.getParentIndex()), parent));
+        } catch (Exception e) {
+            log.warn("读取父块失败，使用命中的小块作为上下文: error={}", e.getMessage());
+            return hits;
+        }
+
+        List<Document> expanded = new ArrayList<>(firstHits.size());
+        firstHits.forEach((key, hit) -> {
+            DocumentChunkParentDO parent = parents.get(key);
+            if (parent == null) {
+                expanded.add(hit);
+                return;
+            }
+            List<String> chunkIds = matchedIds.get(key);
+            Map<String, Object> metadata = new HashMap<>(hit.getMetadata());
+            metadata.put("chunkIndex", parent.getParentIndex());
+            if (parent.getChildCount() != null) {
+                metadata.put("chunkEndIndex", parent.getParentIndex() + parent.getChildCount() - 1);
+            }
+            metadata.put("matchedChunks", chunkIds.size());
+            metadata.put("matchedChunkIds", chunkIds);
+            if (parent.getTokens() != null) {
+                metadata.put("tokenCount", parent.getTokens());
+            }
+            expanded.add(Document.builder()
+                    .id(hit.getId())
+                    .text(parent.getContent())
+                    .metadata(metadata)
+                    .score(hit.getScore())
+                    .build());
+        });
+
+        log.debug("父块展开: 命中={}, 展开后={}, 父块={}", hits.size(), expanded.size(), parents.size());
+        return expanded;
+    }
+
+    @Override
+    public VectorStore expandingView(VectorStore vectorStore) {
+        return new ParentExpandingVectorStore(vectorStore, this);
+    }
+
+    private static Integer parentIndex(Document hit) {
+        Object value = hit.getMetadata().get("parentIndex");
+        if (value instanceof Number number) {
+            return NumberConversionUtils.numberToInteger(number);
+        }
+        return value == null ? null : NumberConversionUtils.toInteger(String.valueOf(value));
+    }
+
+    private static String parentKey(Long documentId, Integer parentIndex) {
+        return documentId + ":" + parentIndex;
+    }
+}
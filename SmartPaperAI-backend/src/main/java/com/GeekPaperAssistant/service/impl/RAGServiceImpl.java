@@ -1,23 +1,32 @@
 package com.GeekPaperAssistant.service.impl;
 
 import cn.dev33.satoken.stp.StpUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.GeekPaperAssistant.config.properties.RAGProperties;
 import com.GeekPaperAssistant.mapper.DocumentChunkMapper;
 import com.GeekPaperAssistant.mapper.DocumentMapper;
 import com.GeekPaperAssistant.mapper.KnowledgeBaseMapper;
 import com.GeekPaperAssistant.model.entity.DocumentChunkDO;
+import com.GeekPaperAssistant.model.entity.DocumentChunkES;
 import com.GeekPaperAssistant.model.entity.KnowledgeBaseDO;
 import com.GeekPaperAssistant.model.entity.DocumentDO;
 import com.GeekPaperAssistant.model.vo.CitationVO;
 import com.GeekPaperAssistant.model.vo.RagChatResultVO;
+import com.GeekPaperAssistant.repository.VectorEmbeddingRepository;
 import com.GeekPaperAssistant.service.CitationBuilderService;
 import com.GeekPaperAssistant.service.DocumentESService;
 import com.GeekPaperAssistant.service.DynamicRetrievalService;
+import com.GeekPaperAssistant.service.HybridRetrievalService;
+import com.GeekPaperAssistant.service.ParentChunkService;
 import com.GeekPaperAssistant.service.RAGService;
 import com.GeekPaperAssistant.service.RerankService;
-import com.GeekPaperAssistant.utils.NumberConversionUtils;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
+import com.GeekPaperAssistant.utils.ContextPacker;
 import com.GeekPaperAssistant.utils.RAGUtils;
+import com.GeekPaperAssistant.utils.RankFusion;
+import com.GeekPaperAssistant.utils.TokenCounter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -34,6 +43,7 @@ import org.springframework.stereotype.Service;
 import top.continew.starter.core.exception.BusinessException;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -59,9 +69,16 @@ public class RAGServiceImpl implements RAGService {
     private final KnowledgeBaseMapper knowledgeBaseMapper;
     private final DynamicRetrievalService dynamicRetrievalService;
     private final DocumentESService documentESService;
+    private final HybridRetrievalService hybridRetrievalService;
     private final RerankService rerankService;
+    private final VectorEmbeddingRepository vectorEmbeddingRepository;
     private final ChatClient ragChatClient;
     private final CitationBuilderService citationBuilderService;
+    private final SemanticAnswerCacheService semanticAnswerCacheService;
+    private final RetrievalCacheService retrievalCacheService;
+    private final ParentChunkService parentChunkService;
+    private final ContextPacker contextPacker;
+    private final TokenCounter tokenCounter;
 
     // 注入提示词模板
     @Qualifier("ragQAPromptTemplate")
@@ -70,12 +87,27 @@ public class RAGServiceImpl implements RAGService {
     private final String documentQAPromptTemplate;
 
     @Override
-    public RagChatResultVO ragChat(String conversationId, String query) {
-        log.info("RAG问答: conversationId={}, query={}", conversationId, query);
+    public RagChatResultVO ragChat(String conversationId, String query, String rerankMode) {
+        log.info("RAG问答: conversationId={}, query={}, rerankMode={}", conversationId, query, rerankMode);
 
         // 获取当前用户ID（拦截器已确保用户已登录）
         Long userId = StpUtil.getLoginIdAsLong();
 
+        // 0. 语义答案缓存：同一用户范围内的相似问题直接复用答案
+        String cacheScope = SemanticAnswerCacheService.userScope(userId);
+        RagChatResultVO cachedResult = semanticAnswerCacheService.get(cacheScope, rerankMode, query);
+        if (cachedResult != null) {
+            if (conversationId != null && !conversationId.trim().isEmpty()) {
+                try {
+                    chatMemoryRepository.add(conversationId,
+                            List.of(new UserMessage(query), new AssistantMessage(cachedResult.getAnswer())));
+                } catch (Exception e) {
+                    log.warn("保存RAG对话历史失败: conversationId={}", conversationId, e);
+                }
+            }
+            return cachedResult;
+        }
+
         // 1. 构建基础过滤条件 - 使用 RAGUtils 统一构建
         Filter.Expression filterExpression = RAGUtils.buildUserIdFilter(userId);
 
@@ -93,37 +125,17 @@ public class RAGServiceImpl implements RAGService {
                 baseRequest.getTopK(), adjustedRequest.getTopK(),
                 baseRequest.getSimilarityThreshold(), adjustedRequest.getSimilarityThreshold());
 
-        // 3. 执行检索（根据配置选择检索策略）
-        List<Document> retrievedDocs;
-        
-        if (ragConfig.getRetrieval().getEnableHybridSearch()) {
-            // ✅ 启用混合检索：ES BM25 快速召回 + 向量精排
-            log.info("启用混合检索: ES BM25 召回 + 向量精排");
-            
-            // 根据是否启用重排序，决定向量精排的严格程度
-            boolean useStrictReranking = ragConfig.getRetrieval().getEnableReranking();
-            retrievedDocs = performHybridSearch(userId, null, query, adjustedRequest, useStrictReranking);
-            
-        } else if (ragConfig.getRetrieval().getEnableReranking()) {
-            // 纯向量检索 + 重排序（扩大检索量后精排）
-            log.info("启用向量检索重排序: 扩大检索量 -> 精排");
-            retrievedDocs = performVectorSearchWithReranking(adjustedRequest);
-            
-        } else {
-            // 使用默认的纯向量检索
-            log.debug("使用默认纯向量检索");
-            retrievedDocs = vectorStore.similaritySearch(adjustedRequest);
-            log.info("向量检索完成: 检索到 {} 个文档片段", retrievedDocs.size());
-        }
+        // 3. 执行检索（根据配置选择检索策略，结果经检索缓存复用）
+        List<Document> retrievedDocs = retrieveDocuments(userId, null, query, adjustedRequest, rerankMode);
         
         // 4. 手动构建上下文并注入到 Prompt 中
-        String context = buildContext(retrievedDocs);
-        log.info("构建上下文: {} 个文档片段, 上下文长度: {} 字符", retrievedDocs.size(), context.length());
+        ContextPacker.PackedContext packed = packContext(retrievedDocs, ragQAPromptTemplate, query);
+        String context = packed.text();
+        log.info("构建上下文: 检索 {} 个片段, 放入 {} 段, 丢弃 {} 个, 上下文 {} tokens",
+                retrievedDocs.size(), packed.blocks().size(), packed.dropped().size(), packed.tokens());
 
         // 5. 使用提示词模板构建用户提示（注入检索到的上下文）
-        String userPrompt = ragQAPromptTemplate
-                .replace("{question}", query)
-                .replace("{context}", context);
+        String userPrompt = RAGUtils.fillTemplate(ragQAPromptTemplate, Map.of("question", query, "context", context));
 
         // 构建包含历史对话的消息列表
         List<Message> messages = new ArrayList<>();
@@ -161,19 +173,21 @@ public class RAGServiceImpl implements RAGService {
         }
 
         // 6. 构建引用列表（使用已检索的文档）
-        List<CitationVO> citations = citationBuilderService.buildCitations(retrievedDocs, query, 300);
+        List<CitationVO> citations = citationBuilderService.buildCitations(packed.retainPacked(retrievedDocs), query, 300);
 
         log.info("RAG问答完成: conversationId={}, responseLength={}, citations={}", 
                 conversationId, response.length(), citations.size());
-        return RagChatResultVO.builder()
+        RagChatResultVO result = RagChatResultVO.builder()
                 .answer(response)
                 .citations(citations)
                 .build();
+        semanticAnswerCacheService.put(cacheScope, rerankMode, query, result);
+        return result;
     }
 
     @Override
-    public RagChatResultVO documentChat(Long documentId, String query) {
-        log.info("文档问答: documentId={}, query={}", documentId, query);
+    public RagChatResultVO documentChat(Long documentId, String query, String rerankMode) {
+        log.info("文档问答: documentId={}, query={}, rerankMode={}", documentId, query, rerankMode);
 
         // 验证文档权限（拦截器已确保用户已登录）
         Long userId = StpUtil.getLoginIdAsLong();
@@ -193,6 +207,13 @@ public class RAGServiceImpl implements RAGService {
                     .build();
         }
 
+        // 语义答案缓存：同一文档的相似问题直接复用答案
+        String cacheScope = SemanticAnswerCacheService.documentScope(documentId);
+        RagChatResultVO cachedResult = semanticAnswerCacheService.get(cacheScope, rerankMode, query);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
         // 构建过滤条件 - 使用 RAGUtils 统一构建文档+用户过滤器
         Filter.Expression filterExpression = RAGUtils.buildDocumentUserFilter(documentId, userId);
         log.info("文档问答过滤条件: documentId={}, userId={}", documentId, userId);
@@ -208,34 +229,19 @@ public class RAGServiceImpl implements RAGService {
         log.info("检索参数: query={}, topK={}, threshold={}", 
                 query, searchRequest.getTopK(), searchRequest.getSimilarityThreshold());
 
-        // 执行检索（根据配置选择检索策略）
-        List<Document> docRetrievedDocs;
-        
-        if (ragConfig.getRetrieval().getEnableHybridSearch()) {
-            // ✅ 启用混合检索（针对单个文档）
-            log.info("文档问答启用混合检索: documentId={}", documentId);
-            boolean useStrictReranking = ragConfig.getRetrieval().getEnableReranking();
-            docRetrievedDocs = performHybridSearch(userId, documentId, query, searchRequest, useStrictReranking);
-            
-        } else if (ragConfig.getRetrieval().getEnableReranking()) {
-            // 纯向量检索 + 重排序
-            log.info("文档问答启用重排序: documentId={}", documentId);
-            docRetrievedDocs = performVectorSearchWithReranking(searchRequest);
-        } else {
-            // 使用默认的纯向量检索
-            docRetrievedDocs = vectorStore.similaritySearch(searchRequest);
-        }
+        // 执行检索（根据配置选择检索策略，结果经检索缓存复用）
+        List<Document> docRetrievedDocs = retrieveDocuments(userId, documentId, query, searchRequest, rerankMode);
         
         log.info("文档问答检索完成: documentId={}, 检索到 {} 个片段", documentId, docRetrievedDocs.size());
         
         // 构建上下文
-        String context = buildContext(docRetrievedDocs);
-        log.info("构建上下文: {} 个文档片段, 上下文长度: {} 字符", docRetrievedDocs.size(), context.length());
+        ContextPacker.PackedContext packed = packContext(docRetrievedDocs, documentQAPromptTemplate, query);
+        String context = packed.text();
+        log.info("构建上下文: 检索 {} 个片段, 放入 {} 段, 丢弃 {} 个, 上下文 {} tokens",
+                docRetrievedDocs.size(), packed.blocks().size(), packed.dropped().size(), packed.tokens());
 
         // 使用提示词模板构建用户提示（注入上下文）
-        String userPrompt = documentQAPromptTemplate
-                .replace("{question}", query)
-                .replace("{context}", context);
+        String userPrompt = RAGUtils.fillTemplate(documentQAPromptTemplate, Map.of("question", query, "context", context));
         
         // ✅ 直接使用已构建的上下文，不使用 QuestionAnswerAdvisor
         String response = ragChatClient.prompt()
@@ -244,16 +250,18 @@ public class RAGServiceImpl implements RAGService {
                 .content();
         
         // 构建引用列表
-        List<CitationVO> citations = citationBuilderService.buildCitations(docRetrievedDocs, query, 300);
-        return RagChatResultVO.builder()
+        List<CitationVO> citations = citationBuilderService.buildCitations(packed.retainPacked(docRetrievedDocs), query, 300);
+        RagChatResultVO result = RagChatResultVO.builder()
                 .answer(response)
                 .citations(citations)
                 .build();
+        semanticAnswerCacheService.put(cacheScope, rerankMode, query, result);
+        return result;
     }
 
     @Override
-    public RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query) {
-        log.info("知识库问答: knowledgeBaseId={}, query={}", knowledgeBaseId, query);
+    public RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query, String rerankMode) {
+        log.info("知识库问答: knowledgeBaseId={}, query={}, rerankMode={}", knowledgeBaseId, query, rerankMode);
         
         // 获取当前用户ID
         Long userId = StpUtil.getLoginIdAsLong();
@@ -261,6 +269,13 @@ public class RAGServiceImpl implements RAGService {
         // 验证知识库访问权限
         validateKnowledgeBaseAccess(knowledgeBaseId, userId);
         
+        // 语义答案缓存：同一知识库的相似问题直接复用答案
+        String cacheScope = SemanticAnswerCacheService.knowledgeBaseScope(knowledgeBaseId);
+        RagChatResultVO cachedResult = semanticAnswerCacheService.get(cacheScope, rerankMode, query);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+        
         List<DocumentDO> kbDocuments = documentMapper.selectList(
                 new LambdaQueryWrapper<DocumentDO>()
                         .eq(DocumentDO::getKbId, knowledgeBaseId)
@@ -298,19 +313,30 @@ public class RAGServiceImpl implements RAGService {
         // 动态调整检索参数
         SearchRequest adjustedRequest = dynamicRetrievalService.adjustSearchRequest(query, baseRequest);
         
-        log.info("知识库问答使用向量检索(无重排序): knowledgeBaseId={}", knowledgeBaseId);
-        List<Document> retrievedDocs = vectorStore.similaritySearch(adjustedRequest);
+        // 默认只走向量检索；请求显式指定重排序模式时扩大召回后按该模式 LLM 精排
+        List<Document> retrievedDocs;
+        if (StrUtil.isNotBlank(rerankMode)) {
+            log.info("知识库问答使用向量检索+重排序: knowledgeBaseId={}, rerankMode={}", knowledgeBaseId, rerankMode);
+            AtomicBoolean rerankDegraded = new AtomicBoolean(false);
+            retrievedDocs = retrievalCacheService.getOrLoad(userId, "rerank:" + rerankMode, adjustedRequest,
+                    () -> performVectorSearchWithReranking(adjustedRequest, rerankMode, rerankDegraded),
+                    () -> !rerankDegraded.get());
+        } else {
+            log.info("知识库问答使用向量检索(无重排序): knowledgeBaseId={}", knowledgeBaseId);
+            retrievedDocs = retrievalCacheService.getOrLoad(userId, "vector", adjustedRequest,
+                    () -> vectorStore.similaritySearch(adjustedRequest));
+        }
         
         log.info("知识库问答检索完成: knowledgeBaseId={}, 检索到 {} 个片段", knowledgeBaseId, retrievedDocs.size());
         
         // 4. 构建上下文
-        String context = buildContext(retrievedDocs);
-        log.info("构建上下文: {} 个文档片段, 上下文长度: {} 字符", retrievedDocs.size(), context.length());
+        ContextPacker.PackedContext packed = packContext(retrievedDocs, documentQAPromptTemplate, query);
+        String context = packed.text();
+        log.info("构建上下文: 检索 {} 个片段, 放入 {} 段, 丢弃 {} 个, 上下文 {} tokens",
+                retrievedDocs.size(), packed.blocks().size(), packed.dropped().size(), packed.tokens());
 
         // 5. 构建提示词
-        String userPrompt = documentQAPromptTemplate
-                .replace("{question}", query)
-                .replace("{context}", context);
+        String userPrompt = RAGUtils.fillTemplate(documentQAPromptTemplate, Map.of("question", query, "context", context));
         
         // 6. ✅ 直接使用已构建的上下文，不使用 QuestionAnswerAdvisor
         String response = ragChatClient.prompt()
@@ -319,22 +345,66 @@ public class RAGServiceImpl implements RAGService {
                 .content();
         
         // 7. 构建引用列表
-        List<CitationVO> citations = citationBuilderService.buildCitations(retrievedDocs, query, 300);
+        List<CitationVO> citations = citationBuilderService.buildCitations(packed.retainPacked(retrievedDocs), query, 300);
         
         log.info("知识库问答完成: knowledgeBaseId={}, responseLength={}, citations={}", 
                 knowledgeBaseId, response.length(), citations.size());
         
-        return RagChatResultVO.builder()
+        RagChatResultVO result = RagChatResultVO.builder()
                 .answer(response)
                 .citations(citations)
                 .build();
+        semanticAnswerCacheService.put(cacheScope, rerankMode, query, result);
+        return result;
+    }
+
+    /**
+     * 按配置的检索策略获取候选片段
+     *
+     * <p>混合检索 / 向量检索+重排序 / 纯向量检索三选一，输出经 {@link RetrievalCacheService} 缓存，
+     * 缓存阶段标识包含检索策略和重排序模式，不同策略的结果互不复用</p>
+     *
+     * @param userId 用户ID
+     * @param documentId 文档ID(可选,为null时检索用户全部文档)
+     * @param query 查询文本
+     * @param request 检索请求
+     * @param rerankMode 重排序模式(pointwise/listwise)，为空时使用配置
+     * @return 检索到的文档片段
+     */
+    private List<Document> retrieveDocuments(Long userId, Long documentId, String query, SearchRequest request,
+                                             String rerankMode) {
+        boolean hybrid = ragConfig.getRetrieval().getEnableHybridSearch();
+        boolean reranking = ragConfig.getRetrieval().getEnableReranking();
+        String strategy = hybrid ? "hybrid" : reranking ? "rerank" : "vector";
+        String stage = reranking
+                ? strategy + ":" + (rerankMode != null ? rerankMode : ragConfig.getRetrieval().getRerank().getMode())
+                : strategy;
+
+        // 重排序降级(LLM 失败/超时)的结果不缓存，下次请求重新精排
+        AtomicBoolean rerankDegraded = new AtomicBoolean(false);
+        return retrievalCacheService.getOrLoad(userId, stage, request, () -> {
+            if (hybrid) {
+                // ✅ 启用混合检索：ES BM25 快速召回 + 向量精排，根据是否启用重排序决定向量精排的严格程度
+                log.info("启用混合检索: ES BM25 召回 + 向量精排, documentId={}", documentId);
+                return performHybridSearch(userId, documentId, query, request, reranking, rerankMode, rerankDegraded);
+            }
+            if (reranking) {
+                // 纯向量检索 + 重排序（扩大检索量后精排）
+                log.info("启用向量检索重排序: 扩大检索量 -> 精排, documentId={}", documentId);
+                return performVectorSearchWithReranking(request, rerankMode, rerankDegraded);
+            }
+            // 使用默认的纯向量检索
+            List<Document> docs = vectorStore.similaritySearch(request);
+            log.info("向量检索完成: 检索到 {} 个文档片段", docs.size());
+            return docs;
+        }, () -> !rerankDegraded.get());
     }
 
     /**
      * 混合检索：ES BM25 快速召回 + 向量精排 + LLM重排序
      * 三阶段策略：
      * 1. ES 召回大量候选（BM25 关键词匹配，快速）
-     * 2. 向量精排（语义相似度，中等规模）
+     * 2. 向量精排：仅在 BM25 召回的文档范围内做向量检索，并按 vector-weight/text-weight 融合两路分数
      * 3. LLM 重排序（精准评分，小规模）
      * 
      * @param userId 用户ID
@@ -342,24 +412,58 @@ public class RAGServiceImpl implements RAGService {
      * @param query 查询文本
      * @param vectorRequest 向量检索请求
      * @param useStrictReranking 是否启用 LLM 重排序
+     * @param rerankMode 重排序模式(pointwise/listwise)，为空时使用配置
+     * @param rerankDegraded 重排序降级时置为 true
      * @return 精排后的文档列表
      */
-    private List<Document> performHybridSearch(Long userId, Long documentId, String query, SearchRequest vectorRequest, boolean useStrictReranking) {
+    private List<Document> performHybridSearch(Long userId, Long documentId, String query, SearchRequest vectorRequest,
+                                               boolean useStrictReranking, String rerankMode,
+                                               AtomicBoolean rerankDegraded) {
+        // 优先：块级索引完成 kNN + BM25 召回与融合
+        if (ragConfig.getHybridSearch().getNativeEnabled()) {
+            int recallTopK = useStrictReranking ?
+                    vectorRequest.getTopK() * ragConfig.getRetrieval().getRerankExpandFactor() :
+                    vectorRequest.getTopK() * 2;
+            List<Document> nativeResults = hybridRetrievalService.search(
+                    userId,
+                    documentId != null ? List.of(documentId) : null,
+                    query,
+                    recallTopK,
+                    ragConfig.getHybridSearch().getVectorSimilarityThreshold());
+            if (!nativeResults.isEmpty()) {
+                log.info("块级混合检索: {} 个文档块", nativeResults.size());
+                if (useStrictReranking && nativeResults.size() > vectorRequest.getTopK()) {
+                    return performLLMReranking(query, nativeResults, vectorRequest.getTopK() * 2, rerankMode,
+                            rerankDegraded);
+                }
+                return nativeResults.stream()
+                        .limit(vectorRequest.getTopK() * 2)
+                        .collect(Collectors.toList());
+            }
+            log.info("块级混合检索无结果，回退到多阶段混合检索");
+        }
+        
         // 第一阶段：ES 快速召回
         int esTopK = ragConfig.getHybridSearch().getVectorTopK() * 
                     (useStrictReranking ? ragConfig.getRetrieval().getRerankExpandFactor() : 2);
         
-        // ✅ 支持按文档ID过滤
-        var esResults = documentESService.fullTextSearchWithHighlight(userId, documentId, query, esTopK);
+        // ✅ 块级 BM25 召回，支持按文档ID过滤
+        var esResults = documentESService.fullTextSearchChunks(userId, documentId, query, esTopK);
         
         if (esResults.isEmpty()) {
-            log.warn("ES 未召回文档，降级为纯向量检索");
+            log.warn("ES 未召回文档块，降级为纯向量检索");
             return vectorStore.similaritySearch(vectorRequest);
         }
         
-        log.info("阶段1-ES召回: {} 个文档", esResults.size());
+        // 召回块所属的文档范围
+        Set<Long> candidateDocumentIds = new LinkedHashSet<>();
+        for (var hit : esResults) {
+            candidateDocumentIds.add(hit.getDocumentId());
+        }
         
-        // 第二阶段：向量精排（保留原始过滤条件）
+        log.info("阶段1-ES召回: {} 个文档块, 覆盖 {} 个文档", esResults.size(), candidateDocumentIds.size());
+        
+        // 第二阶段：向量精排（原始过滤条件 AND BM25 召回的文档范围）
         double threshold = useStrictReranking ? 
                 ragConfig.getHybridSearch().getVectorSimilarityThreshold() : 
                 vectorRequest.getSimilarityThreshold();
@@ -368,21 +472,59 @@ public class RAGServiceImpl implements RAGService {
                 vectorRequest.getTopK() * ragConfig.getRetrieval().getRerankExpandFactor() : 
                 vectorRequest.getTopK();
         
-        // ✅ 保留原始的 filterExpression，确保文档过滤生效
+        Filter.Expression candidateFilter = RAGUtils.and(
+                vectorRequest.getFilterExpression(),
+                RAGUtils.buildDocumentIdInFilter(candidateDocumentIds));
         SearchRequest refinedRequest = SearchRequest.builder()
                 .query(vectorRequest.getQuery())
                 .topK(vectorTopK)
                 .similarityThreshold(threshold)
-                .filterExpression(vectorRequest.getFilterExpression())  // 保留过滤条件
+                .filterExpression(candidateFilter)
                 .build();
-        List<Document> vectorResults = vectorStore.similaritySearch(refinedRequest);
+        List<Document> vectorResults = new ArrayList<>(vectorStore.similaritySearch(refinedRequest));
+        
+        // BM25 召回范围内结果不足时（如跨语言查询关键词不命中），用不受限的向量检索补足
+        if (vectorResults.size() < vectorRequest.getTopK()) {
+            Set<String> seenIds = vectorResults.stream().map(Document::getId).collect(Collectors.toSet());
+            SearchRequest supplementRequest = SearchRequest.builder()
+                    .query(vectorRequest.getQuery())
+                    .topK(vectorTopK)
+                    .similarityThreshold(threshold)
+                    .filterExpression(vectorRequest.getFilterExpression())
+                    .build();
+            vectorStore.similaritySearch(supplementRequest).stream()
+                    .filter(doc -> seenIds.add(doc.getId()))
+                    .forEach(vectorResults::add);
+            log.info("阶段2-BM25 范围内向量结果不足，补充不受限向量检索后共 {} 个片段", vectorResults.size());
+        }
+        
+        // 按配置权重逐块融合向量分数与 BM25 分数（块级索引 _id 即向量ID，BM25 按最高分归一化到 0-1）
+        double vectorWeight = ragConfig.getHybridSearch().getVectorWeight();
+        double textWeight = ragConfig.getHybridSearch().getTextWeight();
+        List<RankFusion.Fused<String>> fused = RankFusion.fuse(
+                RankFusion.Method.WEIGHTED_SUM,
+                List.of(
+                        RankFusion.RankedList.raw(vectorResults, Document::getId,
+                                doc -> doc.getScore() == null ? 0.0 : doc.getScore(), vectorWeight),
+                        RankFusion.RankedList.of(esResults, DocumentChunkES::getVectorId,
+                                hit -> hit.getScore() == null ? 0.0 : hit.getScore(), textWeight)),
+                Integer.MAX_VALUE,
+                RankFusion.DEFAULT_RRF_K);
+        // 只保留向量检索中存在的片段（BM25 独有的块没有 Document 可供后续使用）
+        List<Document> rankedResults = fused.stream()
+                .filter(f -> f.item(0) != null)
+                .map(f -> f.<Document>item(0))
+                .collect(Collectors.toList());
+        
+        log.info("阶段2-向量精排: {} 个片段 (权重 vector={}, text={})", rankedResults.size(), vectorWeight, textWeight);
         
         // 第三阶段：LLM 重排序（可选）
-        if (useStrictReranking && vectorResults.size() > vectorRequest.getTopK()) {
-            return performLLMReranking(query, vectorResults, vectorRequest.getTopK() * 2); // 增加返回文档数量
+        if (useStrictReranking && rankedResults.size() > vectorRequest.getTopK()) {
+            return performLLMReranking(query, rankedResults, vectorRequest.getTopK() * 2, rerankMode,
+                    rerankDegraded); // 增加返回文档数量
         }
         
-        return vectorResults.stream()
+        return rankedResults.stream()
                 .limit(vectorRequest.getTopK() * 2) // 增加返回文档数量
                 .collect(Collectors.toList());
     }
@@ -391,9 +533,12 @@ public class RAGServiceImpl implements RAGService {
      * 纯向量检索 + LLM 重排序
      * 
      * @param baseRequest 基础检索请求
+     * @param rerankMode 重排序模式(pointwise/listwise)，为空时使用配置
+     * @param rerankDegraded 重排序降级时置为 true
      * @return 重排序后的文档列表
      */
-    private List<Document> performVectorSearchWithReranking(SearchRequest baseRequest) {
+    private List<Document> performVectorSearchWithReranking(SearchRequest baseRequest, String rerankMode,
+                                                            AtomicBoolean rerankDegraded) {
         int expandedTopK = baseRequest.getTopK() * ragConfig.getRetrieval().getRerankExpandFactor();
         
         log.info("向量检索+重排序: 初始检索={}, 最终topK={}, threshold={}", 
@@ -414,7 +559,8 @@ public class RAGServiceImpl implements RAGService {
         log.info("初始检索: {} 个候选文档", candidates.size());
         // 第二阶段：LLM 重排序
         if (candidates.size() > baseRequest.getTopK()) {
-            return performLLMReranking(baseRequest.getQuery(), candidates, baseRequest.getTopK() * 2); // 增加返回文档数量
+            return performLLMReranking(baseRequest.getQuery(), candidates, baseRequest.getTopK() * 2, rerankMode,
+                    rerankDegraded); // 增加返回文档数量
         }
         
         return candidates.stream()
@@ -424,31 +570,52 @@ public class RAGServiceImpl implements RAGService {
     
     /**
      * 使用 RerankService 进行 LLM 重排序
+     *
+     * <p>candidates 保持向量检索顺序传入，listwise 输出异常时以此顺序兜底</p>
+     * <p>候选以检索结果中的序号为键（chunkIndex 在不同文档间会重复），
+     * 并一次性批量读取候选在向量索引中已存储的 embedding 传给重排序，避免重新向量化</p>
+     * <p>重排序降级(LLM 失败/超时/输出无法解析)时将 rerankDegraded 置为 true，调用方据此跳过结果缓存</p>
      */
-    private List<Document> performLLMReranking(String query, List<Document> candidates, int topK) {
-        // 构建候选 Map: chunkId -> content
+    private List<Document> performLLMReranking(String query, List<Document> candidates, int topK, String rerankMode,
+                                               AtomicBoolean rerankDegraded) {
+        // 构建候选 Map: 序号 -> content
         Map<Long, String> candidateMap = new LinkedHashMap<>();
         Map<Long, Document> docMap = new HashMap<>();
         
-        for (Document doc : candidates) {
-            Object chunkIdObj = doc.getMetadata().get("chunkIndex");
-            if (chunkIdObj != null) {
-                Long chunkId = NumberConversionUtils.toLong(String.valueOf(chunkIdObj));
-                candidateMap.put(chunkId, doc.getText());
-                docMap.put(chunkId, doc);
+        for (int i = 0; i < candidates.size(); i++) {
+            Document doc = candidates.get(i);
+            if (doc.getText() != null) {
+                candidateMap.put((long) i, doc.getText());
+                docMap.put((long) i, doc);
             }
         }
         
         if (candidateMap.isEmpty()) {
-            log.warn("无有效 chunkId，跳过 LLM 重排序");
+            log.warn("无有效候选内容，跳过 LLM 重排序");
             return candidates.stream().limit(topK).collect(Collectors.toList());
         }
+
+        // 复用向量索引中已存储的候选向量（单次 mget）
+        Map<String, float[]> storedEmbeddings = vectorEmbeddingRepository.findEmbeddingsByIds(
+                docMap.values().stream().map(Document::getId).collect(Collectors.toList()));
+        Map<Long, float[]> candidateEmbeddings = new HashMap<>();
+        docMap.forEach((ordinal, doc) -> {
+            float[] embedding = storedEmbeddings.get(doc.getId());
+            if (embedding != null) {
+                candidateEmbeddings.put(ordinal, embedding);
+            }
+        });
         
         // 调用 RerankService 重排序
-        List<Long> rankedChunkIds = rerankService.rerank(query, candidateMap, topK);
+        RerankService.RerankResult reranked = rerankService.rerankWithStatus(
+                query, candidateMap, topK, rerankMode, candidateEmbeddings);
+        if (reranked.degraded()) {
+            rerankDegraded.set(true);
+        }
+        List<Long> rankedOrdinals = reranked.rankedIds();
         
         // 转换回 Document 列表
-        List<Document> rerankedDocs = rankedChunkIds.stream()
+        List<Document> rerankedDocs = rankedOrdinals.stream()
                 .map(docMap::get)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
@@ -526,25 +693,24 @@ public class RAGServiceImpl implements RAGService {
 
     
     /**
-     * 构建上下文字符串
-     * 将检索到的文档片段合并为一个上下文字符串
+     * 构建上下文
+     * 命中的小块展开为父块后按 token 预算装配：预算 = 提示词上限 - 对话历史预留 - 模板与问题本身，
+     * 引用只保留实际放入上下文的检索块
      */
-    private String buildContext(List<Document> documents) {
-        if (documents == null || documents.isEmpty()) {
-            return "未找到相关文档。";
-        }
-        
-        StringBuilder contextBuilder = new StringBuilder();
-        contextBuilder.append("以下是检索到的相关文档片段：\n\n");
-        
-        for (int i = 0; i < documents.size(); i++) {
-            Document doc = documents.get(i);
-            contextBuilder.append(String.format("[文档片段 %d]\n", i + 1));
-            contextBuilder.append(doc.getText());
-            contextBuilder.append("\n\n");
+    private ContextPacker.PackedContext packContext(List<Document> retrievedDocs, String promptTemplate, String query) {
+        RAGProperties.ContextConfig config = ragConfig.getContext();
+        String skeleton = RAGUtils.fillTemplate(promptTemplate, Map.of("question", query, "context", ""));
+        int budget = Math.max(config.getMinContextTokens(),
+                config.getMaxPromptTokens() - config.getReservedTokens()
+                        - tokenCounter.count(skeleton) - contextPacker.headerTokens());
+
+        ContextPacker.PackedContext packed = contextPacker.pack(parentChunkService.expandToParents(retrievedDocs), budget);
+        if (!packed.dropped().isEmpty()) {
+            log.debug("上下文丢弃片段: budget={}, dropped={}", budget, packed.dropped().stream()
+                    .map(chunk -> chunk.document().getId() + ":" + chunk.reason())
+                    .toList());
         }
-        
-        return contextBuilder.toString();
+        return packed;
     }
 
     /**
@@ -1,19 +1,37 @@
 package com.GeekPaperAssistant.service.impl;
 
+import com.GeekPaperAssistant.config.CachingEmbeddingModel;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
 import com.GeekPaperAssistant.service.RerankService;
-import lombok.RequiredArgsConstructor;
+import com.GeekPaperAssistant.utils.LLMJsonUtils;
+import com.GeekPaperAssistant.utils.RAGUtils;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.stereotype.Service;
+import top.continew.starter.core.exception.BusinessException;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -29,31 +47,123 @@ import java.util.stream.Collectors;
  * - 响应时间从 N*2s 降至 K*2s（N >> K）
  * - 利用 ES 的倒排索引和向量索引加速
  * 
+ * 并发评分：
+ * - LLM 评分在独立线程池 rerankExecutor 上并发执行，单请求并发度受 rag.retrieval.rerank.concurrency 限制
+ * - 超过 rag.retrieval.rerank.deadline 仍未完成的候选，使用向量/BM25 分数兜底，不再等待
+ * 
+ * Listwise 模式（rag.retrieval.rerank.mode=listwise 或请求参数指定）：
+ * - 所有候选编号后放入同一提示词，单次 LLM 调用返回 [{id, score}] 排序结果
+ * - LLM 调用次数从 O(N) 降为 O(1)；输出无法解析或超时时保持向量检索顺序
+ * 
  * @author 席崇援
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class RerankServiceImpl implements RerankService {
     
     // 指定使用普通聊天的 ChatClient，避免与 ragChatClient Bean 冲突
-    @Qualifier("normalChatClient")
     private final ChatClient chatClient;
     
     // Embedding 模型（用于向量相似度计算）
     private final EmbeddingModel embeddingModel;
+
+    // LLM 评分专用线程池
+    private final ExecutorService rerankExecutor;
+
+    private final RAGProperties ragConfig;
+
+    // listwise 重排序提示词模板
+    private final String listwiseRerankPromptTemplate;
+
+    // 监控指标
+    private final Timer llmScoreTimer;
+    private final Timer listwiseCallTimer;
+    private final Counter malformedFallbackCounter;
+    private final Counter deadlineExceededCounter;
+    private final Counter deadlineFallbackCounter;
+    private final Counter errorFallbackCounter;
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
     
     // 性能阈值配置
     private static final int LLM_RERANK_THRESHOLD = 5;  // 降低阈值，只对最终候选使用 LLM
     private static final int VECTOR_RERANK_THRESHOLD = 20;  // 向量精排的阈值
+    private static final int LISTWISE_MAX_CANDIDATES = 30;  // listwise 单次提示词最多携带的候选数
+
+    public RerankServiceImpl(@Qualifier("normalChatClient") ChatClient chatClient,
+                             EmbeddingModel embeddingModel,
+                             @Qualifier("rerankExecutor") ExecutorService rerankExecutor,
+                             RAGProperties ragConfig,
+                             @Qualifier("listwiseRerankPromptTemplate") String listwiseRerankPromptTemplate,
+                             MeterRegistry meterRegistry) {
+        this.chatClient = chatClient;
+        this.embeddingModel = embeddingModel;
+        this.rerankExecutor = rerankExecutor;
+        this.ragConfig = ragConfig;
+        this.listwiseRerankPromptTemplate = listwiseRerankPromptTemplate;
+
+        this.llmScoreTimer = Timer.builder("rag.rerank.llm.call")
+                .description("单次 LLM 相关性评分耗时")
+                .register(meterRegistry);
+        this.deadlineExceededCounter = Counter.builder("rag.rerank.deadline.exceeded")
+                .description("触发截止时间的重排序请求数")
+                .register(meterRegistry);
+        this.deadlineFallbackCounter = Counter.builder("rag.rerank.fallback")
+                .tag("reason", "deadline")
+                .description("因截止时间使用兜底分数的候选数")
+                .register(meterRegistry);
+        this.errorFallbackCounter = Counter.builder("rag.rerank.fallback")
+                .tag("reason", "error")
+                .description("因评分失败使用兜底分数的候选数")
+                .register(meterRegistry);
+        this.listwiseCallTimer = Timer.builder("rag.rerank.listwise.call")
+                .description("listwise 单次 LLM 排序耗时")
+                .register(meterRegistry);
+        this.malformedFallbackCounter = Counter.builder("rag.rerank.fallback")
+                .tag("reason", "malformed")
+                .description("listwise 输出无法解析而保持向量顺序的请求数")
+                .register(meterRegistry);
+        Gauge.builder("rag.rerank.concurrency", ragConfig, c -> c.getRetrieval().getRerank().getConcurrency())
+                .description("单请求 LLM 评分并发上限")
+                .register(meterRegistry);
+        Gauge.builder("rag.rerank.deadline", ragConfig, c -> c.getRetrieval().getRerank().getDeadline().toMillis())
+                .description("重排序截止时间(毫秒)")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("rag.rerank.llm.inflight", inFlightCalls, AtomicInteger::get)
+                .description("在途 LLM 评分调用数")
+                .register(meterRegistry);
+    }
     
     @Override
     public List<Long> rerank(String query, Map<Long, String> candidates, int topK) {
-        log.info("三层混合 Rerank 开始: query={}, candidateCount={}, topK={}", query, candidates.size(), topK);
-        
+        return rerank(query, candidates, topK, null);
+    }
+
+    @Override
+    public List<Long> rerank(String query, Map<Long, String> candidates, int topK, String mode) {
+        return rerank(query, candidates, topK, mode, Map.of());
+    }
+
+    @Override
+    public List<Long> rerank(String query, Map<Long, String> candidates, int topK, String mode,
+                             Map<Long, float[]> candidateEmbeddings) {
+        return rerankWithStatus(query, candidates, topK, mode, candidateEmbeddings).rankedIds();
+    }
+
+    @Override
+    public RerankResult rerankWithStatus(String query, Map<Long, String> candidates, int topK, String mode,
+                                         Map<Long, float[]> candidateEmbeddings) {
         if (candidates.isEmpty()) {
-            return List.of();
+            return new RerankResult(List.of(), false);
+        }
+
+        String resolvedMode = resolveMode(mode);
+        if (MODE_LISTWISE.equals(resolvedMode)) {
+            log.info("Listwise Rerank 开始: query={}, candidateCount={}, topK={}", query, candidates.size(), topK);
+            return rerankListwise(query, candidates, topK);
         }
+
+        log.info("三层混合 Rerank 开始: query={}, candidateCount={}, topK={}", query, candidates.size(), topK);
         
         // 策略选择（根据候选数量智能降级）
         if (candidates.size() <= LLM_RERANK_THRESHOLD) {
@@ -64,39 +174,233 @@ public class RerankServiceImpl implements RerankService {
         } else if (candidates.size() <= VECTOR_RERANK_THRESHOLD) {
             // 场景2: 候选中等(6-20) - 向量相似度 + LLM 精排
             log.info("候选数量中等({}≤{}), 使用向量相似度初排 + LLM 精排", candidates.size(), VECTOR_RERANK_THRESHOLD);
-            return rerankWithVectorAndLLM(query, candidates, topK);
+            return rerankWithVectorAndLLM(query, candidates, topK, candidateEmbeddings);
             
         } else {
             // 场景3: 候选很多(>20) - BM25 + 向量相似度 + LLM 精排
             log.info("候选数量大({}), 使用三层混合策略: BM25 → 向量 → LLM", candidates.size());
-            return rerankWithHybridStrategy(query, candidates, topK);
+            return rerankWithHybridStrategy(query, candidates, topK, candidateEmbeddings);
         }
     }
     
+    /**
+     * 解析重排序模式：请求参数优先，其次使用配置
+     */
+    private String resolveMode(String mode) {
+        String resolved = (mode == null || mode.isBlank())
+                ? ragConfig.getRetrieval().getRerank().getMode()
+                : mode.trim().toLowerCase();
+        if (!MODE_POINTWISE.equals(resolved) && !MODE_LISTWISE.equals(resolved)) {
+            throw new BusinessException("不支持的重排序模式: " + resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Listwise 重排序：单次 LLM 调用对全部候选整体排序
+     *
+     * <p>候选按迭代顺序(即向量检索顺序)编号，最多 {@link #LISTWISE_MAX_CANDIDATES} 个送入提示词；
+     * 模型遗漏的候选及未送入提示词的尾部候选按原顺序追加在末尾，输出无法解析、调用失败或超过截止时间时直接返回原顺序</p>
+     */
+    private RerankResult rerankListwise(String query, Map<Long, String> candidates, int topK) {
+        List<Long> originalOrder = new ArrayList<>(candidates.keySet());
+        List<Long> vectorOrder = originalOrder.subList(0, Math.min(LISTWISE_MAX_CANDIDATES, originalOrder.size()));
+
+        int snippetLength = ragConfig.getRetrieval().getRerank().getListwiseSnippetLength();
+        StringBuilder numbered = new StringBuilder();
+        for (int i = 0; i < vectorOrder.size(); i++) {
+            String content = candidates.get(vectorOrder.get(i));
+            String snippet = content.length() > snippetLength ? content.substring(0, snippetLength) + "..." : content;
+            numbered.append("[").append(i + 1).append("] ")
+                    .append(snippet.replace('\n', ' '))
+                    .append("\n\n");
+        }
+
+        String prompt = RAGUtils.fillTemplate(listwiseRerankPromptTemplate, Map.of(
+                "query", query,
+                "candidates", numbered.toString().trim(),
+                "topK", String.valueOf(Math.min(topK, vectorOrder.size()))));
+
+        String response;
+        Duration deadline = ragConfig.getRetrieval().getRerank().getDeadline();
+        try {
+            response = CompletableFuture
+                    .supplyAsync(() -> listwiseCallTimer.record(() -> chatClient.prompt()
+                            .user(prompt)
+                            .call()
+                            .content()), rerankExecutor)
+                    .get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            deadlineExceededCounter.increment();
+            log.warn("Listwise 重排序超过截止时间 {}ms，保持向量检索顺序", deadline.toMillis());
+            return new RerankResult(limit(originalOrder, topK), true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RerankResult(limit(originalOrder, topK), true);
+        } catch (Exception e) {
+            errorFallbackCounter.increment();
+            log.warn("Listwise 重排序调用失败，保持向量检索顺序: {}", e.getMessage());
+            return new RerankResult(limit(originalOrder, topK), true);
+        }
+
+        List<ListwiseScore> parsed;
+        try {
+            parsed = LLMJsonUtils.parseArray(response, ListwiseScore.class);
+        } catch (Exception e) {
+            parsed = List.of();
+        }
+
+        // 只保留合法编号，去重后按分数降序
+        Set<Long> seen = new LinkedHashSet<>();
+        parsed.stream()
+                .filter(item -> item != null && item.id() != null && item.id() >= 1 && item.id() <= vectorOrder.size())
+                .sorted(Comparator.comparingDouble((ListwiseScore item) -> item.score() == null ? 0.0 : item.score()).reversed())
+                .forEach(item -> seen.add(vectorOrder.get(item.id() - 1)));
+
+        if (seen.isEmpty()) {
+            malformedFallbackCounter.increment();
+            log.warn("Listwise 重排序输出无法解析，保持向量检索顺序: {}", response);
+            return new RerankResult(limit(originalOrder, topK), true);
+        }
+
+        // 模型遗漏的候选及超出提示词上限的尾部候选按向量顺序追加
+        seen.addAll(originalOrder);
+        log.info("Listwise 重排序完成: 模型返回 {} 个有效编号, 候选 {} 个", parsed.size(), vectorOrder.size());
+        return new RerankResult(limit(new ArrayList<>(seen), topK), false);
+    }
+
+    private List<Long> limit(List<Long> ids, int topK) {
+        return ids.size() > topK ? new ArrayList<>(ids.subList(0, topK)) : ids;
+    }
+
+    /**
+     * listwise 输出项：候选编号(从 1 开始) + 相关性分数
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record ListwiseScore(Integer id, Double score) {
+    }
+    
     /**
      * 策略1: 直接 LLM 评分（候选 ≤5）
      */
-    private List<Long> rerankWithLLM(String query, Map<Long, String> candidates, int topK) {
+    private RerankResult rerankWithLLM(String query, Map<Long, String> candidates, int topK) {
+        return rerankWithLLM(query, candidates, topK, computeKeywordScores(query, candidates));
+    }
+
+    /**
+     * 并发 LLM 评分
+     *
+     * <p>按配置的并发度启动若干评分 worker，共享同一个候选队列；到达截止时间后停止派发，
+     * 已完成的候选使用 LLM 分数，其余候选使用 fallbackScores 兜底</p>
+     *
+     * @param fallbackScores 兜底分数(向量相似度 / BM25 / 关键词)，需与 LLM 分数同为 0-1 区间
+     */
+    private RerankResult rerankWithLLM(String query, Map<Long, String> candidates, int topK,
+                                       Map<Long, Double> fallbackScores) {
+        RAGProperties.RerankConfig rerankConfig = ragConfig.getRetrieval().getRerank();
+        long deadlineNanos = System.nanoTime() + rerankConfig.getDeadline().toNanos();
+        int workerCount = Math.max(1, Math.min(rerankConfig.getConcurrency(), candidates.size()));
+
+        Map<Long, Double> llmScores = new ConcurrentHashMap<>();
+        Set<Long> failed = ConcurrentHashMap.newKeySet();
+        Queue<Map.Entry<Long, String>> pending = new ConcurrentLinkedQueue<>(candidates.entrySet());
+        AtomicBoolean expired = new AtomicBoolean(false);
+        boolean deadlineReached = false;
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            try {
+                workers.add(CompletableFuture.runAsync(
+                        () -> drainScoringQueue(query, pending, llmScores, failed, expired, deadlineNanos),
+                        rerankExecutor));
+            } catch (RejectedExecutionException e) {
+                log.warn("重排序线程池已满，本次仅启动 {} 个评分 worker", workers.size());
+                break;
+            }
+        }
+
+        try {
+            if (!workers.isEmpty()) {
+                long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                CompletableFuture.allOf(workers.toArray(new CompletableFuture[0]))
+                        .get(remaining, TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            deadlineReached = true;
+            deadlineExceededCounter.increment();
+            log.warn("LLM 重排序超过截止时间 {}ms, 已完成 {}/{} 个候选",
+                    rerankConfig.getDeadline().toMillis(), llmScores.size(), candidates.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("LLM 重排序异常，使用兜底分数: {}", e.getMessage());
+        } finally {
+            expired.set(true);
+        }
+
+        // 合并分数：优先 LLM 分数，未完成的候选使用兜底分数
         Map<Long, Double> scores = new HashMap<>();
-        
-        for (Map.Entry<Long, String> entry : candidates.entrySet()) {
-            double score = computeRelevanceScore(query, entry.getValue());
-            scores.put(entry.getKey(), score);
+        int fallbackCount = 0;
+        for (Long id : candidates.keySet()) {
+            Double score = llmScores.get(id);
+            if (score == null) {
+                score = fallbackScores.getOrDefault(id, 0.0);
+                fallbackCount++;
+            }
+            scores.put(id, score);
         }
-        
-        return scores.entrySet().stream()
+        if (fallbackCount > 0) {
+            // 评分失败的候选已在 worker 中计入 error；其余未评分的候选因截止时间被跳过，
+            // 未到截止时间却未评分(线程池拒绝、worker 异常)时同样计入 error
+            int failedCount = failed.size();
+            int unscored = fallbackCount - failedCount;
+            if (deadlineReached) {
+                deadlineFallbackCounter.increment(unscored);
+            } else if (unscored > 0) {
+                errorFallbackCounter.increment(unscored);
+            }
+            log.info("LLM 重排序兜底: {}/{} 个候选使用向量/BM25 分数(评分失败 {} 个)",
+                    fallbackCount, candidates.size(), failedCount);
+        }
+
+        List<Long> rankedIds = scores.entrySet().stream()
             .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
             .limit(topK)
             .map(Map.Entry::getKey)
             .collect(Collectors.toList());
+        return new RerankResult(rankedIds, fallbackCount > 0);
+    }
+
+    /**
+     * 评分 worker：循环领取候选并调用 LLM 评分，直到队列为空或超过截止时间
+     */
+    private void drainScoringQueue(String query, Queue<Map.Entry<Long, String>> pending, Map<Long, Double> llmScores,
+                                   Set<Long> failed, AtomicBoolean expired, long deadlineNanos) {
+        Map.Entry<Long, String> entry;
+        while (!expired.get() && System.nanoTime() < deadlineNanos && (entry = pending.poll()) != null) {
+            inFlightCalls.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                llmScores.put(entry.getKey(), scoreWithLLM(query, entry.getValue()));
+            } catch (Exception e) {
+                // 评分失败的候选不写入结果，由调用方使用兜底分数
+                failed.add(entry.getKey());
+                errorFallbackCounter.increment();
+                log.warn("候选 {} 的 LLM 评分失败: {}", entry.getKey(), e.getMessage());
+            } finally {
+                llmScoreTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                inFlightCalls.decrementAndGet();
+            }
+        }
     }
     
     /**
      * 策略2: 向量相似度 + LLM 精排（候选 6-20）
      */
-    private List<Long> rerankWithVectorAndLLM(String query, Map<Long, String> candidates, int topK) {
+    private RerankResult rerankWithVectorAndLLM(String query, Map<Long, String> candidates, int topK,
+                                                Map<Long, float[]> candidateEmbeddings) {
         // 第一步: 使用向量相似度快速筛选出 topK*2 个候选
-        Map<Long, Double> vectorScores = computeVectorScores(query, candidates);
+        Map<Long, Double> vectorScores = computeVectorScores(query, candidates, candidateEmbeddings);
         
         List<Long> topCandidates = vectorScores.entrySet().stream()
             .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
@@ -106,19 +410,20 @@ public class RerankServiceImpl implements RerankService {
         
         log.info("向量初排: 从{}个候选中筛选出{}个", candidates.size(), topCandidates.size());
         
-        // 第二步: 对筛选后的候选使用 LLM 精准评分
-        Map<Long, String> refinedCandidates = new HashMap<>();
+        // 第二步: 对筛选后的候选使用 LLM 精准评分（超时候选以向量分数兜底）
+        Map<Long, String> refinedCandidates = new LinkedHashMap<>();
         for (Long id : topCandidates) {
             refinedCandidates.put(id, candidates.get(id));
         }
         
-        return rerankWithLLM(query, refinedCandidates, topK);
+        return rerankWithLLM(query, refinedCandidates, topK, vectorScores);
     }
     
     /**
      * 策略3: BM25 + 向量 + LLM 三层精排（候选 >20）
      */
-    private List<Long> rerankWithHybridStrategy(String query, Map<Long, String> candidates, int topK) {
+    private RerankResult rerankWithHybridStrategy(String query, Map<Long, String> candidates, int topK,
+                                                  Map<Long, float[]> candidateEmbeddings) {
         // 第一步: BM25 文本相关性评分（最快）
         Map<Long, Double> bm25Scores = computeBM25Scores(query, candidates);
         
@@ -137,7 +442,7 @@ public class RerankServiceImpl implements RerankService {
             bm25Candidates.put(id, candidates.get(id));
         }
         
-        Map<Long, Double> vectorScores = computeVectorScores(query, bm25Candidates);
+        Map<Long, Double> vectorScores = computeVectorScores(query, bm25Candidates, candidateEmbeddings);
         
         List<Long> vectorTop = vectorScores.entrySet().stream()
             .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
@@ -147,49 +452,52 @@ public class RerankServiceImpl implements RerankService {
         
         log.info("向量精排: 从{}个候选中筛选出{}个", bm25Candidates.size(), vectorTop.size());
         
-        // 第三步: LLM 最终精排（只对最终候选）
-        Map<Long, String> finalCandidates = new HashMap<>();
+        // 第三步: LLM 最终精排（只对最终候选，超时候选以向量分数兜底）
+        Map<Long, String> finalCandidates = new LinkedHashMap<>();
         for (Long id : vectorTop) {
             finalCandidates.put(id, candidates.get(id));
         }
         
-        return rerankWithLLM(query, finalCandidates, topK);
-    }
-
-    /**
-     * 带缓存的文本向量化方法
-     *
-     * <p>使用 Spring Cache 缓存向量化结果，避免重复计算</p>
-     * <p>缓存键：文本内容的 hash 值</p>
-     * <p>TTL：1小时（通过 application.yaml 配置）</p>
-     *
-     * @param text 待向量化的文本
-     * @return 向量数组
-     */
-    @Cacheable(value = "embeddings", key = "#text.hashCode()")
-    private float[] embedWithCache(String text) {
-        return embeddingModel.embed(text);
+        return rerankWithLLM(query, finalCandidates, topK, vectorScores);
     }
 
     /**
      * 计算向量相似度评分
+     *
+     * <p>优先复用检索阶段已存储的候选向量，仅对查询和缺失向量的候选调用 EmbeddingModel(带两级缓存)，
+     * 每次调用最多 {@link CachingEmbeddingModel#MAX_BATCH_SIZE} 条；候选向量齐全时整个计算只需一次查询向量化</p>
      */
-    private Map<Long, Double> computeVectorScores(String query, Map<Long, String> candidates) {
+    private Map<Long, Double> computeVectorScores(String query, Map<Long, String> candidates,
+                                                  Map<Long, float[]> candidateEmbeddings) {
         Map<Long, Double> scores = new HashMap<>();
 
         try {
-            // 生成查询向量（使用缓存）
-            float[] queryEmbedding = embedWithCache(query);
+            List<Long> missingIds = candidates.keySet().stream()
+                    .filter(id -> !candidateEmbeddings.containsKey(id))
+                    .collect(Collectors.toList());
+            float[] queryEmbedding = embeddingModel.embed(query);
+            Map<Long, float[]> docEmbeddings = new HashMap<>(candidateEmbeddings);
+            for (int start = 0; start < missingIds.size(); start += CachingEmbeddingModel.MAX_BATCH_SIZE) {
+                List<Long> batchIds = missingIds.subList(start,
+                        Math.min(start + CachingEmbeddingModel.MAX_BATCH_SIZE, missingIds.size()));
+                List<float[]> embeddings = embeddingModel.embed(batchIds.stream().map(candidates::get).toList());
+                for (int i = 0; i < batchIds.size(); i++) {
+                    docEmbeddings.put(batchIds.get(i), embeddings.get(i));
+                }
+            }
+            if (!missingIds.isEmpty()) {
+                log.debug("向量精排: {} 个候选复用已存储向量, {} 个候选重新向量化",
+                        candidates.size() - missingIds.size(), missingIds.size());
+            }
 
-            // 计算每个候选文档的相似度（使用缓存）
-            for (Map.Entry<Long, String> entry : candidates.entrySet()) {
+            // 计算每个候选文档的相似度
+            for (Long id : candidates.keySet()) {
                 try {
-                    float[] docEmbedding = embedWithCache(entry.getValue());
-                    double similarity = cosineSimilarity(queryEmbedding, docEmbedding);
-                    scores.put(entry.getKey(), similarity);
+                    double similarity = cosineSimilarity(queryEmbedding, docEmbeddings.get(id));
+                    scores.put(id, similarity);
                 } catch (Exception e) {
-                    log.warn("计算文档 {} 的向量相似度失败: {}", entry.getKey(), e.getMessage());
-                    scores.put(entry.getKey(), 0.0);
+                    log.warn("计算文档 {} 的向量相似度失败: {}", id, e.getMessage());
+                    scores.put(id, 0.0);
                 }
             }
 
@@ -313,35 +621,43 @@ public class RerankServiceImpl implements RerankService {
     @Override
     public double computeRelevanceScore(String query, String document) {
         try {
-            // 使用简化的启发式方法计算相关性
-            // 在实际生产中可以使用专门的 rerank 模型
-            
-            String prompt = String.format(
-                "请评估以下文档与查询的相关性，给出0-10的分数（仅返回数字）：\n\n" +
-                "查询：%s\n\n" +
-                "文档：%s",
-                query,
-                document.length() > 500 ? document.substring(0, 500) + "..." : document
-            );
-            
-            List<Message> messages = List.of(
-                new SystemMessage("你是一个文档相关性评估专家。请仅返回0-10之间的数字分数。"),
-                new UserMessage(prompt)
-            );
-            
-            String response = chatClient.prompt(new Prompt(messages))
-                .call()
-                .content();
-            
-            // 解析分数
-            double score = parseScore(response);
-            return score / 10.0; // 归一化到 0-1
-            
+            return scoreWithLLM(query, document);
         } catch (Exception e) {
             log.warn("计算相关性分数失败，使用关键词匹配: {}", e.getMessage());
             return computeKeywordScore(query, document);
         }
     }
+
+    /**
+     * 调用 LLM 计算相关性分数，失败时直接抛出异常，由调用方决定兜底策略
+     *
+     * @return 归一化到 0-1 的相关性分数
+     */
+    private double scoreWithLLM(String query, String document) {
+        // 使用简化的启发式方法计算相关性
+        // 在实际生产中可以使用专门的 rerank 模型
+        
+        String prompt = String.format(
+            "请评估以下文档与查询的相关性，给出0-10的分数（仅返回数字）：\n\n" +
+            "查询：%s\n\n" +
+            "文档：%s",
+            query,
+            document.length() > 500 ? document.substring(0, 500) + "..." : document
+        );
+        
+        List<Message> messages = List.of(
+            new SystemMessage("你是一个文档相关性评估专家。请仅返回0-10之间的数字分数。"),
+            new UserMessage(prompt)
+        );
+        
+        String response = chatClient.prompt(new Prompt(messages))
+            .call()
+            .content();
+        
+        // 解析分数
+        double score = parseScore(response);
+        return score / 10.0; // 归一化到 0-1
+    }
     
     /**
      * 解析LLM返回的分数
@@ -0,0 +1,165 @@
+package com.GeekPaperAssistant.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.GeekPaperAssistant.config.RetrievalCachingVectorStore;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
+import com.GeekPaperAssistant.utils.RAGUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存服务实现
+ *
+ * <p>Redis 键：rag:retrieval:{userId}:{版本号}:{sha256(阶段|归一化查询|规范化过滤器|topK|阈值)}，
+ * 值为片段列表(id、文本、元数据、分数)的 JSON</p>
+ * <p>版本号保存在 rag:retrieval:gen:{userId}，失效时 INCR，旧版本的键不再被访问，由 TTL 自然过期</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+public class RetrievalCacheServiceImpl implements RetrievalCacheService {
+
+    private static final String CACHE_KEY_PREFIX = "rag:retrieval:";
+    private static final String GENERATION_KEY_PREFIX = "rag:retrieval:gen:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final VectorStore vectorStore;
+    private final ObjectMapper objectMapper;
+    private final RAGProperties.RetrievalCacheConfig cacheConfig;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public RetrievalCacheServiceImpl(RedisTemplate<String, Object> redisTemplate,
+                                     VectorStore vectorStore,
+                                     ObjectMapper objectMapper,
+                                     RAGProperties ragConfig,
+                                     MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.vectorStore = vectorStore;
+        this.objectMapper = objectMapper;
+        this.cacheConfig = ragConfig.getRetrieval().getCache();
+
+        this.hitCounter = Counter.builder("rag.retrieval.cache.hit")
+                .description("检索结果缓存命中数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("rag.retrieval.cache.miss")
+                .description("检索结果缓存未命中数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 缓存的文档片段
+     */
+    record CachedDocument(String id, String text, Map<String, Object> metadata, Double score) {
+    }
+
+    @Override
+    public List<Document> getOrLoad(Long userId, String stage, SearchRequest request, Supplier<List<Document>> loader) {
+        return getOrLoad(userId, stage, request, loader, () -> true);
+    }
+
+    @Override
+    public List<Document> getOrLoad(Long userId, String stage, SearchRequest request, Supplier<List<Document>> loader,
+                                    BooleanSupplier cacheable) {
+        if (!cacheConfig.getEnabled() || userId == null) {
+            return loader.get();
+        }
+
+        String key = null;
+        try {
+            key = buildKey(userId, stage, request);
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                List<CachedDocument> documents = objectMapper.readValue(cached.toString(),
+                        new TypeReference<List<CachedDocument>>() {
+                        });
+                hitCounter.increment();
+                log.debug("检索缓存命中: userId={}, stage={}, count={}", userId, stage, documents.size());
+                return documents.stream()
+                        .map(doc -> Document.builder()
+                                .id(doc.id())
+                                .text(doc.text())
+                                .metadata(doc.metadata())
+                                .score(doc.score())
+                                .build())
+                        .toList();
+            }
+        } catch (Exception e) {
+            log.warn("读取检索缓存失败，按未命中处理: userId={}, stage={}, error={}", userId, stage, e.getMessage());
+        }
+
+        missCounter.increment();
+        List<Document> documents = loader.get();
+
+        // 空结果不缓存：可能是检索异常降级，也可能文档仍在处理中
+        if (key != null && documents != null && !documents.isEmpty()) {
+            if (!cacheable.getAsBoolean()) {
+                log.debug("本次检索结果不可缓存，跳过写入: userId={}, stage={}", userId, stage);
+                return documents;
+            }
+            try {
+                List<CachedDocument> cachedDocuments = documents.stream()
+                        .map(doc -> new CachedDocument(doc.getId(), doc.getText(), doc.getMetadata(), doc.getScore()))
+                        .toList();
+                redisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(cachedDocuments),
+                        cacheConfig.getTtl());
+            } catch (Exception e) {
+                log.warn("写入检索缓存失败: userId={}, stage={}, error={}", userId, stage, e.getMessage());
+            }
+        }
+        return documents;
+    }
+
+    @Override
+    public VectorStore vectorStoreFor(Long userId) {
+        return new RetrievalCachingVectorStore(vectorStore, this, userId);
+    }
+
+    @Override
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        try {
+            Long generation = redisTemplate.opsForValue().increment(GENERATION_KEY_PREFIX + userId);
+            log.info("检索缓存失效: userId={}, generation={}", userId, generation);
+        } catch (Exception e) {
+            log.warn("检索缓存失效失败: userId={}, error={}", userId, e.getMessage());
+        }
+    }
+
+    private String buildKey(Long userId, String stage, SearchRequest request) {
+        Object generation = redisTemplate.opsForValue().get(GENERATION_KEY_PREFIX + userId);
+        String signature = String.join("|",
+                stage,
+                normalizeQuery(request.getQuery()),
+                RAGUtils.canonicalFilter(request.getFilterExpression()),
+                String.valueOf(request.getTopK()),
+                String.valueOf(request.getSimilarityThreshold()));
+        return CACHE_KEY_PREFIX + userId + ":" + (generation == null ? "0" : generation) + ":"
+                + DigestUtil.sha256Hex(signature);
+    }
+
+    /**
+     * 归一化查询：去除首尾空白、合并连续空白、英文转小写
+     */
+    private static String normalizeQuery(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+}
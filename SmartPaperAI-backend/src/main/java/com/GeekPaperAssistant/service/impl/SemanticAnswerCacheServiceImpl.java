@@ -0,0 +1,229 @@
+package com.GeekPaperAssistant.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.GeekPaperAssistant.config.properties.RAGProperties;
+import com.GeekPaperAssistant.model.vo.RagChatResultVO;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 语义答案缓存服务实现
+ *
+ * <p>每个范围一个 Redis Hash：rag:answer:{scope}，field 为 sha256(模式 + 归一化问题)，
+ * value 为问题、问题向量(float 小端字节序 Base64)与答案的 JSON</p>
+ * <p>查找时先按 field 精确命中，未命中再对范围内全部条目计算余弦相似度；
+ * 问题向量经由 @Primary 的缓存 EmbeddingModel 获取，后续检索阶段对同一问题的向量化直接命中本地缓存</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+public class SemanticAnswerCacheServiceImpl implements SemanticAnswerCacheService {
+
+    private static final String CACHE_KEY_PREFIX = "rag:answer:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final RAGProperties.AnswerCacheConfig cacheConfig;
+
+    private final Counter exactHitCounter;
+    private final Counter semanticHitCounter;
+    private final Counter missCounter;
+
+    public SemanticAnswerCacheServiceImpl(RedisTemplate<String, Object> redisTemplate,
+                                          EmbeddingModel embeddingModel,
+                                          ObjectMapper objectMapper,
+                                          RAGProperties ragConfig,
+                                          MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.cacheConfig = ragConfig.getAnswerCache();
+
+        this.exactHitCounter = Counter.builder("rag.answer.cache.hit")
+                .tag("match", "exact")
+                .description("语义答案缓存命中数")
+                .register(meterRegistry);
+        this.semanticHitCounter = Counter.builder("rag.answer.cache.hit")
+                .tag("match", "semantic")
+                .description("语义答案缓存命中数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("rag.answer.cache.miss")
+                .description("语义答案缓存未命中数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 缓存条目
+     */
+    record AnswerCacheEntry(String query, String mode, String embedding, RagChatResultVO result) {
+    }
+
+    @Override
+    public RagChatResultVO get(String scope, String mode, String query) {
+        if (!cacheConfig.getEnabled() || StrUtil.isBlank(query)) {
+            return null;
+        }
+
+        String key = CACHE_KEY_PREFIX + scope;
+        String normalizedMode = normalizeMode(mode);
+        try {
+            // 1. 精确命中：同一问题无需向量化
+            Object exact = redisTemplate.opsForHash().get(key, buildField(normalizedMode, query));
+            if (exact != null) {
+                exactHitCounter.increment();
+                log.info("答案缓存精确命中: scope={}", scope);
+                return objectMapper.readValue(exact.toString(), AnswerCacheEntry.class).result();
+            }
+
+            // 2. 语义命中：范围内相似度最高且达到阈值的问题
+            List<Object> values = redisTemplate.opsForHash().values(key);
+            if (values.isEmpty()) {
+                missCounter.increment();
+                return null;
+            }
+
+            float[] queryEmbedding = embeddingModel.embed(normalizeQuery(query));
+            AnswerCacheEntry best = null;
+            double bestSimilarity = cacheConfig.getSimilarityThreshold();
+            for (Object value : values) {
+                AnswerCacheEntry entry = objectMapper.readValue(value.toString(), AnswerCacheEntry.class);
+                if (!normalizedMode.equals(entry.mode())) {
+                    continue;
+                }
+                double similarity = cosineSimilarity(queryEmbedding, decode(entry.embedding()));
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+
+            if (best == null) {
+                missCounter.increment();
+                return null;
+            }
+            semanticHitCounter.increment();
+            log.info("答案缓存语义命中: scope={}, similarity={}, cachedQuery={}", scope, bestSimilarity, best.query());
+            return best.result();
+        } catch (Exception e) {
+            log.warn("读取答案缓存失败，按未命中处理: scope={}, error={}", scope, e.getMessage());
+            missCounter.increment();
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String scope, String mode, String query, RagChatResultVO result) {
+        if (!cacheConfig.getEnabled() || StrUtil.isBlank(query) || result == null || StrUtil.isBlank(result.getAnswer())) {
+            return;
+        }
+
+        String key = CACHE_KEY_PREFIX + scope;
+        String normalizedMode = normalizeMode(mode);
+        String field = buildField(normalizedMode, query);
+        try {
+            // 范围内条目已满时随机淘汰一条，避免语义比对的 Hash 无限增长
+            Long size = redisTemplate.opsForHash().size(key);
+            if (size != null && size >= cacheConfig.getMaxEntriesPerScope()
+                    && !redisTemplate.opsForHash().hasKey(key, field)) {
+                Object victim = redisTemplate.opsForHash().randomKey(key);
+                if (victim != null) {
+                    redisTemplate.opsForHash().delete(key, victim);
+                }
+            }
+
+            float[] embedding = embeddingModel.embed(normalizeQuery(query));
+            AnswerCacheEntry entry = new AnswerCacheEntry(query, normalizedMode, encode(embedding), result);
+            redisTemplate.opsForHash().put(key, field, objectMapper.writeValueAsString(entry));
+            redisTemplate.expire(key, cacheConfig.getTtl());
+        } catch (Exception e) {
+            log.warn("写入答案缓存失败: scope={}, error={}", scope, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evictDocument(Long documentId, Long userId, Long knowledgeBaseId) {
+        List<String> keys = new ArrayList<>(3);
+        keys.add(CACHE_KEY_PREFIX + SemanticAnswerCacheService.documentScope(documentId));
+        if (userId != null) {
+            keys.add(CACHE_KEY_PREFIX + SemanticAnswerCacheService.userScope(userId));
+        }
+        if (knowledgeBaseId != null) {
+            keys.add(CACHE_KEY_PREFIX + SemanticAnswerCacheService.knowledgeBaseScope(knowledgeBaseId));
+        }
+        try {
+            Long deleted = redisTemplate.delete(keys);
+            log.info("答案缓存失效: documentId={}, scopes={}, deleted={}", documentId, keys, deleted);
+        } catch (Exception e) {
+            log.warn("答案缓存失效失败: documentId={}, error={}", documentId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evictKnowledgeBase(Long knowledgeBaseId) {
+        String key = CACHE_KEY_PREFIX + SemanticAnswerCacheService.knowledgeBaseScope(knowledgeBaseId);
+        try {
+            Boolean deleted = redisTemplate.delete(key);
+            log.info("答案缓存失效: knowledgeBaseId={}, deleted={}", knowledgeBaseId, deleted);
+        } catch (Exception e) {
+            log.warn("答案缓存失效失败: knowledgeBaseId={}, error={}", knowledgeBaseId, e.getMessage());
+        }
+    }
+
+    private String buildField(String mode, String query) {
+        return DigestUtil.sha256Hex(mode + ":" + normalizeQuery(query));
+    }
+
+    private static String normalizeMode(String mode) {
+        return StrUtil.isBlank(mode) ? "" : mode.trim().toLowerCase();
+    }
+
+    /**
+     * 归一化问题：去除首尾空白、合并连续空白、英文转小写
+     */
+    private static String normalizeQuery(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0.0;
+        }
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0.0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static String encode(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static float[] decode(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] embedding = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+}
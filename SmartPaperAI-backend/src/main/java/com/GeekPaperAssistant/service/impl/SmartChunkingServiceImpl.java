@@ -2,6 +2,8 @@ package com.GeekPaperAssistant.service.impl;
 
 import com.GeekPaperAssistant.model.vo.DocumentMetadataVO;
 import com.GeekPaperAssistant.service.SmartChunkingService;
+import com.GeekPaperAssistant.utils.SentenceSplitter;
+import com.GeekPaperAssistant.utils.TokenCounter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -16,7 +18,7 @@ import java.util.List;
  *
  * <p>重构说明：</p>
  * <ul>
- *   <li>保留章节分块（利用GROBID提取的PDF结构）</li>
+ *   <li>保留章节分块（利用GROBID提取的PDF结构），超长章节在章节内按句子边界细分</li>
  *   <li>使用Spring AI TokenTextSplitter替代自定义语义分块（简化代码、提升性能）</li>
  *   <li>从353行减少到143行，减少60%代码</li>
  * </ul>
@@ -29,12 +31,20 @@ import java.util.List;
 @RequiredArgsConstructor
 public class SmartChunkingServiceImpl implements SmartChunkingService {
 
+    /**
+     * 章节正文的最小块大小(token)，标题过长时仍保证正文有足够空间
+     */
+    private static final int MIN_SECTION_BODY_TOKENS = 64;
+
+    private final TokenCounter tokenCounter;
+    private final SentenceSplitter sentenceSplitter;
+
     @Override
     public List<ChunkResult> smartChunk(String content, DocumentMetadataVO metadata, int chunkSize, int overlapSize) {
         // 决策: 有章节信息 → 章节分块, 否则 → TokenTextSplitter
         if (metadata != null && metadata.getSections() != null && !metadata.getSections().isEmpty()) {
             log.info("检测到章节结构,使用章节分块策略: sections={}", metadata.getSections().size());
-            return chunkBySections(metadata, overlapSize);
+            return chunkBySections(metadata, chunkSize, overlapSize);
         } else {
             log.info("未检测到章节结构,使用TokenTextSplitter分块: chunkSize={}, overlap={}", chunkSize, overlapSize);
             return tokenBasedChunk(content, chunkSize, overlapSize);
@@ -42,7 +52,7 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
     }
 
     @Override
-    public List<ChunkResult> chunkBySections(DocumentMetadataVO metadata, int overlapSize) {
+    public List<ChunkResult> chunkBySections(DocumentMetadataVO metadata, int chunkSize, int overlapSize) {
         if (metadata == null || metadata.getSections() == null || metadata.getSections().isEmpty()) {
             log.warn("章节信息为空,无法进行章节分块");
             return new ArrayList<>();
@@ -50,48 +60,45 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
 
         List<ChunkResult> results = new ArrayList<>();
         List<DocumentMetadataVO.Section> sections = metadata.getSections();
+        int splitSections = 0;
 
         for (int i = 0; i < sections.size(); i++) {
             DocumentMetadataVO.Section section = sections.get(i);
-
-            // 构建分块内容: 标题 + 内容
-            StringBuilder chunkContent = new StringBuilder();
-
-            // 添加标题(带层级标记)
-            String titlePrefix = "#".repeat(section.getLevel()) + " ";
-            chunkContent.append(titlePrefix).append(section.getTitle()).append("\n\n");
-            chunkContent.append(section.getContent());
-
-            // 添加 overlap: 包含下一章节的开头部分
-            if (i < sections.size() - 1 && overlapSize > 0) {
-                DocumentMetadataVO.Section nextSection = sections.get(i + 1);
-                String nextContent = nextSection.getContent();
-
-                // 计算 overlap 字符数(简化: overlapSize * 4)
-                int overlapChars = overlapSize * 4;
-                if (nextContent.length() > overlapChars) {
-                    chunkContent.append("\n\n--- 下一章节预览 ---\n");
-                    chunkContent.append(nextContent, 0, overlapChars);
-                    chunkContent.append("...");
-                } else {
-                    chunkContent.append("\n\n--- 下一章节 ---\n");
-                    chunkContent.append(nextContent);
-                }
+            String content = section.getContent() == null ? "" : section.getContent().strip();
+            if (content.isEmpty()) {
+                continue;
             }
 
-            ChunkResult chunk = new ChunkResult(
-                    chunkContent.toString(),
-                    "section",
-                    0, // startPosition不再使用
-                    0  // endPosition不再使用
-            );
-            chunk.setSectionTitle(section.getTitle());
-            chunk.setSectionLevel(section.getLevel());
+            // 块内容: 标题(带层级标记) + 章节正文片段，标题计入块大小
+            int level = section.getLevel() == null || section.getLevel() < 1 ? 1 : section.getLevel();
+            String heading = "#".repeat(level) + " " + section.getTitle() + "\n\n";
+            int bodyTokens = Math.max(MIN_SECTION_BODY_TOKENS, chunkSize - tokenCounter.count(heading));
+
+            // 未超过块大小的章节整体成块，超长章节按句子边界细分(章节内 overlap，不跨章节)
+            List<String> parts = tokenCounter.fits(content, bodyTokens)
+                    ? List.of(content)
+                    : sentenceSplitter.split(content, bodyTokens, Math.min(overlapSize, bodyTokens / 2));
+            if (parts.size() > 1) {
+                splitSections++;
+            }
 
-            results.add(chunk);
+            for (int part = 0; part < parts.size(); part++) {
+                ChunkResult chunk = new ChunkResult(
+                        heading + parts.get(part),
+                        "section",
+                        0, // startPosition不再使用
+                        0  // endPosition不再使用
+                );
+                chunk.setSectionTitle(section.getTitle());
+                chunk.setSectionLevel(level);
+                chunk.setSectionIndex(i);
+                chunk.setSectionPart(part);
+                chunk.setTokenCount(tokenCounter.count(chunk.getContent()));
+                results.add(chunk);
+            }
         }
 
-        log.info("章节分块完成: sections={}, chunks={}", sections.size(), results.size());
+        log.info("章节分块完成: sections={}, 细分章节={}, chunks={}", sections.size(), splitSections, results.size());
         return results;
     }
 
@@ -129,6 +136,7 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
                     0,
                     0
             );
+            result.setTokenCount(tokenCounter.count(result.getContent()));
             results.add(result);
         }
 
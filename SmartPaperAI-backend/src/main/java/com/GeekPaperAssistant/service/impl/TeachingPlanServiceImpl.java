@@ -12,6 +12,8 @@ import com.GeekPaperAssistant.model.vo.RagAnswerVO;
 import com.GeekPaperAssistant.model.vo.TeachingPlanListVO;
 import com.GeekPaperAssistant.model.vo.TeachingPlanVO;
 import com.GeekPaperAssistant.service.CitationBuilderService;
+import com.GeekPaperAssistant.service.ParentChunkService;
+import com.GeekPaperAssistant.service.RetrievalCacheService;
 import com.GeekPaperAssistant.service.TeachingPlanService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -43,7 +45,8 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
 
     private final TeachingPlanMapper teachingPlanMapper;
     private final ChatClient ragChatClient;
-    private final VectorStore vectorStore;
+    private final RetrievalCacheService retrievalCacheService;
+    private final ParentChunkService parentChunkService;
     private final CitationBuilderService citationBuilderService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -80,8 +83,11 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
         List<String> searchQueries = extractSearchQueries(topic);
         log.info("检索优化: 原始topic='{}', 提取查询词={}", topic, searchQueries);
 
-        // 多查询检索
-        List<Document> retrievedDocs = performMultiQuerySearch(searchQueries, filterExpression, 10, 0.5);
+        // 检索经检索缓存复用：同一主题重复生成时不再重复向量检索
+        VectorStore cachedVectorStore = retrievalCacheService.vectorStoreFor(userId);
+
+        // 多查询检索(结果用于引用，引用指向命中的小块)
+        List<Document> retrievedDocs = performMultiQuerySearch(cachedVectorStore, searchQueries, filterExpression, 10, 0.5);
         log.info("多查询检索完成: 共检索到 {} 个文档片段", retrievedDocs.size());
 
         // 构建基础SearchRequest - 减少检索数量以避免输入超长
@@ -92,7 +98,8 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
                 .filterExpression(filterExpression)
                 .build();
 
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
+        // 生成时的上下文展开为父块
+        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(parentChunkService.expandingView(cachedVectorStore))
                 .searchRequest(baseRequest)
                 .build();
 
@@ -316,8 +323,8 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
     /**
      * 多查询并行检索
      */
-    private List<Document> performMultiQuerySearch(List<String> queries, Filter.Expression filterExpression,
-                                                   int topK, double threshold) {
+    private List<Document> performMultiQuerySearch(VectorStore vectorStore, List<String> queries,
+                                                   Filter.Expression filterExpression, int topK, double threshold) {
         long startTime = System.currentTimeMillis();
 
         Map<String, Document> docMap = queries.parallelStream()
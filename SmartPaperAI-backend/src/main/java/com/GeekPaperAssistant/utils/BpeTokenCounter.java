@@ -0,0 +1,91 @@
+package com.GeekPaperAssistant.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+
+/**
+ * 基于 BPE 词表的本地 token 计数器
+ *
+ * <p>词表由 JTokkit 从 classpath 加载(默认 cl100k_base，与 Spring AI TokenTextSplitter 分块所用词表一致)。
+ * 对话 / 嵌入模型为通义千问(Qwen)时，其词表不随 JTokkit 提供，计数是近似值：中文文本 cl100k_base 的计数
+ * 通常多于 Qwen(偏保守)，英文与代码两者接近但可能略少，因此计数结果乘以安全系数后向上取整，
+ * 系数可按模型返回的 usage.promptTokens 与本地计数之比校准</p>
+ * <p>计数走 JTokkit 的 countTokens，只累计 token 数、不构造 token 列表；短文本(句子、关键词)直接计数，
+ * 较长文本(分块)的计数结果按内容缓存，缓存键为文本的 128 位 MurmurHash3 与长度，不保留文本本身，
+ * 同一分块在二次分割、元数据填充、安全检查中重复计数时直接命中</p>
+ *
+ * @author 席崇援
+ */
+public class BpeTokenCounter implements TokenCounter {
+
+    /**
+     * 短文本阈值(字符)，不超过该长度的文本不进缓存
+     */
+    private static final int SHORT_TEXT_CHARS = 64;
+
+    private final Encoding encoding;
+    private final Cache<TextKey, Integer> cache;
+    private final int cacheMaxChars;
+    private final double safetyMargin;
+
+    /**
+     * @param encodingName 词表名称，如 cl100k_base
+     * @param cacheSize 计数缓存条数
+     * @param cacheMaxChars 参与缓存的文本最大长度(字符)，更长的文本直接计数
+     * @param safetyMargin 计数安全系数(不小于 1)，词表与模型一致时取 1
+     */
+    public BpeTokenCounter(String encodingName, long cacheSize, int cacheMaxChars, double safetyMargin) {
+        if (safetyMargin < 1.0) {
+            throw new IllegalArgumentException("safetyMargin 不能小于 1: " + safetyMargin);
+        }
+        this.encoding = Encodings.newLazyEncodingRegistry()
+                .getEncoding(encodingName)
+                .orElseThrow(() -> new IllegalArgumentException("不支持的分词词表: " + encodingName));
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+        this.cacheMaxChars = cacheMaxChars;
+        this.safetyMargin = safetyMargin;
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return withMargin(countRaw(text));
+    }
+
+    /**
+     * 字符数上界同样按安全系数放大后判断
+     */
+    @Override
+    public boolean fits(String text, int maxTokens) {
+        if (text == null || (long) Math.ceil((long) text.length() * MAX_TOKENS_PER_CHAR * safetyMargin) <= maxTokens) {
+            return true;
+        }
+        return count(text) <= maxTokens;
+    }
+
+    private int countRaw(String text) {
+        int length = text.length();
+        if (length <= SHORT_TEXT_CHARS || length > cacheMaxChars) {
+            return encoding.countTokens(text);
+        }
+        long[] hash = MurmurHash.hash128(text);
+        return cache.get(new TextKey(hash[0], hash[1], length), key -> encoding.countTokens(text));
+    }
+
+    private int withMargin(int tokens) {
+        return safetyMargin == 1.0 ? tokens : (int) Math.ceil(tokens * safetyMargin);
+    }
+
+    /**
+     * 计数缓存键：文本哈希与长度
+     */
+    private record TextKey(long high, long low, int length) {
+    }
+}
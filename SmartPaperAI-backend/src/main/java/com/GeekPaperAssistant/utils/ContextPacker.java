@@ -0,0 +1,360 @@
+package com.GeekPaperAssistant.utils;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按 token 预算装配问答上下文
+ *
+ * <p>检索结果按排名依次处理：</p>
+ * <ol>
+ *   <li>与已选片段内容近似重复(字符 shingle 包含度达到阈值)的片段丢弃</li>
+ *   <li>放入后超出预算的片段跳过，继续尝试排名靠后但更短的片段</li>
+ *   <li>选中的片段按文档分组(组按组内最高排名排序)，组内按 chunkIndex 排列，相邻块合并为一段并去掉块间重叠；
+ *   片段覆盖的块区间为 [chunkIndex, chunkEndIndex]（父块展开后的片段覆盖其全部小块，普通块只覆盖自身），
+ *   后一段的起始块紧接前一段的结束块时视为相邻</li>
+ * </ol>
+ * <p>被丢弃的片段及原因记录在结果中；若没有任何片段放得下，保留排名第一的片段，保证上下文不为空</p>
+ *
+ * @author 席崇援
+ */
+public class ContextPacker {
+
+    /**
+     * 上下文开头说明
+     */
+    private static final String CONTEXT_HEADER = "以下是检索到的相关文档片段：\n\n";
+
+    /**
+     * 片段标题格式
+     */
+    private static final String BLOCK_HEADER = "[文档片段 %d]\n";
+
+    /**
+     * 没有检索结果时的上下文
+     */
+    private static final String EMPTY_CONTEXT = "未找到相关文档。";
+
+    /**
+     * 近似重复判定的 shingle 长度(字符，忽略空白与大小写)
+     */
+    private static final int SHINGLE_CHARS = 5;
+
+    /**
+     * 相邻块合并时去除重叠的最小长度(字符)，更短的首尾相同视为巧合，不去除
+     */
+    private static final int MIN_OVERLAP_CHARS = 10;
+
+    private final TokenCounter tokenCounter;
+    private final double duplicateThreshold;
+    private final boolean mergeAdjacent;
+
+    /**
+     * 每个片段的格式开销(标题与段后空行)
+     */
+    private final int blockOverheadTokens;
+
+    /**
+     * @param tokenCounter token 计数器
+     * @param duplicateThreshold 近似重复阈值(0-1)，两段 shingle 集合的交集占较小集合的比例达到该值视为重复
+     * @param mergeAdjacent 是否合并同一文档的相邻块
+     */
+    public ContextPacker(TokenCounter tokenCounter, double duplicateThreshold, boolean mergeAdjacent) {
+        this.tokenCounter = tokenCounter;
+        this.duplicateThreshold = duplicateThreshold;
+        this.mergeAdjacent = mergeAdjacent;
+        this.blockOverheadTokens = tokenCounter.count(String.format(BLOCK_HEADER, 99) + "\n\n");
+    }
+
+    /**
+     * 上下文说明文字的 token 数，调用方计算预算时可一并扣除
+     */
+    public int headerTokens() {
+        return tokenCounter.count(CONTEXT_HEADER);
+    }
+
+    /**
+     * 装配上下文
+     *
+     * @param documents 检索结果（已排序，可为父块展开后的片段）
+     * @param budgetTokens 片段内容可用的 token 预算
+     * @return 装配结果
+     */
+    public PackedContext pack(List<Document> documents, int budgetTokens) {
+        if (documents == null || documents.isEmpty()) {
+            return new PackedContext(EMPTY_CONTEXT, List.of(), List.of(), Set.of(), 0);
+        }
+
+        List<Candidate> selected = new ArrayList<>();
+        List<DroppedChunk> dropped = new ArrayList<>();
+        int usedTokens = 0;
+        for (int rank = 0; rank < documents.size(); rank++) {
+            Document document = documents.get(rank);
+            String text = document.getText();
+            if (text == null || text.isBlank()) {
+                continue;
+            }
+            Set<Integer> shingles = shingles(text);
+            if (isDuplicate(shingles, selected)) {
+                dropped.add(new DroppedChunk(document, DropReason.DUPLICATE));
+                continue;
+            }
+            int tokens = tokenCounter.count(text) + blockOverheadTokens;
+            if (usedTokens + tokens > budgetTokens) {
+                dropped.add(new DroppedChunk(document, DropReason.OVER_BUDGET));
+                continue;
+            }
+            selected.add(new Candidate(document, rank, shingles));
+            usedTokens += tokens;
+        }
+        if (selected.isEmpty()) {
+            if (dropped.isEmpty()) {
+                return new PackedContext(EMPTY_CONTEXT, List.of(), List.of(), Set.of(), 0);
+            }
+            // 预算连排名最高的片段都放不下时仍保留它，避免上下文为空(此时没有已选片段，丢弃原因均为超出预算)
+            Document first = dropped.remove(0).document();
+            selected.add(new Candidate(first, 0, Set.of()));
+            usedTokens = tokenCounter.count(first.getText()) + blockOverheadTokens;
+        }
+
+        List<Document> blocks = arrange(selected);
+        Set<String> packedChunkIds = new LinkedHashSet<>();
+        for (Candidate candidate : selected) {
+            packedChunkIds.addAll(sourceChunkIds(candidate.document()));
+        }
+
+        StringBuilder context = new StringBuilder(CONTEXT_HEADER);
+        for (int i = 0; i < blocks.size(); i++) {
+            context.append(String.format(BLOCK_HEADER, i + 1))
+                    .append(blocks.get(i).getText())
+                    .append("\n\n");
+        }
+        return new PackedContext(context.toString(), blocks, dropped, packedChunkIds, usedTokens);
+    }
+
+    /**
+     * 按文档分组、组内按块序号排列，并合并相邻块
+     */
+    private List<Document> arrange(List<Candidate> selected) {
+        Map<Object, List<Candidate>> groups = new LinkedHashMap<>();
+        for (Candidate candidate : selected) {
+            Object documentId = candidate.document().getMetadata().get("documentId");
+            Object key = documentId == null ? candidate : documentId;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(candidate);
+        }
+
+        List<Document> blocks = new ArrayList<>(selected.size());
+        for (List<Candidate> group : groups.values()) {
+            group.sort((a, b) -> {
+                Integer ia = chunkIndex(a.document());
+                Integer ib = chunkIndex(b.document());
+                if (ia == null || ib == null) {
+                    return Integer.compare(a.rank(), b.rank());
+                }
+                return Integer.compare(ia, ib);
+            });
+
+            Document current = group.get(0).document();
+            StringBuilder text = null;
+            Integer lastEnd = chunkEndIndex(current);
+            for (int i = 1; i < group.size(); i++) {
+                Document next = group.get(i).document();
+                Integer nextIndex = chunkIndex(next);
+                if (mergeAdjacent && lastEnd != null && nextIndex != null && nextIndex == lastEnd + 1) {
+                    if (text == null) {
+                        text = new StringBuilder(current.getText());
+                    }
+                    String nextText = next.getText();
+                    int overlap = overlapLength(text, nextText);
+                    text.append(overlap > 0 ? "" : "\n").append(nextText, overlap, nextText.length());
+                } else {
+                    blocks.add(text == null ? current : merged(current, text.toString(), lastEnd));
+                    current = next;
+                    text = null;
+                }
+                lastEnd = chunkEndIndex(next);
+            }
+            blocks.add(text == null ? current : merged(current, text.toString(), lastEnd));
+        }
+        return blocks;
+    }
+
+    private boolean isDuplicate(Set<Integer> shingles, List<Candidate> selected) {
+        if (shingles.isEmpty()) {
+            return false;
+        }
+        for (Candidate candidate : selected) {
+            Set<Integer> other = candidate.shingles();
+            if (other.isEmpty()) {
+                continue;
+            }
+            Set<Integer> smaller = shingles.size() <= other.size() ? shingles : other;
+            Set<Integer> larger = smaller == shingles ? other : shingles;
+            int common = 0;
+            for (Integer shingle : smaller) {
+                if (larger.contains(shingle)) {
+                    common++;
+                }
+            }
+            if (common >= duplicateThreshold * smaller.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文本的字符 shingle 哈希集合，忽略空白与大小写
+     */
+    private static Set<Integer> shingles(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        Set<Integer> shingles = new HashSet<>();
+        for (int i = 0; i + SHINGLE_CHARS <= normalized.length(); i++) {
+            int hash = 0;
+            for (int j = i; j < i + SHINGLE_CHARS; j++) {
+                hash = 31 * hash + normalized.charAt(j);
+            }
+            shingles.add(hash);
+        }
+        return shingles;
+    }
+
+    /**
+     * 前一块结尾与后一块开头的重叠长度(相邻块按整句重叠)，KMP 前缀函数一次求出
+     */
+    private static int overlapLength(CharSequence previous, String next) {
+        int max = Math.min(previous.length(), next.length());
+        if (max == 0) {
+            return 0;
+        }
+        CharSequence tail = previous.subSequence(previous.length() - max, previous.length());
+        int[] prefix = new int[max];
+        for (int i = 1, k = 0; i < max; i++) {
+            while (k > 0 && next.charAt(i) != next.charAt(k)) {
+                k = prefix[k - 1];
+            }
+            if (next.charAt(i) == next.charAt(k)) {
+                k++;
+            }
+            prefix[i] = k;
+        }
+        int matched = 0;
+        for (int i = 0; i < tail.length(); i++) {
+            while (matched > 0 && (matched == max || tail.charAt(i) != next.charAt(matched))) {
+                matched = prefix[matched - 1];
+            }
+            if (tail.charAt(i) == next.charAt(matched)) {
+                matched++;
+            }
+        }
+        return matched >= MIN_OVERLAP_CHARS ? matched : 0;
+    }
+
+    /**
+     * 合并后的片段：沿用第一段的元数据，块区间延伸到最后一段
+     */
+    private static Document merged(Document first, String text, Integer endIndex) {
+        Map<String, Object> metadata = new HashMap<>(first.getMetadata());
+        if (endIndex != null) {
+            metadata.put("chunkEndIndex", endIndex);
+        }
+        return Document.builder()
+                .id(first.getId())
+                .text(text)
+                .metadata(metadata)
+                .score(first.getScore())
+                .build();
+    }
+
+    private static Integer chunkIndex(Document document) {
+        return intMetadata(document, "chunkIndex");
+    }
+
+    /**
+     * 片段覆盖的最后一个块序号，未记录时为 chunkIndex
+     */
+    private static Integer chunkEndIndex(Document document) {
+        Integer end = intMetadata(document, "chunkEndIndex");
+        return end != null ? end : chunkIndex(document);
+    }
+
+    private static Integer intMetadata(Document document, String key) {
+        Object value = document.getMetadata().get(key);
+        if (value instanceof Number number) {
+            return NumberConversionUtils.numberToInteger(number);
+        }
+        return value == null ? null : NumberConversionUtils.toInteger(String.valueOf(value));
+    }
+
+    /**
+     * 片段对应的原始检索块ID：父块展开后的片段为其命中的全部小块
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<String> sourceChunkIds(Document document) {
+        Object matched = document.getMetadata().get("matchedChunkIds");
+        if (matched instanceof Collection<?> ids && !ids.isEmpty()) {
+            return (Collection<String>) ids;
+        }
+        return List.of(document.getId());
+    }
+
+    /**
+     * 丢弃原因
+     */
+    public enum DropReason {
+        /**
+         * 与排名更高的片段近似重复
+         */
+        DUPLICATE,
+        /**
+         * 超出 token 预算
+         */
+        OVER_BUDGET
+    }
+
+    /**
+     * 被丢弃的片段
+     */
+    public record DroppedChunk(Document document, DropReason reason) {
+    }
+
+    /**
+     * 装配结果
+     *
+     * @param text 上下文文本
+     * @param blocks 放入上下文的片段（合并后）
+     * @param dropped 被丢弃的片段
+     * @param packedChunkIds 放入上下文的原始检索块ID
+     * @param tokens 片段内容占用的 token 数(按合并前计，含片段标题)
+     */
+    public record PackedContext(String text, List<Document> blocks, List<DroppedChunk> dropped,
+                                Set<String> packedChunkIds, int tokens) {
+
+        /**
+         * 保留检索结果中实际放入上下文的部分（用于构建引用）
+         */
+        public List<Document> retainPacked(List<Document> hits) {
+            return hits.stream()
+                    .filter(hit -> packedChunkIds.contains(hit.getId()))
+                    .toList();
+        }
+    }
+
+    private record Candidate(Document document, int rank, Set<Integer> shingles) {
+    }
+}
@@ -4,98 +4,27 @@ import cn.hutool.core.codec.Base62;
 import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * RAG 工具类 - 统一管理 RAG 相关的工具方法
  *
- * <p>整合了 Token 估算、Filter 构建、关键词提取、元数据构建等功能，避免代码重复</p>
+ * <p>整合了 Filter 构建、关键词提取、元数据构建等功能，避免代码重复；Token 计数见 {@link TokenCounter}</p>
  *
  * @author ican
  * @since 2025-10-27
  */
 public class RAGUtils {
 
-    // ==================== Token Estimation ====================
-
-    /**
-     * 估算文本的 Token 数量
-     *
-     * <p>算法：</p>
-     * <ul>
-     *   <li>中文: 1.2 tokens/字</li>
-     *   <li>英文: 1.5 tokens/词</li>
-     *   <li>其他字符: 0.5 tokens/字符</li>
-     *   <li>添加 20% 安全边际</li>
-     * </ul>
-     *
-     * @param text 待估算的文本
-     * @return 估算的 Token 数量
-     */
-    public static int estimateTokenCount(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-
-        int totalTokens = 0;
-        int chineseChars = 0;
-        int otherChars = 0;
-        int englishWords = 0;
-
-        // 统计不同类型的字符
-        for (char c : text.toCharArray()) {
-            if (c >= 0x4E00 && c <= 0x9FFF) {
-                // 中文字符
-                chineseChars++;
-            } else if (!Character.isWhitespace(c)) {
-                // 非空白字符(英文、数字、符号等)
-                otherChars++;
-            }
-        }
-
-        // 估算英文单词数
-        String[] words = text.split("\\s+");
-        for (String word : words) {
-            if (word.matches(".*[a-zA-Z].*")) {
-                englishWords++;
-            }
-        }
-
-        // 保守估算 (向上取整)
-        totalTokens += (int) Math.ceil(chineseChars * 1.2); // 中文: 1.2 tokens/字
-        totalTokens += (int) Math.ceil(englishWords * 1.5); // 英文: 1.5 tokens/词
-        totalTokens += (int) Math.ceil(otherChars * 0.5); // 其他字符
-
-        // 添加 20% 安全边际
-        totalTokens = (int) Math.ceil(totalTokens * 1.2);
-
-        return totalTokens;
-    }
-
-    /**
-     * 估算文本的 Token 数量（简化版）
-     *
-     * <p>适用于快速估算，不需要太精确的场景</p>
-     * <ul>
-     *   <li>中文: 1.5字符/token</li>
-     *   <li>英文: 4字符/token</li>
-     * </ul>
-     *
-     * @param text 待估算的文本
-     * @return 估算的 Token 数量
-     */
-    public static int estimateTokenCountSimple(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-        // 检测是否包含中文
-        boolean hasChinese = text.chars().anyMatch(c -> c >= 0x4E00 && c <= 0x9FA5);
-        return hasChinese ? (int) (text.length() / 1.5) : (int) (text.length() / 4.0);
-    }
-
     // ==================== Filter Building ====================
 
     /**
@@ -163,6 +92,105 @@ public class RAGUtils {
         ).build();
     }
 
+    /**
+     * 构建文档 ID 集合过滤器（IN 逻辑）
+     *
+     * @param documentIds 文档ID列表
+     * @return Filter.Expression
+     */
+    public static Filter.Expression buildDocumentIdInFilter(Collection<Long> documentIds) {
+        return new FilterExpressionBuilder()
+                .in("documentId", documentIds.stream()
+                        .map(id -> (Object) Base62.encode(String.valueOf(id)))
+                        .toList())
+                .build();
+    }
+
+    /**
+     * 以 AND 组合两个过滤器，任一为 null 时返回另一个
+     *
+     * @param left  过滤器
+     * @param right 过滤器
+     * @return Filter.Expression
+     */
+    public static Filter.Expression and(Filter.Expression left, Filter.Expression right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return new Filter.Expression(Filter.ExpressionType.AND, left, right);
+    }
+
+    /**
+     * 过滤器的规范化字符串（用作缓存键）
+     *
+     * <p>连续的 AND / OR 展开为同级操作数并排序，IN / NIN 的取值排序，
+     * 因此仅操作数顺序或嵌套方式不同的等价过滤器得到相同结果</p>
+     *
+     * @param expression 过滤器，可为 null
+     * @return 规范化字符串，null 时返回空串
+     */
+    public static String canonicalFilter(Filter.Expression expression) {
+        return expression == null ? "" : canonicalOperand(expression);
+    }
+
+    private static String canonicalOperand(Filter.Operand operand) {
+        if (operand == null) {
+            return "";
+        }
+        if (operand instanceof Filter.Group group) {
+            return canonicalOperand(group.content());
+        }
+        if (operand instanceof Filter.Key key) {
+            return key.key();
+        }
+        if (operand instanceof Filter.Value value) {
+            if (value.value() instanceof Collection<?> values) {
+                return values.stream().map(String::valueOf).sorted().collect(Collectors.joining(",", "[", "]"));
+            }
+            return String.valueOf(value.value());
+        }
+        Filter.Expression expression = (Filter.Expression) operand;
+        if (expression.type() == Filter.ExpressionType.AND || expression.type() == Filter.ExpressionType.OR) {
+            List<String> operands = new ArrayList<>();
+            flattenOperands(expression.type(), expression, operands);
+            Collections.sort(operands);
+            return expression.type() + "(" + String.join(",", operands) + ")";
+        }
+        return expression.type() + "(" + canonicalOperand(expression.left()) + ","
+                + canonicalOperand(expression.right()) + ")";
+    }
+
+    private static void flattenOperands(Filter.ExpressionType type, Filter.Operand operand, List<String> operands) {
+        Filter.Operand current = operand instanceof Filter.Group group ? group.content() : operand;
+        if (current instanceof Filter.Expression expression && expression.type() == type) {
+            flattenOperands(type, expression.left(), operands);
+            flattenOperands(type, expression.right(), operands);
+        } else {
+            operands.add(canonicalOperand(current));
+        }
+    }
+
+    /**
+     * 从向量元数据中解析文档 ID（元数据中为 Base62 编码）
+     *
+     * @param metadata 向量元数据
+     * @return 文档ID，缺失或无法解析时返回 null
+     */
+    public static Long extractDocumentId(Map<String, Object> metadata) {
+        Object documentIdObj = metadata.get("documentId");
+        if (documentIdObj == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(new String(Base62.decode(documentIdObj.toString())));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     // ==================== Keyword Extraction ====================
 
     /**
@@ -181,6 +209,34 @@ public class RAGUtils {
                 .toList();
     }
 
+    // ==================== Prompt Building ====================
+
+    /**
+     * 提示词模板占位符 {name}
+     */
+    private static final Pattern TEMPLATE_VARIABLE = Pattern.compile("\\{(\\w+)}");
+
+    /**
+     * 单遍替换提示词模板中的 {name} 占位符
+     *
+     * <p>只扫描模板本身，已替换进去的值(用户问题、检索片段)即使包含 {context} 等字样也不会被再次替换；
+     * 未提供值的占位符及 JSON 示例中的花括号原样保留</p>
+     *
+     * @param template  提示词模板
+     * @param variables 占位符名 → 替换值
+     * @return 替换后的提示词
+     */
+    public static String fillTemplate(String template, Map<String, String> variables) {
+        Matcher matcher = TEMPLATE_VARIABLE.matcher(template);
+        StringBuilder result = new StringBuilder(template.length());
+        while (matcher.find()) {
+            String value = variables.get(matcher.group(1));
+            matcher.appendReplacement(result, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
     // ==================== Metadata Building ====================
 
     /**
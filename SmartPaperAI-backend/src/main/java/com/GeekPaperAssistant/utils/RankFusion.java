@@ -0,0 +1,190 @@
+package com.GeekPaperAssistant.utils;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 排序融合工具类 - 统一多路检索结果的融合算法
+ *
+ * <p>支持的算法：</p>
+ * <ul>
+ *   <li>RRF: score = Σ weight / (k + rank)，只依赖名次，适合分数尺度不可比的多路结果</li>
+ *   <li>WEIGHTED_SUM: score = Σ weight * (score / maxScore)，各路分数默认先按本路最高分归一化</li>
+ *   <li>CombMNZ: score = hits * Σ weight * (score / maxScore)，奖励被多路同时召回的结果</li>
+ * </ul>
+ *
+ * <p>实现要点：每路结果只遍历一次，按 key 聚合到同一个累加器中；每个 key 在每一路只取第一次出现
+ * (即该路名次最高)的结果，同时保留各路的原始条目，调用方无需再次线性查找</p>
+ *
+ * @author 席崇援
+ */
+public final class RankFusion {
+
+    /**
+     * RRF 默认常数
+     */
+    public static final int DEFAULT_RRF_K = 60;
+
+    private RankFusion() {
+    }
+
+    /**
+     * 融合算法
+     */
+    public enum Method {
+        RRF,
+        WEIGHTED_SUM,
+        COMB_MNZ
+    }
+
+    /**
+     * 一路已排序的检索结果
+     *
+     * @param items     已按相关性降序排列的结果
+     * @param keyFn     结果的融合键(如文档ID/向量ID)，返回 null 的条目被忽略
+     * @param scoreFn   结果分数(WEIGHTED_SUM/COMB_MNZ 使用，RRF 可为 null)
+     * @param weight    该路权重
+     * @param normalize 是否按本路最高分归一化(分数已在 0-1 区间时，如余弦相似度，可关闭)
+     */
+    public record RankedList<K, T>(List<T> items, Function<T, K> keyFn, ToDoubleFunction<T> scoreFn,
+                                   double weight, boolean normalize) {
+
+        public static <K, T> RankedList<K, T> of(List<T> items, Function<T, K> keyFn) {
+            return new RankedList<>(items, keyFn, null, 1.0, false);
+        }
+
+        public static <K, T> RankedList<K, T> of(List<T> items, Function<T, K> keyFn,
+                                                 ToDoubleFunction<T> scoreFn, double weight) {
+            return new RankedList<>(items, keyFn, scoreFn, weight, true);
+        }
+
+        public static <K, T> RankedList<K, T> raw(List<T> items, Function<T, K> keyFn,
+                                                  ToDoubleFunction<T> scoreFn, double weight) {
+            return new RankedList<>(items, keyFn, scoreFn, weight, false);
+        }
+    }
+
+    /**
+     * 融合结果
+     */
+    public static final class Fused<K> {
+        private final K key;
+        private final Object[] items;
+        private double score;
+        private int hits;
+
+        private Fused(K key, int listCount) {
+            this.key = key;
+            this.items = new Object[listCount];
+        }
+
+        public K key() {
+            return key;
+        }
+
+        public double score() {
+            return score;
+        }
+
+        /**
+         * 命中该 key 的路数
+         */
+        public int hits() {
+            return hits;
+        }
+
+        /**
+         * 第 listIndex 路中该 key 对应的条目，未命中时返回 null
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T item(int listIndex) {
+            return (T) items[listIndex];
+        }
+
+        /**
+         * 按输入顺序返回第一个命中的条目
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T firstItem() {
+            for (Object item : items) {
+                if (item != null) {
+                    return (T) item;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * RRF 融合(k = 60)
+     */
+    @SafeVarargs
+    public static <K> List<Fused<K>> rrf(int topK, RankedList<K, ?>... lists) {
+        return fuse(Method.RRF, Arrays.asList(lists), topK, DEFAULT_RRF_K);
+    }
+
+    /**
+     * 融合多路结果
+     *
+     * @param method 融合算法
+     * @param lists  各路结果
+     * @param topK   返回数量
+     * @param rrfK   RRF 常数(仅 RRF 使用)
+     * @return 按融合分数降序的前 topK 个结果
+     */
+    public static <K> List<Fused<K>> fuse(Method method, List<? extends RankedList<K, ?>> lists, int topK, int rrfK) {
+        int expected = 0;
+        for (RankedList<K, ?> list : lists) {
+            expected += list.items().size();
+        }
+        Map<K, Fused<K>> accumulators = new HashMap<>(Math.max(16, expected * 4 / 3));
+
+        for (int listIndex = 0; listIndex < lists.size(); listIndex++) {
+            accumulate(method, lists.get(listIndex), listIndex, lists.size(), rrfK, accumulators);
+        }
+
+        List<Fused<K>> fused = new ArrayList<>(accumulators.values());
+        if (method == Method.COMB_MNZ) {
+            for (Fused<K> f : fused) {
+                f.score *= f.hits;
+            }
+        }
+        fused.sort((a, b) -> Double.compare(b.score, a.score));
+        return fused.size() > topK ? new ArrayList<>(fused.subList(0, topK)) : fused;
+    }
+
+    private static <K, T> void accumulate(Method method, RankedList<K, T> list, int listIndex, int listCount,
+                                          int rrfK, Map<K, Fused<K>> accumulators) {
+        List<T> items = list.items();
+        double maxScore = 1.0;
+        if (method != Method.RRF && list.normalize()) {
+            maxScore = 0.0;
+            for (T item : items) {
+                maxScore = Math.max(maxScore, list.scoreFn().applyAsDouble(item));
+            }
+        }
+
+        int rank = 0;
+        for (T item : items) {
+            rank++;
+            K key = list.keyFn().apply(item);
+            if (key == null) {
+                continue;
+            }
+            Fused<K> fused = accumulators.computeIfAbsent(key, k -> new Fused<>(k, listCount));
+            if (fused.items[listIndex] != null) {
+                // 同一路中重复出现，只计名次最高的一次
+                continue;
+            }
+            fused.items[listIndex] = item;
+            fused.hits++;
+            fused.score += switch (method) {
+                case RRF -> list.weight() / (rrfK + rank);
+                case WEIGHTED_SUM, COMB_MNZ -> maxScore > 0
+                        ? list.weight() * list.scoreFn().applyAsDouble(item) / maxScore
+                        : 0.0;
+            };
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.GeekPaperAssistant.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 句子感知的文本分割器
+ *
+ * <p>单遍扫描切出句子(中文 。！？；… 与英文 .!? 句末，识别缩写、姓名首字母、小数，段落空行也视为句界)，
+ * 每个句子只计数一次，按 token 数累加装箱，块间按整句重叠；各块为原文的连续片段，保留原有空白</p>
+ * <p>单句超过上限时依次在 分句标点 → 空白 处切开，括号(引用标注)内不切，都没有时才在字符边界处切，
+ * 不拆开代理对。输出的每个块都经过精确计数校验，不超过 token 上限</p>
+ *
+ * @author 席崇援
+ */
+public class SentenceSplitter {
+
+    /**
+     * 句点后不断句的缩写(小写，不含句点)
+     */
+    private static final Set<String> ABBREVIATIONS = Set.of(
+            "mr", "mrs", "ms", "dr", "prof", "sr", "jr", "st", "vs", "al", "fig", "figs", "eq", "eqs",
+            "ref", "refs", "sec", "no", "vol", "pp", "ch", "approx", "cf", "resp", "ca", "viz", "inc", "ltd", "co");
+
+    /**
+     * 超长片段切分时每个 token 按最多覆盖的字符数估算搜索窗口(BPE 词表中极少有更长的 token)；
+     * 窗口只影响切分位置能否取到最长前缀，不影响块的 token 上限
+     */
+    private static final int MAX_CHARS_PER_TOKEN = 16;
+
+    private final TokenCounter tokenCounter;
+
+    public SentenceSplitter(TokenCounter tokenCounter) {
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * 按句子边界分割文本
+     *
+     * @param text 文本
+     * @param maxTokens 每块 token 上限
+     * @param overlapTokens 块间重叠 token 数(按整句取，0 不重叠)
+     * @return 分块列表，每块均不超过 maxTokens
+     */
+    public List<String> split(String text, int maxTokens, int overlapTokens) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("maxTokens 必须大于 0");
+        }
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return chunks;
+        }
+
+        List<Span> units = new ArrayList<>();
+        int start = 0;
+        int n = text.length();
+        while (start < n) {
+            int end = nextSentenceEnd(text, start);
+            addUnits(text, start, end, maxTokens, units);
+            start = end;
+        }
+
+        // 装箱：累加句子 token 数，超限时输出当前块，并以末尾若干整句作为下一块的开头
+        int first = 0;
+        int tokens = 0;
+        for (int i = 0; i < units.size(); i++) {
+            Span unit = units.get(i);
+            if (i > first && tokens + unit.tokens() > maxTokens) {
+                emit(text, units.get(first).start(), units.get(i - 1).end(), maxTokens, chunks);
+                int carried = 0;
+                int next = i;
+                while (next - 1 > first && carried + units.get(next - 1).tokens() <= overlapTokens) {
+                    carried += units.get(--next).tokens();
+                }
+                if (carried + unit.tokens() > maxTokens) {
+                    next = i;
+                    carried = 0;
+                }
+                first = next;
+                tokens = carried;
+            }
+            tokens += unit.tokens();
+        }
+        if (first < units.size()) {
+            emit(text, units.get(first).start(), units.get(units.size() - 1).end(), maxTokens, chunks);
+        }
+        return chunks;
+    }
+
+    /**
+     * 从 start 开始的句子结束位置(含句末标点、其后的闭合引号/括号和空白)
+     */
+    private int nextSentenceEnd(String text, int start) {
+        int n = text.length();
+        int i = start;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '\n' && i + 1 < n && isParagraphBreak(text, i)) {
+                return skipWhitespace(text, i);
+            }
+            if (isCjkTerminator(c)) {
+                return skipWhitespace(text, skipClosers(text, i + 1));
+            }
+            if (c == '.' || c == '!' || c == '?') {
+                int after = skipClosers(text, i + 1);
+                if (isLatinSentenceEnd(text, i, after)) {
+                    return skipWhitespace(text, after);
+                }
+                i = after;
+                continue;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    /**
+     * 英文句末判定：标点后为文本结尾，或为空白且下一个非空白字符不是小写字母；句点还需排除缩写和姓名首字母
+     * (小数点后紧跟数字，不满足"后为空白"，天然排除)
+     */
+    private boolean isLatinSentenceEnd(String text, int punct, int after) {
+        int n = text.length();
+        if (after >= n) {
+            return true;
+        }
+        if (!Character.isWhitespace(text.charAt(after))) {
+            return false;
+        }
+        int next = skipWhitespace(text, after);
+        if (next < n && Character.isLowerCase(text.charAt(next))) {
+            return false;
+        }
+        if (text.charAt(punct) != '.') {
+            return true;
+        }
+        int wordStart = punct;
+        while (wordStart > 0 && Character.isLetter(text.charAt(wordStart - 1))) {
+            wordStart--;
+        }
+        int wordLength = punct - wordStart;
+        if (wordLength == 1) {
+            // 姓名首字母 (J. Smith) 或 e.g. / i.e. 中的单字母
+            return false;
+        }
+        return wordLength == 0 || !ABBREVIATIONS.contains(text.substring(wordStart, punct).toLowerCase());
+    }
+
+    /**
+     * 将 [start, end) 作为装箱单元加入；超过上限时在块内切开(长度超出切分窗口的片段不整体计数，直接切开)
+     */
+    private void addUnits(String text, int start, int end, int maxTokens, List<Span> units) {
+        if (end - start <= (long) maxTokens * MAX_CHARS_PER_TOKEN) {
+            int tokens = tokenCounter.count(text.substring(start, end));
+            if (tokens <= maxTokens) {
+                units.add(new Span(start, end, tokens));
+                return;
+            }
+        }
+        while (start < end) {
+            int cut = cutPoint(text, start, end, maxTokens);
+            units.add(new Span(start, cut, tokenCounter.count(text.substring(start, cut))));
+            start = cut;
+        }
+    }
+
+    /**
+     * 超长片段的切分位置：先二分出不超过上限的最长前缀，再在其后半段内回退到 分句标点 / 空白 处，
+     * 括号内的位置不作为切分点
+     *
+     * <p>搜索限定在 start 之后 maxTokens * {@link #MAX_CHARS_PER_TOKEN} 个字符内，每次计数的文本长度与片段总长无关，
+     * 长段无标点文本逐段切分的总开销与文本长度成线性</p>
+     */
+    private int cutPoint(String text, int start, int end, int maxTokens) {
+        int limit = (int) Math.min(end, start + (long) maxTokens * MAX_CHARS_PER_TOKEN);
+        if (limit == end && tokenCounter.fits(text.substring(start, end), maxTokens)) {
+            return end;
+        }
+        int low = start + 1;
+        int high = Math.min(limit, end - 1);
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (tokenCounter.fits(text.substring(start, mid), maxTokens)) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int longest = low;
+
+        int from = start + (longest - start) / 2;
+        int clause = -1;
+        int space = -1;
+        int depth = 0;
+        for (int i = start; i < longest; i++) {
+            char c = text.charAt(i);
+            if (isOpener(c)) {
+                depth++;
+            } else if (isCloser(c) && depth > 0) {
+                depth--;
+            } else if (depth == 0 && i + 1 > from) {
+                if (isClauseBreak(c)) {
+                    clause = i + 1;
+                } else if (Character.isWhitespace(c)) {
+                    space = i + 1;
+                }
+            }
+        }
+        int cut = clause > 0 ? clause : space > 0 ? space : longest;
+        if (Character.isLowSurrogate(text.charAt(cut)) && cut - 1 > start) {
+            cut--;
+        }
+        return cut;
+    }
+
+    /**
+     * 输出 [start, end) 片段；装箱按句子计数累加，拼接处分词可能略有出入，按精确计数复核
+     */
+    private void emit(String text, int start, int end, int maxTokens, List<String> chunks) {
+        String chunk = text.substring(start, end).strip();
+        if (chunk.isEmpty()) {
+            return;
+        }
+        if (tokenCounter.fits(chunk, maxTokens)) {
+            chunks.add(chunk);
+            return;
+        }
+        while (start < end) {
+            int cut = cutPoint(text, start, end, maxTokens);
+            String piece = text.substring(start, cut).strip();
+            if (!piece.isEmpty()) {
+                chunks.add(piece);
+            }
+            start = cut;
+        }
+    }
+
+    private static boolean isParagraphBreak(String text, int newline) {
+        int i = newline + 1;
+        while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t' || text.charAt(i) == '\r')) {
+            i++;
+        }
+        return i < text.length() && text.charAt(i) == '\n';
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipClosers(String text, int i) {
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (isCloser(c) || c == '"' || c == '\'' || isCjkTerminator(c) || c == '.' || c == '!' || c == '?') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isCjkTerminator(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '…';
+    }
+
+    private static boolean isClauseBreak(char c) {
+        return c == '，' || c == '、' || c == '：' || c == ',' || c == ';' || c == ':';
+    }
+
+    private static boolean isOpener(char c) {
+        return c == '(' || c == '[' || c == '{' || c == '（' || c == '【' || c == '《' || c == '“' || c == '「' || c == '『';
+    }
+
+    private static boolean isCloser(char c) {
+        return c == ')' || c == ']' || c == '}' || c == '）' || c == '】' || c == '》' || c == '”' || c == '」' || c == '』';
+    }
+
+    /**
+     * 装箱单元：原文区间及其 token 数
+     */
+    private record Span(int start, int end, int tokens) {
+    }
+}
@@ -0,0 +1,222 @@
+package com.GeekPaperAssistant.utils;
+
+import java.util.Arrays;
+
+/**
+ * 解析文本单遍清理器
+ *
+ * <p>与原正则链(依次执行)输出逐字符一致：</p>
+ * <ol>
+ *   <li>移除控制字符 {@code [\x00-\x08\x0B\x0C\x0E-\x1F\x7F]}</li>
+ *   <li>{@code \n{3,}} → {@code \n\n}</li>
+ *   <li>{@code (?m)^[\s\t]+|[\s\t]+$} → 空（行首空白整段删除、行尾空白删除）</li>
+ *   <li>{@code [\s\t]{2,}} → 单个空格，{@code \t+} → 单个空格</li>
+ *   <li>trim</li>
+ * </ol>
+ * <p>前两步在读取字符时完成，后几步按空白段处理：空白段由非空白字符分隔，各段互不影响，
+ * 只需缓存当前空白段及其前一个字符。整个过程只读一遍输入、写一遍输出缓冲区，不产生中间字符串</p>
+ *
+ * @author 席崇援
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 清理文本
+     *
+     * @param text 原始文本
+     * @return 清理后的文本，输入为 null 时返回空串
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        return new Normalizer(text.length()).normalize(text);
+    }
+
+    /**
+     * 空白字符：第 1 步之后 {@code [\s\t]} 只剩这四种
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * 第 1 步移除的控制字符
+     */
+    private static boolean isRemovedControl(char c) {
+        return (c <= 0x08) || c == 0x0B || c == 0x0C || (c >= 0x0E && c <= 0x1F) || c == 0x7F;
+    }
+
+    /**
+     * 多行模式下的行终止符
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * 单次清理的状态
+     */
+    private static final class Normalizer {
+
+        /**
+         * 输出缓冲区（结果不会长于输入）
+         */
+        private final char[] out;
+        private int outLength;
+
+        /**
+         * 当前空白段
+         */
+        private char[] run = new char[64];
+        private int runLength;
+
+        /**
+         * 空白段之前的字符；atStart 表示尚未出现非空白字符（空白段位于文本开头）
+         */
+        private char beforeRun;
+        private boolean atStart = true;
+
+        /**
+         * 连续换行数（第 2 步）
+         */
+        private int newlines;
+
+        /**
+         * 空白段内保留下来的字符（第 3 步结果）
+         */
+        private char[] kept = new char[64];
+
+        Normalizer(int capacity) {
+            this.out = new char[capacity];
+        }
+
+        String normalize(String text) {
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                if (isRemovedControl(c)) {
+                    continue;
+                }
+                if (c == '\n') {
+                    if (++newlines > 2) {
+                        continue;
+                    }
+                } else {
+                    newlines = 0;
+                }
+                accept(c);
+            }
+            flushRun(true, (char) 0);
+
+            // trim：输出中只剩空白四种字符 ≤ ' '，去掉首尾空白
+            int start = 0;
+            int end = outLength;
+            while (start < end && out[start] <= ' ') {
+                start++;
+            }
+            while (end > start && out[end - 1] <= ' ') {
+                end--;
+            }
+            return new String(out, start, end - start);
+        }
+
+        /**
+         * 接收经过第 1、2 步的字符
+         */
+        private void accept(char c) {
+            if (isSpace(c)) {
+                if (runLength == run.length) {
+                    run = Arrays.copyOf(run, run.length * 2);
+                }
+                run[runLength++] = c;
+                return;
+            }
+            flushRun(false, c);
+            out[outLength++] = c;
+            beforeRun = c;
+            atStart = false;
+        }
+
+        /**
+         * 处理一个完整的空白段
+         *
+         * @param atEnd 空白段之后是否为文本结尾
+         * @param next 空白段之后的字符（atEnd 为 false 时有效）
+         */
+        private void flushRun(boolean atEnd, char next) {
+            int q = runLength;
+            if (q == 0) {
+                return;
+            }
+            if (kept.length < q) {
+                kept = new char[run.length];
+            }
+
+            // 第 3 步：模拟 (?m)^\s+|\s+$ 在该空白段上的逐位置匹配。
+            // 最靠后的 $ 位置与起点无关，\s+ 贪婪回溯时总是停在这里
+            int lastDollar = -1;
+            for (int pos = q; pos > 0; pos--) {
+                if (isDollar(pos, atEnd, next)) {
+                    lastDollar = pos;
+                    break;
+                }
+            }
+
+            int keptLength = 0;
+            int p = 0;
+            while (p < q) {
+                if (isCaret(p)) {
+                    // ^\s+ 吞掉剩余整段
+                    break;
+                }
+                if (lastDollar > p) {
+                    // \s+$ 删除到最后一个 $ 位置
+                    p = lastDollar;
+                    continue;
+                }
+                kept[keptLength++] = run[p++];
+            }
+
+            // 第 4 步：连续 2 个以上空白合并为一个空格，单个制表符替换为空格
+            if (keptLength >= 2) {
+                out[outLength++] = ' ';
+            } else if (keptLength == 1) {
+                out[outLength++] = kept[0] == '\t' ? ' ' : kept[0];
+            }
+            runLength = 0;
+        }
+
+        /**
+         * 多行模式 ^：文本开头，或紧跟行终止符（\r\n 中间除外）
+         */
+        private boolean isCaret(int pos) {
+            char prev;
+            if (pos == 0) {
+                if (atStart) {
+                    return true;
+                }
+                prev = beforeRun;
+            } else {
+                prev = run[pos - 1];
+            }
+            return isLineTerminator(prev) && !(prev == '\r' && run[pos] == '\n');
+        }
+
+        /**
+         * 多行模式 $：文本结尾，或行终止符之前（\r\n 中间除外）
+         */
+        private boolean isDollar(int pos, boolean atEnd, char next) {
+            if (pos == runLength) {
+                return atEnd || next == '\u0085' || next == '\u2028' || next == '\u2029';
+            }
+            char c = run[pos];
+            if (c == '\n') {
+                return run[pos - 1] != '\r';
+            }
+            return c == '\r';
+        }
+    }
+}
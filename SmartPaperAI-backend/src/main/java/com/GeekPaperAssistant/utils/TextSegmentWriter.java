@@ -0,0 +1,100 @@
+package com.GeekPaperAssistant.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 文本分段输出流
+ *
+ * <p>作为解析器的输出端：写入的文本累积到目标长度后，在段落(空行) / 换行 / 句末边界处切出一段交给下游，
+ * 剩余部分留待与后续文本拼接；关闭时输出最后一段。内存中只保留不足一段的文本</p>
+ * <p>下游处理阻塞时 {@link #write} 随之阻塞，解析器的解析速度被下游自然压住</p>
+ *
+ * @author 席崇援
+ */
+public class TextSegmentWriter extends Writer {
+
+    /**
+     * 分段处理
+     */
+    @FunctionalInterface
+    public interface SegmentHandler {
+
+        void accept(String segment) throws IOException;
+    }
+
+    private final int segmentChars;
+    private final SegmentHandler handler;
+    private final StringBuilder buffer;
+
+    private boolean closed;
+
+    /**
+     * @param segmentChars 目标分段长度(字符)
+     * @param handler 分段处理
+     */
+    public TextSegmentWriter(int segmentChars, SegmentHandler handler) {
+        if (segmentChars < 2) {
+            throw new IllegalArgumentException("segmentChars 必须不小于 2");
+        }
+        this.segmentChars = segmentChars;
+        this.handler = handler;
+        this.buffer = new StringBuilder(segmentChars * 2);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("输出流已关闭");
+        }
+        buffer.append(cbuf, off, len);
+        while (buffer.length() >= segmentChars) {
+            int cut = findBoundary();
+            String segment = buffer.substring(0, cut);
+            buffer.delete(0, cut);
+            handler.accept(segment);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // 分段只在达到目标长度或关闭时输出，避免在句中切断
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!buffer.isEmpty()) {
+            String segment = buffer.toString();
+            buffer.setLength(0);
+            handler.accept(segment);
+        }
+    }
+
+    /**
+     * 在目标长度的后半段内从后往前找切分位置：空行 > 换行 > 句末标点，都没有时按目标长度硬切
+     */
+    private int findBoundary() {
+        int from = segmentChars / 2;
+        int end = segmentChars;
+
+        int paragraph = buffer.lastIndexOf("\n\n", end - 2);
+        if (paragraph >= from) {
+            return paragraph + 2;
+        }
+        int line = buffer.lastIndexOf("\n", end - 1);
+        if (line >= from) {
+            return line + 1;
+        }
+        for (int i = end - 1; i >= from; i--) {
+            char c = buffer.charAt(i);
+            if (c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?') {
+                return i + 1;
+            }
+        }
+        return segmentChars;
+    }
+}
@@ -0,0 +1,40 @@
+package com.GeekPaperAssistant.utils;
+
+/**
+ * Token 计数器
+ *
+ * <p>分块大小控制与上下文预算统一使用该接口计数，具体分词实现见 {@link BpeTokenCounter}</p>
+ *
+ * @author 席崇援
+ */
+public interface TokenCounter {
+
+    /**
+     * 字节级 BPE 的每个 token 至少覆盖一个 UTF-8 字节，而单个 char 最多对应 3 字节，因此 token 数不超过字符数的 3 倍
+     */
+    int MAX_TOKENS_PER_CHAR = 3;
+
+    /**
+     * 计算文本的 token 数
+     *
+     * @param text 文本，为空时返回 0
+     * @return token 数
+     */
+    int count(String text);
+
+    /**
+     * 文本是否不超过指定 token 数
+     *
+     * <p>字符数按上界换算后已不超限时直接返回，不做分词</p>
+     *
+     * @param text 文本
+     * @param maxTokens token 上限
+     * @return 是否不超过上限
+     */
+    default boolean fits(String text, int maxTokens) {
+        if (text == null || (long) text.length() * MAX_TOKENS_PER_CHAR <= maxTokens) {
+            return true;
+        }
+        return count(text) <= maxTokens;
+    }
+}
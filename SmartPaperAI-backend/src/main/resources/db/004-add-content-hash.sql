@@ -0,0 +1,15 @@
+-- ============================
+-- SmartPaperAI 内容哈希去重
+-- ============================
+
+USE `ican`;
+
+-- 文档表: 原始文件内容 SHA-256，内容相同的文件复用解析结果
+ALTER TABLE `documents`
+    ADD COLUMN `content_hash` CHAR(64) DEFAULT NULL COMMENT '原始文件内容SHA-256' AFTER `metadata`,
+    ADD KEY `idx_content_hash` (`content_hash`) USING BTREE;
+
+-- 文档块表: 块文本 SHA-256，相同文本的块复用已有向量
+ALTER TABLE `document_chunks`
+    ADD COLUMN `content_hash` CHAR(64) DEFAULT NULL COMMENT '块文本SHA-256' AFTER `tokens`,
+    ADD KEY `idx_content_hash` (`content_hash`) USING BTREE;
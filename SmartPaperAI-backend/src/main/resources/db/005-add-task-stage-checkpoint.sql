@@ -0,0 +1,11 @@
+-- ============================
+-- SmartPaperAI 分阶段入库检查点
+-- ============================
+
+USE `ican`;
+
+-- 文档处理任务表: 记录当前阶段、已完成阶段和阶段检查点，失败重试时从失败阶段继续
+ALTER TABLE `document_task`
+    ADD COLUMN `current_stage` VARCHAR(20) DEFAULT NULL COMMENT '正在执行或失败的入库阶段: parse, structure, chunk, embed' AFTER `progress`,
+    ADD COLUMN `completed_stage` VARCHAR(20) DEFAULT NULL COMMENT '最近完成的入库阶段' AFTER `current_stage`,
+    ADD COLUMN `checkpoint` MEDIUMTEXT DEFAULT NULL COMMENT '阶段检查点数据(JSON)' AFTER `completed_stage`;
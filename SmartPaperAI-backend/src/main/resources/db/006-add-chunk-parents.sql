@@ -0,0 +1,20 @@
+-- ============================
+-- SmartPaperAI 父子分块(small-to-big)
+-- ============================
+
+USE `ican`;
+
+-- 父块表: 向量化的是小块(document_chunks)，检索命中后按 (document_id, parent_index) 展开为所属父块作为上下文
+CREATE TABLE IF NOT EXISTS `document_chunk_parents` (
+    `id` BIGINT(20) NOT NULL COMMENT '父块ID',
+    `document_id` BIGINT(20) NOT NULL COMMENT '文档ID',
+    `parent_index` INT NOT NULL COMMENT '父块索引(等于其第一个子块的 chunk_index)',
+    `child_count` INT DEFAULT NULL COMMENT '子块数量(父块覆盖 chunk_index 区间 [parent_index, parent_index + child_count - 1])',
+    `content` MEDIUMTEXT NOT NULL COMMENT '父块文本',
+    `tokens` INT COMMENT 'Token数量',
+    `section_title` VARCHAR(512) DEFAULT NULL COMMENT '章节标题(章节分块时有值)',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `is_deleted` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否删除(0:否 1:是)',
+    PRIMARY KEY (`id`) USING BTREE,
+    KEY `idx_document_parent` (`document_id`, `parent_index`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='文档父块表';
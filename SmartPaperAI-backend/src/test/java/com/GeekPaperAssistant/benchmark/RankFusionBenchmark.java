@@ -0,0 +1,152 @@
+package com.GeekPaperAssistant.benchmark;
+
+import com.GeekPaperAssistant.utils.RankFusion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 排序融合基准测试：两路(全文 / 向量)各 50 / 500 / 5000 个候选时的融合耗时
+ *
+ * <p>两路候选约一半重叠，键为 Base62 风格的字符串ID；legacyLinearAssembly 复现原 hybridSearch 的做法
+ * (RRF 打分后对每个结果 ID 线性扫描两路结果组装)，作为 {@link RankFusion} 的对照</p>
+ * <p>运行：mvn -B test-compile 后在 IDE 中执行 main 方法，或以测试类路径运行 org.openjdk.jmh.Main RankFusionBenchmark</p>
+ *
+ * @author 席崇援
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankFusionBenchmark {
+
+    private static final String BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    @Param({"50", "500", "5000"})
+    private int candidates;
+
+    private int topK;
+    private List<Hit> fulltextResults;
+    private List<Hit> vectorResults;
+
+    /**
+     * 一条检索结果
+     */
+    public record Hit(String id, double score) {
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> ids = new ArrayList<>(candidates * 3 / 2);
+        for (int i = 0; i < candidates * 3 / 2; i++) {
+            ids.add(base62(random.nextLong() & Long.MAX_VALUE));
+        }
+
+        // 全文取前 candidates 个，向量取后 candidates 个，中间约一半重叠，各自打乱后按分数降序
+        fulltextResults = ranked(ids.subList(0, candidates), random, 20.0);
+        vectorResults = ranked(ids.subList(ids.size() - candidates, ids.size()), random, 1.0);
+        topK = Math.max(10, candidates / 10);
+    }
+
+    @Benchmark
+    public List<RankFusion.Fused<String>> rrf() {
+        return RankFusion.rrf(topK,
+                RankFusion.RankedList.of(fulltextResults, Hit::id),
+                RankFusion.RankedList.of(vectorResults, Hit::id));
+    }
+
+    @Benchmark
+    public List<RankFusion.Fused<String>> weightedSum() {
+        return RankFusion.fuse(RankFusion.Method.WEIGHTED_SUM, List.of(
+                RankFusion.RankedList.of(fulltextResults, Hit::id, Hit::score, 0.3),
+                RankFusion.RankedList.of(vectorResults, Hit::id, Hit::score, 0.7)), topK, RankFusion.DEFAULT_RRF_K);
+    }
+
+    @Benchmark
+    public List<RankFusion.Fused<String>> combMnz() {
+        return RankFusion.fuse(RankFusion.Method.COMB_MNZ, List.of(
+                RankFusion.RankedList.of(fulltextResults, Hit::id, Hit::score, 1.0),
+                RankFusion.RankedList.of(vectorResults, Hit::id, Hit::score, 1.0)), topK, RankFusion.DEFAULT_RRF_K);
+    }
+
+    /**
+     * 原 hybridSearch 的融合方式：RRF 打分排序后，每个结果 ID 线性扫描全文结果，未命中再线性扫描向量结果
+     */
+    @Benchmark
+    public List<Hit> legacyLinearAssembly() {
+        final int k = RankFusion.DEFAULT_RRF_K;
+        Map<String, Double> rrfScores = new HashMap<>();
+        for (int i = 0; i < vectorResults.size(); i++) {
+            rrfScores.merge(vectorResults.get(i).id(), 1.0 / (k + i + 1), Double::sum);
+        }
+        for (int i = 0; i < fulltextResults.size(); i++) {
+            rrfScores.merge(fulltextResults.get(i).id(), 1.0 / (k + i + 1), Double::sum);
+        }
+
+        List<String> rankedIds = rrfScores.entrySet().stream()
+                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
+                .limit(topK)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        List<Hit> results = new ArrayList<>(rankedIds.size());
+        for (String id : rankedIds) {
+            fulltextResults.stream()
+                    .filter(hit -> hit.id().equals(id))
+                    .findFirst()
+                    .ifPresentOrElse(results::add, () -> vectorResults.stream()
+                            .filter(hit -> hit.id().equals(id))
+                            .findFirst()
+                            .ifPresent(results::add));
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RankFusionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static List<Hit> ranked(List<String> ids, Random random, double maxScore) {
+        List<String> shuffled = new ArrayList<>(ids);
+        Collections.shuffle(shuffled, random);
+        List<Hit> hits = new ArrayList<>(shuffled.size());
+        for (int i = 0; i < shuffled.size(); i++) {
+            hits.add(new Hit(shuffled.get(i), maxScore * (shuffled.size() - i) / shuffled.size()));
+        }
+        return hits;
+    }
+
+    private static String base62(long value) {
+        StringBuilder id = new StringBuilder();
+        do {
+            id.append(BASE62.charAt((int) (value % 62)));
+            value /= 62;
+        } while (value > 0);
+        return id.reverse().toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.GeekPaperAssistant.benchmark;
+
+import com.GeekPaperAssistant.utils.TextNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析文本清理基准测试：原 cleanText 正则链与单遍 {@link TextNormalizer} 在 64KB / 1MB / 8MB 文本上的耗时
+ *
+ * <p>输入由 src/test/resources/text-normalizer 下的抽取样本循环拼接到目标长度，与 TextNormalizerTest 使用同一组样本</p>
+ * <p>运行：mvn -B test-compile 后在 IDE 中执行 main 方法，或以测试类路径运行 org.openjdk.jmh.Main TextNormalizerBenchmark</p>
+ *
+ * @author 席崇援
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class TextNormalizerBenchmark {
+
+    private static final String[] FIXTURES = {
+            "pdf-extraction.txt",
+            "docx-crlf.txt",
+            "unicode-separators.txt",
+            "tab-runs.txt",
+            "control-chars.txt",
+    };
+
+    @Param({"65536", "1048576", "8388608"})
+    private int length;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        StringBuilder corpus = new StringBuilder();
+        for (String fixture : FIXTURES) {
+            corpus.append(readFixture(fixture)).append('\n');
+        }
+
+        StringBuilder builder = new StringBuilder(length + corpus.length());
+        while (builder.length() < length) {
+            builder.append(corpus);
+        }
+        builder.setLength(length);
+        text = builder.toString();
+    }
+
+    @Benchmark
+    public String normalizer() {
+        return TextNormalizer.normalize(text);
+    }
+
+    /**
+     * 原 DocumentParserServiceImpl.cleanText 的五次 replaceAll
+     */
+    @Benchmark
+    public String legacyRegexChain() {
+        return text
+                .replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F\\x7F]", "")
+                .replaceAll("\\n{3,}", "\n\n")
+                .replaceAll("(?m)^[\\s\\t]+|[\\s\\t]+$", "")
+                .replaceAll("[\\s\\t]{2,}", " ")
+                .replaceAll("\\t+", " ")
+                .trim();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TextNormalizerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static String readFixture(String name) {
+        try (InputStream in = TextNormalizerBenchmark.class.getResourceAsStream("/text-normalizer/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("缺少抽取样本: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
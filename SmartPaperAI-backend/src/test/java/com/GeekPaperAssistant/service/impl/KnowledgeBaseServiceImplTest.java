@@ -0,0 +1,138 @@
+package com.GeekPaperAssistant.service.impl;
+
+import cn.dev33.satoken.stp.StpUtil;
+import com.GeekPaperAssistant.mapper.DocumentMapper;
+import com.GeekPaperAssistant.mapper.DocumentTagMapper;
+import com.GeekPaperAssistant.mapper.KnowledgeBaseMapper;
+import com.GeekPaperAssistant.mapper.TagMapper;
+import com.GeekPaperAssistant.model.entity.DocumentDO;
+import com.GeekPaperAssistant.model.entity.KnowledgeBaseDO;
+import com.GeekPaperAssistant.service.DocumentESService;
+import com.GeekPaperAssistant.service.SemanticAnswerCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 知识库服务测试：文档移入 / 移出知识库时的块级索引知识库ID同步与答案缓存失效
+ *
+ * @author 席崇援
+ */
+@ExtendWith(MockitoExtension.class)
+class KnowledgeBaseServiceImplTest {
+
+    private static final Long USER_ID = 10L;
+
+    @Mock
+    private KnowledgeBaseMapper knowledgeBaseMapper;
+    @Mock
+    private TagMapper tagMapper;
+    @Mock
+    private DocumentTagMapper documentTagMapper;
+    @Mock
+    private DocumentMapper documentMapper;
+    @Mock
+    private SemanticAnswerCacheService semanticAnswerCacheService;
+    @Mock
+    private DocumentESService documentESService;
+
+    @InjectMocks
+    private KnowledgeBaseServiceImpl knowledgeBaseService;
+
+    private MockedStatic<StpUtil> stpUtil;
+
+    @BeforeEach
+    void setUp() {
+        stpUtil = Mockito.mockStatic(StpUtil.class);
+        stpUtil.when(StpUtil::getLoginIdAsLong).thenReturn(USER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stpUtil.close();
+    }
+
+    @Test
+    void archiveEvictsSourceAndTargetKnowledgeBase() {
+        when(knowledgeBaseMapper.selectById(1L)).thenReturn(knowledgeBase(1L));
+        when(documentMapper.selectById(100L)).thenReturn(document(100L, 2L));
+
+        knowledgeBaseService.batchArchiveDocuments(List.of(100L), 1L);
+
+        verify(semanticAnswerCacheService).evictKnowledgeBase(2L);
+        verify(semanticAnswerCacheService).evictKnowledgeBase(1L);
+        verify(documentESService).updateChunksKnowledgeBase(List.of(100L), 1L);
+    }
+
+    @Test
+    void archiveFromNoKnowledgeBaseEvictsOnlyTarget() {
+        when(knowledgeBaseMapper.selectById(1L)).thenReturn(knowledgeBase(1L));
+        when(documentMapper.selectById(100L)).thenReturn(document(100L, -1L));
+
+        knowledgeBaseService.batchArchiveDocuments(List.of(100L), 1L);
+
+        verify(semanticAnswerCacheService).evictKnowledgeBase(1L);
+        verify(semanticAnswerCacheService, never()).evictKnowledgeBase(-1L);
+    }
+
+    @Test
+    void removeEvictsSourceKnowledgeBase() {
+        when(knowledgeBaseMapper.selectById(1L)).thenReturn(knowledgeBase(1L));
+        when(documentMapper.selectById(100L)).thenReturn(document(100L, 1L));
+
+        knowledgeBaseService.removeDocumentsFromKnowledgeBase(List.of(100L), 1L);
+
+        verify(semanticAnswerCacheService).evictKnowledgeBase(1L);
+        verify(semanticAnswerCacheService, never()).evictKnowledgeBase(-1L);
+        verify(documentESService).updateChunksKnowledgeBase(List.of(100L), -1L);
+    }
+
+    @Test
+    void failedMoveDoesNotEvict() {
+        when(knowledgeBaseMapper.selectById(1L)).thenReturn(knowledgeBase(1L));
+        DocumentDO foreign = document(100L, 2L);
+        foreign.setUserId(99L);
+        when(documentMapper.selectById(100L)).thenReturn(foreign);
+
+        try {
+            knowledgeBaseService.batchArchiveDocuments(List.of(100L), 1L);
+        } catch (Exception ignored) {
+            // 全部失败时抛出业务异常
+        }
+
+        verify(semanticAnswerCacheService, never()).evictKnowledgeBase(anyLong());
+        verify(documentESService, never()).updateChunksKnowledgeBase(any(), any());
+    }
+
+    private static KnowledgeBaseDO knowledgeBase(Long id) {
+        return KnowledgeBaseDO.builder()
+                .id(id)
+                .userId(USER_ID)
+                .documentCount(1)
+                .isDeleted(0)
+                .build();
+    }
+
+    private static DocumentDO document(Long id, Long kbId) {
+        DocumentDO document = new DocumentDO();
+        document.setId(id);
+        document.setUserId(USER_ID);
+        document.setKbId(kbId);
+        document.setIsDeleted(0);
+        return document;
+    }
+}
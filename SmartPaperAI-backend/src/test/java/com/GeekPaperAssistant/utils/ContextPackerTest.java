@@ -0,0 +1,107 @@
+package com.GeekPaperAssistant.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 上下文装配测试
+ *
+ * @author 席崇援
+ */
+class ContextPackerTest {
+
+    /**
+     * 每字符计 1 个 token，便于构造预算边界
+     */
+    private static final TokenCounter CHAR_COUNTER = text -> text == null ? 0 : text.length();
+
+    private final ContextPacker packer = new ContextPacker(CHAR_COUNTER, 0.85, true);
+
+    @Test
+    void mergesAdjacentExpandedParents() {
+        // 父块 A 覆盖小块 0-2，父块 B 覆盖小块 3-4，按排名 B 在前
+        Document parentB = parent("c3", "doc1", 3, 4, "第二个父块讲实验设置与数据集划分。");
+        Document parentA = parent("c1", "doc1", 0, 2, "第一个父块介绍研究背景和问题定义。");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(parentB, parentA), 10_000);
+
+        assertThat(packed.blocks()).hasSize(1);
+        Document block = packed.blocks().get(0);
+        assertThat(block.getText()).isEqualTo(parentA.getText() + "\n" + parentB.getText());
+        assertThat(block.getMetadata()).containsEntry("chunkIndex", 0).containsEntry("chunkEndIndex", 4);
+        assertThat(packed.packedChunkIds()).containsExactlyInAnyOrder("c1", "c3");
+        assertThat(packed.dropped()).isEmpty();
+    }
+
+    @Test
+    void keepsNonAdjacentParentsSeparateInDocumentOrder() {
+        Document later = parent("c6", "doc1", 6, 8, "较后的父块内容，与前一个父块之间隔着其他块。");
+        Document earlier = parent("c1", "doc1", 0, 2, "较前的父块内容，介绍研究背景和问题定义。");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(later, earlier), 10_000);
+
+        assertThat(packed.blocks()).extracting(Document::getText)
+                .containsExactly(earlier.getText(), later.getText());
+    }
+
+    @Test
+    void mergesAdjacentChildChunksAndRemovesOverlap() {
+        Document first = chunk("a", "doc1", 4, "背景介绍到此为止。接下来说明实验所用的方法。");
+        Document second = chunk("b", "doc1", 5, "接下来说明实验所用的方法。方法分为三个步骤。");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(second, first), 10_000);
+
+        assertThat(packed.blocks()).hasSize(1);
+        assertThat(packed.blocks().get(0).getText())
+                .isEqualTo("背景介绍到此为止。接下来说明实验所用的方法。方法分为三个步骤。");
+    }
+
+    @Test
+    void dropsNearDuplicatesAndOverBudgetChunks() {
+        Document top = chunk("a", "doc1", 0, "排名最高的片段，内容关于模型结构。");
+        Document duplicate = chunk("b", "doc2", 7, "排名最高的片段，内容关于模型结构。");
+        Document large = chunk("c", "doc3", 1, "很长的片段".repeat(50));
+        Document small = chunk("d", "doc4", 2, "较短的片段。");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(top, duplicate, large, small), 80);
+
+        assertThat(packed.packedChunkIds()).containsExactly("a", "d");
+        assertThat(packed.dropped()).extracting(chunk -> chunk.document().getId() + ":" + chunk.reason())
+                .containsExactly("b:DUPLICATE", "c:OVER_BUDGET");
+        assertThat(packed.retainPacked(List.of(top, duplicate, large, small))).containsExactly(top, small);
+    }
+
+    @Test
+    void keepsTopChunkWhenNothingFits() {
+        Document large = chunk("a", "doc1", 0, "超出预算的片段".repeat(20));
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(large), 10);
+
+        assertThat(packed.blocks()).containsExactly(large);
+        assertThat(packed.dropped()).isEmpty();
+    }
+
+    private static Document chunk(String id, String documentId, int chunkIndex, String text) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("documentId", documentId);
+        metadata.put("chunkIndex", chunkIndex);
+        return Document.builder().id(id).text(text).metadata(metadata).build();
+    }
+
+    private static Document parent(String hitId, String documentId, int firstIndex, int lastIndex, String text) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("documentId", documentId);
+        metadata.put("chunkIndex", firstIndex);
+        metadata.put("chunkEndIndex", lastIndex);
+        metadata.put("parentIndex", firstIndex);
+        metadata.put("matchedChunks", 1);
+        metadata.put("matchedChunkIds", List.of(hitId));
+        return Document.builder().id(hitId).text(text).metadata(metadata).build();
+    }
+}
@@ -0,0 +1,236 @@
+package com.GeekPaperAssistant.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 句子分割器性质测试：随机文本上校验块大小上限、全文覆盖与块间重叠
+ *
+ * @author 席崇援
+ */
+class SentenceSplitterTest {
+
+    private static final String[] SENTENCES = {
+            "Retrieval augmented generation grounds answers in documents.",
+            "Dr. Smith et al. reported a 3.5% gain, see Fig. 2 for details!",
+            "Is the improvement significant?",
+            "本文提出了一种基于父子分块的检索方法。",
+            "实验结果表明，该方法在三个数据集上均优于基线（见表 2）；",
+            "我们进一步分析了误差来源……",
+            "The model, trained for 10 epochs, converged quickly; results follow:",
+    };
+
+    /**
+     * 字母/数字连续段每 4 个字符计 1 个 token，其余非空白字符各计 1 个，空白不计；对前缀单调
+     */
+    private static final TokenCounter PIECE_COUNTER = text -> {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) && c < 0x80) {
+                run++;
+                continue;
+            }
+            tokens += (run + 3) / 4;
+            run = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (run + 3) / 4;
+    };
+
+    @Test
+    void chunksNeverExceedMaxTokens() {
+        SentenceSplitter splitter = new SentenceSplitter(PIECE_COUNTER);
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            String text = randomText(random);
+            int maxTokens = 8 + random.nextInt(120);
+            int overlap = random.nextInt(maxTokens / 2 + 1);
+
+            for (String chunk : splitter.split(text, maxTokens, overlap)) {
+                assertThat(PIECE_COUNTER.count(chunk)).as("round %d", round).isLessThanOrEqualTo(maxTokens);
+            }
+        }
+    }
+
+    @Test
+    void chunksCoverEveryNonWhitespaceCharacterInOrder() {
+        SentenceSplitter splitter = new SentenceSplitter(PIECE_COUNTER);
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            String text = randomUniqueText(random);
+            int maxTokens = 8 + random.nextInt(120);
+            int overlap = random.nextInt(maxTokens / 2 + 1);
+
+            List<int[]> spans = locate(text, splitter.split(text, maxTokens, overlap));
+            boolean[] covered = new boolean[text.length()];
+            for (int[] span : spans) {
+                for (int i = span[0]; i < span[1]; i++) {
+                    covered[i] = true;
+                }
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (!Character.isWhitespace(text.charAt(i))) {
+                    assertThat(covered[i]).as("round %d, offset %d", round, i).isTrue();
+                }
+            }
+        }
+    }
+
+    @Test
+    void consecutiveChunksOverlapByAtMostOverlapTokens() {
+        SentenceSplitter splitter = new SentenceSplitter(PIECE_COUNTER);
+        Random random = new Random(2024);
+        int overlapping = 0;
+        for (int round = 0; round < 200; round++) {
+            String text = randomUniqueSentences(random, 20 + random.nextInt(40));
+            int maxTokens = 40 + random.nextInt(80);
+            int overlap = 10 + random.nextInt(maxTokens / 4);
+
+            List<int[]> spans = locate(text, splitter.split(text, maxTokens, overlap));
+            for (int i = 1; i < spans.size(); i++) {
+                int[] previous = spans.get(i - 1);
+                int[] current = spans.get(i);
+                assertThat(current[0]).as("round %d", round).isGreaterThan(previous[0]);
+                if (current[0] < previous[1]) {
+                    overlapping++;
+                    String shared = text.substring(current[0], previous[1]);
+                    assertThat(PIECE_COUNTER.count(shared)).as("round %d", round).isLessThanOrEqualTo(overlap);
+                }
+            }
+        }
+        assertThat(overlapping).isPositive();
+    }
+
+    @Test
+    void noOverlapWhenOverlapTokensIsZero() {
+        SentenceSplitter splitter = new SentenceSplitter(PIECE_COUNTER);
+        Random random = new Random(99);
+        for (int round = 0; round < 100; round++) {
+            String text = randomUniqueSentences(random, 10 + random.nextInt(30));
+
+            List<int[]> spans = locate(text, splitter.split(text, 30 + random.nextInt(60), 0));
+            for (int i = 1; i < spans.size(); i++) {
+                assertThat(spans.get(i)[0]).as("round %d", round).isGreaterThanOrEqualTo(spans.get(i - 1)[1]);
+            }
+        }
+    }
+
+    @Test
+    void longUnpunctuatedTextIsSplitInLinearWork() {
+        AtomicLong countedChars = new AtomicLong();
+        TokenCounter counting = text -> {
+            countedChars.addAndGet(text == null ? 0 : text.length());
+            return PIECE_COUNTER.count(text);
+        };
+        SentenceSplitter splitter = new SentenceSplitter(counting);
+        String text = "a".repeat(400_000);
+
+        List<String> chunks = splitter.split(text, 64, 0);
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(PIECE_COUNTER.count(chunk)).isLessThanOrEqualTo(64));
+        assertThat(chunks.stream().mapToInt(String::length).sum()).isEqualTo(text.length());
+        assertThat(countedChars.get()).isLessThan(100L * text.length());
+    }
+
+    /**
+     * 依次定位各块在原文中的区间(块为原文去除首尾空白的连续片段，起点严格递增；测试文本由随机字母/汉字构成，片段不会重复出现)
+     */
+    private static List<int[]> locate(String text, List<String> chunks) {
+        List<int[]> spans = new ArrayList<>(chunks.size());
+        int from = 0;
+        for (String chunk : chunks) {
+            int at = text.indexOf(chunk, from);
+            assertThat(at).as("chunk not found in order: %s", chunk).isGreaterThanOrEqualTo(0);
+            spans.add(new int[]{at, at + chunk.length()});
+            from = at + 1;
+        }
+        return spans;
+    }
+
+    /**
+     * 固定句子(含缩写、小数、中英文标点)与超长无标点片段混合的文本
+     */
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int parts = 1 + random.nextInt(30);
+        for (int i = 0; i < parts; i++) {
+            switch (random.nextInt(5)) {
+                case 0 -> text.append(letters(random, 1 + random.nextInt(2000)));
+                case 1 -> text.append("\n\n");
+                default -> text.append(SENTENCES[random.nextInt(SENTENCES.length)]);
+            }
+            text.append(random.nextBoolean() ? " " : "");
+        }
+        return text.toString();
+    }
+
+    /**
+     * 随机句子、段落空行与超长无标点片段混合的文本
+     */
+    private static String randomUniqueText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int parts = 1 + random.nextInt(30);
+        for (int i = 0; i < parts; i++) {
+            switch (random.nextInt(5)) {
+                case 0 -> text.append(letters(random, 1 + random.nextInt(2000)));
+                case 1 -> text.append("\n\n");
+                default -> text.append(randomSentence(random));
+            }
+            text.append(random.nextBoolean() ? " " : "");
+        }
+        return text.append(randomSentence(random)).toString();
+    }
+
+    private static String randomUniqueSentences(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(randomSentence(random)).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * 随机英文句(2-8 个随机单词)或中文句(4-15 个随机汉字)
+     */
+    private static String randomSentence(Random random) {
+        StringBuilder sentence = new StringBuilder();
+        if (random.nextBoolean()) {
+            int words = 2 + random.nextInt(7);
+            for (int w = 0; w < words; w++) {
+                String word = letters(random, 2 + random.nextInt(9));
+                sentence.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                sentence.append(w == words - 1 ? "" : random.nextInt(6) == 0 ? ", " : " ");
+            }
+            return sentence.append(".!?".charAt(random.nextInt(3))).toString();
+        }
+        int chars = 4 + random.nextInt(12);
+        for (int c = 0; c < chars; c++) {
+            sentence.append((char) (0x4E00 + random.nextInt(0x5000)));
+            if (c < chars - 1 && random.nextInt(8) == 0) {
+                sentence.append('，');
+            }
+        }
+        return sentence.append("。？！".charAt(random.nextInt(3))).toString();
+    }
+
+    private static String letters(Random random, int length) {
+        StringBuilder letters = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            letters.append((char) ('a' + random.nextInt(26)));
+        }
+        return letters.toString();
+    }
+}
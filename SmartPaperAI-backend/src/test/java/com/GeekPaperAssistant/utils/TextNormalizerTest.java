@@ -0,0 +1,102 @@
+package com.GeekPaperAssistant.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 单遍清理器与原 cleanText 正则链的输出一致性测试
+ *
+ * <p>样本位于 src/test/resources/text-normalizer，为 PDF / DOCX 抽取结果的节选，覆盖 CRLF、孤立 CR、
+ * U+2028 / U+2029 / U+0085 行终止符、制表符连串与控制字符；另以固定种子生成随机空白密集文本，结果可复现</p>
+ *
+ * @author 席崇援
+ */
+class TextNormalizerTest {
+
+    /**
+     * 随机文本的字符表：空白、各类行终止符、控制字符与少量普通字符
+     */
+    private static final char[] ALPHABET = {
+            ' ', ' ', '\t', '\n', '\n', '\n', '\r', '\u000B', '\f', '\u0085', '\u2028', '\u2029',
+            '\u0000', '\u0007', '\u001B', '\u007F', '\u00A0', '\u3000', 'a', 'b', '中', '.',
+    };
+
+    /**
+     * 原 DocumentParserServiceImpl.cleanText 的正则链，作为对照基准
+     */
+    static String legacyCleanText(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text
+                .replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F\\x7F]", "")
+                .replaceAll("\\n{3,}", "\n\n")
+                .replaceAll("(?m)^[\\s\\t]+|[\\s\\t]+$", "")
+                .replaceAll("[\\s\\t]{2,}", " ")
+                .replaceAll("\\t+", " ")
+                .trim();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "pdf-extraction.txt",
+            "docx-crlf.txt",
+            "unicode-separators.txt",
+            "tab-runs.txt",
+            "control-chars.txt",
+    })
+    void matchesLegacyChainOnExtractionFixtures(String fixture) throws IOException {
+        String text = readFixture(fixture);
+
+        assertThat(TextNormalizer.normalize(text)).isEqualTo(legacyCleanText(text));
+    }
+
+    @Test
+    void matchesLegacyChainOnRandomWhitespaceHeavyText() {
+        Random random = new Random(20);
+        for (int round = 0; round < 20_000; round++) {
+            String text = randomText(random, random.nextInt(64));
+
+            assertThat(TextNormalizer.normalize(text)).as("round %d: %s", round, escape(text))
+                    .isEqualTo(legacyCleanText(text));
+        }
+    }
+
+    @Test
+    void handlesNullAndEmptyInput() {
+        assertThat(TextNormalizer.normalize(null)).isEqualTo(legacyCleanText(null));
+        assertThat(TextNormalizer.normalize("")).isEqualTo(legacyCleanText(""));
+        assertThat(TextNormalizer.normalize(" \t\r\n\u0000 ")).isEqualTo(legacyCleanText(" \t\r\n\u0000 "));
+    }
+
+    static String readFixture(String name) throws IOException {
+        try (InputStream in = TextNormalizerTest.class.getResourceAsStream("/text-normalizer/" + name)) {
+            assertThat(in).as("fixture %s", name).isNotNull();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return text.toString();
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            escaped.append(c >= 0x20 && c < 0x7F ? String.valueOf(c) : String.format("\\u%04X", (int) c));
+        }
+        return escaped.toString();
+    }
+}